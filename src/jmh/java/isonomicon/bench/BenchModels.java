@@ -0,0 +1,49 @@
+package isonomicon.bench;
+
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import isonomicon.io.extended.VoxIOExtended;
+import isonomicon.io.extended.VoxModel;
+import isonomicon.physical.Tools3D;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Loads the models the benchmarks use. Paths are relative to the project root, which is where the {@code jmh} Maven
+ * profile runs from. Models that have more than one part are reduced to their first grid, so every renderer draws the
+ * same voxels.
+ */
+public final class BenchModels {
+    private BenchModels() {
+    }
+
+    static {
+        // Pixmap needs gdx's native code, but nothing here needs a window or a GL context.
+        GdxNativesLoader.load();
+    }
+
+    /**
+     * Reads the first grid of the .vox file at {@code path}, then scales it up with {@link Tools3D#scaleAndSoak} until
+     * it is {@code scale} times as big on each axis; scale should be a power of two.
+     * @param path a .vox file, relative to the project root
+     * @param scale 1 to use the model as it is, 2 to double it, and so on
+     * @return a new VoxModel with one grid and no links
+     */
+    public static VoxModel load(String path, int scale) {
+        VoxModel loaded;
+        try {
+            loaded = VoxIOExtended.readVoxFile(path);
+        } catch (FileNotFoundException e) {
+            throw new GdxRuntimeException("Benchmarks must be run from the project root; could not find " + path, e);
+        }
+        byte[][][] grid = loaded.grids.get(0);
+        for (int s = 1; s < scale; s <<= 1) {
+            grid = Tools3D.scaleAndSoak(grid);
+        }
+        VoxModel model = new VoxModel();
+        model.palette = loaded.palette;
+        model.materials = loaded.materials;
+        model.grids.add(grid);
+        return model;
+    }
+}
@@ -0,0 +1,20 @@
+package isonomicon.bench;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures only {@link isonomicon.visual.SpecialRenderer#blit}, which lights, composites, and outlines what was
+ * splatted. The model is splatted before each call, outside the measured time.
+ */
+public class BlitBenchmark extends RendererState {
+    @Setup(Level.Invocation)
+    public void splat() {
+        special.splatOnly(surface, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+    }
+
+    @Benchmark
+    public Pixmap specialBlit() {
+        return special.blit(0.125f, 0f, 0f, 0);
+    }
+}
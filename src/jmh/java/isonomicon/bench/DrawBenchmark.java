@@ -0,0 +1,34 @@
+package isonomicon.bench;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures a whole draw (splat and blit) with each renderer generation, so they can be compared on the same model.
+ */
+public class DrawBenchmark extends RendererState {
+    @Benchmark
+    public Pixmap special() {
+        return special.drawModelSimple(voxels, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+    }
+
+    @Benchmark
+    public Pixmap special2024() {
+        return special2024.drawModelSimple(voxels, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+    }
+
+    @Benchmark
+    public Pixmap special2025() {
+        return special2025.drawModelSimple(voxels, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+    }
+
+    @Benchmark
+    public Pixmap boxy() {
+        return boxy.drawModelSimple(voxels, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+    }
+
+    @Benchmark
+    public Pixmap smudge() {
+        return smudge.drawSplats(voxels.grids.get(0), 0.125f, 0f, 0f, 0, 0f, 0f, 0f, voxels.materials);
+    }
+}
@@ -0,0 +1,105 @@
+package isonomicon.bench;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.github.tommyettinger.anim8.FastPNG;
+import isonomicon.io.IndexedPNG;
+import isonomicon.io.extended.VoxModel;
+import isonomicon.physical.Stuff;
+import isonomicon.visual.Coloring;
+import isonomicon.visual.PaletteResolver;
+import isonomicon.visual.SpecialRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing one rendered frame with FastPNG (RGBA) and with {@link IndexedPNG}, both for a resolved sprite and
+ * for the index/shade/saturation "lab" image, at the compression level ColorGuardAssets uses. The PNGs go into memory,
+ * so this measures encoding and not the disk; {@link #size} shows how many bytes each one would have written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PNGBenchmark {
+    @Param({"specialized/b/vox/color_guard/Infantry.vox", "vox/Lomuk.vox"})
+    public String model;
+
+    public Pixmap lab, sprite;
+    public FastPNG fast;
+    public IndexedPNG indexed, parallel;
+    public ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+    public long size;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        VoxModel voxels = BenchModels.load(model, 2);
+        SpecialRenderer.shrink = 2;
+        SpecialRenderer renderer = new SpecialRenderer(voxels.grids.get(0).length, Stuff.STUFFS_B);
+        renderer.palette(Coloring.BETTS64);
+        renderer.saturation(0f);
+        Pixmap drawn = renderer.drawModelSimple(voxels, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+        lab = new Pixmap(drawn.getWidth(), drawn.getHeight(), Pixmap.Format.RGBA8888);
+        lab.setBlending(Pixmap.Blending.None);
+        lab.drawPixmap(drawn, 0, 0);
+        Pixmap master = new Pixmap(new FileHandle("assets/palettes/b/ColorGuardMasterPalette.png"));
+        PaletteResolver resolver = new PaletteResolver(master);
+        master.dispose();
+        resolver.flipY = false;
+        sprite = resolver.resolve(lab, 0, 0.5f, 0.5f);
+        fast = new FastPNG();
+        fast.setCompression(2);
+        indexed = new IndexedPNG(2);
+        parallel = new IndexedPNG(2);
+        parallel.parallel = true;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        lab.dispose();
+        sprite.dispose();
+        fast.dispose();
+        indexed.dispose();
+        parallel.dispose();
+    }
+
+    @Benchmark
+    public long spriteFast() throws IOException {
+        out.reset();
+        fast.write(out, sprite);
+        return size = out.size();
+    }
+
+    @Benchmark
+    public long spriteIndexed() throws IOException {
+        out.reset();
+        indexed.write(out, sprite);
+        return size = out.size();
+    }
+
+    @Benchmark
+    public long spriteIndexedParallel() throws IOException {
+        out.reset();
+        parallel.write(out, sprite);
+        return size = out.size();
+    }
+
+    @Benchmark
+    public long labFast() throws IOException {
+        out.reset();
+        fast.write(out, lab);
+        return size = out.size();
+    }
+
+    @Benchmark
+    public long labIndexed() throws IOException {
+        out.reset();
+        indexed.write(out, lab);
+        return size = out.size();
+    }
+}
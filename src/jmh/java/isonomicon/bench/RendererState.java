@@ -0,0 +1,64 @@
+package isonomicon.bench;
+
+import isonomicon.io.extended.VoxModel;
+import isonomicon.physical.Stuff;
+import isonomicon.physical.SurfaceVoxels;
+import isonomicon.visual.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared setup for the renderer benchmarks: one model, at one scale, and one of each renderer sized for it. The
+ * model parameter covers a small, a medium, and a large model; scale doubles every axis of the model, so it covers
+ * larger sizes with the same shapes; shrink is {@link SpecialRenderer#shrink} (and {@link BoxyRenderer#shrink}), which
+ * changes how many pixels lighting and outlining have to visit. {@link SmudgeRenderer} always uses its own shrink.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class RendererState {
+    @Param({"vox/Box.vox", "specialized/b/vox/color_guard/Infantry.vox", "vox/Lomuk.vox"})
+    public String model;
+    @Param({"1", "2"})
+    public int scale;
+    @Param({"0", "2"})
+    public int shrink;
+
+    public VoxModel voxels;
+    public SurfaceVoxels surface;
+    public SpecialRenderer special;
+    public SpecialRenderer2024 special2024;
+    public SpecialRenderer2025 special2025;
+    public BoxyRenderer boxy;
+    public SmudgeRenderer smudge;
+
+    @Setup(Level.Trial)
+    public void setUpRenderers() {
+        voxels = BenchModels.load(model, scale);
+        final int size = voxels.grids.get(0).length;
+        surface = voxels.surface(0, Stuff.STUFFS_B);
+        SpecialRenderer.shrink = shrink;
+        SpecialRenderer2024.shrink = shrink;
+        SpecialRenderer2025.shrink = shrink;
+        BoxyRenderer.shrink = shrink;
+        special = new SpecialRenderer(size, Stuff.STUFFS_B);
+        special.palette(Coloring.BETTS64);
+        special.saturation(0f);
+        special2024 = new SpecialRenderer2024(size, Stuff.STUFFS_B);
+        special2024.palette(Coloring.BETTS64);
+        special2024.saturation(0f);
+        special2025 = new SpecialRenderer2025(size, Stuff.STUFFS_B);
+        special2025.palette(Coloring.BETTS64);
+        special2025.saturation(0f);
+        boxy = new BoxyRenderer(size, Stuff.STUFFS_B);
+        boxy.palette(Coloring.BETTS64);
+        boxy.saturation(0f);
+        smudge = new SmudgeRenderer(size);
+        smudge.palette(voxels.palette);
+        smudge.saturation(0f);
+    }
+}
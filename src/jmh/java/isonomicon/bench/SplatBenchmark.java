@@ -0,0 +1,20 @@
+package isonomicon.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures only {@link isonomicon.visual.SpecialRenderer#splatOnly}, which fills the renderer's G-buffers. The
+ * renderer is cleared after each call, outside the measured time.
+ */
+public class SplatBenchmark extends RendererState {
+    @TearDown(Level.Invocation)
+    public void clear() {
+        special.clear();
+    }
+
+    @Benchmark
+    public int specialSplat() {
+        special.splatOnly(surface, 0.125f, 0f, 0f, 0, 0f, 0f, 0f);
+        return special.dirty.maxX;
+    }
+}
@@ -0,0 +1,48 @@
+package isonomicon.bench;
+
+import isonomicon.physical.Stuff;
+import isonomicon.physical.Tools3D;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the grid operations that run before rendering: {@link Tools3D#scaleAndSoak(byte[][][])}, which doubles a
+ * model's size, and {@link Stuff#evolve(Stuff[], byte[][][], int)}, which animates it. Evolve edits its grid, so it
+ * gets a fresh copy before each call, outside the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolsBenchmark {
+    @Param({"vox/Box.vox", "specialized/b/vox/color_guard/Infantry.vox", "vox/Lomuk.vox"})
+    public String model;
+    @Param({"1", "2"})
+    public int scale;
+
+    public byte[][][] grid, working;
+
+    @Setup(Level.Trial)
+    public void load() {
+        grid = BenchModels.load(model, scale).grids.get(0);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        working = Tools3D.deepCopy(grid);
+    }
+
+    @Benchmark
+    public byte[][][] scaleAndSoak() {
+        return Tools3D.scaleAndSoak(grid);
+    }
+
+    @Benchmark
+    public byte[][][] evolve() {
+        Stuff.evolve(Stuff.STUFFS_B, working, 1);
+        return working;
+    }
+}
@@ -0,0 +1,85 @@
+package isonomicon.bench;
+
+import isonomicon.io.extended.VoxCache;
+import isonomicon.io.extended.VoxIOExtended;
+import isonomicon.io.extended.VoxLoadOptions;
+import isonomicon.io.extended.VoxModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link VoxIOExtended#readVox(java.io.InputStream)} and {@link VoxIOExtended#readVox(ByteBuffer)} on files
+ * that were read into memory beforehand, so disk speed doesn't count. The multi-part models exercise the scene graph
+ * chunks as well as the voxel data. {@link #writeVox()} writes the same model back out to a temporary file.
+ * {@link #readVoxScaled()} and {@link #readVoxCached()} compare a full load, with scaling and soaking, to a load that
+ * gets the processed grids from a {@link VoxCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoxIOBenchmark {
+    @Param({"vox/Box.vox", "specialized/b/vox/color_guard/Infantry.vox", "specialized/b/vox/Figure_Split.vox", "vox/Lomuk.vox"})
+    public String model;
+
+    public byte[] bytes;
+    public ByteBuffer buffer;
+    public VoxModel loaded;
+    public String outFile;
+    public VoxCache cache;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        bytes = Files.readAllBytes(Paths.get(model));
+        buffer = ByteBuffer.wrap(bytes);
+        loaded = VoxIOExtended.readVox(buffer, new VoxLoadOptions(true, false, false, true));
+        outFile = Files.createTempFile("isonomicon", ".vox").toString();
+        cache = new VoxCache(Files.createTempDirectory("isonomicon").toString());
+        cache.load(model, VoxLoadOptions.SPECIALIZED);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(Paths.get(outFile));
+        File[] files = cache.directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        cache.directory.delete();
+    }
+
+    @Benchmark
+    public VoxModel readVoxStream() {
+        return VoxIOExtended.readVox(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public VoxModel readVoxBuffer() {
+        return VoxIOExtended.readVox(buffer);
+    }
+
+    @Benchmark
+    public void writeVox() {
+        VoxIOExtended.writeVOX(outFile, loaded);
+    }
+
+    @Benchmark
+    public VoxModel readVoxScaled() throws IOException {
+        return VoxIOExtended.readVoxFile(model, VoxLoadOptions.SPECIALIZED);
+    }
+
+    @Benchmark
+    public VoxModel readVoxCached() throws IOException {
+        return cache.load(model, VoxLoadOptions.SPECIALIZED);
+    }
+}
@@ -2,33 +2,37 @@ package isonomicon.app;
 
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
-import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.*;
 import com.github.tommyettinger.ds.IntObjectMap;
 import com.github.tommyettinger.ds.ObjectIntMap;
-import isonomicon.io.LittleEndianDataInputStream;
+import isonomicon.io.AtlasPacker;
+import isonomicon.io.BuildManifest;
+import isonomicon.io.IndexedPNG;
+import isonomicon.io.extended.ModelRegistry;
+import isonomicon.io.extended.VoxCache;
 import isonomicon.io.extended.VoxIOExtended;
+import isonomicon.io.extended.VoxLoadOptions;
 import isonomicon.io.extended.VoxModel;
 import isonomicon.physical.EffectGenerator;
 import isonomicon.physical.Stuff;
+import isonomicon.physical.StuffTable;
 import isonomicon.physical.Tools3D;
 import isonomicon.visual.Coloring;
-import isonomicon.visual.ShaderUtils;
+import isonomicon.visual.PaletteResolver;
+import isonomicon.visual.RenderCache;
+import isonomicon.visual.RenderPipeline;
 import isonomicon.visual.SpecialRenderer;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 public class ColorGuardAssets extends ApplicationAdapter {
     public static boolean DIVERSE = false;
@@ -47,6 +51,28 @@ public class ColorGuardAssets extends ApplicationAdapter {
     public static boolean APNG = false;
     public static boolean GIF = true;
     public static boolean VOX = false;
+    /**
+     * If true, each unit's sprites are packed into an atlas (one .atlas file and its pages) in {@code outDir + "/atlas/"}
+     * instead of being written as loose PNGs; lab images are still written as PNGs if {@link #PNG} is true.
+     */
+    public static boolean ATLAS = true;
+    /**
+     * If true, units (and the explosion and landscapes) whose inputs haven't changed since the last finished run are
+     * skipped; see {@link BuildManifest}. The manifest is kept in {@code outDir}, so deleting that forgets it too.
+     */
+    public static boolean INCREMENTAL = true;
+    /**
+     * If true, rendered index frames are kept in {@link #CACHE_DIR} between runs, so units whose .vox files, Stuffs,
+     * and renderer settings haven't changed don't get rendered again. This also keeps each model's scaled and soaked
+     * grids in a {@link VoxCache} next to its .vox file, so they don't get processed again.
+     */
+    public static boolean CACHE = true;
+    public static final String CACHE_DIR = "out/render_cache";
+    public static final VoxLoadOptions LOAD_OPTIONS = VoxLoadOptions.SPECIALIZED;
+    /**
+     * How many threads write PNGs while the main thread renders; the main thread keeps one core busy by itself.
+     */
+    public static int PNG_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
 //    public static final String outDir = "out/color_guard";
 //    public static final String outDir = "out/cg";
@@ -65,18 +91,58 @@ public class ColorGuardAssets extends ApplicationAdapter {
     public static final int SCREEN_HEIGHT = 512;//720;
     private SpecialRenderer renderer;
     private VoxModel voxels, head;
+    private String headPath;
     private VoxModel[] frames = new VoxModel[8];
     private String name;
     private String[] armies;
-    private FastPNG png;
+    private final ArrayList<IndexedPNG> allPngs = new ArrayList<>(8);
+    /**
+     * Each PNG thread gets its own IndexedPNG, since they keep buffers between writes. Sprites and lab images are
+     * written with a palette when they have 256 colors or fewer, which they almost always do. Every IndexedPNG made
+     * this way is also kept in {@link #allPngs}, so their Deflaters can be ended once the pipeline is finished.
+     */
+    private final ThreadLocal<IndexedPNG> pngs = ThreadLocal.withInitial(() -> {
+        IndexedPNG png = new IndexedPNG();
+        png.setCompression(2); // we are likely to compress these with something better, like oxipng.
+        synchronized (allPngs) {
+            allPngs.add(png);
+        }
+        return png;
+    });
     private AnimatedGif gif;
     private AnimatedPNG apng;
-    private SpriteBatch batch;
-    private Texture palette;
+    private PaletteResolver resolver;
+    private RenderCache cache;
+    /**
+     * Loads the next unit's models in the background while the current one renders, and keeps models that are used
+     * more than once, like the head and each unit's idle pose, so they are only loaded once.
+     */
+    private final ModelRegistry models = new ModelRegistry(LOAD_OPTIONS, CACHE ? new VoxCache() : null, 1L << 30);
+    /**
+     * The main thread loads, evolves, renders, and resolves, while PNGs are written on {@link #pngStage} and
+     * animations on {@link #animationStage}. Both stages only accept a few tasks at a time, so the number of Pixmaps
+     * waiting to be written stays small.
+     */
+    private RenderPipeline pipeline;
+    private RenderPipeline.Stage pngStage, animationStage;
+    /**
+     * Collects the current unit's sprites when {@link #ATLAS} is true; null otherwise.
+     */
+    private AtlasPacker atlas;
+    private String atlasPath;
+    private BuildManifest manifest;
+    /**
+     * Hashes every input that all jobs share: the code, the palettes, the Stuff table, the head, and the settings.
+     */
+    private long baseHash;
+    /**
+     * Every PNG written since the last animation; an animation waits for these, because GIF writing changes its
+     * Pixmaps in place.
+     */
+    private final ArrayList<CompletableFuture<Void>> pending = new ArrayList<>(256);
     private int[] palette0 = new int[256];
 
     public ColorGuardAssets() {
-        VoxIOExtended.GENERAL = false;
         armies = new String[]{
                 "Dark",
                 "White",
@@ -108,11 +174,12 @@ public class ColorGuardAssets extends ApplicationAdapter {
 //        ColorGuardData.units = ColorGuardData.units.subList(0, 11);
         try {
             if(SpecialRenderer.shrink == 0)
-                head = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream("specialized/b/vox/color_guard/"+SPECIES+"/Head_Shrink_0.vox")));
+                headPath = "specialized/b/vox/color_guard/"+SPECIES+"/Head_Shrink_0.vox";
             else if(SpecialRenderer.shrink == 3)
-                head = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream("specialized/b/vox/color_guard/"+SPECIES+"/Head_Shrink_3.vox")));
+                headPath = "specialized/b/vox/color_guard/"+SPECIES+"/Head_Shrink_3.vox";
             else
-                head = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream("specialized/b/vox/color_guard/"+SPECIES+"/Head.vox")));
+                headPath = "specialized/b/vox/color_guard/"+SPECIES+"/Head.vox";
+            head = readVoxFile(headPath);
         }
         catch (FileNotFoundException ignored){
             System.out.println("Head model not found; this was run from the wrong path. Exiting.");
@@ -122,7 +189,11 @@ public class ColorGuardAssets extends ApplicationAdapter {
     @Override
     public void create() {
 //        if (inputs == null) Gdx.app.exit();
-        palette = new Texture(Gdx.files.local("assets/palettes/b/ColorGuardMasterPalette.png"));
+        Pixmap master = new Pixmap(Gdx.files.local("assets/palettes/b/ColorGuardMasterPalette.png"));
+        resolver = new PaletteResolver(master);
+        master.dispose();
+        resolver.flipY = false;
+        resolver.background = 0xFFFFFF00; // what ScreenUtils.clear(1f, 1f, 1f, 0f) used to clear to
         Pixmap p0 = new Pixmap(Gdx.files.local("assets/palettes/b/ColorGuardBaseDark.png"));
         for (int i = 0; i < 255; i++) {
             palette0[i+1] = p0.getPixel(i, 0);
@@ -138,14 +209,22 @@ public class ColorGuardAssets extends ApplicationAdapter {
 //                new Texture(Gdx.files.local("assets/palettes/b/ColorGuardBasePurple.png")),
 //        };
 
-        ShaderProgram indexShader = new ShaderProgram(ShaderUtils.stuffSelectVertex, ShaderUtils.stuffSelectFragment);
-        if (!indexShader.isCompiled()) throw new GdxRuntimeException("Error compiling shader: " + indexShader.getLog());
-        batch = new SpriteBatch(16, indexShader);
-
+        if(CACHE) cache = new RenderCache(CACHE_DIR, 1L << 30);
         long startTime = TimeUtils.millis();
-        if(PNG) {
-            png = new FastPNG();
-            png.setCompression(2); // we are likely to compress these with something better, like oxipng.
+        pipeline = new RenderPipeline();
+        pngStage = pipeline.stage("png", PNG_THREADS, PNG_THREADS << 2);
+        // AnimatedGif and AnimatedPNG aren't thread-safe, so animations get exactly one thread
+        animationStage = pipeline.stage("animation", 1, 1);
+        if(INCREMENTAL) {
+            manifest = new BuildManifest(outDir + "/manifest.txt");
+            baseHash = BuildManifest.combine(BuildManifest.codeHash(ColorGuardAssets.class),
+                    BuildManifest.hashFile("assets/palettes/b/ColorGuardMasterPalette.png"),
+                    BuildManifest.hashFile("assets/palettes/b/ColorGuardBaseDark.png"),
+                    BuildManifest.hashFile(headPath),
+                    StuffTable.STUFFS_B.hash, Arrays.hashCode(Coloring.BETTS64), SpecialRenderer.shrink,
+                    BuildManifest.hash(SPECIES + ',' + SPECIES_PREFIX + ',' + DIVERSE + ',' + ATTACKS + ',' + PNG + ','
+                            + APNG + ',' + GIF + ',' + VOX + ',' + ATLAS + ',' + AppConfig.DITHER + ','
+                            + AppConfig.GRAY_BG), Float.floatToIntBits(DAMAGED), Float.floatToIntBits(AppConfig.STRENGTH));
         }
         if(GIF) {
 //        gif = new LoafGif();
@@ -161,7 +240,6 @@ public class ColorGuardAssets extends ApplicationAdapter {
             apng = new AnimatedPNG();
             apng.setCompression(2);
         }
-        FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
         ObjectIntMap<String> doneReceive = new ObjectIntMap<>(16);
         doneReceive.setDefaultValue(-1);
         for(String s : EffectGenerator.KNOWN_RECEIVE_EFFECTS.keySet())
@@ -171,6 +249,18 @@ public class ColorGuardAssets extends ApplicationAdapter {
             canonicalLooks = new int[]{0, 7, 15, 3, 18, 17, 1, 12};
         else // zombie for now
             canonicalLooks = new int[]{20, 20, 20, 20, 20, 20, 20, 20};
+        // palette rows for every variant of a frame, so each frame only needs one resolveAll() call.
+        // the master palette has 8 rows per look, one per army, so a row is look * 8 + army.
+        int[] armyRows = new int[armies.length], canonicalRows = new int[armies.length];
+        for (int j = 0; j < armies.length; j++) {
+            armyRows[j] = j;
+            canonicalRows[j] = canonicalLooks[j] * armies.length + j;
+        }
+        int[] diverseRows = new int[21 << 3], diverseAttackRows = new int[20 << 3];
+        for (int r = 0; r < diverseRows.length; r++) {
+            diverseRows[r] = r;
+        }
+        System.arraycopy(diverseRows, 0, diverseAttackRows, 0, diverseAttackRows.length);
         // many skin and hair colors
         if(DIVERSE)
         {
@@ -178,7 +268,12 @@ public class ColorGuardAssets extends ApplicationAdapter {
             for (int n = 0; n < ColorGuardData.units.size(); n++) {
                 ColorGuardData.Unit unit = ColorGuardData.units.get(n);
                 name = unit.name;
+                if(upToDate(job(unit), unitHash(unit))) {
+                    markReceived(unit, doneReceive);
+                    continue;
+                }
                 System.out.println("Rendering " + name);
+                startAtlas(outDir + "/atlas_diverse/" + SPECIES_PREFIX + name);
                 if(ColorGuardData.terrains.contains(name) || name.startsWith("Terrain")){
                     renderer.shadows = false;
                     renderer.outline = 2;
@@ -188,66 +283,41 @@ public class ColorGuardAssets extends ApplicationAdapter {
                 }
                 Gdx.files.local(outDir + "/animated_diverse/" + SPECIES_PREFIX + name + '/').mkdirs();
                 load("specialized/b/vox/color_guard/" + name, ".vox");
-                Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
+                preload(n + 1);
                 Pixmap pixmap;
                 Array<Pixmap> pm = new Array<>(32 * armies.length);
                 pm.setSize(32 * armies.length);
                 VoxModel original = voxels.copy();
                 if(DAMAGED > 0f) {
-                    for (int j = 0; j < original.grids.size(); j++) {
-                        Stuff.damage(Stuff.STUFFS_B, original.grids.get(j), DAMAGED);
-                    }
+                    original.damage(Stuff.STUFFS_B, DAMAGED);
                 }
                 for (int i = 0; i < 4; i++) {
                     voxels = original.copy();
                     for (int f = 0; f < 4; f++) {
-                        for (int j = 0; j < voxels.grids.size(); j++) {
-                            Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                        }
+                        voxels.evolve(Stuff.STUFFS_B, f);
                         renderer.drawModelSimple(voxels, i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                        t.draw(renderer.palettePixmap, 0, 0);
+                        Pixmap[] variants = resolver.resolveAll(renderer.palettePixmap, diverseRows, 0.5f, 0.5f);
                         for (int look = 0, lk = 0; look < 168; look+=8, lk++) {
 //                            if(lk == 3 || lk == 8 || lk == 11 || lk == 18 || lk == 21 || lk == 25)
 //                                continue;
                             for (int j = 0; j < armies.length; j++) {
-                                fb.begin();
-                                palette.bind(1);
-                                ScreenUtils.clear(1f, 1f, 1f, 0f);
-                                batch.begin();
-
-                                indexShader.setUniformi("u_texPalette", 1);
-                                Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                                batch.setColor((look + j) / 255f, 0.5f, 0.5f, 1f);
-
-                                batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                                batch.end();
-                                pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                                fb.end();
-                                if(png != null) png.write(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + lk + '_' + name + "_angle" + i + "_" + f + ".png"), pixmap);
+                                pixmap = variants[look + j];
+                                writeSprite(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + lk + '_' + name + "_angle" + i + "_" + f + ".png"), pixmap, lk != canonicalLooks[j]);
                                 if(look + j == 0)
-                                    if(png != null) png.write(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                                    writePNGCopy(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                                 if(lk == canonicalLooks[j]) {
                                     pm.set(j * 32 + i * 8 + f, pixmap);
                                     pm.set(j * 32 + i * 8 + f + 4, pixmap);
-                                } else {
-                                    pixmap.dispose();
                                 }
                             }
                         }
 //                png8.write(Gdx.files.local("out/" + name + '/' + name + "_angle" + i + ".png"), p, false, true);
                     }
                 }
-                if(apng != null) apng.write(Gdx.files.local(outDir + "/animated_diverse/" + name + '/' + SPECIES_PREFIX + name + ".png"), pm, 8);
-                if(gif != null) SpecialRenderer.monoAlpha(pm);
-                if(gif != null) gif.write(Gdx.files.local(outDir + "/animated_diverse/" + name + '/' + SPECIES_PREFIX + name + ".gif"), pm, 8);
+                writeAnimations(outDir + "/animated_diverse/" + name + '/' + SPECIES_PREFIX + name, pm);
 //                if(apng != null) apng.write(Gdx.files.local(outDir + "/animated_diverse_flat/" + name + ".png"), pm, 8);
-                for (Pixmap pix : pm) {
-                    if (!pix.isDisposed())
-                        pix.dispose();
-                }
                 if (ATTACKS) {
-                    pm.clear();
-                    pm.setSize(32 * armies.length);
+                    pm = newFrames();
                     String attack = unit.primary, ps = "_Primary";
                     int strength = unit.primaryStrength;
                     boolean pose = unit.primaryPose;
@@ -265,17 +335,13 @@ public class ColorGuardAssets extends ApplicationAdapter {
                         original = voxels.copy();
                         EffectGenerator.r.setSeed(unit.name.hashCode() ^ which);
                         if(DAMAGED > 0f) {
-                            for (int j = 0; j < original.grids.size(); j++) {
-                                Stuff.damage(Stuff.STUFFS_B, original.grids.get(j), DAMAGED);
-                            }
+                            original.damage(Stuff.STUFFS_B, DAMAGED);
                         }
                         for (int i = 0; i < 4; i++) {
                             frames[0] = original.copy();
                             for (int f = 0; f < frames.length; f++) {
                                 if (f > 0) frames[f] = frames[f - 1].copy();
-                                for (int j = 0; j < frames[f].grids.size(); j++) {
-                                    Stuff.evolve(Stuff.STUFFS_B, frames[f].grids.get(j), f);
-                                }
+                                frames[f].evolve(Stuff.STUFFS_B, f);
                             }
                             EffectGenerator.Effect effect = EffectGenerator.KNOWN_EFFECTS.get(attack);
                             if (effect == null) continue EACH_INPUT;
@@ -285,29 +351,15 @@ public class ColorGuardAssets extends ApplicationAdapter {
 
                             for (int f = 0; f < frames.length; f++) {
                                 renderer.drawModelSimple(frames[f], i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                                t.draw(renderer.palettePixmap, 0, 0);
+                                Pixmap[] variants = resolver.resolveAll(renderer.palettePixmap, diverseAttackRows, 0.5f, 0.5f);
                                 for (int look = 0, lk = 0; look < 153; look+=8, lk++) {
                                     for (int j = 0; j < armies.length; j++) {
-                                        fb.begin();
-                                        palette.bind(1);
-                                        ScreenUtils.clear(1f, 1f, 1f, 0f);
-                                        batch.begin();
-
-                                        indexShader.setUniformi("u_texPalette", 1);
-                                        Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                                        batch.setColor((look + j) / 255f, 0.5f, 0.5f, 1f);
-
-                                        batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                                        batch.end();
-                                        pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                                        fb.end();
-                                        if(png != null) png.write(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + lk + "_" + name + ps + "_angle" + i + "_" + f + ".png"), pixmap);
+                                        pixmap = variants[look + j];
+                                        writeSprite(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + lk + "_" + name + ps + "_angle" + i + "_" + f + ".png"), pixmap, lk != canonicalLooks[j]);
                                         if (look + j == 0)
-                                            if(png != null) png.write(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + ps + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                                            writePNGCopy(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + ps + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                                         if(lk == canonicalLooks[j]) {
                                             pm.set(j * 32 + i * 8 + f, pixmap);
-                                        } else {
-                                            pixmap.dispose();
                                         }
                                     }
                                 }
@@ -315,18 +367,14 @@ public class ColorGuardAssets extends ApplicationAdapter {
                                 for (int j = 1; j < frames[f].grids.size(); j++) {
                                     Tools3D.deepCopyInto(g, frames[f].grids.get(j));
                                 }
+                                frames[f].modified();
 
 //                png8.write(Gdx.files.local("out/" + name + '/' + name + "_angle" + i + ".png"), p, false, true);
                             }
                         }
-                        if(apng != null) apng.write(Gdx.files.local(outDir + "/animated_diverse/" + name + '/' + SPECIES_PREFIX + name + ps + ".png"), pm, 8);
-                        if(gif != null) SpecialRenderer.monoAlpha(pm);
-                        if(gif != null) gif.write(Gdx.files.local(outDir + "/animated_diverse/" + name + '/' + SPECIES_PREFIX + name + ps + ".gif"), pm, 8);
+                        writeAnimations(outDir + "/animated_diverse/" + name + '/' + SPECIES_PREFIX + name + ps, pm);
+                        pm = newFrames();
 //                        if(apng != null) apng.write(Gdx.files.local(outDir + "/animated_diverse_flat/" + name + ps + ".png"), pm, 8);
-                        for (Pixmap pix : pm) {
-                            if (!pix.isDisposed())
-                                pix.dispose();
-                        }
                         EffectGenerator.r.setSeed(unit.name.hashCode() ^ which);
                         if(strength > 0) {
                             int rec = doneReceive.get(attack);
@@ -335,39 +383,22 @@ public class ColorGuardAssets extends ApplicationAdapter {
                                 EffectGenerator.ReceiveEffect recEff = EffectGenerator.KNOWN_RECEIVE_EFFECTS.get(attack);
                                 if (recEff != null) {
                                     for (int i = 0; i < 4; i++) {
-                                        frames = recEff.runEffect(60 << 1, 8, strength);
+                                        frames = recEff.runEffect(60 << 1, 8, strength, original.materials);
                                         for (int f = 0; f < frames.length; f++) {
                                             renderer.drawModelSimple(frames[f], i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                                            t.draw(renderer.palettePixmap, 0, 0);
+                                            Pixmap[] variants = resolver.resolveAll(renderer.palettePixmap, armyRows, 0.5f, 0.5f);
                                             int look = 0;
                                             for (int j = 0; j < armies.length; j++) {
-                                                fb.begin();
-                                                palette.bind(1);
-                                                ScreenUtils.clear(1f, 1f, 1f, 0f);
-                                                batch.begin();
-
-                                                indexShader.setUniformi("u_texPalette", 1);
-                                                Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                                                batch.setColor((look + j) / 255f, 0.5f, 0.5f, 1f);
-
-                                                batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                                                batch.end();
-                                                pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                                                fb.end();
+                                                pixmap = variants[j];
                                                 pm.set(j * 32 + i * 8 + f, pixmap);
-                                                if(png != null) png.write(Gdx.files.local(outDir + "/" + armies[j] + "/" + attack + "_Receive/" + armies[j] + "_look" + look + "_" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), pixmap);
+                                                writeSprite(Gdx.files.local(outDir + "/" + armies[j] + "/" + attack + "_Receive/" + armies[j] + "_look" + look + "_" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), pixmap, false);
                                                 if (look + j == 0)
-                                                    if(png != null) png.write(Gdx.files.local(outDir + "/lab/" + attack + "_Receive/" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                                                    writePNGCopy(Gdx.files.local(outDir + "/lab/" + attack + "_Receive/" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                                             }
                                         }
                                     }
-                                    if(apng != null) apng.write(Gdx.files.local(outDir + "/animated_diverse/" + attack + "_Receive/" + attack + "_Receive_" + strength + ".png"), pm, 8);
-                                    if(gif != null) SpecialRenderer.monoAlpha(pm);
-                                    if(gif != null) gif.write(Gdx.files.local(outDir + "/animated_diverse/" + attack + "_Receive/" + attack + "_Receive_" + strength + ".gif"), pm, 8);
-                                    for (Pixmap pix : pm) {
-                                        if (!pix.isDisposed())
-                                            pix.dispose();
-                                    }
+                                    writeAnimations(outDir + "/animated_diverse/" + attack + "_Receive/" + attack + "_Receive_" + strength, pm);
+                                    pm = newFrames();
 
                                 }
                             }
@@ -378,7 +409,6 @@ public class ColorGuardAssets extends ApplicationAdapter {
                         ps = "_Secondary";
                     }
                 }
-                t.dispose();
             }
         }
         // just a single skin/hair combination
@@ -387,8 +417,14 @@ public class ColorGuardAssets extends ApplicationAdapter {
             for (int n = 0; n < ColorGuardData.units.size(); n++) {
                 ColorGuardData.Unit unit = ColorGuardData.units.get(n);
                 String s = unit.name;
+                if(upToDate(job(unit), unitHash(unit))) {
+                    markReceived(unit, doneReceive);
+                    continue;
+                }
                 System.out.println("Rendering " + s);
+                startAtlas(outDir + "/atlas/" + SPECIES_PREFIX + s);
                 load("specialized/b/vox/color_guard/" + s, ".vox");
+                preload(n + 1);
                 if(ColorGuardData.terrains.contains(name) || name.startsWith("Terrain")){
                     renderer.shadows = false;
                     renderer.outline = 2;
@@ -396,47 +432,28 @@ public class ColorGuardAssets extends ApplicationAdapter {
                     renderer.shadows = true;
                     renderer.outline = 4;
                 }
-                Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
                 Pixmap pixmap;
                 Array<Pixmap> pm = new Array<>(32 * armies.length);
                 pm.setSize((4 * 4 * 2) * armies.length);
                 VoxModel original = voxels.copy();
                 if(DAMAGED > 0f) {
-                    for (int j = 0; j < original.grids.size(); j++) {
-                        Stuff.damage(Stuff.STUFFS_B, original.grids.get(j), DAMAGED);
-                    }
+                    original.damage(Stuff.STUFFS_B, DAMAGED);
                 }
 
                 for (int i = 0; i < 4; i++) {
                     voxels = original.copy();
                     for (int f = 0; f < 4; f++) {
-                        for (int j = 0; j < voxels.grids.size(); j++) {
-                            Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                        }
+                        voxels.evolve(Stuff.STUFFS_B, f);
                         renderer.drawModelSimple(voxels, i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                        t.draw(renderer.palettePixmap, 0, 0);
+                        Pixmap[] variants = resolver.resolveAll(renderer.palettePixmap, canonicalRows, 0.5f, 0.5f);
                         for (int j = 0; j < armies.length; j++) {
                             int look = canonicalLooks[j] * armies.length;
-                            fb.begin();
-                            palette.bind(1);
-                            ScreenUtils.clear(1f, 1f, 1f, 0f);
-                            batch.begin();
-
-                            indexShader.setUniformi("u_texPalette", 1);
-                            Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                            batch.setColor((look + j) / 255f, 0.5f, 0.5f, 1f);
-
-                            batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                            batch.end();
-                            pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                            fb.end();
+                            pixmap = variants[j];
                             pm.set(j * 32 + i * 8 + f, pixmap);
                             pm.set(j * 32 + i * 8 + f + 4, pixmap);
-                            if (png != null)
-                                png.write(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + look + "_" + name + "_angle" + i + "_" + f + ".png"), pixmap);
+                            writeSprite(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + look + "_" + name + "_angle" + i + "_" + f + ".png"), pixmap, false);
                             if (look + j == 0) {
-                                if (png != null)
-                                    png.write(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                                writePNGCopy(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                                 if(VOX && i == 0)
                                     VoxIOExtended.writeVOX(outDir + "/vox/" + name + "/" + SPECIES_PREFIX + name + "_" + f + ".vox", VoxIOExtended.mergeModelSimple(voxels, f, 0, 0, 0), palette0, Stuff.MATERIALS_B);
 
@@ -445,16 +462,9 @@ public class ColorGuardAssets extends ApplicationAdapter {
 //                png8.write(Gdx.files.local("out/" + name + '/' + name + "_angle" + i + ".png"), p, false, true);
                     }
                 }
-                if(apng != null) apng.write(Gdx.files.local(outDir + "/animated/" + name + '/' + SPECIES_PREFIX + name + ".png"), pm, 8);
-                if(gif != null) SpecialRenderer.monoAlpha(pm);
-                if(gif != null) gif.write(Gdx.files.local(outDir + "/animated/" + name + '/' + SPECIES_PREFIX + name + ".gif"), pm, 8);
-                for (Pixmap pix : pm) {
-                    if (!pix.isDisposed())
-                        pix.dispose();
-                }
+                writeAnimations(outDir + "/animated/" + name + '/' + SPECIES_PREFIX + name, pm);
                 if (ATTACKS) {
-                    pm.clear();
-                    pm.setSize(32 * armies.length);
+                    pm = newFrames();
                     String attack = unit.primary, ps = "_Primary";
                     int strength = unit.primaryStrength;
                     boolean pose = unit.primaryPose;
@@ -472,47 +482,32 @@ public class ColorGuardAssets extends ApplicationAdapter {
                         original = voxels.copy();
                         EffectGenerator.r.setSeed(unit.name.hashCode() ^ which);
                         if(DAMAGED > 0f) {
-                            for (int j = 0; j < original.grids.size(); j++) {
-                                Stuff.damage(Stuff.STUFFS_B, original.grids.get(j), DAMAGED);
-                            }
+                            original.damage(Stuff.STUFFS_B, DAMAGED);
                         }
                         for (int i = 0; i < 4; i++) {
                             frames[0] = original.copy();
                             for (int f = 0; f < frames.length; f++) {
                                 if (f > 0) frames[f] = frames[f - 1].copy();
-                                for (int j = 0; j < frames[f].grids.size(); j++) {
-                                    Stuff.evolve(Stuff.STUFFS_B, frames[f].grids.get(j), f);
-                                }
+                                frames[f].evolve(Stuff.STUFFS_B, f);
                             }
                             EffectGenerator.Effect effect = EffectGenerator.KNOWN_EFFECTS.get(attack);
                             if (effect == null) continue EACH_INPUT;
                             VoxModel[] anim = effect.runEffect(frames, which);
                             if (anim == null) continue EACH_INPUT;
                             else frames = anim;
+                            if(VOX && i == 0)
+                                VoxIOExtended.writeVOX(outDir + "/vox/" + name + "/" + SPECIES_PREFIX + name + ps + "_Animated.vox", frames, palette0, Stuff.MATERIALS_B);
 
                             for (int f = 0; f < frames.length; f++) {
                                 renderer.drawModelSimple(frames[f], i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                                t.draw(renderer.palettePixmap, 0, 0);
+                                Pixmap[] variants = resolver.resolveAll(renderer.palettePixmap, canonicalRows, 0.5f, 0.5f);
                                 for (int j = 0; j < armies.length; j++) {
                                     int look = canonicalLooks[j] * armies.length;
-                                    fb.begin();
-                                    palette.bind(1);
-                                    ScreenUtils.clear(1f, 1f, 1f, 0f);
-                                    batch.begin();
-
-                                    indexShader.setUniformi("u_texPalette", 1);
-                                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                                    batch.setColor((look + j) / 255f, 0.5f, 0.5f, 1f);
-
-                                    batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                                    batch.end();
-                                    pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                                    fb.end();
+                                    pixmap = variants[j];
                                     pm.set(j * 32 + i * 8 + f, pixmap);
-                                    if(png != null) png.write(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + look + "_" + name + ps + "_angle" + i + "_" + f + ".png"), pixmap);
+                                    writeSprite(Gdx.files.local(outDir + "/" + armies[j] + "/" + name + '/' + SPECIES_PREFIX + armies[j] + "_look" + look + "_" + name + ps + "_angle" + i + "_" + f + ".png"), pixmap, false);
                                     if (look + j == 0) {
-                                        if (png != null)
-                                            png.write(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + ps + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                                        writePNGCopy(Gdx.files.local(outDir + "/lab/" + name + '/' + SPECIES_PREFIX + name + ps + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                                         if(VOX && i == 0)
                                             VoxIOExtended.writeVOX(outDir + "/vox/" + name + "/" + SPECIES_PREFIX + name + ps + "_" + f + ".vox", VoxIOExtended.mergeModelSimple(frames[f], f, 0, 0, 0), palette0, Stuff.MATERIALS_B);
 
@@ -522,15 +517,11 @@ public class ColorGuardAssets extends ApplicationAdapter {
                                 for (int j = 1; j < frames[f].grids.size(); j++) {
                                     Tools3D.deepCopyInto(g, frames[f].grids.get(j));
                                 }
+                                frames[f].modified();
                             }
                         }
-                        if(apng != null) apng.write(Gdx.files.local(outDir + "/animated/" + name + '/' + SPECIES_PREFIX + name + ps + ".png"), pm, 8);
-                        if(gif != null) SpecialRenderer.monoAlpha(pm);
-                        if(gif != null) gif.write(Gdx.files.local(outDir + "/animated/" + name + '/' + SPECIES_PREFIX + name + ps + ".gif"), pm, 8);
-                        for (Pixmap pix : pm) {
-                            if (!pix.isDisposed())
-                                pix.dispose();
-                        }
+                        writeAnimations(outDir + "/animated/" + name + '/' + SPECIES_PREFIX + name + ps, pm);
+                        pm = newFrames();
                         EffectGenerator.r.setSeed(unit.name.hashCode() ^ which);
                         if(strength > 0){
                             int rec = doneReceive.get(attack);
@@ -539,39 +530,22 @@ public class ColorGuardAssets extends ApplicationAdapter {
                                 EffectGenerator.ReceiveEffect recEff = EffectGenerator.KNOWN_RECEIVE_EFFECTS.get(attack);
                                 if (recEff != null) {
                                     for (int i = 0; i < 4; i++) {
-                                        frames = recEff.runEffect(60 << 1, 8, strength);
+                                        frames = recEff.runEffect(60 << 1, 8, strength, original.materials);
                                         for (int f = 0; f < frames.length; f++) {
                                             renderer.drawModelSimple(frames[f], i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                                            t.draw(renderer.palettePixmap, 0, 0);
+                                            Pixmap[] variants = resolver.resolveAll(renderer.palettePixmap, canonicalRows, 0.5f, 0.5f);
                                             for (int j = 0; j < armies.length; j++) {
                                                 int look = canonicalLooks[j] * armies.length;
-                                                fb.begin();
-                                                palette.bind(1);
-                                                ScreenUtils.clear(1f, 1f, 1f, 0f);
-                                                batch.begin();
-
-                                                indexShader.setUniformi("u_texPalette", 1);
-                                                Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                                                batch.setColor((look + j) / 255f, 0.5f, 0.5f, 1f);
-
-                                                batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                                                batch.end();
-                                                pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                                                fb.end();
+                                                pixmap = variants[j];
                                                 pm.set(j * 32 + i * 8 + f, pixmap);
-                                                if(png != null) png.write(Gdx.files.local(outDir + "/" + armies[j] + "/" + attack + "_Receive/" + armies[j] + "_look" + look + "_" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), pixmap);
+                                                writeSprite(Gdx.files.local(outDir + "/" + armies[j] + "/" + attack + "_Receive/" + armies[j] + "_look" + look + "_" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), pixmap, false);
                                                 if (look + j == 0)
-                                                    if(png != null) png.write(Gdx.files.local(outDir + "/lab/" + attack + "_Receive/" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                                                    writePNGCopy(Gdx.files.local(outDir + "/lab/" + attack + "_Receive/" + attack + "_Receive_" + strength + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                                             }
                                         }
                                     }
-                                    if(apng != null) apng.write(Gdx.files.local(outDir + "/animated/" + attack + "_Receive/" + attack + "_Receive_" + strength + ".png"), pm, 8);
-                                    if(gif != null) SpecialRenderer.monoAlpha(pm);
-                                    if(gif != null) gif.write(Gdx.files.local(outDir + "/animated/" + attack + "_Receive/" + attack + "_Receive_" + strength + ".gif"), pm, 8);
-                                    for (Pixmap pix : pm) {
-                                        if (!pix.isDisposed())
-                                            pix.dispose();
-                                    }
+                                    writeAnimations(outDir + "/animated/" + attack + "_Receive/" + attack + "_Receive_" + strength, pm);
+                                    pm = newFrames();
 
                                 }
                             }
@@ -583,16 +557,17 @@ public class ColorGuardAssets extends ApplicationAdapter {
 
                     }
                 }
-                t.dispose();
             }
         }
-        if(EXPLOSION)
+        if(EXPLOSION && !upToDate("Explosion", baseHash))
         {
+            startAtlas(outDir + "/atlas/Explosion");
             voxels = new VoxModel();
 //            SpecialRenderer.shrink = 1;
             renderer = new SpecialRenderer(120, Stuff.STUFFS_B);
             renderer.palette(Coloring.BETTS64);
             renderer.saturation(0f);
+            renderer.cache = cache;
             voxels.links.clear();
             IntObjectMap<float[]> links = new IntObjectMap<>(1);
             links.put(-1, new float[]{0, 0, 0});
@@ -633,7 +608,6 @@ public class ColorGuardAssets extends ApplicationAdapter {
             byte[][][][] explosion = EffectGenerator.fireballAnimation(fireSeed, 12, 3, 0);
             Pixmap pixmap;
             Array<Pixmap> pm = new Array<>(4 * explosion.length);
-            Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
 
             for (int i = 0; i < 4; i++) {
                 for (int f = 0; f < explosion.length; f++) {
@@ -642,40 +616,22 @@ public class ColorGuardAssets extends ApplicationAdapter {
 //                    Stuff.evolve(Stuff.STUFFS_B, fireSeed, f);
 //                    voxels.grids.add(fireSeed);
                     renderer.drawModelSimple(voxels, i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                    t.draw(renderer.palettePixmap, 0, 0);
-                    fb.begin();
-                    palette.bind(1);
-                    ScreenUtils.clear(1f, 1f, 1f, 0f);
-                    batch.begin();
-
-                    indexShader.setUniformi("u_texPalette", 1);
-                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                    batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                    batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                    batch.end();
-                    pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                    fb.end();
+                    pixmap = resolver.resolve(renderer.palettePixmap);
                     pm.add(pixmap);
-                    if(png != null) png.write(Gdx.files.local(outDir + "/effects/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), pixmap);
-                    if(png != null) png.write(Gdx.files.local(outDir + "/lab/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
+                    writeSprite(Gdx.files.local(outDir + "/effects/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), pixmap, false);
+                    writePNGCopy(Gdx.files.local(outDir + "/lab/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                 }
             }
-            if(apng != null) apng.write(Gdx.files.local(outDir + "/animated/" + name + '/' + name + ".png"), pm, 8);
-            if(gif != null) SpecialRenderer.monoAlpha(pm);
-            if(gif != null) gif.write(Gdx.files.local(outDir + "/animated/" + name + '/' + name + ".gif"), pm, 8);
-            for (Pixmap pix : pm) {
-                if(!pix.isDisposed())
-                    pix.dispose();
-            }
-            t.dispose();
+            writeAnimations(outDir + "/animated/" + name + '/' + name, pm);
         }
-        if(TERRAIN)
+        if(TERRAIN && !upToDate("Landscape", BuildManifest.combine(baseHash,
+                BuildManifest.hashFile(path("specialized/b/vox/color_guard/Terrain_Small", ".vox")),
+                BuildManifest.hash(ColorGuardData.terrains.toString()))))
         {
+            startAtlas(outDir + "/atlas/Landscape");
             load("specialized/b/vox/color_guard/Terrain_Small", ".vox");
             renderer.shadows = false;
             renderer.outline = 2;
-            Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
             for (int n = 0; n < ColorGuardData.terrains.size(); n++) {
                 name = ColorGuardData.terrains.getAt(n);
                 System.out.println("Rendering " + name);
@@ -686,34 +642,36 @@ public class ColorGuardAssets extends ApplicationAdapter {
                     voxels = original.copy();
                     for (int f = 0; f < 1; f++) {
                         renderer.drawModelSimple(voxels, i * 0.25f, 0f, 0f, f, 0.00f, 0.00f, 0.00f);
-                        t.draw(renderer.palettePixmap, 0, 0);
-                        fb.begin();
-                        palette.bind(1);
-                        ScreenUtils.clear(1f, 1f, 1f, 0f);
-                        batch.begin();
-
-                        indexShader.setUniformi("u_texPalette", 1);
-                        Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                        batch.setColor((168 + n) / 255f, 0.625f, 0.5f, 1f);
-
-                        batch.draw(t, 0, t.getHeight(), t.getWidth(), -t.getHeight());
-                        batch.end();
-                        pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                        fb.end();
-                        try {
-                            if(png != null) png.write(Gdx.files.local(outDir + "/Landscape/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), pixmap);
-                            if (n == 0)
-                                if(png != null) png.write(Gdx.files.local(outDir + "/lab/Landscape/" + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
-                        } finally {
-                            pixmap.dispose();
-                        }
+                        pixmap = resolver.resolve(renderer.palettePixmap, 168 + n, 0.625f, 0.5f);
+                        writeSprite(Gdx.files.local(outDir + "/Landscape/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), pixmap, true);
+                        if (n == 0)
+                            writePNGCopy(Gdx.files.local(outDir + "/lab/Landscape/" + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                     }
                 }
             }
-            t.dispose();
 
         }
-        fb.dispose();
+        finishAtlas();
+        pipeline.finish();
+        pending.clear();
+        synchronized (allPngs) {
+            for (IndexedPNG png : allPngs) {
+                png.dispose();
+            }
+            allPngs.clear();
+        }
+        System.out.println(pipeline);
+        if(manifest != null) {
+            // only once every output is written, so a crash or a failed write means those jobs run again next time
+            if(pipeline.failed() == 0)
+                manifest.save();
+            else
+                System.out.println("Not updating " + manifest + " because some outputs failed to write.");
+        }
+        if(cache != null) System.out.println(cache);
+        models.shutdown();
+        System.out.println(models);
+        if(models.cache != null) System.out.println(models.cache);
         System.out.println("Finished in " + TimeUtils.timeSinceMillis(startTime) * 0.001 + " seconds.");
         Gdx.app.exit();
     }
@@ -735,13 +693,202 @@ public class ColorGuardAssets extends ApplicationAdapter {
         new Lwjgl3Application(app, config);
     }
 
+    private VoxModel readVoxFile(String path) throws FileNotFoundException {
+        return models.load(path);
+    }
+
+    /**
+     * Writes {@code pixmap} as a PNG on one of the {@link #PNG_THREADS} threads, if {@link #PNG} is true.
+     * @param dispose if true, {@code pixmap} is disposed after it is written (or right away, if PNGs are off); if
+     *                false, {@code pixmap} must not change until the PNG is written
+     */
+    private void writePNG(FileHandle file, Pixmap pixmap, boolean dispose) {
+        if(!PNG) {
+            if(dispose) pixmap.dispose();
+            return;
+        }
+        pending.add(pngStage.submit(() -> {
+            try {
+                pngs.get().write(file, pixmap);
+            } finally {
+                if(dispose) pixmap.dispose();
+            }
+        }));
+    }
+
+    /**
+     * Checks the manifest for {@code job}. If it is up to date, this prints that it is being skipped and returns true;
+     * otherwise this records {@code hash} for it (which is only saved if the run finishes) and returns false.
+     */
+    private boolean upToDate(String job, long hash) {
+        if(manifest == null) return false;
+        if(manifest.upToDate(job, hash)) {
+            System.out.println("Skipping " + job + ", which is up to date");
+            return true;
+        }
+        manifest.record(job, hash);
+        return false;
+    }
+
+    /**
+     * The name of a unit's job in the manifest; diverse and single-look renders have different outputs.
+     */
+    private static String job(ColorGuardData.Unit unit) {
+        return DIVERSE ? "diverse/" + unit.name : unit.name;
+    }
+
+    /**
+     * Hashes the inputs for one unit: everything in {@link #baseHash}, the unit's models, and its attacks.
+     */
+    private long unitHash(ColorGuardData.Unit unit) {
+        final String model = "specialized/b/vox/color_guard/" + unit.name;
+        return BuildManifest.combine(baseHash,
+                BuildManifest.hashFile(path(model, ".vox")),
+                BuildManifest.hashFile(path(model, "_Firing.vox")),
+                BuildManifest.hash(unit.primary + ',' + unit.primaryPose + ',' + unit.primaryStrength + ','
+                        + unit.secondary + ',' + unit.secondaryPose + ',' + unit.secondaryStrength));
+    }
+
+    /**
+     * Does to {@code doneReceive} what rendering {@code unit}'s attacks would have, so skipping an up-to-date unit
+     * doesn't make a later unit render receive effects again.
+     */
+    private static void markReceived(ColorGuardData.Unit unit, ObjectIntMap<String> doneReceive) {
+        if(!ATTACKS) return;
+        String attack = unit.primary;
+        int strength = unit.primaryStrength;
+        for (int which = 0; which < 2 && attack != null; which++) {
+            if(strength > 0 && EffectGenerator.KNOWN_EFFECTS.containsKey(attack)) {
+                int rec = doneReceive.get(attack);
+                if(rec >= 0) doneReceive.put(attack, rec | 1 << strength);
+            }
+            attack = unit.secondary;
+            strength = unit.secondaryStrength;
+        }
+    }
+
+    /**
+     * Adds a finished sprite to the current atlas if {@link #ATLAS} is true, or writes it as its own PNG otherwise.
+     * The atlas region's name and index come from the file name, the same way TexturePacker would name them.
+     * @param dispose if true, {@code pixmap} is disposed when it is no longer needed
+     */
+    private void writeSprite(FileHandle file, Pixmap pixmap, boolean dispose) {
+        if(atlas == null) {
+            writePNG(file, pixmap, dispose);
+            return;
+        }
+        atlas.add(file.nameWithoutExtension(), pixmap);
+        if(dispose) pixmap.dispose();
+    }
+
+    /**
+     * Writes the current atlas, if there is one, and starts collecting sprites for a new one if {@link #ATLAS} is
+     * true.
+     * @param path where the new atlas will go, without the ".atlas" extension
+     */
+    private void startAtlas(String path) {
+        finishAtlas();
+        if(ATLAS) {
+            atlas = new AtlasPacker();
+            atlasPath = path;
+        }
+    }
+
+    /**
+     * Packs and writes the current atlas, if there is one, on a PNG thread.
+     */
+    private void finishAtlas() {
+        if(atlas == null) return;
+        final AtlasPacker packer = atlas;
+        final FileHandle file = Gdx.files.local(atlasPath + ".atlas");
+        atlas = null;
+        pngStage.submit(() -> {
+            try {
+                packer.write(file, pngs.get());
+            } finally {
+                packer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Like {@link #writePNG(FileHandle, Pixmap, boolean)}, but for a Pixmap that will be drawn over right after this,
+     * like {@link SpecialRenderer#palettePixmap}; this writes a copy, and the copy is disposed after.
+     */
+    private void writePNGCopy(FileHandle file, Pixmap pixmap) {
+        if(!PNG) return;
+        Pixmap copy = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), pixmap.getFormat());
+        copy.setBlending(Pixmap.Blending.None);
+        copy.drawPixmap(pixmap, 0, 0);
+        writePNG(file, copy, true);
+    }
+
+    /**
+     * Writes {@code pm} as an APNG and/or a GIF on the animation thread, after every PNG submitted so far has been
+     * written, then disposes every Pixmap in {@code pm}. Nothing should use {@code pm} or its Pixmaps after this.
+     * <br>
+     * The animation task is only submitted once those PNGs are done, by whichever thread finishes the last one (or by
+     * this thread, if they are already done), so the animation thread never waits on the PNG stage. This uses
+     * {@link CompletableFuture#whenComplete} and {@link RenderPipeline.Stage#submit(Runnable)} rather than
+     * thenRunAsync(), because thenRunAsync() would catch anything the task throws before the stage could count it as
+     * a failure.
+     * @param path the path to write to, without a file extension
+     */
+    private void writeAnimations(String path, Array<Pixmap> pm) {
+        final CompletableFuture<Void> written = CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]));
+        pending.clear();
+        // a failed PNG was already printed and counted, and the animation can still be written
+        written.whenComplete((ignored, e) -> animationStage.submit(() -> {
+            try {
+                if(apng != null) apng.write(Gdx.files.local(path + ".png"), pm, 8);
+                if(gif != null) SpecialRenderer.monoAlpha(pm);
+                if(gif != null) gif.write(Gdx.files.local(path + ".gif"), pm, 8);
+            } finally {
+                for (Pixmap pix : pm) {
+                    if (pix != null && !pix.isDisposed())
+                        pix.dispose();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Makes a new Array with room for 4 angles of 8 frames for each army, filled with nulls so they can be set in
+     * any order.
+     */
+    private Array<Pixmap> newFrames() {
+        Array<Pixmap> pm = new Array<>(32 * armies.length);
+        pm.setSize(32 * armies.length);
+        return pm;
+    }
+
+    /**
+     * Gets the path to load for a model, preferring the version for the current {@link SpecialRenderer#shrink} if
+     * there is one.
+     */
+    private String path(String name, String suffix) {
+        if(Gdx.files.absolute(name + ("_Shrink_" + SpecialRenderer.shrink) + suffix).exists())
+            return name + "_Shrink_" + SpecialRenderer.shrink + suffix;
+        return name + suffix;
+    }
+
+    /**
+     * Starts loading the models for the unit at index {@code n} in {@link ColorGuardData#units}, if there is one.
+     */
+    private void preload(int n) {
+        if(n >= ColorGuardData.units.size()) return;
+        ColorGuardData.Unit unit = ColorGuardData.units.get(n);
+        // no point loading a unit that will be skipped
+        if(manifest != null && manifest.upToDate(job(unit), unitHash(unit))) return;
+        models.preload(path("specialized/b/vox/color_guard/" + unit.name, ".vox"));
+        if(ATTACKS && (unit.primaryPose || unit.secondaryPose))
+            models.preload(path("specialized/b/vox/color_guard/" + unit.name, "_Firing.vox"));
+    }
+
     public void load(String name, String suffix) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            if(Gdx.files.absolute(name + ("_Shrink_" + SpecialRenderer.shrink) + suffix).exists())
-                voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name + "_Shrink_" + SpecialRenderer.shrink + suffix)));
-            else
-                voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name + suffix)));
+            voxels = readVoxFile(path(name, suffix));
             if(voxels == null) {
                 voxels = new VoxModel();
                 return;
@@ -762,7 +909,7 @@ public class ColorGuardAssets extends ApplicationAdapter {
             renderer = new SpecialRenderer(voxels.grids.get(0).length, Stuff.STUFFS_B);
             renderer.palette(Coloring.BETTS64);
             renderer.saturation(0f);
-            
+            renderer.cache = cache;
         } catch (FileNotFoundException e) {
             voxels = new VoxModel();
         }
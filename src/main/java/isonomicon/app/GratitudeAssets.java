@@ -4,40 +4,37 @@ import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
-import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.Gdx2DPixmap;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.*;
+import com.github.tommyettinger.ds.ObjectObjectMap;
 import com.github.tommyettinger.ds.ObjectObjectOrderedMap;
-import isonomicon.io.LittleEndianDataInputStream;
+import isonomicon.io.BuildManifest;
 import isonomicon.io.extended.VoxIOExtended;
 import isonomicon.io.extended.VoxModel;
 import isonomicon.physical.Stuff;
+import isonomicon.physical.StuffTable;
 import isonomicon.physical.Tools3D;
 import isonomicon.visual.Coloring;
-import isonomicon.visual.ShaderUtils;
+import isonomicon.visual.PaletteResolver;
 import isonomicon.visual.SpecialRenderer;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class GratitudeAssets extends ApplicationAdapter {
     public static final int SCREEN_WIDTH = 512;//640;
     public static final int SCREEN_HEIGHT = 512;//720;
     public static final String ANIMATION_PATH = "out/gratitude_animated/";
     public static final String ANIMATION_PATH_PALETTE = "out/gratitude_animated_ridgeback/";
+    /**
+     * If true, inputs whose .vox file, palettes, and outputs haven't changed since the last finished run are skipped;
+     * see {@link BuildManifest}. The manifest is kept in out/gratitude/.
+     */
+    public static boolean INCREMENTAL = true;
     private SpecialRenderer renderer;
     private VoxModel voxels;
     private String name;
@@ -46,8 +43,7 @@ public class GratitudeAssets extends ApplicationAdapter {
     private AnimatedGif gif;
     private AnimatedPNG apng;
     private QualityPalette analyzed, fixed;
-    private SpriteBatch batch;
-    private Texture palette;
+    private final ObjectObjectMap<String, PaletteResolver> palettes = new ObjectObjectMap<>(16);
     public GratitudeAssets() {
         VoxIOExtended.GENERAL = true;
         System.out.println("INVALID ARGUMENTS. Please supply space-separated absolute paths to .vox models, or use the .bat file.");
@@ -115,22 +111,27 @@ public class GratitudeAssets extends ApplicationAdapter {
             System.exit(0);
         }
     }
-    public static Pixmap createFromFrameBuffer(int x, int y, int w, int h) {
-        Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
-        Pixmap pixmap = new Pixmap(new Gdx2DPixmap(w, h, Gdx2DPixmap.GDX2D_FORMAT_RGBA8888));
-        ByteBuffer pixels = pixmap.getPixels();
-        Gdx.gl.glReadPixels(x, y, w, h, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, pixels);
-        return pixmap;
+    /**
+     * Gets the PaletteResolver for the given palette file, loading it only the first time that file is requested.
+     * @param paletteName a path to a palette image, relative to the assets folder
+     * @return a PaletteResolver that produces the same orientation we used to get from reading back a FrameBuffer
+     */
+    private PaletteResolver resolver(String paletteName) {
+        PaletteResolver resolver = palettes.get(paletteName);
+        if (resolver == null) {
+            Pixmap palettePixmap = new Pixmap(Gdx.files.local("assets/" + paletteName));
+            resolver = new PaletteResolver(palettePixmap);
+            resolver.flipY = true;
+            palettePixmap.dispose();
+            palettes.put(paletteName, resolver);
+        }
+        return resolver;
     }
 
     @Override
     public void create() {
         if (inputs == null) Gdx.app.exit();
 
-        ShaderProgram indexShader = new ShaderProgram(ShaderUtils.stuffSelectVertex, ShaderUtils.stuffSelectFragment);
-        if (!indexShader.isCompiled()) throw new GdxRuntimeException("Error compiling shader: " + indexShader.getLog());
-        batch = new SpriteBatch(256, indexShader);
-
         long startTime = TimeUtils.millis();
 //        Gdx.files.local("out/vox/").mkdirs();
         png = new FastPNG();
@@ -228,15 +229,29 @@ public class GratitudeAssets extends ApplicationAdapter {
 //                0x00000000,0x523c4eff,0x2a2a3aff,0x3e5442ff,0x84545cff,0x38607cff,0x5c7a56ff,0x101024ff,
 //                0xb27e56ff,0xd44e52ff,0x55a894ff,0x80ac40ff,0xec8a4bff,0x8bd0baff,0xffcc68ff,0xfff8c0ff,
 //        });
-        FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
+        BuildManifest manifest = INCREMENTAL ? new BuildManifest("out/gratitude/manifest.txt") : null;
+        final long baseHash = BuildManifest.combine(BuildManifest.codeHash(GratitudeAssets.class),
+                StuffTable.STUFFS_B.hash, Arrays.hashCode(Coloring.BETTS64), SpecialRenderer.shrink,
+                BuildManifest.hash(AppConfig.DITHER + "," + AppConfig.GRAY_BG), Float.floatToIntBits(AppConfig.STRENGTH));
         for (int n = 0; n < inputs.size(); n++) {
             String s = inputs.keyAt(n);
             String[] outputs = inputs.getAt(n);
+            if(manifest != null) {
+                long hash = BuildManifest.combine(baseHash, BuildManifest.hashFile("specialized/" + s),
+                        BuildManifest.hash(String.join(",", outputs)));
+                for (int p = 0; p < outputs.length - 1; p += 2) {
+                    hash = BuildManifest.combine(hash, BuildManifest.hashFile("assets/" + outputs[p]));
+                }
+                if(manifest.upToDate(s, hash)) {
+                    System.out.println("Skipping " + s + ", which is up to date");
+                    continue;
+                }
+                manifest.record(s, hash);
+            }
             System.out.println("Rendering " + s);
             load("specialized/" + s);
 //            VoxIO.writeVOX("out/" + s, voxels, renderer.palette, VoxIO.lastMaterials);
 //            load("out/"+s);
-            Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
             Pixmap pixmap;
             ObjectObjectOrderedMap<String, Array<Pixmap>> pmm = new ObjectObjectOrderedMap<>(outputs.length>>1);
             ArrayList<byte[][][]> original = new ArrayList<>(voxels.grids.size());
@@ -249,11 +264,8 @@ public class GratitudeAssets extends ApplicationAdapter {
                     voxels.grids.add(Tools3D.deepCopy(original.get(j)));
                 }
                 for (int f = 0; f < 4; f++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                    }
+                    voxels.evolve(Stuff.STUFFS_B, f);
                     renderer.drawModelSimple(voxels, i * 0.125f, 0f, 0f, f, 0, 0, 0);
-                    t.draw(renderer.palettePixmap, 0, 0);
                     for (int p = 0; p < outputs.length-1; p+=2) {
                         String paletteName = outputs[p], output = outputs[p+1];
                         Array<Pixmap> pm;
@@ -261,30 +273,12 @@ public class GratitudeAssets extends ApplicationAdapter {
                             pmm.put(output, pm = new Array<>(128));
                         else
                             pm = pmm.get(output);
-                        palette = new Texture(Gdx.files.local("assets/" + paletteName));
-                        fb.begin();
-                        palette.bind(1);
-                        ScreenUtils.clear(Color.CLEAR);
-                        batch.begin();
-
-                        indexShader.setUniformi("u_texPalette", 1);
-                        Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                        batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                        batch.draw(t, 0, 0, t.getWidth(), t.getHeight());
-                        batch.end();
-
-//                    pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                        //// The above is equivalent to the following, but the above also fills the pixmap.
-                        pixmap = createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-
-                        fb.end();
+                        pixmap = resolver(paletteName).resolve(renderer.palettePixmap);
                         pm.add(pixmap);
                         png.write(Gdx.files.local("out/gratitude/" + output + '/' + output + "_angle" + i + "_" + f + ".png"), pixmap);
                         if (p == 0) {
                             png.write(Gdx.files.local("out/gratitude_lab/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
                         }
-                        palette.dispose();
                     }
                 }
                 for(Array<Pixmap> p : pmm.values())
@@ -312,11 +306,8 @@ public class GratitudeAssets extends ApplicationAdapter {
                     voxels.grids.add(Tools3D.deepCopy(original.get(j)));
                 }
                 for (int i = 0; i < 128; i++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), i);
-                    }
+                    voxels.evolve(Stuff.STUFFS_B, i);
                     renderer.drawModelSimple(voxels, i * 0x1p-7f + 0.125f, 0f, 0f, i, 0, 0, 0);
-                    t.draw(renderer.palettePixmap, 0, 0);
                     for (int p = 0; p < outputs.length - 1; p += 2) {
                         String paletteName = outputs[p], output = outputs[p + 1];
                         Array<Pixmap> pm;
@@ -324,22 +315,8 @@ public class GratitudeAssets extends ApplicationAdapter {
                             pmm.put(output, pm = new Array<>(128));
                         else
                             pm = pmm.get(output);
-                        palette = new Texture(Gdx.files.local("assets/" + paletteName));
-                        fb.begin();
-                        palette.bind(1);
-                        ScreenUtils.clear(Color.CLEAR);
-                        batch.begin();
-
-                        indexShader.setUniformi("u_texPalette", 1);
-                        Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                        batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                        batch.draw(t, 0, 0, t.getWidth(), t.getHeight());
-                        batch.end();
-                        pixmap = createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                        fb.end();
+                        pixmap = resolver(paletteName).resolve(renderer.palettePixmap);
                         pm.add(pixmap);
-                        palette.dispose();
                     }
                 }
                 for (int p = 1; p < outputs.length; p+=2) {
@@ -359,9 +336,8 @@ public class GratitudeAssets extends ApplicationAdapter {
                     pm.clear();
                 }
             }
-            t.dispose();
         }
-        fb.dispose();
+        if(manifest != null) manifest.save();
         System.out.println("Finished in " + TimeUtils.timeSinceMillis(startTime) * 0.001 + " seconds.");
         Gdx.app.exit();
     }
@@ -386,7 +362,7 @@ public class GratitudeAssets extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            voxels = VoxIOExtended.readVoxFile(name);
             if(voxels == null) {
                 voxels = new VoxModel();
                 return;
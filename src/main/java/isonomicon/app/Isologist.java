@@ -16,7 +16,6 @@ import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.*;
-import isonomicon.io.LittleEndianDataInputStream;
 import isonomicon.io.extended.VoxIOExtended;
 import isonomicon.io.extended.VoxModel;
 import isonomicon.physical.Stuff;
@@ -26,7 +25,6 @@ import isonomicon.visual.Coloring;
 import isonomicon.visual.ShaderUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -167,9 +165,7 @@ public class Isologist extends ApplicationAdapter {
                     voxels.grids.add(Tools3D.deepCopy(original.get(j)));
                 }
                 for (int f = 0; f < 4; f++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                    }
+                    voxels.evolve(Stuff.STUFFS_B, f);
                     renderer.drawModelSimple(voxels, i * 0.25f, 0f, 0f, f, 0, 0, 0);
                     t.draw(renderer.palettePixmap, 0, 0);
                     FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
@@ -238,7 +234,7 @@ public class Isologist extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            voxels = VoxIOExtended.readVoxFile(name);
             if(voxels == null) {
                 voxels = new VoxModel();
                 return;
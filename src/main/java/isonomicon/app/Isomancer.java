@@ -11,7 +11,6 @@ import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.AnimatedGif;
 import com.github.tommyettinger.anim8.Dithered;
 import com.github.tommyettinger.anim8.QualityPalette;
-import isonomicon.io.LittleEndianDataInputStream;
 import isonomicon.io.VoxIO;
 import isonomicon.physical.Stuff;
 import isonomicon.physical.Tools3D;
@@ -139,7 +138,7 @@ public class Isomancer extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            voxels = VoxIO.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            voxels = VoxIO.readVoxFile(name);
             if(voxels == null) {
                 voxels = new byte[][][]{{{1}}};
                 return;
@@ -10,7 +10,6 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.AnimatedGif;
 import com.github.tommyettinger.anim8.Dithered;
-import isonomicon.io.LittleEndianDataInputStream;
 import isonomicon.io.VoxIO;
 import isonomicon.io.extended.*;
 import isonomicon.physical.Stuff;
@@ -18,7 +17,6 @@ import isonomicon.physical.Tools3D;
 import isonomicon.visual.SmudgeRenderer;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -142,7 +140,7 @@ public class Isomodeler extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            model = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            model = VoxIOExtended.readVoxFile(name);
             if(model == null) {
                 model = new VoxModel();
                 return;
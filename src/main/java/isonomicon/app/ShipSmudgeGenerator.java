@@ -16,7 +16,6 @@ import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.*;
 import com.github.tommyettinger.digital.Hasher;
 import com.github.yellowstonegames.text.Language;
-import isonomicon.io.LittleEndianDataInputStream;
 import isonomicon.io.VoxIO;
 import isonomicon.io.extended.VoxIOExtended;
 import isonomicon.io.extended.VoxModel;
@@ -28,7 +27,6 @@ import isonomicon.visual.ShaderUtils;
 import isonomicon.visual.SmudgeRenderer;
 import isonomicon.visual.SpecialRenderer;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -122,9 +120,7 @@ public class ShipSmudgeGenerator extends ApplicationAdapter {
                     voxels.grids.add(Tools3D.deepCopy(original.get(j)));
                 }
                 for (int f = 0; f < 4; f++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                    }
+                    voxels.evolve(Stuff.STUFFS_B, f);
                     pixmap = renderer.drawSplats(voxels.grids.get(0), i * 0.125f, f, Stuff.MATERIALS_B);
                     Pixmap p = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), pixmap.getFormat());
                     p.drawPixmap(pixmap, 0, 0);
@@ -153,9 +149,7 @@ public class ShipSmudgeGenerator extends ApplicationAdapter {
                 }
                 for (int i = 0; i < 128; i++) {
                     if((i & 7) == 7) {
-                        for (int j = 0; j < voxels.grids.size(); j++) {
-                            Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), i);
-                        }
+                        voxels.evolve(Stuff.STUFFS_B, i);
                     }
                     pixmap = renderer.drawSplats(voxels.grids.get(0), i * 0x1p-7f + 0.125f, i >>> 3, Stuff.MATERIALS_B);
                     Pixmap p = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), pixmap.getFormat());
@@ -199,7 +193,7 @@ public class ShipSmudgeGenerator extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            voxels = VoxIOExtended.readVoxFile(name);
             if(voxels == null) {
                 voxels = new VoxModel();
                 return;
@@ -5,33 +5,21 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
 import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.Gdx2DPixmap;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.*;
 import com.github.tommyettinger.random.DistinctRandom;
 import com.github.yellowstonegames.text.Language;
-import isonomicon.io.LittleEndianDataInputStream;
 import isonomicon.io.extended.VoxIOExtended;
 import isonomicon.io.extended.VoxModel;
 import isonomicon.physical.Stuff;
 import isonomicon.physical.Tools3D;
 import isonomicon.visual.Coloring;
-import isonomicon.visual.ShaderUtils;
+import isonomicon.visual.PaletteResolver;
 import isonomicon.visual.SpecialRenderer;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 public class ShipSpecialist extends ApplicationAdapter {
@@ -46,8 +34,7 @@ public class ShipSpecialist extends ApplicationAdapter {
     private AnimatedGif gif;
     private AnimatedPNG apng;
     private QualityPalette analyzed;
-    private SpriteBatch batch;
-    private Texture palette;
+    private PaletteResolver palette;
     public ShipSpecialist(String[] args){
         VoxIOExtended.GENERAL = true;
         VoxIOExtended.USE_MATERIALS = false;
@@ -60,14 +47,6 @@ public class ShipSpecialist extends ApplicationAdapter {
         }
     }
 
-    public static Pixmap createFromFrameBuffer(int x, int y, int w, int h) {
-        Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
-        Pixmap pixmap = new Pixmap(new Gdx2DPixmap(w, h, Gdx2DPixmap.GDX2D_FORMAT_RGBA8888));
-        ByteBuffer pixels = pixmap.getPixels();
-        Gdx.gl.glReadPixels(x, y, w, h, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, pixels);
-        return pixmap;
-    }
-
     @Override
     public void create() {
 
@@ -97,10 +76,6 @@ public class ShipSpecialist extends ApplicationAdapter {
 //            }
         }
 
-        ShaderProgram indexShader = new ShaderProgram(ShaderUtils.stuffSelectVertex, ShaderUtils.stuffSelectFragment);
-        if (!indexShader.isCompiled()) throw new GdxRuntimeException("Error compiling shader: " + indexShader.getLog());
-        batch = new SpriteBatch(256, indexShader);
-
         long startTime = TimeUtils.millis();
 //        Gdx.files.local("out/vox/").mkdirs();
         png = new FastPNG();
@@ -118,13 +93,15 @@ public class ShipSpecialist extends ApplicationAdapter {
         Gdx.files.local("out/vox").mkdirs();
         for (int n = 0; n < inputs.length - 2;) {
             String s = inputs[n++];
-            palette = new Texture(Gdx.files.local("assets/" + inputs[n++]));
+            Pixmap palettePixmap = new Pixmap(Gdx.files.local("assets/" + inputs[n++]));
+            palette = new PaletteResolver(palettePixmap);
+            palette.flipY = true; // matches the orientation we used to get from reading back a FrameBuffer
+            palettePixmap.dispose();
             String output = inputs[n++];
             System.out.println("Rendering " + s + " to " + output);
             load(s);
 //            VoxIO.writeVOX("out/" + s, voxels, renderer.palette, VoxIO.lastMaterials);
 //            load("out/"+s);
-            Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
             Pixmap pixmap;
             Array<Pixmap> pm = new Array<>(128);
             ArrayList<byte[][][]> original = new ArrayList<>(voxels.grids.size());
@@ -137,33 +114,12 @@ public class ShipSpecialist extends ApplicationAdapter {
                     voxels.grids.add(Tools3D.deepCopy(original.get(j)));
                 }
                 for (int f = 0; f < 4; f++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                    }
+                    voxels.evolve(Stuff.STUFFS_B, f);
                     renderer.drawModelSimple(voxels, i * 0.125f, 0f, 0f, f, 0, 0, 0);
-                    t.draw(renderer.palettePixmap, 0, 0);
-                    FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
-                    fb.begin();
-                    palette.bind(1);
-                    ScreenUtils.clear(Color.CLEAR);
-                    batch.begin();
-
-                    indexShader.setUniformi("u_texPalette", 1);
-                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                    batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                    batch.draw(t, 0, 0, t.getWidth(), t.getHeight());
-                    batch.end();
-
-//                    pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                    //// The above is equivalent to the following, but the above also fills the pixmap.
-                    pixmap = createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-
-                    fb.end();
+                    pixmap = palette.resolve(renderer.palettePixmap);
                     pm.add(pixmap);
                     png.write(Gdx.files.local("out/b/shipSpecialized/" + output + '/' + output + "_angle" + i + "_" + f + ".png"), pixmap);
                     png.write(Gdx.files.local("out/b/shipSpecial_lab/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
-                    fb.dispose();
                 }
                 pm.insertRange(pm.size - 4, 4);
             }
@@ -182,27 +138,9 @@ public class ShipSpecialist extends ApplicationAdapter {
                     voxels.grids.add(Tools3D.deepCopy(original.get(j)));
                 }
                 for (int i = 0; i < 128; i++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), i);
-                    }
+                    voxels.evolve(Stuff.STUFFS_B, i);
                     renderer.drawModelSimple(voxels, i * 0x1p-7f + 0.125f, 0f, 0f, i, 0, 0, 0);
-                    t.draw(renderer.palettePixmap, 0, 0);
-                    FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
-                    fb.begin();
-                    palette.bind(1);
-                    ScreenUtils.clear(Color.CLEAR);
-                    batch.begin();
-
-                    indexShader.setUniformi("u_texPalette", 1);
-                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                    batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                    batch.draw(t, 0, 0, t.getWidth(), t.getHeight());
-                    batch.end();
-                    pixmap = createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                    fb.end();
-                    pm.add(pixmap);
-                    fb.dispose();
+                    pm.add(palette.resolve(renderer.palettePixmap));
                 }
                 analyzed.analyze(pm, 75.0, 256);
                 gif.palette = analyzed;
@@ -219,7 +157,6 @@ public class ShipSpecialist extends ApplicationAdapter {
                         pix.dispose();
                 }
             }
-            t.dispose();
         }
         System.out.println("Finished in " + TimeUtils.timeSinceMillis(startTime) * 0.001 + " seconds.");
         Gdx.app.exit();
@@ -245,7 +182,7 @@ public class ShipSpecialist extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            voxels = VoxIOExtended.readVoxFile(name);
             if(voxels == null) {
                 voxels = new VoxModel();
                 return;
@@ -4,27 +4,24 @@ import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
-import com.badlogic.gdx.graphics.*;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.g2d.Gdx2DPixmap;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.*;
-import isonomicon.io.LittleEndianDataInputStream;
+import isonomicon.io.extended.VoxCache;
 import isonomicon.io.extended.VoxIOExtended;
+import isonomicon.io.extended.VoxLoadOptions;
 import isonomicon.io.extended.VoxModel;
 import isonomicon.physical.Stuff;
-import isonomicon.physical.Tools3D;
 import isonomicon.visual.Coloring;
-import isonomicon.visual.ShaderUtils;
+import isonomicon.visual.PaletteResolver;
+import isonomicon.visual.RenderCache;
+import isonomicon.visual.RenderFarm;
 import isonomicon.visual.SpecialRenderer;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -33,7 +30,16 @@ public class Specialist extends ApplicationAdapter {
     public static final int SCREEN_WIDTH = 512;//640;
     public static final int SCREEN_HEIGHT = 512;//720;
     public static final boolean TURNTABLE = true;
-    private SpecialRenderer renderer;
+    /**
+     * If true, rendered index frames are kept in {@link #CACHE_DIR} between runs, so models that haven't changed
+     * don't get rendered again. This also keeps each model's scaled and soaked grids in a {@link VoxCache} next to its
+     * .vox file, so they don't get processed again.
+     */
+    public static final boolean CACHE = true;
+    public static final String CACHE_DIR = "out/render_cache";
+    public static final VoxLoadOptions LOAD_OPTIONS = VoxLoadOptions.GENERAL;
+    private RenderFarm<SpecialRenderer> farm;
+    private final VoxCache voxCache = CACHE ? new VoxCache() : null;
     private VoxModel voxels;
     private String name;
     private String[] inputs;
@@ -41,10 +47,8 @@ public class Specialist extends ApplicationAdapter {
     private AnimatedGif gif;
     private AnimatedPNG apng;
     private QualityPalette analyzed, snuggly256;
-    private SpriteBatch batch;
-    private Texture palette;
+    private PaletteResolver palette;
     public Specialist(String[] args){
-        VoxIOExtended.GENERAL = true;
         if(args != null && args.length > 0)
             inputs = args;
         else 
@@ -94,6 +98,11 @@ public class Specialist extends ApplicationAdapter {
         }
     }
 
+    /**
+     * Reads back an area of the current framebuffer as-is, without filling the Pixmap first, which is all
+     * {@link Pixmap#createFromFrameBuffer(int, int, int, int)} does beyond this. Rendering here doesn't need it
+     * anymore, since {@link PaletteResolver} works on Pixmaps, but other tools still read back what they draw.
+     */
     public static Pixmap createFromFrameBuffer(int x, int y, int w, int h) {
         Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
         Pixmap pixmap = new Pixmap(new Gdx2DPixmap(w, h, Gdx2DPixmap.GDX2D_FORMAT_RGBA8888));
@@ -106,9 +115,14 @@ public class Specialist extends ApplicationAdapter {
     public void create() {
         if (inputs == null) Gdx.app.exit();
 
-        ShaderProgram indexShader = new ShaderProgram(ShaderUtils.stuffSelectVertex, ShaderUtils.stuffSelectFragment);
-        if (!indexShader.isCompiled()) throw new GdxRuntimeException("Error compiling shader: " + indexShader.getLog());
-        batch = new SpriteBatch(256, indexShader);
+        final RenderCache cache = CACHE ? new RenderCache(CACHE_DIR, 1L << 30) : null;
+        farm = new RenderFarm<>(size -> {
+            SpecialRenderer r = new SpecialRenderer(size, Stuff.STUFFS_B);
+            r.palette(Coloring.BETTS64);
+            r.saturation(0f);
+            r.cache = cache;
+            return r;
+        });
 
         long startTime = TimeUtils.millis();
 //        Gdx.files.local("out/vox/").mkdirs();
@@ -155,52 +169,35 @@ public class Specialist extends ApplicationAdapter {
         Gdx.files.local("out/vox").mkdirs();
         for (int n = 0; n < inputs.length - 2;) {
             String s = inputs[n++];
-            palette = new Texture(Gdx.files.local("assets/" + inputs[n++]));
+            Pixmap palettePixmap = new Pixmap(Gdx.files.local("assets/" + inputs[n++]));
+            palette = new PaletteResolver(palettePixmap);
+            palette.flipY = true; // matches the orientation we used to get from reading back a FrameBuffer
+            palettePixmap.dispose();
             String output = inputs[n++];
             System.out.println("Rendering " + s + " to " + output);
             load("specialized/" + s);
 //            VoxIO.writeVOX("out/" + s, voxels, renderer.palette, VoxIO.lastMaterials);
 //            load("out/"+s);
-            Texture t = new Texture(renderer.palettePixmap.getWidth(), renderer.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
-            Pixmap pixmap;
+            final int size = voxels.grids.get(0).length;
+            final PaletteResolver resolver = palette;
             Array<Pixmap> pm = new Array<>(128);
-            ArrayList<byte[][][]> original = new ArrayList<>(voxels.grids.size());
-            for (int i = 0; i < voxels.grids.size(); i++) {
-                original.add(Tools3D.deepCopy(voxels.grids.get(i)));
-            }
+            final ArrayList<VoxModel> frames = RenderFarm.evolveFrames(voxels, Stuff.STUFFS_B, 4);
+            // each job renders one angle and frame, and gives back the final colors and the index-lab image.
+            ArrayList<Pixmap[]> rendered = farm.run(32, k -> {
+                SpecialRenderer r = farm.renderer(size);
+                r.drawModelSimple(frames.get(k & 3), (k >>> 2) * 0.125f, 0f, 0f, k & 3, 0, 0, 0);
+                Pixmap lab = new Pixmap(r.palettePixmap.getWidth(), r.palettePixmap.getHeight(), Pixmap.Format.RGBA8888);
+                lab.setBlending(Pixmap.Blending.None);
+                lab.drawPixmap(r.palettePixmap, 0, 0);
+                return new Pixmap[]{resolver.resolve(r.palettePixmap), lab};
+            });
             for (int i = 0; i < 8; i++) {
-                voxels.grids.clear();
-                for (int j = 0; j < original.size(); j++) {
-                    voxels.grids.add(Tools3D.deepCopy(original.get(j)));
-                }
                 for (int f = 0; f < 4; f++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), f);
-                    }
-                    renderer.drawModelSimple(voxels, i * 0.125f, 0f, 0f, f, 0, 0, 0);
-                    t.draw(renderer.palettePixmap, 0, 0);
-                    FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
-                    fb.begin();
-                    palette.bind(1);
-                    ScreenUtils.clear(Color.CLEAR);
-                    batch.begin();
-
-                    indexShader.setUniformi("u_texPalette", 1);
-                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                    batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                    batch.draw(t, 0, 0, t.getWidth(), t.getHeight());
-                    batch.end();
-
-//                    pixmap = Pixmap.createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                    //// The above is equivalent to the following, but the above also fills the pixmap.
-                    pixmap = createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-
-                    fb.end();
-                    pm.add(pixmap);
-                    png.write(Gdx.files.local("out/b/specialized/" + output + '/' + output + "_angle" + i + "_" + f + ".png"), pixmap);
-                    png.write(Gdx.files.local("out/b/special_lab/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), renderer.palettePixmap);
-                    fb.dispose();
+                    Pixmap[] pair = rendered.get(i << 2 | f);
+                    pm.add(pair[0]);
+                    png.write(Gdx.files.local("out/b/specialized/" + output + '/' + output + "_angle" + i + "_" + f + ".png"), pair[0]);
+                    png.write(Gdx.files.local("out/b/special_lab/" + name + '/' + name + "_angle" + i + "_" + f + ".png"), pair[1]);
+                    pair[1].dispose();
                 }
                 pm.insertRange(pm.size - 4, 4);
             }
@@ -219,33 +216,11 @@ public class Specialist extends ApplicationAdapter {
             }
             pm.clear();
             if(TURNTABLE) {
-                voxels.grids.clear();
-                for (int j = 0; j < original.size(); j++) {
-                    voxels.grids.add(Tools3D.deepCopy(original.get(j)));
-                }
-                for (int i = 0; i < 128; i++) {
-                    for (int j = 0; j < voxels.grids.size(); j++) {
-                        Stuff.evolve(Stuff.STUFFS_B, voxels.grids.get(j), i);
-                    }
-                    renderer.drawModelSimple(voxels, i * 0x1p-7f + 0.125f, 0f, 0f, i, 0, 0, 0);
-                    t.draw(renderer.palettePixmap, 0, 0);
-                    FrameBuffer fb = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), false);
-                    fb.begin();
-                    palette.bind(1);
-                    ScreenUtils.clear(Color.CLEAR);
-                    batch.begin();
-
-                    indexShader.setUniformi("u_texPalette", 1);
-                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-                    batch.setColor(0f, 0.5f, 0.5f, 1f);
-
-                    batch.draw(t, 0, 0, t.getWidth(), t.getHeight());
-                    batch.end();
-                    pixmap = createFromFrameBuffer(0, 0, t.getWidth(), t.getHeight());
-                    fb.end();
-                    pm.add(pixmap);
-                    fb.dispose();
-                }
+                pm.addAll(farm.runEvolving(voxels, Stuff.STUFFS_B, 128, (model, i) -> {
+                    SpecialRenderer r = farm.renderer(size);
+                    r.drawModelSimple(model, i * 0x1p-7f + 0.125f, 0f, 0f, i, 0, 0, 0);
+                    return resolver.resolve(r.palettePixmap);
+                }).toArray(new Pixmap[0]));
                 analyzed.analyze(pm, 75.0, 256);
                 gif.palette = analyzed;
                 gif.write(Gdx.files.local("out/b/specialized/" + output + '/' + output + "_Turntable.gif"), pm, 24);
@@ -261,8 +236,10 @@ public class Specialist extends ApplicationAdapter {
                         pix.dispose();
                 }
             }
-            t.dispose();
         }
+        farm.shutdown();
+        if (cache != null) System.out.println(cache);
+        if (voxCache != null) System.out.println(voxCache);
         System.out.println("Finished in " + TimeUtils.timeSinceMillis(startTime) * 0.001 + " seconds.");
         Gdx.app.exit();
     }
@@ -287,16 +264,13 @@ public class Specialist extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            voxels = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            voxels = voxCache == null ? VoxIOExtended.readVoxFile(name, LOAD_OPTIONS) : voxCache.load(name, LOAD_OPTIONS);
             if(voxels == null) {
                 voxels = new VoxModel();
                 return;
             }
             int nameStart = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1;
             this.name = name.substring(nameStart, name.indexOf('.', nameStart));
-            renderer = new SpecialRenderer(voxels.grids.get(0).length, Stuff.STUFFS_B);
-            renderer.palette(Coloring.BETTS64);
-            renderer.saturation(0f);
         } catch (FileNotFoundException e) {
             voxels = new VoxModel();
         }
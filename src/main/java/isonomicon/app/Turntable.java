@@ -9,7 +9,6 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.TimeUtils;
 import com.github.tommyettinger.anim8.AnimatedGif;
 import com.github.tommyettinger.anim8.AnimatedPNG;
-import isonomicon.io.LittleEndianDataInputStream;
 import isonomicon.io.VoxIO;
 import isonomicon.io.extended.VoxIOExtended;
 import isonomicon.io.extended.VoxModel;
@@ -18,7 +17,6 @@ import isonomicon.physical.Tools3D;
 import isonomicon.visual.SmudgeRenderer;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 
 public class Turntable extends ApplicationAdapter {
@@ -131,7 +129,7 @@ public class Turntable extends ApplicationAdapter {
     public void load(String name) {
         try {
             //// loads a file by its full path, which we get via a command-line arg
-            model = VoxIOExtended.readVox(new LittleEndianDataInputStream(new FileInputStream(name)));
+            model = VoxIOExtended.readVoxFile(name);
             if(model == null) {
                 model = new VoxModel();
                 return;
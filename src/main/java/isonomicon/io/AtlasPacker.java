@@ -0,0 +1,258 @@
+package isonomicon.io;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Collects sprites as they are rendered, trims each one to the part that isn't fully transparent, and packs them into
+ * one or more page images with a libGDX {@code .atlas} file, so a unit's thousands of frames become a couple of files
+ * that {@link com.badlogic.gdx.graphics.g2d.TextureAtlas} can load directly. This does in-process what the
+ * {@code atlases/cg_small.tpproj} TexturePacker project did with loose PNGs: 2 pixels of padding, padding at the edges
+ * too, power-of-two pages up to 4096x4096, trimmed whitespace, blank images skipped, identical images sharing one spot
+ * on the page, and region names split into a name and an index at the last underscore, as "useIndexes" does.
+ * <br>
+ * Sprites are copied (just their trimmed part) when they are added, so the Pixmap given to {@link #add(String, Pixmap)}
+ * can be changed or disposed right after. Packing uses shelves, sorted by height, which works well for sprites that are
+ * all about the same size. Instances are not thread-safe, but one packer can be filled on one thread and written on
+ * another, as long as nothing is added while it is being written.
+ */
+public class AtlasPacker implements Disposable {
+    /**
+     * One trimmed sprite, and where it ended up on a page.
+     */
+    public static class Region {
+        public String name;
+        /**
+         * The number after the last underscore in the original name, or -1 if there wasn't one.
+         */
+        public int index;
+        /**
+         * Only the part of the original that isn't fully transparent; null if this is an alias.
+         */
+        public Pixmap pixmap;
+        /**
+         * If non-null, this is identical to {@code alias} and uses the same spot on the same page.
+         */
+        public Region alias;
+        /**
+         * How far the trimmed part starts from the left and top of the original Pixmap, and the original's size.
+         */
+        public int trimX, trimY, width, height, originalWidth, originalHeight;
+        /**
+         * Where this is on its page, in Pixmap coordinates (y-down, before any flipping by the PNG writer).
+         */
+        public int x, y, page;
+    }
+
+    public int maxWidth = 4096, maxHeight = 4096, minWidth = 512, minHeight = 512;
+    /**
+     * Pixels between sprites, and between sprites and the edge of the page.
+     */
+    public int padding = 2;
+    public final ArrayList<Region> regions = new ArrayList<>(256);
+    /**
+     * The regions that aren't aliases, which are the only ones that take up space on a page.
+     */
+    protected final ArrayList<Region> distinct = new ArrayList<>(256);
+    protected final HashMap<ByteBuffer, Region> unique = new HashMap<>(256);
+
+    public AtlasPacker() {
+    }
+
+    /**
+     * Adds a copy of the non-transparent part of {@code pixmap}, named like a file given to TexturePacker; a name such
+     * as {@code "Dark_look3_Tank_angle2_1"} becomes the region {@code "Dark_look3_Tank_angle2"} with index 1.
+     * @param name the name of the sprite, without a file extension
+     * @param pixmap an RGBA8888 Pixmap; will not be modified, and can be disposed after this returns
+     * @return the new Region, or null if {@code pixmap} was completely transparent, and so was skipped
+     */
+    public Region add(String name, Pixmap pixmap) {
+        int index = -1;
+        final int underscore = name.lastIndexOf('_');
+        if (underscore >= 0 && underscore < name.length() - 1) {
+            try {
+                index = Integer.parseInt(name.substring(underscore + 1));
+                name = name.substring(0, underscore);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return add(name, index, pixmap);
+    }
+
+    /**
+     * Adds a copy of the non-transparent part of {@code pixmap}.
+     * @param name the name of the region
+     * @param index the index of the region, or -1 if it has none
+     * @param pixmap an RGBA8888 Pixmap; will not be modified, and can be disposed after this returns
+     * @return the new Region, or null if {@code pixmap} was completely transparent, and so was skipped
+     */
+    public Region add(String name, int index, Pixmap pixmap) {
+        final int w = pixmap.getWidth(), h = pixmap.getHeight();
+        final ByteBuffer pixels = pixmap.getPixels();
+        int minX = w, minY = h, maxX = -1, maxY = -1;
+        for (int y = 0, i = 3; y < h; y++) {
+            for (int x = 0; x < w; x++, i += 4) {
+                if (pixels.get(i) != 0) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) return null;
+        Region region = new Region();
+        region.name = name;
+        region.index = index;
+        region.trimX = minX;
+        region.trimY = minY;
+        region.width = maxX + 1 - minX;
+        region.height = maxY + 1 - minY;
+        region.originalWidth = w;
+        region.originalHeight = h;
+        Pixmap trimmed = new Pixmap(region.width, region.height, Pixmap.Format.RGBA8888);
+        trimmed.setBlending(Pixmap.Blending.None);
+        trimmed.drawPixmap(pixmap, 0, 0, minX, minY, region.width, region.height);
+        // ByteBuffer's equals() and hashCode() compare contents, so this finds identical sprites
+        final Region same = unique.get(trimmed.getPixels());
+        if (same != null && same.width == region.width) {
+            trimmed.dispose();
+            region.alias = same;
+        } else {
+            region.pixmap = trimmed;
+            unique.putIfAbsent(trimmed.getPixels(), region);
+            distinct.add(region);
+        }
+        regions.add(region);
+        return region;
+    }
+
+    /**
+     * Packs every region added so far, and writes the page images and the .atlas file. The pages are named after the
+     * atlas file, like {@code Tank.png}, then {@code Tank_2.png} and so on if one page isn't enough. The pages are
+     * written with {@code png}, so its {@link IndexedPNG#flipY} decides whether they are flipped; the bounds in the
+     * atlas account for that either way.
+     * @param atlasFile where to write the .atlas file; the pages go in the same directory
+     * @param png used to write each page
+     */
+    public void write(FileHandle atlasFile, IndexedPNG png) {
+        ArrayList<Region> packing = new ArrayList<>(distinct);
+        packing.sort((a, b) -> a.height != b.height ? b.height - a.height : b.width - a.width);
+        for (Region r : packing) {
+            if (r.width + padding * 2 > maxWidth || r.height + padding * 2 > maxHeight)
+                throw new GdxRuntimeException("Region " + r.name + " is too big for a " + maxWidth + "x" + maxHeight + " page");
+        }
+        ArrayList<int[]> pageSizes = new ArrayList<>(1);
+        while (!packing.isEmpty()) {
+            final int page = pageSizes.size();
+            int[] size = null;
+            for (int area = minWidth * minHeight; size == null && area <= maxWidth * maxHeight; area <<= 1) {
+                // for each area, try the wider size first
+                for (int w = maxWidth; w >= minWidth; w >>>= 1) {
+                    final int h = area / w;
+                    if (h < minHeight || h > maxHeight || w < h) continue;
+                    if (shelve(packing, w, h, page) == packing.size()) {
+                        size = new int[]{w, h};
+                        break;
+                    }
+                }
+            }
+            if (size == null) {
+                // doesn't fit on one page; fill the largest page and go again with what's left
+                size = new int[]{maxWidth, maxHeight};
+                final int placed = shelve(packing, maxWidth, maxHeight, page);
+                packing.subList(0, placed).clear();
+            } else {
+                packing.clear();
+            }
+            pageSizes.add(size);
+        }
+
+        final String base = atlasFile.nameWithoutExtension();
+        final FileHandle directory = atlasFile.parent();
+        Writer writer = atlasFile.writer(false, "UTF-8");
+        try {
+            for (int page = 0; page < pageSizes.size(); page++) {
+                final int pageWidth = pageSizes.get(page)[0], pageHeight = pageSizes.get(page)[1];
+                final String pageName = base + (page == 0 ? "" : "_" + (page + 1)) + ".png";
+                Pixmap pixmap = new Pixmap(pageWidth, pageHeight, Pixmap.Format.RGBA8888);
+                try {
+                    pixmap.setBlending(Pixmap.Blending.None);
+                    pixmap.setColor(0);
+                    pixmap.fill();
+                    for (Region r : distinct) {
+                        if (r.page == page)
+                            pixmap.drawPixmap(r.pixmap, r.x, r.y);
+                    }
+                    png.write(directory.child(pageName), pixmap);
+                } finally {
+                    pixmap.dispose();
+                }
+                if (page > 0) writer.write('\n');
+                writer.write(pageName + "\nsize:" + pageWidth + ',' + pageHeight + "\nrepeat:none\n");
+                for (Region r : regions) {
+                    final Region placed = r.alias == null ? r : r.alias;
+                    if (placed.page != page) continue;
+                    // atlas coordinates are y-down in the PNG file; offsets are from the bottom-left of the original
+                    final int y = png.flipY ? pageHeight - placed.y - r.height : placed.y;
+                    final int offsetY = png.flipY ? r.trimY : r.originalHeight - r.trimY - r.height;
+                    writer.write(r.name + '\n');
+                    if (r.index != -1) writer.write("index:" + r.index + '\n');
+                    writer.write("bounds:" + placed.x + ',' + y + ',' + r.width + ',' + r.height + '\n');
+                    if (r.width != r.originalWidth || r.height != r.originalHeight)
+                        writer.write("offsets:" + r.trimX + ',' + offsetY + ',' + r.originalWidth + ',' + r.originalHeight + '\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing atlas: " + atlasFile, e);
+        } finally {
+            StreamUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Places regions, in order, on shelves across a page of the given size, until one doesn't fit.
+     * @return how many regions from the start of {@code packing} were placed
+     */
+    protected int shelve(ArrayList<Region> packing, int pageWidth, int pageHeight, int page) {
+        int x = padding, y = padding, shelfHeight = 0;
+        for (int i = 0; i < packing.size(); i++) {
+            final Region r = packing.get(i);
+            if (x + r.width + padding > pageWidth) {
+                x = padding;
+                y += shelfHeight + padding;
+                shelfHeight = 0;
+            }
+            if (y + r.height + padding > pageHeight)
+                return i;
+            r.x = x;
+            r.y = y;
+            r.page = page;
+            x += r.width + padding;
+            shelfHeight = Math.max(shelfHeight, r.height);
+        }
+        return packing.size();
+    }
+
+    /**
+     * Disposes the trimmed copies of every region, and forgets them.
+     */
+    @Override
+    public void dispose() {
+        for (Region r : regions) {
+            if (r.pixmap != null) r.pixmap.dispose();
+        }
+        regions.clear();
+        distinct.clear();
+        unique.clear();
+    }
+}
@@ -0,0 +1,189 @@
+package isonomicon.io;
+
+import com.github.tommyettinger.digital.Hasher;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Remembers which outputs of an asset generator are up to date, so a run can skip every job whose inputs haven't
+ * changed since the last run that built it. Each job has a name (usually a unit's name) and a 64-bit hash of
+ * everything that goes into it: the .vox files, the palette images, the Stuff table, the renderer settings, and the
+ * code itself (see {@link #codeHash(Class)}). The hashes are made by the app with {@link #combine(long...)},
+ * {@link #hashFile(String)}, and {@link #hash(String)}; this only compares and stores them.
+ * <br>
+ * The manifest is a small text file with one job per line, a name and a hex hash separated by a tab. Jobs are only
+ * marked as built with {@link #record(String, long)}, and nothing is written until {@link #save()}, which apps should
+ * only call once every output has actually been written; if a run crashes, the next run just builds those jobs again.
+ * Putting the manifest in the same directory as the outputs means deleting that directory also forgets the manifest.
+ */
+public class BuildManifest {
+    public final File file;
+    /**
+     * Maps job names to the hash of their inputs when they were last built.
+     */
+    protected final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(128);
+
+    /**
+     * Reads the manifest at {@code path} if there is one, or starts an empty one if not.
+     * @param path where the manifest is kept, usually in the output directory
+     */
+    public BuildManifest(String path) {
+        file = new File(path);
+        if (!file.isFile()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int tab = line.lastIndexOf('\t');
+                if (tab <= 0) continue;
+                try {
+                    entries.put(line.substring(0, tab), Long.parseUnsignedLong(line.substring(tab + 1), 16));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            entries.clear();
+        }
+    }
+
+    /**
+     * Checks if {@code job} was last built from inputs with the same hash.
+     * @param job the name of the job, such as a unit's name
+     * @param hash the hash of everything that goes into the job now
+     * @return true if the job can be skipped
+     */
+    public synchronized boolean upToDate(String job, long hash) {
+        final Long old = entries.get(job);
+        return old != null && old == hash;
+    }
+
+    /**
+     * Marks {@code job} as built from inputs with the given hash. This isn't written to the file until {@link #save()}.
+     * @param job the name of the job, such as a unit's name
+     * @param hash the hash of everything that went into the job
+     */
+    public synchronized void record(String job, long hash) {
+        entries.put(job, hash);
+    }
+
+    /**
+     * Writes the manifest, replacing the file atomically so a crash while saving can't leave half of one.
+     */
+    public synchronized void save() {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        final File temp = new File(parent, file.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> e : entries.entrySet()) {
+                writer.write(e.getKey());
+                writer.write('\t');
+                writer.write(Long.toHexString(e.getValue()));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        file.delete();
+        if (!temp.renameTo(file))
+            temp.delete();
+    }
+
+    /**
+     * Mixes any number of hashes, and any other longs that matter (like flags or float bits), into one hash. The
+     * order matters.
+     */
+    public static long combine(long... parts) {
+        long h = parts.length;
+        for (long part : parts) {
+            h = (h ^ part) * 0xD1342543DE82EF95L;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+
+    /**
+     * Hashes a String, such as a list of settings or names.
+     */
+    public static long hash(String text) {
+        return Hasher.beleth.hash64(text);
+    }
+
+    /**
+     * Hashes the contents of a file. A missing file hashes to 0, which is fine for optional inputs, like the firing
+     * pose that only some units have.
+     * @param path the path to a file
+     * @return a 64-bit hash of the file's bytes, or 0 if it doesn't exist
+     */
+    public static long hashFile(String path) {
+        try {
+            return Hasher.beleth.hash64(Files.readAllBytes(Paths.get(path)));
+        } catch (NoSuchFileException e) {
+            return 0L;
+        } catch (IOException e) {
+            e.printStackTrace();
+            // can't tell if it changed, so this makes sure it counts as changed
+            return System.nanoTime();
+        }
+    }
+
+    private static final LinkedHashMap<String, Long> CODE_HASHES = new LinkedHashMap<>(4);
+
+    /**
+     * Hashes the compiled code that {@code anchor} was loaded from: the whole jar, or every .class file in the
+     * directory, such as {@code target/classes}. This changes whenever any code changes, which is more often than
+     * needed, but it's the only way to be sure a change to a renderer or an effect gets noticed. The result is
+     * computed once per location and then reused.
+     * @param anchor any class from the code to hash, usually the app itself
+     * @return a 64-bit hash of the code
+     */
+    public static synchronized long codeHash(Class<?> anchor) {
+        final Path location;
+        try {
+            location = Paths.get(anchor.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | NullPointerException | SecurityException e) {
+            e.printStackTrace();
+            return System.nanoTime();
+        }
+        final String key = location.toString();
+        final Long known = CODE_HASHES.get(key);
+        if (known != null) return known;
+        long h;
+        if (Files.isDirectory(location)) {
+            ArrayList<Path> classes = new ArrayList<>(256);
+            try (Stream<Path> walk = Files.walk(location)) {
+                walk.filter(p -> p.toString().endsWith(".class")).forEach(classes::add);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return System.nanoTime();
+            }
+            // the walk order isn't guaranteed, so this sorts to get the same hash every time
+            Collections.sort(classes);
+            h = classes.size();
+            for (Path p : classes) {
+                h = combine(h, hash(location.relativize(p).toString()), hashFile(p.toString()));
+            }
+        } else {
+            h = hashFile(location.toString());
+        }
+        CODE_HASHES.put(key, h);
+        return h;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BuildManifest{" + file + ", " + entries.size() + " jobs}";
+    }
+}
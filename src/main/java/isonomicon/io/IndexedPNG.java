@@ -0,0 +1,327 @@
+package isonomicon.io;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.github.tommyettinger.ds.IntIntMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes PNG files with a palette (PLTE and tRNS chunks) and one byte per pixel, instead of the four bytes per pixel
+ * that {@link com.github.tommyettinger.anim8.FastPNG} writes. Isonomicon's resolved sprites never use more than 256
+ * colors, and the index/shade/saturation images in {@link isonomicon.visual.SpecialRenderer#palettePixmap} only have a
+ * few hundred distinct values at most, so both usually fit; the files are a fraction of the size and take less time to
+ * compress. {@link #write(FileHandle, Pixmap)} finds the colors itself, and falls back to a normal RGBA PNG if there
+ * are more than 256.
+ * <br>
+ * If {@link #parallel} is true, large images are split into strips of {@link #stripRows} rows that are compressed on
+ * {@link #pool} at the same time, each using the end of the previous strip as its dictionary, and the pieces are joined
+ * into one zlib stream (the same way pigz does it). This only helps when the caller isn't already writing many PNGs on
+ * several threads.
+ * <br>
+ * Like FastPNG, this flips images vertically by default (see {@link #flipY}), and uses no filtering, which works best
+ * for indexed images anyway. Instances are not thread-safe; use one per thread.
+ */
+public class IndexedPNG implements Disposable {
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int IHDR = 0x49484452, PLTE = 0x504C5445, TRNS = 0x74524E53, IDAT = 0x49444154, IEND = 0x49454E44;
+    private static final byte COLOR_INDEXED = 3, COLOR_RGBA = 6;
+    /**
+     * The most that a strip can use as its dictionary, which is the size of deflate's window.
+     */
+    private static final int WINDOW = 32768;
+
+    /**
+     * If true (the default), the last row of a Pixmap is written first, like FastPNG and PixmapIO.PNG do.
+     */
+    public boolean flipY = true;
+    /**
+     * If true, images with more than one strip of {@link #stripRows} rows are compressed on several threads.
+     */
+    public boolean parallel = false;
+    /**
+     * How many rows go in each strip when {@link #parallel} is true; smaller strips spread better but compress a
+     * little worse.
+     */
+    public int stripRows = 64;
+    /**
+     * Where strips are compressed when {@link #parallel} is true.
+     */
+    public ForkJoinPool pool = ForkJoinPool.commonPool();
+    protected int level;
+    protected final Deflater deflater;
+    protected final CRC32 crc = new CRC32();
+    protected final IntIntMap colorIndices = new IntIntMap(256);
+    protected final int[] palette = new int[256];
+    protected byte[] raw = new byte[0], packed = new byte[0];
+
+    public IndexedPNG() {
+        this(6);
+    }
+
+    /**
+     * @param compression the deflate level, from 0 (none) to 9 (best)
+     */
+    public IndexedPNG(int compression) {
+        level = compression;
+        deflater = new Deflater(compression);
+    }
+
+    /**
+     * @param level the deflate level, from 0 (none) to 9 (best)
+     */
+    public void setCompression(int level) {
+        this.level = level;
+        deflater.setLevel(level);
+    }
+
+    public void setFlipY(boolean flipY) {
+        this.flipY = flipY;
+    }
+
+    /**
+     * Writes {@code pixmap}, which should be RGBA8888, as an indexed PNG if it has 256 colors or fewer, or as an RGBA
+     * PNG otherwise. Colors that differ only in their alpha are different palette entries.
+     * @param file where to write; parent directories are created if needed
+     * @param pixmap an RGBA8888 Pixmap; will not be modified
+     */
+    public void write(FileHandle file, Pixmap pixmap) {
+        OutputStream output = file.write(false, 1 << 14);
+        try {
+            write(output, pixmap);
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing PNG: " + file, e);
+        } finally {
+            StreamUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Writes {@code pixmap}, which should be RGBA8888, as an indexed PNG if it has 256 colors or fewer, or as an RGBA
+     * PNG otherwise. Does not close {@code output}.
+     * @param output where to write the PNG
+     * @param pixmap an RGBA8888 Pixmap; will not be modified
+     * @throws IOException if {@code output} throws one
+     */
+    public void write(OutputStream output, Pixmap pixmap) throws IOException {
+        if (pixmap.getFormat() != Pixmap.Format.RGBA8888)
+            throw new GdxRuntimeException("IndexedPNG only writes RGBA8888 Pixmaps, not " + pixmap.getFormat());
+        final int width = pixmap.getWidth(), height = pixmap.getHeight();
+        final ByteBuffer pixels = pixmap.getPixels();
+        final int colors = findColors(pixels, width * height);
+        if (colors < 0) {
+            final int stride = width << 2;
+            ensureRaw((stride + 1) * height);
+            for (int y = 0, o = 0; y < height; y++) {
+                raw[o++] = 0;
+                final int row = (flipY ? height - 1 - y : y) * stride;
+                for (int x = 0; x < stride; x += 4, o += 4) {
+                    final int rgba = pixels.getInt(row + x);
+                    raw[o] = (byte) (rgba >>> 24);
+                    raw[o + 1] = (byte) (rgba >>> 16);
+                    raw[o + 2] = (byte) (rgba >>> 8);
+                    raw[o + 3] = (byte) rgba;
+                }
+            }
+            writePNG(output, width, height, COLOR_RGBA, null, 0);
+            return;
+        }
+        ensureRaw((width + 1) * height);
+        for (int y = 0, o = 0; y < height; y++) {
+            raw[o++] = 0;
+            final int row = (flipY ? height - 1 - y : y) * width << 2;
+            for (int x = 0; x < width; x++) {
+                raw[o++] = (byte) colorIndices.get(pixels.getInt(row + (x << 2)));
+            }
+        }
+        writePNG(output, width, height, COLOR_INDEXED, palette, colors);
+    }
+
+    /**
+     * Fills {@link #palette} and {@link #colorIndices} with the colors in {@code pixels}, putting colors with any
+     * transparency first so the tRNS chunk can be as short as possible.
+     * @return how many colors there are, or -1 if there are more than 256
+     */
+    protected int findColors(ByteBuffer pixels, int count) {
+        colorIndices.clear();
+        int colors = 0;
+        for (int i = 0; i < count; i++) {
+            final int rgba = pixels.getInt(i << 2);
+            if (!colorIndices.containsKey(rgba)) {
+                if (colors == 256) return -1;
+                colorIndices.put(rgba, colors);
+                palette[colors++] = rgba;
+            }
+        }
+        // with alpha moved to the top byte and the sign bit flipped, sorting puts the least opaque colors first
+        for (int i = 0; i < colors; i++) {
+            palette[i] = (palette[i] << 24 | palette[i] >>> 8) ^ 0x80000000;
+        }
+        Arrays.sort(palette, 0, colors);
+        for (int i = 0; i < colors; i++) {
+            palette[i] ^= 0x80000000;
+            palette[i] = palette[i] << 8 | palette[i] >>> 24;
+            colorIndices.put(palette[i], i);
+        }
+        return colors;
+    }
+
+    protected void ensureRaw(int size) {
+        if (raw.length < size) raw = new byte[size];
+    }
+
+    protected void writePNG(OutputStream output, int width, int height, byte colorType, int[] palette, int colors) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.write(SIGNATURE);
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(1024);
+        DataOutputStream data = new DataOutputStream(chunk);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8);
+        data.writeByte(colorType);
+        data.writeByte(0);
+        data.writeByte(0);
+        data.writeByte(0);
+        writeChunk(out, IHDR, chunk.toByteArray(), chunk.size());
+
+        if (colorType == COLOR_INDEXED) {
+            chunk.reset();
+            int translucent = 0;
+            for (int i = 0; i < colors; i++) {
+                final int rgba = palette[i];
+                data.writeByte(rgba >>> 24);
+                data.writeByte(rgba >>> 16);
+                data.writeByte(rgba >>> 8);
+                if ((rgba & 255) != 255) translucent = i + 1;
+            }
+            writeChunk(out, PLTE, chunk.toByteArray(), chunk.size());
+            if (translucent > 0) {
+                chunk.reset();
+                for (int i = 0; i < translucent; i++) {
+                    data.writeByte(palette[i]);
+                }
+                writeChunk(out, TRNS, chunk.toByteArray(), chunk.size());
+            }
+        }
+
+        final int size = (colorType == COLOR_INDEXED ? width + 1 : (width << 2) + 1) * height;
+        final int compressed;
+        if (parallel && height > stripRows)
+            compressed = deflateParallel(size, size / height);
+        else
+            compressed = deflate(size);
+        writeChunk(out, IDAT, packed, compressed);
+        writeChunk(out, IEND, packed, 0);
+        out.flush();
+    }
+
+    protected void writeChunk(DataOutputStream out, int type, byte[] data, int length) throws IOException {
+        crc.reset();
+        crc.update(type >>> 24);
+        crc.update(type >>> 16);
+        crc.update(type >>> 8);
+        crc.update(type);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.writeInt(type);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Compresses the first {@code size} bytes of {@link #raw} into {@link #packed} as one zlib stream.
+     * @return how many bytes of {@link #packed} were used
+     */
+    protected int deflate(int size) {
+        deflater.reset();
+        deflater.setInput(raw, 0, size);
+        deflater.finish();
+        if (packed.length < size / 2 + 64) packed = new byte[size / 2 + 64];
+        int used = 0;
+        while (!deflater.finished()) {
+            if (used == packed.length) packed = Arrays.copyOf(packed, packed.length << 1);
+            used += deflater.deflate(packed, used, packed.length - used);
+        }
+        return used;
+    }
+
+    /**
+     * Compresses the first {@code size} bytes of {@link #raw} into {@link #packed} as one zlib stream, compressing
+     * strips of {@link #stripRows} rows at the same time on {@link #pool}.
+     * @return how many bytes of {@link #packed} were used
+     */
+    protected int deflateParallel(int size, int rowBytes) {
+        final int strip = stripRows * rowBytes, count = (size + strip - 1) / strip;
+        final byte[] input = raw;
+        final int compression = level;
+        ArrayList<ForkJoinTask<byte[]>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int start = i * strip, end = Math.min(start + strip, size);
+            tasks.add(pool.submit(() -> deflateStrip(input, start, end, end == size, compression)));
+        }
+        // the 2-byte zlib header, then the strips, then the Adler-32 checksum of everything uncompressed
+        if (packed.length < size / 2 + 64) packed = new byte[size / 2 + 64];
+        packed[0] = 0x78;
+        packed[1] = (byte) 0x9C;
+        int used = 2;
+        Adler32 adler = new Adler32();
+        adler.update(input, 0, size);
+        for (ForkJoinTask<byte[]> task : tasks) {
+            final byte[] piece = task.join();
+            if (used + piece.length + 4 > packed.length)
+                packed = Arrays.copyOf(packed, Math.max(packed.length << 1, used + piece.length + 4));
+            System.arraycopy(piece, 0, packed, used, piece.length);
+            used += piece.length;
+        }
+        final int sum = (int) adler.getValue();
+        packed[used++] = (byte) (sum >>> 24);
+        packed[used++] = (byte) (sum >>> 16);
+        packed[used++] = (byte) (sum >>> 8);
+        packed[used++] = (byte) sum;
+        return used;
+    }
+
+    /**
+     * Compresses one strip as raw deflate data, primed with up to 32KB of what came before it, and ending on a byte
+     * boundary (with a sync flush) unless it is the last strip, so strips can be joined together.
+     */
+    protected static byte[] deflateStrip(byte[] input, int start, int end, boolean last, int level) {
+        final Deflater strip = new Deflater(level, true);
+        try {
+            if (start > 0) {
+                final int dictionary = Math.min(start, WINDOW);
+                strip.setDictionary(input, start - dictionary, dictionary);
+            }
+            strip.setInput(input, start, end - start);
+            if (last) strip.finish();
+            byte[] out = new byte[(end - start) / 2 + 64];
+            int used = 0;
+            while (true) {
+                if (used == out.length) out = Arrays.copyOf(out, out.length << 1);
+                used += strip.deflate(out, used, out.length - used, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                // a sync flush is done when there was room left over; a finish is done when the deflater says so
+                if (last ? strip.finished() : used < out.length) break;
+            }
+            return Arrays.copyOf(out, used);
+        } finally {
+            strip.end();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        deflater.end();
+    }
+}
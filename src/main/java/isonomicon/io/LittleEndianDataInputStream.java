@@ -4,6 +4,7 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Like DataInputStream, but little-endian, which matches the expected .vox format.
@@ -15,6 +16,7 @@ public class LittleEndianDataInputStream extends InputStream implements DataInpu
         this.in = in;
         this.d = new DataInputStream(in);
         w = new byte[8];
+        bulk = new byte[1024];
     }
 
     public int available() throws IOException {
@@ -97,12 +99,54 @@ public class LittleEndianDataInputStream extends InputStream implements DataInpu
         d.readFully(b, off, len);
     }
 
+    /**
+     * Like {@link #readFully(byte[])}, but returns false instead of throwing an EOFException if the stream has already
+     * ended before any bytes could be read. This is how .vox parsers can tell when there are no more chunks, even on
+     * streams (like zip or jar entries) where {@link #available()} isn't reliable.
+     * @param b the array to fill completely
+     * @return true if {@code b} was filled, or false if the stream was already at its end
+     * @throws IOException if the stream ends after some but not all of {@code b} was read, or for any other I/O error
+     */
+    public final boolean readFullyOrEnd(byte[] b) throws IOException {
+        final int n = in.read(b, 0, b.length);
+        if (n < 0) return false;
+        if (n < b.length) d.readFully(b, n, b.length - n);
+        return true;
+    }
+
+    /**
+     * Reads exactly {@code length} bytes, such as an entire chunk's payload, into an array this reuses, and returns
+     * that array. Only the first {@code length} items are valid, and only until the next call to this or
+     * {@link #readString()}. This handles streams that return fewer bytes than requested, and avoids reading
+     * voxels one byte at a time.
+     * @param length how many bytes to read; must not be negative
+     * @return the reused array, with the bytes read at the start
+     * @throws IOException if the stream ends first, or for any other I/O error
+     */
+    public final byte[] readBulk(int length) throws IOException {
+        if (length < 0)
+            throw new IOException("Cannot read a negative number of bytes: " + length);
+        if (bulk.length < length)
+            bulk = new byte[Integer.highestOneBit(length - 1) << 1];
+        d.readFully(bulk, 0, length);
+        return bulk;
+    }
+
+    /**
+     * Reads a little-endian int length, then that many bytes as an ISO-8859-1 String, as .vox files store them.
+     * @return the String read
+     * @throws IOException if the stream ends first, or for any other I/O error
+     */
+    public final String readString() throws IOException {
+        final int len = readInt();
+        return new String(readBulk(len), 0, len, StandardCharsets.ISO_8859_1);
+    }
+
     /**
      * Makes an attempt to skip over {@code n} bytes
      * of data from the input stream, discarding the skipped bytes.
-     * However, it may skip over some smaller number of bytes, possibly zero.
-     * This may result from any of a number of conditions;
-     * reaching end of file before {@code n} bytes have been skipped is only one possibility.
+     * If the stream won't skip, this reads and discards bytes instead, so it only skips fewer than {@code n}
+     * bytes if the end of the stream is reached first.
      * This method never throws an {@code EOFException}.
      * The actual number of bytes skipped is returned.
      * <p>
@@ -114,7 +158,12 @@ public class LittleEndianDataInputStream extends InputStream implements DataInpu
     public final int skipBytes(int n) throws IOException {
         int total = 0;
         int cur;
-        while ((total<n) && ((cur = (int) in.skip(n-total)) > 0)) {
+        while (total < n) {
+            if ((cur = (int) in.skip(n - total)) <= 0) {
+                // some streams, like zip entries, can skip 0 bytes without being at the end
+                if (in.read() < 0) break;
+                cur = 1;
+            }
             total += cur;
         }
         return total;
@@ -154,5 +203,6 @@ public class LittleEndianDataInputStream extends InputStream implements DataInpu
     private final InputStream in; // to get at the low-level read methods of
     // InputStream
     private final byte[] w; // work array for buffering input
+    private byte[] bulk; // reused by readBulk() and readString(); grows as needed
 }
 
@@ -2,10 +2,18 @@ package isonomicon.io;
 
 import com.github.tommyettinger.ds.IntFloatMap;
 import com.github.tommyettinger.ds.IntObjectMap;
+import isonomicon.io.extended.VoxWriter;
 import isonomicon.physical.VoxMaterial;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 
@@ -58,6 +66,134 @@ public class VoxIO {
         lastMaterials.setDefaultValue(VoxMaterial.DEFAULT_MATERIAL);
     }
 
+    /**
+     * Gets the int a 4-character chunk ID reads as from a little-endian buffer, so chunks can be told apart without
+     * making a String for each one.
+     * @param name a 4-character chunk ID, such as "XYZI"
+     * @return the little-endian int with the same bytes as {@code name}
+     */
+    public static int chunkId(String name) {
+        return name.charAt(0) | name.charAt(1) << 8 | name.charAt(2) << 16 | name.charAt(3) << 24;
+    }
+
+    public static final int VOX_ = chunkId("VOX "), SIZE = chunkId("SIZE"), XYZI = chunkId("XYZI"),
+            RGBA = chunkId("RGBA"), MATL = chunkId("MATL"), nTRN = chunkId("nTRN"), nGRP = chunkId("nGRP"),
+            nSHP = chunkId("nSHP");
+
+    /**
+     * Memory-maps a whole file, read-only and little-endian, for use with {@link #readVox(ByteBuffer)} or
+     * {@link isonomicon.io.extended.VoxIOExtended#readVox(ByteBuffer)}. The mapping stays valid after this returns.
+     * @param path the path to a file
+     * @return a little-endian ByteBuffer with the contents of the file
+     * @throws FileNotFoundException if there is no file at {@code path}
+     * @throws IOException if the file can't be mapped for any other reason
+     */
+    public static ByteBuffer mapFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(path);
+        }
+    }
+
+    /**
+     * Reads a .vox file by memory-mapping it and calling {@link #readVox(ByteBuffer)}.
+     * @param path the path to a .vox file
+     * @return the voxels of the last model in the file, or null if it couldn't be read
+     * @throws FileNotFoundException if there is no file at {@code path}
+     */
+    public static byte[][][] readVoxFile(String path) throws FileNotFoundException {
+        try {
+            return readVox(mapFile(path));
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads a .vox file's contents from a ByteBuffer, such as one from {@link #mapFile(String)} or
+     * {@link ByteBuffer#wrap(byte[])}. This works like {@link #readVox(LittleEndianDataInputStream)}, but compares
+     * chunk IDs as ints and reads voxels with absolute gets, so it is much faster. The buffer is always read as
+     * little-endian, starting at its position, and its position and order are not changed.
+     * @param buffer the bytes of a .vox file, from its position to its limit
+     * @return the voxels of the last model in the file, or null if it isn't a .vox file
+     */
+    public static byte[][][] readVox(ByteBuffer buffer) {
+        final ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte[][][] voxelData = null;
+        lastMaterials.clear();
+        try {
+            if (b.remaining() < 8 || b.getInt() != VOX_)
+                return null;
+            //int version =
+            b.getInt();
+            int sizeX, sizeY, size, sizeZ, offX = 0, offY = 0;
+            while (b.remaining() >= 12) {
+                // each chunk has an ID, size and child chunks
+                final int chunkId = b.getInt(), chunkSize = b.getInt();
+                //int childChunks =
+                b.getInt();
+                final int end = b.position() + chunkSize;
+                // there are only 4 chunks we care about, and they are SIZE, XYZI, RGBA, and MATL
+                if (chunkId == SIZE) {
+                    sizeX = b.getInt();
+                    sizeY = b.getInt();
+                    sizeZ = b.getInt();
+                    size = Math.max(sizeZ, Math.max(sizeX, sizeY));
+                    offX = size - sizeX >> 1;
+                    offY = size - sizeY >> 1;
+                    voxelData = new byte[size][size][size];
+                } else if (chunkId == XYZI && voxelData != null) {
+                    // XYZI contains n voxels, each with x, y, z and color index values
+                    final int numVoxels = b.getInt();
+                    for (int i = 0, p = b.position(); i < numVoxels; i++, p += 4) {
+                        voxelData[(b.get(p) & 255) + offX][(b.get(p + 1) & 255) + offY][b.get(p + 2) & 255] = b.get(p + 3);
+                    }
+                } else if (chunkId == RGBA) {
+                    for (int i = 1; i < 256; i++) {
+                        lastPalette[i] = Integer.reverseBytes(b.getInt());
+                    }
+                } else if (chunkId == MATL) {
+                    readMaterial(b, lastMaterials);
+                }
+                b.position(end);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        return voxelData;
+    }
+
+    /**
+     * Reads a length-prefixed ISO-8859-1 String, as .vox files store them, from a little-endian ByteBuffer.
+     */
+    public static String readString(ByteBuffer b) {
+        final int len = b.getInt();
+        final byte[] buf = new byte[len];
+        b.get(buf);
+        return new String(buf, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads the contents of a MATL chunk (after its 12-byte header) from a little-endian ByteBuffer, adding or
+     * updating the material it describes in {@code materials}.
+     */
+    public static void readMaterial(ByteBuffer b, IntObjectMap<VoxMaterial> materials) {
+        final int materialID = b.getInt();
+        final int dictSize = b.getInt();
+        for (int i = 0; i < dictSize; i++) {
+            final String ks = readString(b), vs = readString(b);
+            VoxMaterial vm;
+            if ((vm = materials.getOrDefault(materialID, null)) == null) {
+                materials.put(materialID, vm = new VoxMaterial());
+            }
+            vm.putTrait(ks, vs);
+        }
+    }
+
     public static byte[][][] readVox(InputStream stream) {
         return readVox(new LittleEndianDataInputStream(stream));
     }
@@ -67,18 +203,15 @@ public class VoxIO {
         lastMaterials.clear();
         try {
             byte[] chunkId = new byte[4];
-            if (4 != stream.read(chunkId))
+            if (!stream.readFullyOrEnd(chunkId))
                 return null;
             //int version = 
             stream.readInt();
             int sizeX = 16, sizeY = 16, size = 16, sizeZ = 16, offX = 0, offY = 0;
-            byte[] key = new byte[6]; // used for MaterialTrait
-            byte[] val = new byte[10]; // used for MaterialType and numbers
             // a MagicaVoxel .vox file starts with a 'magic' 4 character 'VOX ' identifier
             if (chunkId[0] == 'V' && chunkId[1] == 'O' && chunkId[2] == 'X' && chunkId[3] == ' ') {
-                while (stream.available() > 0) {
-                    // each chunk has an ID, size and child chunks
-                    stream.read(chunkId);
+                // each chunk has an ID, size and child chunks
+                while (stream.readFullyOrEnd(chunkId)) {
                     int chunkSize = stream.readInt();
                     //int childChunks = 
                     stream.readInt();
@@ -98,29 +231,27 @@ public class VoxIO {
                         // XYZI contains n voxels
                         int numVoxels = stream.readInt();
                         // each voxel has x, y, z and color index values
-                        for (int i = 0; i < numVoxels; i++) {
-                            voxelData[stream.read() + offX][stream.read() + offY][stream.read()] = stream.readByte();
+                        final byte[] data = stream.readBulk(numVoxels << 2);
+                        for (int i = 0, p = 0; i < numVoxels; i++, p += 4) {
+                            voxelData[(data[p] & 255) + offX][(data[p + 1] & 255) + offY][data[p + 2] & 255] = data[p + 3];
                         }
                     } else if(chunkName.equals("RGBA"))
                     {
-                        for (int i = 1; i < 256; i++) {
-                            lastPalette[i] = Integer.reverseBytes(stream.readInt());
+                        // the 256th color is read but unused, since index 0 is always transparent
+                        final byte[] data = stream.readBulk(1024);
+                        for (int i = 1, p = 0; i < 256; i++, p += 4) {
+                            lastPalette[i] = (data[p] & 255) << 24 | (data[p + 1] & 255) << 16 | (data[p + 2] & 255) << 8 | (data[p + 3] & 255);
                         }
-                        stream.readInt();
                     } else if(chunkName.equals("MATL")){ // remove this block if you don't handle materials
                         int materialID = stream.readInt();
                         int dictSize = stream.readInt();
                         for (int i = 0; i < dictSize; i++) {
-                            int keyLen = stream.readInt();
-                            stream.read(key, 0, keyLen);
-                            int valLen = stream.readInt();
-                            stream.read(val, 0, valLen);
+                            String ks = stream.readString();
+                            String vs = stream.readString();
                             VoxMaterial vm;
                             if ((vm = lastMaterials.getOrDefault(materialID, null)) == null) {
                                 lastMaterials.put(materialID, vm = new VoxMaterial());
                             }
-                            String ks = new String(key, 0, keyLen, StandardCharsets.ISO_8859_1);
-                            String vs = new String(val, 0, valLen, StandardCharsets.ISO_8859_1);
                             vm.putTrait(ks, vs);
                         }
                     }
@@ -135,108 +266,18 @@ public class VoxIO {
         return voxelData;
     }
 
-    private static void writeInt(DataOutputStream bin, int value) throws IOException
-    {
-        bin.writeInt(Integer.reverseBytes(value));
-    }
-
     public static void writeVOX(String filename, byte[][][] voxelData, int[] palette) {
         writeVOX(filename, voxelData, palette, null);
     }
 
+    /**
+     * Writes one grid as a .vox file, using {@link VoxWriter#local()}.
+     * @param filename where to write
+     * @param voxelData a 3D byte array of palette indices; each side must be at most 256
+     * @param palette up to 256 RGBA8888 colors; index 0 is ignored, and missing colors come from {@link VoxIO#lastPalette}
+     * @param materials may be null; otherwise, the materials to write, by palette index
+     */
     public static void writeVOX(String filename, byte[][][] voxelData, int[] palette, IntObjectMap<VoxMaterial> materials) {
-        // check out https://github.com/ephtracy/voxel-model/blob/master/MagicaVoxel-file-format-vox.txt for the file format used below
-        try {
-            int xSize = voxelData.length, ySize = voxelData[0].length, zSize = voxelData[0][0].length;
-
-            FileOutputStream fos = new FileOutputStream(filename);
-            DataOutputStream bin = new DataOutputStream(fos);
-            ByteArrayOutputStream voxelsRaw = new ByteArrayOutputStream(0);
-            int cc;
-            for (int x = 0; x < xSize; x++) {
-                for (int y = 0; y < ySize; y++) {
-                    for (int z = 0; z < zSize; z++) {
-                        cc = voxelData[x][y][z];
-                        if(cc == 0) continue;
-                        voxelsRaw.write(x);
-                        voxelsRaw.write(y);
-                        voxelsRaw.write(z);
-                        voxelsRaw.write(cc);
-                    }
-                }
-            }
-
-            // a MagicaVoxel .vox file starts with a 'magic' 4 character 'VOX ' identifier
-            bin.writeBytes("VOX ");
-            // current version
-            writeInt(bin, 150);
-
-            bin.writeBytes("MAIN");
-            writeInt(bin, 0);
-            writeInt(bin, 12 + 12 + 12 + 4 + voxelsRaw.size() + 12 + 1024);
-
-            bin.writeBytes("SIZE");
-            writeInt(bin, 12);
-            writeInt(bin, 0);
-            writeInt(bin, xSize);
-            writeInt(bin, ySize);
-            writeInt(bin, zSize);
-
-            bin.writeBytes("XYZI");
-            writeInt(bin, 4 + voxelsRaw.size());
-            writeInt(bin, 0);
-            writeInt(bin, voxelsRaw.size() >> 2);
-            bin.write(voxelsRaw.toByteArray());
-
-            bin.writeBytes("RGBA");
-            writeInt(bin, 1024);
-            writeInt(bin, 0);
-            int i = 1;
-            for (; i < 256 && i < palette.length; i++) {
-                bin.writeInt(palette[i]);
-            }
-            // if the palette is smaller than 256 colors, this fills the rest with lastPalette's colors
-            for (; i < 256; i++) {
-                bin.writeInt(lastPalette[i]);
-            }
-            writeInt(bin,  0);
-            if(materials != null && materials.notEmpty()) {
-                ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
-                DataOutputStream dos = new DataOutputStream(bytes);
-                for(IntObjectMap.Entry<VoxMaterial> ent : materials) {
-                    bin.writeBytes("MATL");
-                    dos.flush();
-                    bytes.reset();
-                    // here we write to dos, which writes to bytes, so we know the length of the chunk.
-                    writeInt(dos, ent.key);
-                    writeInt(dos, ent.value.traits.size() + 1);
-                    writeInt(dos, 5);
-                    dos.writeBytes("_type");
-                    String term = ent.value.type.name();
-                    writeInt(dos, term.length());
-                    dos.writeBytes(term);
-                    for(IntFloatMap.Entry et : ent.value.traits) {
-                        if(et.key < 0) continue;
-                        VoxMaterial.MaterialTrait mt = VoxMaterial.ALL_TRAITS[et.key];
-                        term = mt.name();
-                        writeInt(dos, term.length());
-                        dos.writeBytes(term);
-                        term = Float.toString(et.value);
-                        if(term.length() > 8) term = term.substring(0, 8);
-                        writeInt(dos, term.length());
-                        dos.writeBytes(term);
-                    }
-                    writeInt(bin, bytes.size());
-                    writeInt(bin, 0);
-                    bytes.writeTo(bin);
-                }
-            }
-            bin.flush();
-            bin.close();
-            fos.flush();
-            fos.close();
-        }catch (Exception e) {
-            e.printStackTrace();
-        }
+        VoxWriter.local().write(filename, voxelData, palette, materials);
     }
 }
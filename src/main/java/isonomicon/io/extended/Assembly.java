@@ -0,0 +1,130 @@
+package isonomicon.io.extended;
+
+import com.github.tommyettinger.ds.IntObjectMap;
+
+import java.util.ArrayList;
+
+/**
+ * The attachment tree of a {@link VoxModel}'s parts, worked out once from {@link VoxModel#links} so that drawing a
+ * linked model is a flat loop over its parts instead of a recursive search through every other part's links.
+ * <br>
+ * The root part is the first one whose links contain the key -1, or part 0 if none do (or if there are no links at
+ * all, in which case part 0 is the only part drawn). Each later part is attached to the part that first shares a link
+ * key with it, searching depth-first from the root in the same order renderers always searched in, and the offset
+ * between the two matching link points is added to the parent's offset. Parts are listed in the order they should be
+ * drawn, parent before child.
+ * <br>
+ * Because link points can be edited in place (as animations in {@link isonomicon.physical.EffectGenerator} do), an
+ * Assembly stores a hash of the links it was built from; see {@link #matches(ArrayList, int)}.
+ */
+public class Assembly {
+    /**
+     * How many parts are drawn; this can be less than the number of grids if some aren't connected to the root.
+     */
+    public final int count;
+    /**
+     * The grid index of each part, in drawing order; only the first {@link #count} items are used.
+     */
+    public final int[] parts;
+    /**
+     * The index (into {@link #parts}, not a grid index) of each part's parent, or -1 for the root.
+     */
+    public final int[] parents;
+    /**
+     * How many attachments are between each part and the root; the root is 0. Renderers that nudge each attachment by
+     * a fixed amount (like {@code fidget} in {@link isonomicon.visual.SpecialRenderer}) multiply that by this.
+     */
+    public final int[] levels;
+    /**
+     * Three floats per part, x, y, z, giving the total offset of that part from the root in model space.
+     */
+    public final float[] offsets;
+    public final int gridCount;
+    public final long hash;
+
+    public Assembly(ArrayList<IntObjectMap<float[]>> links, int gridCount) {
+        this.gridCount = gridCount;
+        hash = hash(links);
+        parts = new int[Math.max(gridCount, 1)];
+        parents = new int[parts.length];
+        levels = new int[parts.length];
+        offsets = new float[parts.length * 3];
+        int root = 0;
+        for (int i = 0, n = Math.min(links.size(), gridCount); i < n; i++) {
+            if (links.get(i).containsKey(-1)) {
+                root = i;
+                break;
+            }
+        }
+        parts[0] = root;
+        parents[0] = -1;
+        if (links.isEmpty() || gridCount == 0) {
+            count = gridCount == 0 ? 0 : 1;
+            return;
+        }
+        final boolean[] used = new boolean[gridCount];
+        used[root] = true;
+        count = attach(links, used, 0, 1);
+    }
+
+    /**
+     * Adds every part that links to the part at {@code index} (and, recursively, their children) after {@code next}.
+     * @return the index after the last part added
+     */
+    private int attach(ArrayList<IntObjectMap<float[]>> links, boolean[] used, int index, int next) {
+        final int part = parts[index];
+        if (part >= links.size()) return next;
+        for (IntObjectMap.Entry<float[]> ent : links.get(part)) {
+            if (ent.key == -1) continue;
+            for (int j = 0, n = Math.min(links.size(), used.length); j < n; j++) {
+                if (used[j]) continue;
+                float[] got;
+                if ((got = links.get(j).get(ent.key)) != null) {
+                    used[j] = true;
+                    parts[next] = j;
+                    parents[next] = index;
+                    levels[next] = levels[index] + 1;
+                    offsets[next * 3] = offsets[index * 3] + ent.value[0] - got[0];
+                    offsets[next * 3 + 1] = offsets[index * 3 + 1] + ent.value[1] - got[1];
+                    offsets[next * 3 + 2] = offsets[index * 3 + 2] + ent.value[2] - got[2];
+                    next = attach(links, used, next, next + 1);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Hashes the keys and first three values of every link, which is all an Assembly depends on.
+     * @param links typically {@link VoxModel#links}
+     * @return a 64-bit hash
+     */
+    public static long hash(ArrayList<IntObjectMap<float[]>> links) {
+        long h = 0x9E3779B97F4A7C15L + links.size();
+        for (int i = 0; i < links.size(); i++) {
+            IntObjectMap<float[]> link = links.get(i);
+            h = (h ^ link.size() ^ i) * 0xD1342543DE82EF95L;
+            for (IntObjectMap.Entry<float[]> ent : link) {
+                // entries may come back in any order, so each one is mixed on its own and then added
+                long e = ent.key * 0xC13FA9A902A6328FL;
+                for (int k = 0; k < 3 && k < ent.value.length; k++) {
+                    e = (e ^ Float.floatToIntBits(ent.value[k])) * 0x91E10DA5C79E7B1DL;
+                    e ^= e >>> 29;
+                }
+                h += e;
+            }
+        }
+        return h ^ h >>> 31;
+    }
+
+    /**
+     * Checks if this was built from links with the same keys and positions as {@code links}, and the same number of
+     * grids.
+     * @param links typically {@link VoxModel#links}
+     * @param gridCount typically the size of {@link VoxModel#grids}
+     * @return true if this can still be used to draw a model with these links
+     */
+    public boolean matches(ArrayList<IntObjectMap<float[]>> links, int gridCount) {
+        return this.gridCount == gridCount && hash(links) == hash;
+    }
+}
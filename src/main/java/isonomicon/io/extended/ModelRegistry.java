@@ -0,0 +1,204 @@
+package isonomicon.io.extended;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads {@link VoxModel}s on background threads and keeps the most recently used ones in memory, so an app can ask
+ * for the next unit's models while it is still rendering the current one, and models that are used more than once (like
+ * heads, or a unit that gets loaded again for each attack) are only read and processed once.
+ * <br>
+ * Models are identified by their path. {@link #get(String)} gives a future for the shared, cached model, which must not
+ * be modified; {@link #load(String)} waits for that future and returns a {@link VoxModel#copy()} that can be changed
+ * freely. {@link #preload(String...)} starts loading without waiting. Loading uses the given {@link VoxLoadOptions},
+ * and also a {@link VoxCache} if one is given, so the slowest part may not need to happen at all.
+ * <br>
+ * The cache in memory is limited by an estimate of how many bytes its models use, mostly from the sizes of their grids.
+ * When it holds more than {@link #maxBytes}, the least-recently-used models that have finished loading are dropped.
+ * Everything here is safe to call from multiple threads. Call {@link #shutdown()} when done, though the background
+ * threads won't keep the JVM running if that is forgotten.
+ */
+public class ModelRegistry {
+    public final VoxLoadOptions options;
+    /**
+     * May be null; if non-null, used to load the processed grids of each model without scaling or soaking them again.
+     */
+    public final VoxCache cache;
+    /**
+     * When the models in memory are estimated to use more than this many bytes, the least-recently-used ones are
+     * dropped.
+     */
+    public long maxBytes;
+    public int hits, misses;
+    protected final ExecutorService executor;
+    /**
+     * Maps paths to futures, in access order, so the first entry is the least recently used.
+     */
+    protected final LinkedHashMap<String, CompletableFuture<VoxModel>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    protected final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(64);
+    protected long totalBytes;
+
+    /**
+     * Uses one background thread per available processor.
+     * @param options how to load every model
+     * @param cache may be null; otherwise, where to get and put the processed grids of each model
+     * @param maxBytes roughly how much memory the models kept here can use
+     */
+    public ModelRegistry(VoxLoadOptions options, VoxCache cache, long maxBytes) {
+        this(options, cache, maxBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param options how to load every model
+     * @param cache may be null; otherwise, where to get and put the processed grids of each model
+     * @param maxBytes roughly how much memory the models kept here can use
+     * @param threads how many models can load at once
+     */
+    public ModelRegistry(VoxLoadOptions options, VoxCache cache, long maxBytes, int threads) {
+        this.options = options;
+        this.cache = cache;
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "ModelRegistry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Gets a future for the model at {@code path}, starting to load it in the background if it isn't already loaded
+     * or loading. The model the future completes with is shared, so it must not be modified; use {@link #load(String)}
+     * or call {@link VoxModel#copy()} to get one that can be. If the file doesn't exist, the future completes
+     * exceptionally with an {@link UncheckedIOException} wrapping a FileNotFoundException.
+     * @param path the path to a .vox file
+     * @return a future that completes with the shared model, or with null if the file couldn't be read
+     */
+    public CompletableFuture<VoxModel> get(String path) {
+        synchronized (this) {
+            CompletableFuture<VoxModel> future = entries.get(path);
+            if (future != null) {
+                hits++;
+                return future;
+            }
+            misses++;
+            final CompletableFuture<VoxModel> loading = CompletableFuture.supplyAsync(() -> read(path), executor);
+            entries.put(path, loading);
+            loading.whenComplete((model, error) -> finished(path, loading, model, error));
+            return loading;
+        }
+    }
+
+    /**
+     * Starts loading each of the given paths in the background, if they aren't already loaded or loading.
+     * @param paths the paths to .vox files that will probably be needed soon
+     */
+    public void preload(String... paths) {
+        for (String path : paths) {
+            get(path);
+        }
+    }
+
+    /**
+     * Waits for the model at {@code path} to load, if it hasn't already, and returns a copy of it that can be modified
+     * freely.
+     * @param path the path to a .vox file
+     * @return a copy of the model, or null if the file couldn't be read
+     * @throws FileNotFoundException if there is no file at {@code path}
+     */
+    public VoxModel load(String path) throws FileNotFoundException {
+        final VoxModel model;
+        try {
+            model = get(path).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException && e.getCause().getCause() instanceof FileNotFoundException)
+                throw (FileNotFoundException) e.getCause().getCause();
+            throw e;
+        }
+        return model == null ? null : model.copy();
+    }
+
+    protected VoxModel read(String path) {
+        try {
+            return cache == null ? VoxIOExtended.readVoxFile(path, options) : cache.load(path, options);
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Estimates how many bytes of memory a model uses, counting each grid's voxels and a little for each link and
+     * marker. This doesn't need to be exact, only proportional.
+     * @param model a loaded VoxModel
+     * @return roughly how many bytes {@code model} takes up
+     */
+    public static long estimateBytes(VoxModel model) {
+        if (model == null) return 0L;
+        long bytes = 1024L;
+        for (byte[][][] grid : model.grids) {
+            bytes += (long) grid.length * grid[0].length * (grid[0][0].length + 16);
+        }
+        for (int i = 0; i < model.markers.size(); i++) {
+            bytes += model.markers.get(i).size() * 64L;
+        }
+        for (int i = 0; i < model.links.size(); i++) {
+            bytes += model.links.get(i).size() * 48L;
+        }
+        return bytes;
+    }
+
+    protected synchronized void finished(String path, CompletableFuture<VoxModel> future, VoxModel model, Throwable error) {
+        // it could have been removed by clear() while it was loading, and maybe requested again since
+        if (entries.get(path) != future) return;
+        if (error != null) {
+            // failures aren't kept, so the file can be tried again later
+            entries.remove(path);
+            return;
+        }
+        final long bytes = estimateBytes(model);
+        sizes.put(path, bytes);
+        totalBytes += bytes;
+        evict();
+    }
+
+    protected void evict() {
+        Iterator<Map.Entry<String, CompletableFuture<VoxModel>>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, CompletableFuture<VoxModel>> eldest = it.next();
+            // models that are still loading are kept, since something is probably waiting on them
+            final Long bytes = sizes.remove(eldest.getKey());
+            if (bytes == null) continue;
+            totalBytes -= bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Forgets every model, so later requests will load them again. Models that are still loading will finish, but
+     * won't be kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        sizes.clear();
+        totalBytes = 0L;
+    }
+
+    /**
+     * Stops the background threads once any models that are loading have finished. Nothing should be requested from
+     * this after calling this.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ModelRegistry{" + entries.size() + " models, " + totalBytes + " bytes, " + hits + " hits, " + misses + " misses}";
+    }
+}
@@ -0,0 +1,290 @@
+package isonomicon.io.extended;
+
+import com.github.tommyettinger.digital.Hasher;
+import com.github.tommyettinger.ds.IntObjectMap;
+import com.github.tommyettinger.ds.LongList;
+import com.github.tommyettinger.ds.LongOrderedSet;
+import isonomicon.physical.StuffTable;
+import isonomicon.physical.Tools3D;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Loads .vox files the same way {@link VoxIOExtended#readVox(ByteBuffer, VoxLoadOptions)} does, but keeps the
+ * expensive part of loading, scaling and soaking every grid, in a small binary file so it only has to happen once per
+ * model. The cache file stores the processed grids (with each column run-length encoded, then deflated), the links,
+ * and the markers; everything else is still read from the .vox file, which is fast. Each cache file holds a 64-bit
+ * hash of the .vox file's contents, the {@link VoxLoadOptions} used, and the {@link StuffTable#hash} of
+ * {@link Tools3D#STUFFS} (since soaking and hollowing depend on which Stuff is transparent), and is ignored and
+ * replaced if any of those don't match, so there's nothing to invalidate by hand when a model or a Stuff is edited.
+ * <br>
+ * By default, cache files go next to the .vox files they came from, named like {@code Infantry.vox.e.isocache}, where
+ * the hex digit is {@link VoxLoadOptions#hashCode()}. Giving a directory to the constructor puts them all there
+ * instead. Loading is safe to do from several threads at once, since each cache file is written to a temporary file
+ * and then moved over the old one in a single step.
+ * <br>
+ * None of those hashes notice when the code changes, though. If {@link Tools3D#scaleAndSoak(byte[][][])},
+ * {@link Tools3D#simpleScale(byte[][][])}, {@link Tools3D#soakInPlace(byte[][][])}, or anything else loading does
+ * changes what it produces, {@link #VERSION} must be incremented, or older cache files will keep being used.
+ */
+public class VoxCache {
+    public static final String SUFFIX = ".isocache";
+    /**
+     * The first int of every cache file, after decompression; the bytes are "ISOC".
+     */
+    public static final int MAGIC = 0x49534F43;
+    /**
+     * Must be incremented whenever the format changes, or whenever scaling, soaking, or any other processing that
+     * {@link VoxIOExtended#readVox(ByteBuffer, VoxLoadOptions)} does changes its output; every cache file with an
+     * older version is replaced.
+     * <br>
+     * 2: added the Stuff hash to the header.
+     */
+    public static final int VERSION = 2;
+    /**
+     * Where cache files go, or null to put them next to their .vox files.
+     */
+    public final File directory;
+    public int hits, misses;
+
+    /**
+     * Creates a VoxCache that puts each cache file next to the .vox file it came from.
+     */
+    public VoxCache() {
+        this.directory = null;
+    }
+
+    /**
+     * Creates a VoxCache that puts every cache file in the given directory.
+     * @param directory the path to a directory; it will be created if needed
+     */
+    public VoxCache(String directory) {
+        this.directory = new File(directory);
+        this.directory.mkdirs();
+    }
+
+    /**
+     * Gets the file that caches the .vox file at {@code path} when loaded with {@code options}.
+     * @param path the path to a .vox file
+     * @param sourceHash the hash of the .vox file's contents, only used when {@link #directory} is non-null
+     * @param options how the model is being loaded
+     * @return the cache file, which may not exist yet
+     */
+    public File cacheFile(String path, long sourceHash, VoxLoadOptions options) {
+        if (directory == null) {
+            final File source = new File(path).getAbsoluteFile();
+            return new File(source.getParentFile(), source.getName() + '.' + Integer.toHexString(options.hashCode()) + SUFFIX);
+        }
+        // in a shared directory, two .vox files could have the same name, so the contents name the file
+        return new File(directory, Long.toHexString(sourceHash) + '.' + Integer.toHexString(options.hashCode()) + SUFFIX);
+    }
+
+    /**
+     * Loads the .vox file at {@code path} with the given options, using the cached grids, links, and markers if they
+     * are present and match, or loading normally and then writing them to the cache if not.
+     * @param path the path to a .vox file
+     * @param options how to load the model; {@link VoxLoadOptions#SPECIALIZED} or {@link VoxLoadOptions#GENERAL} are
+     *                the usual choices
+     * @return the VoxModel in the file, or null if it couldn't be read
+     * @throws FileNotFoundException if there is no file at {@code path}
+     */
+    public VoxModel load(String path, VoxLoadOptions options) throws FileNotFoundException {
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Paths.get(path));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        final long sourceHash = Hasher.beleth.hash64(bytes);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final File file = cacheFile(path, sourceHash, options);
+        final VoxModel processed = read(file, sourceHash, options);
+        if (processed != null) {
+            try {
+                final VoxModel model = VoxIOExtended.readVox(buffer, options, processed);
+                if (model != null && model.grids.size() == processed.grids.size()) {
+                    synchronized (this) {
+                        hits++;
+                    }
+                    return model;
+                }
+            } catch (IndexOutOfBoundsException ignored) {
+                // the cache had fewer grids than the file; this loads normally below
+            }
+        }
+        synchronized (this) {
+            misses++;
+        }
+        final VoxModel model = VoxIOExtended.readVox(buffer, options);
+        if (model != null)
+            write(file, sourceHash, options, model);
+        return model;
+    }
+
+    /**
+     * Gets the hash of the Stuff that loading uses, {@link Tools3D#STUFFS}, which can be reassigned at any time.
+     */
+    public static long stuffHash() {
+        return StuffTable.of(Tools3D.STUFFS).hash;
+    }
+
+    /**
+     * Reads the grids, links, and markers from a cache file into an otherwise-empty VoxModel.
+     * @return the cached data, or null if the file doesn't exist, is damaged, or doesn't match the source or options
+     */
+    protected VoxModel read(File file, long sourceHash, VoxLoadOptions options) {
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != sourceHash
+                    || in.readInt() != options.hashCode() || in.readLong() != stuffHash())
+                return null;
+            VoxModel model = new VoxModel();
+            final int gridCount = in.readInt();
+            for (int i = 0; i < gridCount; i++) {
+                final int sizeX = in.readInt(), sizeY = in.readInt(), sizeZ = in.readInt();
+                final byte[][][] grid = new byte[sizeX][sizeY][sizeZ];
+                for (int x = 0; x < sizeX; x++) {
+                    for (int y = 0; y < sizeY; y++) {
+                        final byte[] column = grid[x][y];
+                        for (int z = 0; z < sizeZ; ) {
+                            final byte value = in.readByte();
+                            final int run = in.readUnsignedShort(), end = z + run;
+                            if (run == 0 || end > sizeZ)
+                                return null;
+                            if (value != 0) {
+                                for (; z < end; z++) {
+                                    column[z] = value;
+                                }
+                            }
+                            z = end;
+                        }
+                    }
+                }
+                model.grids.add(grid);
+            }
+            final int linkCount = in.readInt();
+            for (int i = 0; i < linkCount; i++) {
+                final int n = in.readInt();
+                IntObjectMap<float[]> links = new IntObjectMap<>(n);
+                for (int j = 0; j < n; j++) {
+                    links.put(in.readInt(), new float[]{in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()});
+                }
+                model.links.add(links);
+            }
+            final int markerCount = in.readInt();
+            for (int i = 0; i < markerCount; i++) {
+                final int n = in.readInt();
+                IntObjectMap<LongOrderedSet> markers = new IntObjectMap<>(n);
+                for (int j = 0; j < n; j++) {
+                    final int key = in.readInt(), size = in.readInt();
+                    LongOrderedSet set = new LongOrderedSet(size);
+                    for (int k = 0; k < size; k++) {
+                        set.add(in.readLong());
+                    }
+                    markers.put(key, set);
+                }
+                model.markers.add(markers);
+            }
+            return model;
+        } catch (IOException e) {
+            // a damaged or truncated file is just a miss; it will be replaced
+            return null;
+        }
+    }
+
+    /**
+     * Writes the grids, links, and markers of {@code model}, which must have just been loaded with {@code options}.
+     */
+    protected void write(File file, long sourceHash, VoxLoadOptions options, VoxModel model) {
+        // written to a temporary file first, so another thread or a later run never sees a partial file
+        final File temp = new File(file.getParentFile(), file.getName() + '.' + Thread.currentThread().getId() + ".tmp");
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), deflater, 1 << 14))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceHash);
+            out.writeInt(options.hashCode());
+            out.writeLong(stuffHash());
+            out.writeInt(model.grids.size());
+            for (byte[][][] grid : model.grids) {
+                final int sizeX = grid.length, sizeY = grid[0].length, sizeZ = grid[0][0].length;
+                out.writeInt(sizeX);
+                out.writeInt(sizeY);
+                out.writeInt(sizeZ);
+                for (int x = 0; x < sizeX; x++) {
+                    for (int y = 0; y < sizeY; y++) {
+                        final byte[] column = grid[x][y];
+                        // each run is a value and how many times it repeats, up to 65535
+                        for (int z = 0; z < sizeZ; ) {
+                            final byte value = column[z];
+                            int end = z + 1;
+                            while (end < sizeZ && column[end] == value && end - z < 0xFFFF)
+                                end++;
+                            out.writeByte(value);
+                            out.writeShort(end - z);
+                            z = end;
+                        }
+                    }
+                }
+            }
+            out.writeInt(model.links.size());
+            for (IntObjectMap<float[]> links : model.links) {
+                out.writeInt(links.size());
+                for (IntObjectMap.Entry<float[]> e : links) {
+                    out.writeInt(e.key);
+                    out.writeFloat(e.value[0]);
+                    out.writeFloat(e.value[1]);
+                    out.writeFloat(e.value[2]);
+                    out.writeFloat(e.value[3]);
+                }
+            }
+            out.writeInt(model.markers.size());
+            for (IntObjectMap<LongOrderedSet> markers : model.markers) {
+                out.writeInt(markers.size());
+                for (IntObjectMap.Entry<LongOrderedSet> e : markers) {
+                    out.writeInt(e.key);
+                    final LongList order = e.value.order();
+                    out.writeInt(order.size());
+                    for (int i = 0; i < order.size(); i++) {
+                        out.writeLong(order.get(i));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        } finally {
+            deflater.end();
+        }
+        try {
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // another thread may have the old file open; the next load will try again
+            e.printStackTrace();
+            temp.delete();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "VoxCache{" + (directory == null ? "next to sources" : directory) + ", " + hits + " hits, " + misses + " misses}";
+    }
+}
@@ -4,16 +4,17 @@ import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
 import com.github.tommyettinger.ds.IntObjectMap;
 import com.github.tommyettinger.ds.LongOrderedSet;
-import com.github.tommyettinger.ds.support.util.IntIterator;
 import com.github.yellowstonegames.core.StringTools;
 import isonomicon.io.LittleEndianDataInputStream;
+import isonomicon.io.VoxIO;
 import isonomicon.physical.Tools3D;
 import isonomicon.physical.VoxMaterial;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 
 import static com.github.tommyettinger.digital.TrigTools.cosTurns;
@@ -54,10 +55,16 @@ public class VoxIOExtended {
     public static int maxZ;
 
     protected static String readString(LittleEndianDataInputStream stream) throws IOException {
-        int len = stream.readInt();
-        byte[] buf = new byte[len];
-        stream.read(buf, 0, len);
-        return new String(buf, StandardCharsets.ISO_8859_1);
+        return stream.readString();
+    }
+    protected static String[][] readStringPairs(ByteBuffer b) {
+        int len = b.getInt();
+        String[][] pairs = new String[len][2];
+        for (int i = 0; i < len; i++) {
+            pairs[i][0] = VoxIO.readString(b);
+            pairs[i][1] = VoxIO.readString(b);
+        }
+        return pairs;
     }
     protected static String[][] readStringPairs(LittleEndianDataInputStream stream) throws IOException {
         int len = stream.readInt();
@@ -140,18 +147,15 @@ public class VoxIOExtended {
 
         try {
             byte[] chunkId = new byte[4];
-            if (4 != stream.read(chunkId))
+            if (!stream.readFullyOrEnd(chunkId))
                 return null;
             //int version = 
             stream.readInt();
             int sizeX = 16, sizeY = 16, size = 16, sizeZ = 16, offX = 0, offY = 0;
-            byte[] key = new byte[6]; // used for MaterialTrait
-            byte[] val = new byte[10]; // used for MaterialType and numbers
             // a MagicaVoxel .vox file starts with a 'magic' 4 character 'VOX ' identifier
             if (chunkId[0] == 'V' && chunkId[1] == 'O' && chunkId[2] == 'X' && chunkId[3] == ' ') {
-                while (stream.available() > 0) {
-                    // each chunk has an ID, size and child chunks
-                    stream.read(chunkId);
+                // each chunk has an ID, size and child chunks
+                while (stream.readFullyOrEnd(chunkId)) {
                     int chunkSize = stream.readInt();
                     //int childChunks = 
                     stream.readInt();
@@ -183,12 +187,13 @@ public class VoxIOExtended {
 
                         IntObjectMap<float[]> linkage = new IntObjectMap<>(8);
                         IntObjectMap<LongOrderedSet> markers = new IntObjectMap<>(8);
-                        // each voxel has x, y, z and color index values
-                        for (int i = 0; i < numVoxels; i++) {
-                            int x = stream.read() + offX;
-                            int y = stream.read() + offY;
-                            int z = stream.read();
-                            byte color = stream.readByte();
+                        // each voxel has x, y, z and color index values, and the whole chunk is read at once
+                        final byte[] data = stream.readBulk(numVoxels << 2);
+                        for (int i = 0, p = 0; i < numVoxels; i++, p += 4) {
+                            int x = (data[p] & 255) + offX;
+                            int y = (data[p + 1] & 255) + offY;
+                            int z = data[p + 2] & 255;
+                            byte color = data[p + 3];
 
                             //If you are using this as a general .vox parser, use the following line only:
                             if(GENERAL)
@@ -247,25 +252,22 @@ public class VoxIOExtended {
                             model.markers.add(markers);
                         }
                     } else if (chunkName.equals("RGBA")) {
-                        for (int i = 1; i < 256; i++) {
-                            lastPalette[i] = Integer.reverseBytes(stream.readInt());
+                        // the 256th color is read but unused, since index 0 is always transparent
+                        final byte[] data = stream.readBulk(1024);
+                        for (int i = 1, p = 0; i < 256; i++, p += 4) {
+                            lastPalette[i] = (data[p] & 255) << 24 | (data[p + 1] & 255) << 16 | (data[p + 2] & 255) << 8 | (data[p + 3] & 255);
                         }
                         System.arraycopy(lastPalette, 0, model.palette, 0, 256);
-                        stream.readInt();
                     } else if(USE_MATERIALS && chunkName.equals("MATL")){ // remove this block if you don't handle materials
                         int materialID = stream.readInt();
                         int dictSize = stream.readInt();
                         for (int i = 0; i < dictSize; i++) {
-                            int keyLen = stream.readInt();
-                            stream.read(key, 0, keyLen);
-                            int valLen = stream.readInt();
-                            stream.read(val, 0, valLen);
+                            String ks = stream.readString();
+                            String vs = stream.readString();
                             VoxMaterial vm;
                             if ((vm = lastMaterials.getOrDefault(materialID, null)) == null) {
                                 lastMaterials.put(materialID, vm = new VoxMaterial());
                             }
-                            String ks = new String(key, 0, keyLen, StandardCharsets.ISO_8859_1);
-                            String vs = new String(val, 0, valLen, StandardCharsets.ISO_8859_1);
                             vm.putTrait(ks, vs);
                         }
                     } else if (chunkName.equals("nTRN")) {
@@ -330,6 +332,301 @@ public class VoxIOExtended {
 //            }
 //        }
         model.materials.putAll(lastMaterials);
+        model.minX = minX;
+        model.minY = minY;
+        model.minZ = minZ;
+        model.maxX = maxX;
+        model.maxY = maxY;
+        model.maxZ = maxZ;
+        return model;
+    }
+
+    /**
+     * Reads a .vox file by memory-mapping it and calling {@link #readVox(ByteBuffer)}.
+     * @param path the path to a .vox file
+     * @return the VoxModel in the file, or null if it couldn't be read
+     * @throws FileNotFoundException if there is no file at {@code path}
+     */
+    public static VoxModel readVoxFile(String path) throws FileNotFoundException {
+        try {
+            return readVox(VoxIO.mapFile(path));
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads a .vox file by memory-mapping it and calling {@link #readVox(ByteBuffer, VoxLoadOptions)}. This doesn't
+     * read or write any static state, so it can be called from many threads at once.
+     * @param path the path to a .vox file
+     * @param options how to load the model; {@link VoxLoadOptions#SPECIALIZED} or {@link VoxLoadOptions#GENERAL} are
+     *                the usual choices
+     * @return the VoxModel in the file, or null if it couldn't be read
+     * @throws FileNotFoundException if there is no file at {@code path}
+     */
+    public static VoxModel readVoxFile(String path, VoxLoadOptions options) throws FileNotFoundException {
+        try {
+            return readVox(VoxIO.mapFile(path), options);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads all of a stream and calls {@link #readVox(ByteBuffer, VoxLoadOptions)} on its bytes. This doesn't read or
+     * write any static state, so it can be called from many threads at once (on different streams).
+     * @param stream an InputStream over a .vox file; will be read to its end but not closed
+     * @param options how to load the model
+     * @return the VoxModel in the stream, or null if it couldn't be read
+     */
+    public static VoxModel readVox(InputStream stream, VoxLoadOptions options) {
+        try {
+            return readVox(ByteBuffer.wrap(stream.readAllBytes()), options);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads a .vox file's contents from a ByteBuffer, such as one from {@link VoxIO#mapFile(String)} or
+     * {@link ByteBuffer#wrap(byte[])}, using the current values of {@link #GENERAL}, {@link #SCALE}, {@link #SOAK},
+     * and {@link #USE_MATERIALS}. This produces the same VoxModel as {@link #readVox(LittleEndianDataInputStream)}, and
+     * also sets {@link VoxIO#lastPalette}, {@link VoxIO#lastMaterials}, and {@link #minX} and the other bounds the same
+     * way. Because of those static fields, this isn't safe to call from more than one thread at a time; use
+     * {@link #readVox(ByteBuffer, VoxLoadOptions)} for that.
+     * @param buffer the bytes of a .vox file, from its position to its limit
+     * @return the VoxModel in the file, or null if it isn't a .vox file
+     */
+    public static VoxModel readVox(ByteBuffer buffer) {
+        lastMaterials.clear();
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        minZ = Integer.MAX_VALUE;
+        maxX = 0;
+        maxY = 0;
+        maxZ = 0;
+        VoxModel model = readVox(buffer, VoxLoadOptions.current());
+        if (model == null)
+            return null;
+        System.arraycopy(model.palette, 1, lastPalette, 1, 255);
+        lastMaterials.putAll(model.materials);
+        minX = model.minX;
+        minY = model.minY;
+        minZ = model.minZ;
+        maxX = model.maxX;
+        maxY = model.maxY;
+        maxZ = model.maxZ;
+        return model;
+    }
+
+    /**
+     * Reads a .vox file's contents from a ByteBuffer, such as one from {@link VoxIO#mapFile(String)} or
+     * {@link ByteBuffer#wrap(byte[])}. This produces the same VoxModel as {@link #readVox(LittleEndianDataInputStream)},
+     * but compares chunk IDs as ints (see {@link VoxIO#chunkId(String)}) and reads each XYZI chunk with absolute gets
+     * instead of four calls per voxel, so it is much faster. The buffer is always read as little-endian, starting at
+     * its position, and its position and order are not changed.
+     * <br>
+     * Unlike the other readVox methods, this doesn't use or change any static fields. The palette, materials, and
+     * bounds that those store in {@link VoxIO#lastPalette}, {@link VoxIO#lastMaterials}, and {@link #minX} (and so
+     * on) are instead stored in the returned model's {@link VoxModel#palette}, {@link VoxModel#materials}, and
+     * {@link VoxModel#minX} (and so on). Any number of threads can load models with this at once, and each model is
+     * the same as if it was loaded alone.
+     * @param buffer the bytes of a .vox file, from its position to its limit
+     * @param options how to load the model; {@link VoxLoadOptions#SPECIALIZED} or {@link VoxLoadOptions#GENERAL} are
+     *                the usual choices
+     * @return the VoxModel in the file, or null if it isn't a .vox file
+     */
+    public static VoxModel readVox(ByteBuffer buffer, VoxLoadOptions options) {
+        return readVox(buffer, options, null);
+    }
+
+    /**
+     * Does the work for {@link #readVox(ByteBuffer, VoxLoadOptions)}, optionally taking the grids, links, and markers
+     * from {@code processed} instead of reading the voxels in each XYZI chunk and scaling and soaking them. This is
+     * how {@link VoxCache} skips the slow part of loading while still reading everything else from the .vox file.
+     * @param buffer the bytes of a .vox file, from its position to its limit
+     * @param options how to load the model; should be the same options that {@code processed} was loaded with
+     * @param processed if non-null, a model with one grid (and, unless {@link VoxLoadOptions#general}, one links map
+     *                  and one markers map) for each XYZI chunk in the file, already processed for {@code options}
+     * @return the VoxModel in the file, or null if it isn't a .vox file
+     */
+    protected static VoxModel readVox(ByteBuffer buffer, VoxLoadOptions options, VoxModel processed) {
+        final ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final boolean general = options.general;
+        VoxModel model = new VoxModel();
+        byte[][][] voxelData = null;
+        IntObjectMap<ShapeModel> shapes = new IntObjectMap<>(8);
+        TransformChunk latest = null;
+
+        try {
+            if (b.remaining() < 8 || b.getInt() != VoxIO.VOX_)
+                return null;
+            //int version =
+            b.getInt();
+            int sizeX, sizeY, size, sizeZ = 16, offX = 0, offY = 0;
+            while (b.remaining() >= 12) {
+                // each chunk has an ID, size and child chunks
+                final int chunkId = b.getInt(), chunkSize = b.getInt();
+                //int childChunks =
+                b.getInt();
+                final int end = b.position() + chunkSize;
+                if (chunkId == VoxIO.SIZE) {
+                    sizeX = b.getInt();
+                    sizeY = b.getInt();
+                    sizeZ = b.getInt();
+                    size = Math.max(sizeZ, Math.max(sizeX, sizeY));
+                    offX = size - sizeX >> 1;
+                    offY = size - sizeY >> 1;
+                    voxelData = processed == null ? new byte[size][size][size] : null;
+                } else if (chunkId == VoxIO.XYZI && (voxelData != null || processed != null)) {
+                    // XYZI contains n voxels
+                    final int numVoxels = b.getInt();
+
+                    ShapeModel shp = shapes.get(model.grids.size());
+                    if(shp == null) {
+                        shp = new ShapeModel(model.grids.size(), new String[0][0]);
+                        shapes.put(model.grids.size(), shp);
+                    }
+                    shp.minX = Integer.MAX_VALUE;
+                    shp.minY = Integer.MAX_VALUE;
+                    shp.minZ = Integer.MAX_VALUE;
+                    shp.maxX = 0;
+                    shp.maxY = 0;
+                    shp.maxZ = 0;
+
+                    IntObjectMap<float[]> linkage;
+                    IntObjectMap<LongOrderedSet> markers;
+                    if (processed != null) {
+                        // the voxels were already read, scaled, and soaked, so we can skip all that
+                        final int index = model.grids.size();
+                        voxelData = processed.grids.get(index);
+                        linkage = general ? null : processed.links.get(index);
+                        markers = general ? null : processed.markers.get(index);
+                    } else {
+                        linkage = new IntObjectMap<>(8);
+                        markers = new IntObjectMap<>(8);
+                        // each voxel has x, y, z and color index values
+                        for (int i = 0, p = b.position(); i < numVoxels; i++, p += 4) {
+                            final int x = (b.get(p) & 255) + offX;
+                            final int y = (b.get(p + 1) & 255) + offY;
+                            final int z = b.get(p + 2) & 255;
+                            final byte color = b.get(p + 3);
+                            // the last 64 indices are used for link markers in Isonomicon's special models, and don't show.
+                            if (general || (color & 0xC0) != 0xC0) {
+                                voxelData[x][y][z] = color;
+                            } else {
+                                float[] ln;
+                                if ((ln = linkage.get(color)) == null) {
+                                    linkage.put(color, new float[]{x, y, z, 1f});
+                                } else {
+                                    ln[0] += x;
+                                    ln[1] += y;
+                                    ln[2] += z;
+                                    ln[3]++;
+                                }
+                                LongOrderedSet ls;
+                                if ((ls = markers.get(color & 255)) == null) {
+                                    markers.put(color & 255, ls = new LongOrderedSet(16));
+                                }
+                                ls.add(((x & 0xFFFFFL) | (y & 0xFFFFFL) << 20 | (z & 0xFFFFFL) << 40) << 1);
+                            }
+                        }
+                        if(options.scale){
+                            if(options.soak)
+                                voxelData = Tools3D.scaleAndSoak(voxelData);
+                            else
+                                voxelData = Tools3D.simpleScale(voxelData);
+                        } else {
+                            if(options.soak)
+                                Tools3D.soakInPlace(voxelData);
+                        }
+                    }
+                    model.grids.add(voxelData);
+                    shp.minX = Math.min(shp.minX, 0);
+                    shp.minY = Math.min(shp.minY, 0);
+                    shp.minZ = Math.min(shp.minZ, 0);
+                    shp.maxX = Math.max(shp.maxX, voxelData.length - 1);
+                    shp.maxY = Math.max(shp.maxY, voxelData[0].length - 1);
+                    shp.maxZ = Math.max(shp.maxZ, voxelData[0][0].length - 1);
+
+                    if (!general) {
+                        if (processed == null) {
+                            for (IntObjectMap.Entry<float[]> e : linkage) {
+                                float div = 2f / e.value[3];
+                                e.value[0] *= div;
+                                e.value[1] *= div;
+                                e.value[2] *= div;
+                            }
+                        }
+                        model.links.add(linkage);
+                        model.markers.add(markers);
+                    }
+                } else if (chunkId == VoxIO.RGBA) {
+                    for (int i = 1; i < 256; i++) {
+                        model.palette[i] = Integer.reverseBytes(b.getInt());
+                    }
+                } else if (options.useMaterials && chunkId == VoxIO.MATL) {
+                    VoxIO.readMaterial(b, model.materials);
+                } else if (chunkId == VoxIO.nTRN) {
+                    int chunkID = b.getInt();
+                    String[][] attributes = readStringPairs(b);
+                    int childID = b.getInt();
+                    int reservedID = b.getInt();
+                    int layerID = b.getInt();
+                    int frameCount = b.getInt();
+                    String[][][] frames = new String[frameCount][][];
+                    for (int i = 0; i < frameCount; i++) {
+                        frames[i] = readStringPairs(b);
+                    }
+                    latest = new TransformChunk(chunkID, attributes, childID, reservedID, layerID, frames);
+                    latest.translation.z -= sizeZ * 0.5f;
+                    model.transformChunks.put(chunkID, latest);
+                } else if (chunkId == VoxIO.nGRP) {
+                    int chunkID = b.getInt();
+                    String[][] attributes = readStringPairs(b);
+                    int childCount = b.getInt();
+                    int[] childIds = new int[childCount];
+                    for (int i = 0; i < childCount && b.position() + 4 <= end; i++) {
+                        childIds[i] = b.getInt();
+                    }
+                    model.groupChunks.put(chunkID, new GroupChunk(chunkID, attributes, childIds));
+                } else if (chunkId == VoxIO.nSHP) {
+                    int chunkID = b.getInt();
+                    String[][] attributes = readStringPairs(b);
+                    int modelCount = b.getInt();
+                    ShapeModel[] models = new ShapeModel[modelCount];
+                    for (int i = 0; i < modelCount; i++) {
+                        int shapeID = b.getInt();
+                        String[][] ps = readStringPairs(b);
+                        if(shapes.containsKey(shapeID))
+                            models[i] = shapes.get(shapeID);
+                        else
+                            models[i] = new ShapeModel(shapeID, ps);
+                        models[i].offsetX = Math.round(latest.translation.x);
+                        models[i].offsetY = Math.round(latest.translation.y);
+                        models[i].offsetZ = Math.round(latest.translation.z);
+                        model.minX = Math.min(model.minX, models[i].minX + models[i].offsetX);
+                        model.minY = Math.min(model.minY, models[i].minY + models[i].offsetY);
+                        model.minZ = Math.min(model.minZ, models[i].minZ + models[i].offsetZ);
+                        model.maxX = Math.max(model.maxX, models[i].maxX + models[i].offsetX);
+                        model.maxY = Math.max(model.maxY, models[i].maxY + models[i].offsetY);
+                        model.maxZ = Math.max(model.maxZ, models[i].maxZ + models[i].offsetZ);
+                    }
+                    model.shapeChunks.put(chunkID, new ShapeChunk(chunkID, attributes, models));
+                }
+                // skips any bytes the chunk has that we didn't read
+                b.position(end);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
         return model;
     }
 
@@ -449,111 +746,40 @@ public class VoxIOExtended {
     }
 
 
-    private static void writeInt(DataOutputStream bin, int value) throws IOException
-    {
-        bin.writeInt(Integer.reverseBytes(value));
-    }
-
     public static void writeVOX(String filename, byte[][][] voxelData, int[] palette) {
         writeVOX(filename, voxelData, palette, null);
     }
 
+    /**
+     * Writes one grid as a .vox file, using {@link VoxWriter#local()}.
+     * @param filename where to write; parent directories will be created if needed
+     * @param voxelData a 3D byte array of palette indices; each side must be at most 256
+     * @param palette up to 256 RGBA8888 colors; index 0 is ignored, and missing colors come from {@link VoxIO#lastPalette}
+     * @param materials may be null; otherwise, the materials to write, by palette index
+     */
     public static void writeVOX(String filename, byte[][][] voxelData, int[] palette, IntObjectMap<VoxMaterial> materials) {
-        // check out https://github.com/ephtracy/voxel-model/blob/master/MagicaVoxel-file-format-vox.txt for the file format used below
-        try {
-            int xSize = voxelData.length, ySize = voxelData[0].length, zSize = voxelData[0][0].length;
-            Files.createDirectories(Path.of(filename).getParent());
-            FileOutputStream fos = new FileOutputStream(filename);
-            DataOutputStream bin = new DataOutputStream(fos);
-            ByteArrayOutputStream voxelsRaw = new ByteArrayOutputStream(0);
-            int cc;
-            for (int x = 0; x < xSize; x++) {
-                for (int y = 0; y < ySize; y++) {
-                    for (int z = 0; z < zSize; z++) {
-                        cc = voxelData[x][y][z];
-                        if(cc == 0) continue;
-                        voxelsRaw.write(x);
-                        voxelsRaw.write(y);
-                        voxelsRaw.write(z);
-                        voxelsRaw.write(cc);
-                    }
-                }
-            }
+        VoxWriter.local().write(filename, voxelData, palette, materials);
+    }
 
-            // a MagicaVoxel .vox file starts with a 'magic' 4 character 'VOX ' identifier
-            bin.writeBytes("VOX ");
-            // current version
-            writeInt(bin, 150);
-
-            bin.writeBytes("MAIN");
-            writeInt(bin, 0);
-            writeInt(bin, 12 + 12 + 12 + 4 + voxelsRaw.size() + 12 + 1024);
-
-            bin.writeBytes("SIZE");
-            writeInt(bin, 12);
-            writeInt(bin, 0);
-            writeInt(bin, xSize);
-            writeInt(bin, ySize);
-            writeInt(bin, zSize);
-
-            bin.writeBytes("XYZI");
-            writeInt(bin, 4 + voxelsRaw.size());
-            writeInt(bin, 0);
-            writeInt(bin, voxelsRaw.size() >> 2);
-            bin.write(voxelsRaw.toByteArray());
-
-            bin.writeBytes("RGBA");
-            writeInt(bin, 1024);
-            writeInt(bin, 0);
-            int i = 1;
-            for (; i < 256 && i < palette.length; i++) {
-                bin.writeInt(palette[i]);
-            }
-            // if the palette is smaller than 256 colors, this fills the rest with lastPalette's colors
-            for (; i < 256; i++) {
-                bin.writeInt(lastPalette[i]);
-            }
-            writeInt(bin,  0);
-            if(materials != null && materials.notEmpty()) {
-                ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
-                DataOutputStream dos = new DataOutputStream(bytes);
-                for(IntObjectMap.Entry<VoxMaterial> ent : materials) {
-                    bin.writeBytes("MATL");
-                    dos.flush();
-                    bytes.reset();
-                    // here we write to dos, which writes to bytes, so we know the length of the chunk.
-                    writeInt(dos, ent.key);
-                    writeInt(dos, ent.value.traits.size() + 1);
-                    writeInt(dos, 5);
-                    dos.writeBytes("_type");
-                    String term = ent.value.type.name();
-                    writeInt(dos, term.length());
-                    dos.writeBytes(term);
-                    IntIterator it = ent.value.traits.keySet().iterator();
-                    for(int k; it.hasNext();) {
-                        k = it.nextInt();
-                        if(k > 9) continue;
-                        VoxMaterial.MaterialTrait mt = VoxMaterial.ALL_TRAITS[k];
-                        float v = ent.value.traits.get(k);
-                        term = mt.name();
-                        writeInt(dos, term.length());
-                        dos.writeBytes(term);
-                        term = Float.toString(v);
-                        if(term.length() > 8) term = term.substring(0, 8);
-                        writeInt(dos, term.length());
-                        dos.writeBytes(term);
-                    }
-                    writeInt(bin, bytes.size());
-                    writeInt(bin, 0);
-                    bytes.writeTo(bin);
-                }
-            }
-            bin.flush();
-            bin.close();
-            fos.flush();
-            fos.close();
-        }catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Writes every grid in {@code model} as one .vox file, with its scene graph, palette, and materials, using
+     * {@link VoxWriter#local()}.
+     * @param filename where to write; parent directories will be created if needed
+     * @param model a VoxModel with at least one grid, each at most 256 on a side
+     */
+    public static void writeVOX(String filename, VoxModel model) {
+        VoxWriter.local().write(filename, model);
+    }
+
+    /**
+     * Writes every frame of an animation, such as one from {@link isonomicon.physical.EffectGenerator}, as one .vox
+     * file with a keyframe for each frame, using {@link VoxWriter#local()}.
+     * @param filename where to write; parent directories will be created if needed
+     * @param frames the VoxModels for each frame, in order; only their grids are used
+     * @param palette up to 256 RGBA8888 colors; index 0 is ignored
+     * @param materials may be null; otherwise, the materials to write, by palette index
+     */
+    public static void writeVOX(String filename, VoxModel[] frames, int[] palette, IntObjectMap<VoxMaterial> materials) {
+        VoxWriter.local().writeAnimation(filename, frames, palette, materials);
     }
 }
@@ -0,0 +1,76 @@
+package isonomicon.io.extended;
+
+/**
+ * The settings for loading a .vox file with {@link VoxIOExtended#readVox(java.nio.ByteBuffer, VoxLoadOptions)}, as
+ * one immutable object instead of the static flags in {@link VoxIOExtended}. Because nothing here can change and the
+ * loader that takes this doesn't touch any static state, any number of threads can load models at once with the same
+ * or different options, and always get the same results.
+ */
+public class VoxLoadOptions {
+    /**
+     * If true, this is used as a general-purpose .vox loader, and the last 64 palette indices are treated as normal
+     * voxels. If false, those indices are link markers for Isonomicon's specialized models, and fill
+     * {@link VoxModel#links} and {@link VoxModel#markers} instead of showing up.
+     */
+    public final boolean general;
+    /**
+     * If true, every grid is scaled up by a factor of 2.
+     */
+    public final boolean scale;
+    /**
+     * If true, every grid is soaked after loading (and after scaling, if {@link #scale} is true).
+     */
+    public final boolean soak;
+    /**
+     * If false, MATL chunks are ignored; useful for old or incorrectly-made models.
+     */
+    public final boolean useMaterials;
+
+    /**
+     * For Isonomicon's specialized models: not general, scaled, soaked, and using materials. These are the initial
+     * values of the static flags in {@link VoxIOExtended}.
+     */
+    public static final VoxLoadOptions SPECIALIZED = new VoxLoadOptions(false, true, true, true);
+    /**
+     * For any .vox model: general, scaled, soaked, and using materials.
+     */
+    public static final VoxLoadOptions GENERAL = new VoxLoadOptions(true, true, true, true);
+
+    public VoxLoadOptions() {
+        this(false, true, true, true);
+    }
+
+    public VoxLoadOptions(boolean general, boolean scale, boolean soak, boolean useMaterials) {
+        this.general = general;
+        this.scale = scale;
+        this.soak = soak;
+        this.useMaterials = useMaterials;
+    }
+
+    /**
+     * Gets options with the current values of {@link VoxIOExtended#GENERAL}, {@link VoxIOExtended#SCALE},
+     * {@link VoxIOExtended#SOAK}, and {@link VoxIOExtended#USE_MATERIALS}.
+     * @return a new VoxLoadOptions matching the static flags right now
+     */
+    public static VoxLoadOptions current() {
+        return new VoxLoadOptions(VoxIOExtended.GENERAL, VoxIOExtended.SCALE, VoxIOExtended.SOAK, VoxIOExtended.USE_MATERIALS);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        VoxLoadOptions that = (VoxLoadOptions) o;
+        return general == that.general && scale == that.scale && soak == that.soak && useMaterials == that.useMaterials;
+    }
+
+    @Override
+    public int hashCode() {
+        return (general ? 1 : 0) | (scale ? 2 : 0) | (soak ? 4 : 0) | (useMaterials ? 8 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "VoxLoadOptions{general=" + general + ", scale=" + scale + ", soak=" + soak + ", useMaterials=" + useMaterials + '}';
+    }
+}
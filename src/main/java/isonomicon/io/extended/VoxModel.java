@@ -3,8 +3,12 @@ package isonomicon.io.extended;
 import com.github.tommyettinger.ds.IntObjectMap;
 import com.github.tommyettinger.ds.LongOrderedSet;
 import isonomicon.io.VoxIO;
+import isonomicon.physical.Stuff;
+import isonomicon.physical.SurfaceVoxels;
 import isonomicon.physical.Tools3D;
 import isonomicon.physical.VoxMaterial;
+import isonomicon.physical.VoxelGrid;
+import isonomicon.physical.VoxelOccupancy;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -21,6 +25,35 @@ public class VoxModel {
     public IntObjectMap<TransformChunk> transformChunks;
     public IntObjectMap<GroupChunk> groupChunks;
     public IntObjectMap<ShapeChunk> shapeChunks;
+    /**
+     * The bounds of all shapes in this model, after their transforms, as found when the model was loaded by
+     * {@link VoxIOExtended#readVox(java.nio.ByteBuffer, VoxLoadOptions)} or another readVox method. The min fields are
+     * {@link Integer#MAX_VALUE} and the max fields are 0 if the model had no nSHP chunks.
+     */
+    public int minX = Integer.MAX_VALUE, maxX, minY = Integer.MAX_VALUE, maxY, minZ = Integer.MAX_VALUE, maxZ;
+    /**
+     * Goes up by one each time {@link #modified()} is called, which must happen whenever a grid in {@link #grids} is
+     * changed in place, such as by {@link #evolve(Stuff[], int)} or {@link #damage(Stuff[], float)}. Replacing a grid
+     * in {@link #grids} with a different array doesn't need this. The cached results of {@link #occupancy(int, Stuff[])},
+     * {@link #surface(int, Stuff[])}, and {@link #gridHash()} are only rebuilt when this or a grid's identity has
+     * changed, so nothing is hashed just to check if they are up to date.
+     */
+    public int version;
+    /**
+     * Cached results of {@link #occupancy(int, Stuff[])} and {@link #surface(int, Stuff[])}, by grid index; may
+     * contain nulls.
+     */
+    protected final ArrayList<CachedSurface> surfaces = new ArrayList<>(1);
+    /**
+     * The grids that {@link #gridHash} was computed from, in order; null until {@link #gridHash()} is first called.
+     */
+    protected byte[][][][] hashedGrids;
+    protected int hashedVersion;
+    protected long gridHash;
+    /**
+     * Cached result of {@link #assembly()}; may be null.
+     */
+    protected Assembly assembly;
     public VoxModel(){
         palette = Arrays.copyOf(VoxIO.defaultPalette, 256);
         grids = new ArrayList<>(1);
@@ -62,6 +95,135 @@ public class VoxModel {
 
     }
 
+    /**
+     * Gets the occupancy masks of the grid at {@code index}, using {@link SurfaceVoxels#openTable(Stuff[])} as the
+     * clear table, so a voxel is only {@link VoxelOccupancy#opaque} if it always hides what's behind it when drawn.
+     * There is one VoxelOccupancy per grid, which is kept from call to call; if the grid was changed in place since the
+     * last call (and {@link #modified()} was called), the same VoxelOccupancy is refreshed from the grid instead of
+     * making a new one. This is safe to call from multiple threads on the same VoxModel, as long as nothing is editing
+     * the grids at the same time.
+     * @param index which grid to use, as an index into {@link #grids}
+     * @param stuffs the Stuff array the renderer uses, such as {@link Stuff#STUFFS_B}
+     * @return the VoxelOccupancy for the grid at {@code index}, up-to-date; its grid is a copy, so don't change it
+     */
+    public synchronized VoxelOccupancy occupancy(int index, Stuff[] stuffs) {
+        return update(index, stuffs).occupancy;
+    }
+
+    /**
+     * Gets the visible voxels of the grid at {@code index}, building them from {@link #occupancy(int, Stuff[])} only
+     * if that grid was replaced, the Stuff array is different, or {@link #modified()} was called since the last call.
+     * This is safe to call from multiple threads on the same VoxModel, as long as nothing is editing the grids at the
+     * same time.
+     * @param index which grid to use, as an index into {@link #grids}
+     * @param stuffs the Stuff array the renderer uses, such as {@link Stuff#STUFFS_B}
+     * @return the SurfaceVoxels for the grid at {@code index}, either cached or newly-built
+     */
+    public synchronized SurfaceVoxels surface(int index, Stuff[] stuffs) {
+        final CachedSurface c = update(index, stuffs);
+        if (c.surface == null)
+            c.surface = new SurfaceVoxels(c.occupancy, stuffs);
+        return c.surface;
+    }
+
+    /**
+     * Brings the cache for the grid at {@code index} up to date, refreshing its VoxelOccupancy if the grid changed.
+     * If it did, the SurfaceVoxels is dropped, to be rebuilt by {@link #surface(int, Stuff[])} if needed.
+     */
+    protected CachedSurface update(int index, Stuff[] stuffs) {
+        final byte[][][] grid = grids.get(index);
+        while (surfaces.size() <= index)
+            surfaces.add(null);
+        CachedSurface c = surfaces.get(index);
+        if (c == null)
+            surfaces.set(index, c = new CachedSurface());
+        if (c.grid == grid && c.version == version && c.stuffs == stuffs)
+            return c;
+        final VoxelOccupancy o = c.occupancy;
+        if (o != null && c.stuffs == stuffs && o.grid.sizeX == grid.length && o.grid.sizeY == grid[0].length
+                && o.grid.sizeZ == grid[0][0].length)
+            o.set(grid);
+        else
+            c.occupancy = new VoxelOccupancy(new VoxelGrid(grid), SurfaceVoxels.openTable(stuffs));
+        c.grid = grid;
+        c.version = version;
+        c.stuffs = stuffs;
+        c.surface = null;
+        return c;
+    }
+
+    /**
+     * Gets a hash of the contents of every grid, in order, using {@link Tools3D#hash64(byte[][][])}. This is only
+     * computed again if a grid was added, removed, or replaced, or if {@link #modified()} was called since the last
+     * call; otherwise it just compares the grids by identity.
+     * @return a 64-bit hash of all the grids
+     */
+    public synchronized long gridHash() {
+        final int n = grids.size();
+        boolean same = hashedGrids != null && hashedGrids.length == n && hashedVersion == version;
+        for (int i = 0; same && i < n; i++) {
+            same = hashedGrids[i] == grids.get(i);
+        }
+        if (!same) {
+            hashedGrids = grids.toArray(new byte[n][][][]);
+            hashedVersion = version;
+            long h = n;
+            for (int i = 0; i < n; i++) {
+                h = h * 0xF1357AEA2E62A9C5L + Tools3D.hash64(hashedGrids[i]);
+            }
+            gridHash = h ^ h >>> 31;
+        }
+        return gridHash;
+    }
+
+    /**
+     * Marks every grid as changed, so {@link #surface(int, Stuff[])} and {@link #gridHash()} will rebuild what they
+     * cache. Call this after editing any grid in place.
+     * @return this, for chaining
+     */
+    public synchronized VoxModel modified() {
+        version++;
+        return this;
+    }
+
+    /**
+     * Calls {@link Stuff#evolve(Stuff[], byte[][][], int)} on every grid, then {@link #modified()}.
+     * @param stuffs the Stuff array to evolve with, such as {@link Stuff#STUFFS_B}
+     * @param frame the frame to evolve to
+     * @return this, for chaining
+     */
+    public VoxModel evolve(Stuff[] stuffs, int frame) {
+        for (int j = 0; j < grids.size(); j++) {
+            Stuff.evolve(stuffs, grids.get(j), frame);
+        }
+        return modified();
+    }
+
+    /**
+     * Calls {@link Stuff#damage(Stuff[], byte[][][], float)} on every grid, then {@link #modified()}.
+     * @param stuffs the Stuff array to damage with, such as {@link Stuff#STUFFS_B}
+     * @param amount how much damage to do
+     * @return this, for chaining
+     */
+    public VoxModel damage(Stuff[] stuffs, float amount) {
+        for (int j = 0; j < grids.size(); j++) {
+            Stuff.damage(stuffs, grids.get(j), amount);
+        }
+        return modified();
+    }
+
+    /**
+     * Gets the attachment tree for this model's parts, building it only if {@link #links} (or the number of grids) has
+     * changed since the last call. This is safe to call from multiple threads on the same VoxModel, as long as nothing
+     * is editing the links at the same time.
+     * @return the Assembly for this model's current links, either cached or newly-built
+     */
+    public synchronized Assembly assembly() {
+        if (assembly == null || !assembly.matches(links, grids.size()))
+            assembly = new Assembly(links, grids.size());
+        return assembly;
+    }
+
     public VoxModel mergeWith(VoxModel other) {
         grids.addAll(other.grids);
         links.addAll(other.links);
@@ -95,6 +257,32 @@ public class VoxModel {
             nextMarkers.add(ms);
         }
         next.markers = nextMarkers;
+        // materials and chunks are never changed after loading, so the copy can share the values
+        next.materials = new IntObjectMap<>(materials);
+        next.transformChunks = new IntObjectMap<>(transformChunks);
+        next.groupChunks = new IntObjectMap<>(groupChunks);
+        next.shapeChunks = new IntObjectMap<>(shapeChunks);
+        next.minX = minX;
+        next.maxX = maxX;
+        next.minY = minY;
+        next.maxY = maxY;
+        next.minZ = minZ;
+        next.maxZ = maxZ;
         return next;
     }
+
+    /**
+     * The VoxelOccupancy and SurfaceVoxels for one grid, along with the grid array, {@link #version}, and Stuff array
+     * they were built from.
+     */
+    protected static class CachedSurface {
+        public byte[][][] grid;
+        public int version;
+        public Stuff[] stuffs;
+        public VoxelOccupancy occupancy;
+        /**
+         * May be null if only the occupancy has been needed since the grid last changed.
+         */
+        public SurfaceVoxels surface;
+    }
 }
@@ -0,0 +1,507 @@
+package isonomicon.io.extended;
+
+import com.github.tommyettinger.ds.IntObjectMap;
+import com.github.tommyettinger.ds.support.util.IntIterator;
+import isonomicon.io.VoxIO;
+import isonomicon.physical.VoxMaterial;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes .vox files through a reusable direct ByteBuffer into a {@link FileChannel}, without building any part of the
+ * file on the heap first. This can write a single grid (like {@link VoxIOExtended#writeVOX(String, byte[][][], int[])}
+ * did before it used this), every grid in a {@link VoxModel} with its nTRN/nGRP/nSHP scene graph, or a whole
+ * animation from an array of VoxModels, such as the ones {@link isonomicon.physical.EffectGenerator} produces.
+ * <br>
+ * A VoxWriter isn't thread-safe, but {@link #local()} gives each thread its own, so the static writeVOX methods can be
+ * called from many threads at once. Grids are written as they are; to read one back exactly, use
+ * {@link VoxIOExtended#readVox(ByteBuffer, VoxLoadOptions)} with options that don't scale or soak. Each side of a grid
+ * can be at most 256 voxels, because that's all the .vox format can store.
+ * <br>
+ * Each file is written to a temporary file next to it, which only replaces the file once everything has been written.
+ * If writing fails partway, such as when a grid is too big, any file that was already there is left as it was.
+ */
+public class VoxWriter {
+    public static final int BUFFER_SIZE = 1 << 16;
+    private static final ThreadLocal<VoxWriter> LOCAL = ThreadLocal.withInitial(VoxWriter::new);
+
+    /**
+     * Gets the VoxWriter for the current thread, creating it the first time.
+     * @return a VoxWriter that only this thread uses
+     */
+    public static VoxWriter local() {
+        return LOCAL.get();
+    }
+
+    protected final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    protected FileChannel channel;
+    /**
+     * While writing, the file that will be replaced, and the temporary file that will replace it.
+     */
+    protected Path target, temp;
+
+    /**
+     * Writes one grid, with a palette and optionally materials, as a .vox file with no scene graph.
+     * @param filename where to write; parent directories will be created if needed
+     * @param voxelData a 3D byte array of palette indices; each side must be at most 256
+     * @param palette up to 256 RGBA8888 colors; index 0 is ignored, and missing colors come from {@link VoxIO#lastPalette}
+     * @param materials may be null; otherwise, the materials to write, by palette index
+     */
+    public void write(String filename, byte[][][] voxelData, int[] palette, IntObjectMap<VoxMaterial> materials) {
+        try {
+            open(filename);
+            final int count = count(voxelData);
+            header(12 + 12 + 12 + 4 + (count << 2) + 12 + 1024 + materialsSize(materials));
+            grid(voxelData, count);
+            palette(palette);
+            materials(materials);
+            finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes every grid in {@code model}, along with its palette and materials. If the model's nTRN, nGRP, and nSHP
+     * chunks refer to all of its grids, as they do when it was read from a .vox file, those chunks are written as
+     * they are. Otherwise, this writes a simple scene graph with one transform and shape for each grid.
+     * @param filename where to write; parent directories will be created if needed
+     * @param model a VoxModel with at least one grid, each at most 256 on a side
+     */
+    public void write(String filename, VoxModel model) {
+        if (hasSceneGraph(model))
+            writeWithChunks(filename, model);
+        else
+            write(filename, new VoxModel[]{model}, model.palette, model.materials, false);
+    }
+
+    /**
+     * Writes an animation as one .vox file, using MagicaVoxel's keyframes. Each grid index gets one shape, and that
+     * shape has one model per frame, tagged with the frame's index. When read back by this library, the grids are in
+     * frame order, and within each frame, in the order they were in {@code frames}.
+     * @param filename where to write; parent directories will be created if needed
+     * @param frames the VoxModels for each frame, in order; only their grids are used
+     * @param palette up to 256 RGBA8888 colors; index 0 is ignored, and missing colors come from {@link VoxIO#lastPalette}
+     * @param materials may be null; otherwise, the materials to write, by palette index
+     */
+    public void writeAnimation(String filename, VoxModel[] frames, int[] palette, IntObjectMap<VoxMaterial> materials) {
+        write(filename, frames, palette, materials, true);
+    }
+
+    protected void write(String filename, VoxModel[] frames, int[] palette, IntObjectMap<VoxMaterial> materials,
+                         boolean animated) {
+        try {
+            open(filename);
+            int slots = 0, total = 0;
+            for (VoxModel frame : frames) {
+                slots = Math.max(slots, frame.grids.size());
+                total += frame.grids.size();
+            }
+            final int[] counts = new int[total];
+            final String[][] noAttributes = new String[0][0];
+            // the size of everything in MAIN: grids first, then nodes, then palette and materials
+            int size = 0;
+            for (int f = 0, m = 0; f < frames.length; f++) {
+                for (byte[][][] grid : frames[f].grids) {
+                    counts[m] = count(grid);
+                    size += 12 + 12 + 12 + 4 + (counts[m++] << 2);
+                }
+            }
+            final String[][][] noFrames = new String[][][]{noAttributes};
+            final int[] children = new int[slots], shapeSizes = new int[slots], modelCounts = new int[slots];
+            // root nTRN, then nGRP, then one nTRN and nSHP per slot
+            size += 12 + transformSize(noAttributes, noFrames);
+            size += 12 + 4 + dictSize(noAttributes) + 4 + (slots << 2);
+            for (int g = 0; g < slots; g++) {
+                children[g] = 2 + g * 2;
+                shapeSizes[g] = 4 + dictSize(noAttributes) + 4;
+                for (int f = 0; f < frames.length; f++) {
+                    if (g < frames[f].grids.size()) {
+                        shapeSizes[g] += 4 + dictSize(animated ? frameKey(f) : noAttributes);
+                        modelCounts[g]++;
+                    }
+                }
+                size += 12 + transformSize(noAttributes, noFrames) + 12 + shapeSizes[g];
+            }
+            size += 12 + 1024 + materialsSize(materials);
+            header(size);
+
+            for (int f = 0, m = 0; f < frames.length; f++) {
+                for (byte[][][] grid : frames[f].grids) {
+                    grid(grid, counts[m++]);
+                }
+            }
+            transform(0, noAttributes, 1, -1, 0, noFrames);
+            group(1, noAttributes, children);
+            for (int g = 0; g < slots; g++) {
+                transform(2 + g * 2, noAttributes, 3 + g * 2, -1, 0, noFrames);
+                chunk("nSHP", shapeSizes[g]);
+                putInt(3 + g * 2);
+                dict(noAttributes);
+                putInt(modelCounts[g]);
+                for (int f = 0, m = 0; f < frames.length; f++) {
+                    if (g < frames[f].grids.size()) {
+                        // the grids of earlier frames come first in the file, so this grid's model index is offset
+                        putInt(m + g);
+                        dict(animated ? frameKey(f) : noAttributes);
+                    }
+                    m += frames[f].grids.size();
+                }
+            }
+            palette(palette);
+            materials(materials);
+            finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Checks if every grid in {@code model} is used by exactly one ShapeModel in its shape chunks, and there are
+     * transform and group chunks to hold those shapes.
+     */
+    protected static boolean hasSceneGraph(VoxModel model) {
+        if (model.shapeChunks.isEmpty() || model.transformChunks.isEmpty() || model.groupChunks.isEmpty())
+            return false;
+        final boolean[] used = new boolean[model.grids.size()];
+        int found = 0;
+        for (ShapeChunk chunk : model.shapeChunks.values()) {
+            for (ShapeModel sm : chunk.models) {
+                if (sm.id < 0 || sm.id >= used.length || used[sm.id])
+                    return false;
+                used[sm.id] = true;
+                found++;
+            }
+        }
+        return found == used.length;
+    }
+
+    protected void writeWithChunks(String filename, VoxModel model) {
+        try {
+            open(filename);
+            final int total = model.grids.size();
+            final int[] counts = new int[total];
+            int size = 0, maxId = -1;
+            for (int m = 0; m < total; m++) {
+                counts[m] = count(model.grids.get(m));
+                size += 12 + 12 + 12 + 4 + (counts[m] << 2);
+            }
+            for (TransformChunk c : model.transformChunks.values()) {
+                size += 12 + transformSize(c.attributes, c.frameAttributes);
+                maxId = Math.max(maxId, c.id);
+            }
+            for (GroupChunk c : model.groupChunks.values()) {
+                size += 12 + 4 + dictSize(c.attributes) + 4 + (c.childIds.length << 2);
+                maxId = Math.max(maxId, c.id);
+            }
+            for (ShapeChunk c : model.shapeChunks.values()) {
+                size += 12 + shapeSize(c);
+                maxId = Math.max(maxId, c.id);
+            }
+            size += 12 + 1024 + materialsSize(model.materials);
+            header(size);
+
+            for (int m = 0; m < total; m++) {
+                grid(model.grids.get(m), counts[m]);
+            }
+            // nodes are written in ID order, so each nSHP comes right after the nTRN that holds it
+            for (int id = 0; id <= maxId; id++) {
+                TransformChunk t = model.transformChunks.get(id);
+                if (t != null) {
+                    transform(t.id, t.attributes, t.childId, t.reservedId, t.layerId, t.frameAttributes);
+                    continue;
+                }
+                GroupChunk g = model.groupChunks.get(id);
+                if (g != null) {
+                    group(g.id, g.attributes, g.childIds);
+                    continue;
+                }
+                ShapeChunk s = model.shapeChunks.get(id);
+                if (s != null) {
+                    chunk("nSHP", shapeSize(s));
+                    putInt(s.id);
+                    dict(s.attributes);
+                    putInt(s.models.length);
+                    for (ShapeModel sm : s.models) {
+                        putInt(sm.id);
+                        dict(sm.attributes);
+                    }
+                }
+            }
+            palette(model.palette);
+            materials(model.materials);
+            finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close();
+        }
+    }
+
+    protected static String[][] frameKey(int frame) {
+        return new String[][]{{"_f", Integer.toString(frame)}};
+    }
+
+    protected static int count(byte[][][] voxelData) throws IOException {
+        final int xSize = voxelData.length, ySize = voxelData[0].length, zSize = voxelData[0][0].length;
+        if (xSize > 256 || ySize > 256 || zSize > 256)
+            throw new IOException("Grids in .vox files can be at most 256 on a side; this one is "
+                    + xSize + "x" + ySize + "x" + zSize);
+        int count = 0;
+        for (int x = 0; x < xSize; x++) {
+            for (int y = 0; y < ySize; y++) {
+                final byte[] column = voxelData[x][y];
+                for (int z = 0; z < zSize; z++) {
+                    if (column[z] != 0) count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    protected static int stringSize(String s) {
+        return 4 + s.length();
+    }
+
+    protected static int dictSize(String[][] pairs) {
+        int size = 4;
+        for (String[] pair : pairs) {
+            size += stringSize(pair[0]) + stringSize(pair[1]);
+        }
+        return size;
+    }
+
+    protected static int transformSize(String[][] attributes, String[][][] frames) {
+        int size = 4 + dictSize(attributes) + 4 + 4 + 4 + 4;
+        for (String[][] frame : frames) {
+            size += dictSize(frame);
+        }
+        return size;
+    }
+
+    protected static int shapeSize(ShapeChunk chunk) {
+        int size = 4 + dictSize(chunk.attributes) + 4;
+        for (ShapeModel sm : chunk.models) {
+            size += 4 + dictSize(sm.attributes);
+        }
+        return size;
+    }
+
+    /**
+     * Gets the attributes of a material that will be written, with "_type" first. Every trait with a non-negative
+     * key is written, the same as {@link VoxIO#writeVOX(String, byte[][][], int[], IntObjectMap)} always did, so the
+     * traits this project adds past MagicaVoxel's own (like {@code _flow}, {@code _damage}, and {@code _swirl}) survive
+     * being written and read back.
+     */
+    protected static String[][] materialPairs(VoxMaterial material) {
+        int n = 1;
+        IntIterator it = material.traits.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.nextInt() >= 0) n++;
+        }
+        String[][] pairs = new String[n][];
+        pairs[0] = new String[]{"_type", material.type.name()};
+        it = material.traits.keySet().iterator();
+        for (int i = 1, k; it.hasNext(); ) {
+            k = it.nextInt();
+            if (k < 0) continue;
+            String term = Float.toString(material.traits.get(k));
+            if (term.length() > 8) term = term.substring(0, 8);
+            pairs[i++] = new String[]{VoxMaterial.ALL_TRAITS[k].name(), term};
+        }
+        return pairs;
+    }
+
+    protected static int materialsSize(IntObjectMap<VoxMaterial> materials) {
+        if (materials == null) return 0;
+        int size = 0;
+        for (IntObjectMap.Entry<VoxMaterial> ent : materials) {
+            size += 12 + 4 + dictSize(materialPairs(ent.value));
+        }
+        return size;
+    }
+
+    /**
+     * Starts writing to a new temporary file in the same directory as {@code filename}; nothing is done to
+     * {@code filename} itself until {@link #finish()}.
+     */
+    protected void open(String filename) throws IOException {
+        target = Path.of(filename).toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.clear();
+    }
+
+    /**
+     * Writes whatever is left in the buffer and moves the finished temporary file over the target.
+     */
+    protected void finish() throws IOException {
+        flush();
+        channel.close();
+        channel = null;
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        temp = null;
+    }
+
+    /**
+     * Cleans up after a write; if {@link #finish()} wasn't reached, the temporary file is deleted and the target is
+     * left alone.
+     */
+    protected void close() {
+        try {
+            if (channel != null)
+                channel.close();
+            if (temp != null)
+                Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            channel = null;
+            target = null;
+            temp = null;
+            buffer.clear();
+        }
+    }
+
+    protected void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes sure at least {@code bytes} can be put into the buffer, flushing it if needed.
+     */
+    protected void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    protected void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    protected void string(String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        putInt(bytes.length);
+        for (int i = 0; i < bytes.length; ) {
+            ensure(1);
+            final int n = Math.min(bytes.length - i, buffer.remaining());
+            buffer.put(bytes, i, n);
+            i += n;
+        }
+    }
+
+    protected void dict(String[][] pairs) throws IOException {
+        putInt(pairs.length);
+        for (String[] pair : pairs) {
+            string(pair[0]);
+            string(pair[1]);
+        }
+    }
+
+    /**
+     * Puts a chunk ID, the size of its contents, and 0 for the size of its children.
+     */
+    protected void chunk(String id, int size) throws IOException {
+        ensure(12);
+        buffer.putInt(VoxIO.chunkId(id));
+        buffer.putInt(size);
+        buffer.putInt(0);
+    }
+
+    protected void header(int mainSize) throws IOException {
+        ensure(20);
+        buffer.putInt(VoxIO.VOX_);
+        // current version
+        buffer.putInt(150);
+        buffer.putInt(VoxIO.chunkId("MAIN"));
+        buffer.putInt(0);
+        buffer.putInt(mainSize);
+    }
+
+    protected void grid(byte[][][] voxelData, int count) throws IOException {
+        final int xSize = voxelData.length, ySize = voxelData[0].length, zSize = voxelData[0][0].length;
+        chunk("SIZE", 12);
+        putInt(xSize);
+        putInt(ySize);
+        putInt(zSize);
+        chunk("XYZI", 4 + (count << 2));
+        putInt(count);
+        for (int x = 0; x < xSize; x++) {
+            for (int y = 0; y < ySize; y++) {
+                final byte[] column = voxelData[x][y];
+                for (int z = 0; z < zSize; z++) {
+                    if (column[z] == 0) continue;
+                    ensure(4);
+                    buffer.put((byte) x).put((byte) y).put((byte) z).put(column[z]);
+                }
+            }
+        }
+    }
+
+    protected void transform(int id, String[][] attributes, int childId, int reservedId, int layerId,
+                             String[][][] frames) throws IOException {
+        chunk("nTRN", transformSize(attributes, frames));
+        putInt(id);
+        dict(attributes);
+        putInt(childId);
+        putInt(reservedId);
+        putInt(layerId);
+        putInt(frames.length);
+        for (String[][] frame : frames)
+            dict(frame);
+    }
+
+    protected void group(int id, String[][] attributes, int[] childIds) throws IOException {
+        chunk("nGRP", 4 + dictSize(attributes) + 4 + (childIds.length << 2));
+        putInt(id);
+        dict(attributes);
+        putInt(childIds.length);
+        for (int child : childIds)
+            putInt(child);
+    }
+
+    protected void palette(int[] palette) throws IOException {
+        chunk("RGBA", 1024);
+        int i = 1;
+        for (; i < 256 && i < palette.length; i++) {
+            putInt(Integer.reverseBytes(palette[i]));
+        }
+        // if the palette is smaller than 256 colors, this fills the rest with lastPalette's colors
+        for (; i < 256; i++) {
+            putInt(Integer.reverseBytes(VoxIO.lastPalette[i]));
+        }
+        putInt(0);
+    }
+
+    protected void materials(IntObjectMap<VoxMaterial> materials) throws IOException {
+        if (materials == null) return;
+        for (IntObjectMap.Entry<VoxMaterial> ent : materials) {
+            final String[][] pairs = materialPairs(ent.value);
+            chunk("MATL", 4 + dictSize(pairs));
+            putInt(ent.key);
+            dict(pairs);
+        }
+    }
+}
@@ -10,7 +10,6 @@ import isonomicon.io.extended.VoxModel;
 
 import static com.badlogic.gdx.math.MathUtils.ceil;
 import static com.badlogic.gdx.math.MathUtils.floor;
-import static isonomicon.io.VoxIO.lastMaterials;
 
 public class EffectGenerator {
 
@@ -21,7 +20,11 @@ public class EffectGenerator {
 
     @FunctionalInterface
     public interface ReceiveEffect {
-        VoxModel[] runEffect(int size, int frames, int strength);
+        /**
+         * @param materials copied into each VoxModel this makes, typically {@link VoxModel#materials} of the model that
+         *                  was loaded for the attacking unit; may be empty but not null
+         */
+        VoxModel[] runEffect(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials);
     }
 
     public static final ObjectObjectOrderedMap<String, Effect> KNOWN_EFFECTS = new ObjectObjectOrderedMap<>(
@@ -1497,14 +1500,14 @@ public class EffectGenerator {
 
     // RECEIVE
 
-    public static VoxModel[] handgunReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] handgunReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
 
         for(int s = 0; s < strength + strength; s++) {
@@ -1513,14 +1516,14 @@ public class EffectGenerator {
         return next;
     }
 
-    public static VoxModel[] machineGunReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] machineGunReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         strength = Math.min(2, strength);
 
@@ -1532,14 +1535,14 @@ public class EffectGenerator {
         return next;
     }
 
-    public static VoxModel[] forwardCannonReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] forwardCannonReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int s = 0; s < strength; s++) {
@@ -1560,14 +1563,14 @@ public class EffectGenerator {
      * @param strength the rough number of cannons firing, 1 to 4
      * @return
      */
-    public static VoxModel[] arcCannonReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] arcCannonReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int s = 0; s < strength; s++) {
@@ -1582,14 +1585,14 @@ public class EffectGenerator {
         return next;
     }
 
-    public static VoxModel[] forwardMissileReceiveAnimation(int size, int frames, int distance){
+    public static VoxModel[] forwardMissileReceiveAnimation(int size, int frames, int distance, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int s = 0; s < 3; s++) {
@@ -1603,14 +1606,14 @@ public class EffectGenerator {
         return next;
     }
 
-    public static VoxModel[] arcMissileReceiveAnimation(int size, int frames, int count) {
+    public static VoxModel[] arcMissileReceiveAnimation(int size, int frames, int count, IntObjectMap<VoxMaterial> materials) {
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int launcher = 0; launcher < count; launcher++) {
@@ -1634,14 +1637,14 @@ public class EffectGenerator {
 
     static final IntIntMap fireToWater = IntIntMap.withPrimitive(hotFire, 88, ember, 87, yellowFire, 88, sparks, 88, smoke, 0);
 
-    public static VoxModel[] torpedoReceiveAnimation(int size, int frames, int distance){
+    public static VoxModel[] torpedoReceiveAnimation(int size, int frames, int distance, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int s = 0; s < 3; s++) {
@@ -1662,14 +1665,14 @@ public class EffectGenerator {
      * @param strength the scale of the explosion, 1 or higher
      * @return
      */
-    public static VoxModel[] flameWaveReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] flameWaveReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int s = 0; s < strength; s++) {
@@ -1691,14 +1694,14 @@ public class EffectGenerator {
      * @param strength the scale of the explosion, 1 or higher
      * @return
      */
-    public static VoxModel[] bombDropReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] bombDropReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         for (int i = 0; i < frames; i++) {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
         byte[][][] fireStart = new byte[size][size][size];
         for (int s = 0; s < strength; s++) {
@@ -1713,7 +1716,7 @@ public class EffectGenerator {
         return next;
     }
 
-    public static VoxModel[] hackReceiveAnimation(int size, int frames, int strength) {
+    public static VoxModel[] hackReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials) {
 
         Choice choose1of256 = ((x, y, z) -> r.next(8) == 0);
         Choice choose1of512 = ((x, y, z) -> r.next(9) == 0);
@@ -1724,7 +1727,7 @@ public class EffectGenerator {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
         }
 
         for(int s = 0; s < strength; s++) {
@@ -1743,7 +1746,7 @@ public class EffectGenerator {
         return next;
     }
 
-    public static VoxModel[] debugReceiveAnimation(int size, int frames, int strength){
+    public static VoxModel[] debugReceiveAnimation(int size, int frames, int strength, IntObjectMap<VoxMaterial> materials){
         VoxModel[] next = new VoxModel[frames];
         byte[][][][] grids = new byte[frames][size][size][size];
         int E = size - 1, L = (size >> 1) - 3, H = (size >> 1) + 2;
@@ -1751,7 +1754,7 @@ public class EffectGenerator {
             next[i] = new VoxModel();
             next[i].grids.add(grids[i]);
             next[i].links.add(new IntObjectMap<>(1));
-            next[i].materials.putAll(lastMaterials);
+            next[i].materials.putAll(materials);
 
             ShapeGenerator.line(grids[i], 0, 0, 0, 0, 0, E, glow);
             ShapeGenerator.line(grids[i], 0, E, 0, 0, E, E, glow);
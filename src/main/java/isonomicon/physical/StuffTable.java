@@ -0,0 +1,89 @@
+package isonomicon.physical;
+
+import com.github.tommyettinger.digital.Hasher;
+
+/**
+ * All the material traits of a {@link Stuff} array, laid out as one {@code float[256]} per trait, so renderers can read
+ * a trait with a plain array access instead of looking it up in each {@link VoxMaterial}'s IntFloatMap. Indices go from
+ * 0 to 255, and any index past the end of the Stuff array uses the last Stuff, the same way renderers always clamped
+ * voxel indices into their Stuff arrays.
+ * <br>
+ * A StuffTable copies traits when it is constructed, so if a Stuff's material changes after that, the table won't
+ * reflect it. The Stuff arrays in {@link Stuff} don't change after class initialization, so the shared tables for them
+ * ({@link #STUFFS}, {@link #STUFFS_B}, and {@link #STUFFS_C}) are always safe to use; {@link #of(Stuff[])} returns those
+ * when it can.
+ */
+public class StuffTable {
+    public final Stuff[] stuffs;
+    /**
+     * Indexed first by {@link VoxMaterial.MaterialTrait#ordinal()}, then by voxel index (0 to 255).
+     */
+    public final float[][] traits;
+    /**
+     * What each voxel index is drawn as; this is {@link Stuff#appearsAs} as a byte.
+     */
+    public final byte[] appearsAs;
+    public final float[] alpha, emit, ior, metal, rough, flow, rise, dapple, vary, frame, rate, swirl, priority;
+    /**
+     * A 64-bit hash of {@link #appearsAs} and every trait, so two tables with the same hash almost certainly make
+     * renderers draw the same way; used as part of the key in {@link isonomicon.visual.RenderCache}.
+     */
+    public final long hash;
+
+    public static final StuffTable STUFFS = new StuffTable(Stuff.STUFFS);
+    public static final StuffTable STUFFS_B = new StuffTable(Stuff.STUFFS_B);
+    public static final StuffTable STUFFS_C = new StuffTable(Stuff.STUFFS_C);
+
+    public StuffTable(Stuff[] stuffs) {
+        this.stuffs = stuffs;
+        final VoxMaterial.MaterialTrait[] all = VoxMaterial.ALL_TRAITS;
+        traits = new float[all.length][256];
+        appearsAs = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            final Stuff stuff = stuffs[Math.min(i, stuffs.length - 1)];
+            appearsAs[i] = (byte) stuff.appearsAs;
+            for (int t = 0; t < all.length; t++) {
+                traits[t][i] = stuff.material.getTrait(all[t]);
+            }
+        }
+        alpha = trait(VoxMaterial.MaterialTrait._alpha);
+        emit = trait(VoxMaterial.MaterialTrait._emit);
+        ior = trait(VoxMaterial.MaterialTrait._ior);
+        metal = trait(VoxMaterial.MaterialTrait._metal);
+        rough = trait(VoxMaterial.MaterialTrait._rough);
+        flow = trait(VoxMaterial.MaterialTrait._flow);
+        rise = trait(VoxMaterial.MaterialTrait._rise);
+        dapple = trait(VoxMaterial.MaterialTrait._dapple);
+        vary = trait(VoxMaterial.MaterialTrait._vary);
+        frame = trait(VoxMaterial.MaterialTrait._frame);
+        rate = trait(VoxMaterial.MaterialTrait._rate);
+        swirl = trait(VoxMaterial.MaterialTrait._swirl);
+        priority = trait(VoxMaterial.MaterialTrait._priority);
+        long h = Hasher.beleth.hash64(appearsAs);
+        for (int t = 0; t < traits.length; t++) {
+            h = h * 0xD1342543DE82EF95L + Hasher.beleth.hash64(traits[t]);
+        }
+        hash = h ^ h >>> 29;
+    }
+
+    /**
+     * Gets the 256 values of one trait; this is the same array every time, and should not be modified.
+     * @param trait which trait to get
+     * @return a 256-element float array, indexed by voxel index
+     */
+    public float[] trait(VoxMaterial.MaterialTrait trait) {
+        return traits[trait.ordinal()];
+    }
+
+    /**
+     * Gets one of the shared tables if {@code stuffs} is one of the arrays in {@link Stuff}, or builds a new table.
+     * @param stuffs a Stuff array, such as {@link Stuff#STUFFS_B}
+     * @return a StuffTable for {@code stuffs}
+     */
+    public static StuffTable of(Stuff[] stuffs) {
+        if (stuffs == Stuff.STUFFS) return STUFFS;
+        if (stuffs == Stuff.STUFFS_B) return STUFFS_B;
+        if (stuffs == Stuff.STUFFS_C) return STUFFS_C;
+        return new StuffTable(stuffs);
+    }
+}
@@ -0,0 +1,142 @@
+package isonomicon.physical;
+
+import java.util.Arrays;
+
+/**
+ * A compact list of only the voxels in a {@code byte[][][]} grid that could ever be seen, so renderers can splat
+ * those instead of walking every cell of the grid. A voxel is left out if it is empty, if its Stuff is fully
+ * transparent, or if all six of its neighbors are solid voxels that are always drawn in place (so it is completely
+ * covered). Neighbors that can vanish on some frames (because of Missing, Frame, or Swirl), that move (Rise or Flow),
+ * that glow (Emission), or that appear as nothing don't count as covering, because something behind them might show.
+ * <br>
+ * Positions are packed as {@code x | y << 10 | z << 20}, the same way the renderers pack voxel positions in their
+ * {@code voxels} buffers, and are stored in the same z, then x, then y order that the renderers have always splatted
+ * in, so the result of drawing a SurfaceVoxels is the same as drawing its whole grid. Since a grid changes when it is
+ * evolved or damaged, a SurfaceVoxels also stores a hash of the grid it was built from; see {@link #matches(byte[][][])}.
+ * That has to hash the whole grid again, so {@link isonomicon.io.extended.VoxModel#surface(int, Stuff[])} doesn't use
+ * it, and relies on {@link isonomicon.io.extended.VoxModel#modified()} being called after edits instead.
+ */
+public class SurfaceVoxels {
+    public final int sizeX, sizeY, sizeZ;
+    /**
+     * The Stuff array used to decide which voxels cover their neighbors.
+     */
+    public final Stuff[] stuffs;
+    /**
+     * The {@link Tools3D#hash64(byte[][][])} of the grid this was built from.
+     */
+    public final long hash;
+    /**
+     * Packed positions, as {@code x | y << 10 | z << 20}; only the first {@link #count} items are used.
+     */
+    public int[] positions;
+    /**
+     * The voxel at each position in {@link #positions}; only the first {@link #count} items are used.
+     */
+    public byte[] values;
+    public int count;
+
+    public SurfaceVoxels(byte[][][] grid, Stuff[] stuffs) {
+        this(new VoxelGrid(grid), stuffs);
+    }
+
+    /**
+     * Builds the list from a flat grid, finding voxels that could be seen with a {@link VoxelOccupancy}. The
+     * {@link #hash} is the same as it would be for the equivalent {@code byte[][][]}.
+     * @param grid a VoxelGrid; will not be modified
+     * @param stuffs the Stuff array used to decide which voxels cover their neighbors
+     */
+    public SurfaceVoxels(VoxelGrid grid, Stuff[] stuffs) {
+        this(new VoxelOccupancy(grid, openTable(stuffs)), stuffs);
+    }
+
+    /**
+     * Builds the list from an existing VoxelOccupancy, such as the one {@link isonomicon.io.extended.VoxModel} keeps
+     * for each grid, so the masks don't have to be built again.
+     * @param occupancy must be up-to-date and use {@link #openTable(Stuff[])} with the same {@code stuffs} as its
+     *                  clear table; will not be modified
+     * @param stuffs the Stuff array used to decide which voxels cover their neighbors
+     */
+    public SurfaceVoxels(VoxelOccupancy occupancy, Stuff[] stuffs) {
+        final VoxelGrid grid = occupancy.grid;
+        this.stuffs = stuffs;
+        sizeX = grid.sizeX;
+        sizeY = grid.sizeY;
+        sizeZ = grid.sizeZ;
+        hash = Tools3D.hash64(grid);
+        final float[] alpha = StuffTable.of(stuffs).alpha;
+        final boolean[] hidden = new boolean[256];
+        for (int i = 0; i < 256; i++) {
+            hidden[i] = i == 0 || alpha[i] >= 1f;
+        }
+        positions = new int[256];
+        values = new byte[256];
+        // a voxel can only be hidden if all six neighbors are filled and not open, which the occupancy masks can
+        // check for a whole column-word of voxels at once
+        final int words = occupancy.words;
+        final long[] visible = new long[occupancy.filled.length];
+        for (int x = 0, c = 0; x < sizeX; x++) {
+            for (int y = 0; y < sizeY; y++, c += words) {
+                for (int w = 0; w < words; w++) {
+                    visible[c + w] = occupancy.surface(x, y, w);
+                }
+            }
+        }
+        final byte[] data = grid.data;
+        final int sx = grid.strideX, sy = grid.strideY;
+        for (int z = 0; z < sizeZ; z++) {
+            final int w = z >>> 6;
+            final long bit = 1L << z;
+            for (int x = 0; x < sizeX; x++) {
+                for (int y = 0, c = x * sizeY * words + w, i = x * sx + z; y < sizeY; y++, c += words, i += sy) {
+                    if ((visible[c] & bit) == 0L) continue;
+                    final byte v = data[i];
+                    if (hidden[v & 255]) continue;
+                    if (count == positions.length) {
+                        positions = Arrays.copyOf(positions, count << 1);
+                        values = Arrays.copyOf(values, count << 1);
+                    }
+                    positions[count] = x | y << 10 | z << 20;
+                    values[count++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a table where an item is true if a voxel with that index doesn't reliably hide what's behind it.
+     * @param stuffs a Stuff array, such as {@link Stuff#STUFFS_B}
+     * @return a new 256-element boolean array
+     */
+    public static boolean[] openTable(Stuff[] stuffs) {
+        final StuffTable t = StuffTable.of(stuffs);
+        boolean[] open = new boolean[256];
+        open[0] = true;
+        for (int i = 1; i < 256; i++) {
+            open[i] = t.appearsAs[i] == 0 || t.alpha[i] >= 1f || t.metal[i] > 0f || t.frame[i] == 0f || t.frame[i] == 1f
+                    || t.swirl[i] != 0f || t.emit[i] != 0f || t.rise[i] != 0f || t.flow[i] != 0f;
+        }
+        return open;
+    }
+
+    /**
+     * Checks if this was built from a grid with the same size and contents as {@code grid}. This has to hash the
+     * whole grid, which is much cheaper than building a new SurfaceVoxels, but isn't free.
+     * @param grid a 3D byte array that may have changed since this was built
+     * @return true if this can still be used to draw {@code grid}
+     */
+    public boolean matches(byte[][][] grid) {
+        return grid.length == sizeX && grid[0].length == sizeY && grid[0][0].length == sizeZ
+                && Tools3D.hash64(grid) == hash;
+    }
+
+    /**
+     * Checks if this was built from a grid with the same size and contents as {@code grid}.
+     * @param grid a VoxelGrid that may have changed since this was built
+     * @return true if this can still be used to draw {@code grid}
+     */
+    public boolean matches(VoxelGrid grid) {
+        return grid.sizeX == sizeX && grid.sizeY == sizeY && grid.sizeZ == sizeZ
+                && Tools3D.hash64(grid) == hash;
+    }
+}
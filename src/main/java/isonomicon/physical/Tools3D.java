@@ -5,7 +5,10 @@ import com.github.tommyettinger.digital.Hasher;
 import com.github.tommyettinger.ds.IntIntMap;
 import com.github.tommyettinger.ds.IntObjectMap;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.github.tommyettinger.digital.Hasher.*;
 
@@ -17,6 +20,16 @@ public class Tools3D {
 
     public static Stuff[] STUFFS = Stuff.STUFFS_B;
     public static boolean SHADOWS = true;
+    /**
+     * Where {@link #scaleAndSoak(VoxelGrid)} and {@link #runCA(VoxelGrid, int)} run their slabs; if null, or if a grid
+     * only has one slab, they run on the calling thread.
+     */
+    public static ForkJoinPool POOL = ForkJoinPool.commonPool();
+    /**
+     * How many x-positions go in each slab of {@link #scaleAndSoak(VoxelGrid)} and {@link #runCA(VoxelGrid, int)}.
+     * Each slab of scaleAndSoak() redoes some work at its edges, so this shouldn't be much smaller than 8.
+     */
+    public static int SLAB_WIDTH = 8;
 
     public static byte[][][] deepCopy(byte[][][] voxels)
     {
@@ -207,67 +220,7 @@ public class Tools3D {
     {
         if(smoothLevel < 1)
             return voxels;
-        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
-        //Dictionary<byte, int> colorCount = new Dictionary<byte, int>();
-        int[] colorCount = new int[256];
-        byte[][][] vs0 = deepCopy(voxels), vs1 = new byte[xs][ys][zs];
-        for(int v = 0; v < smoothLevel; v++)
-        {
-            if(v >= 1)
-            {
-                deepCopyInto(vs1, vs0);
-                //fetch(vs1, (byte) 0);
-            }
-            for(int x = 0; x < xs; x++)
-            {
-                for(int y = 0; y < ys; y++)
-                {
-                    for(int z = 0; z < zs; z++)
-                    {
-                        Arrays.fill(colorCount, 0);
-                        if(x == 0 || y == 0 || z == 0 || x == xs - 1 || y == ys - 1 || z == zs - 1 || vs0[x][y][z] == 2)
-                        {
-                            colorCount[vs0[x][y][z] & 255] = 10000;
-                            colorCount[0] = -100000;
-                        }
-                        else
-                        {
-                            for(int xx = -1; xx < 2; xx++)
-                            {
-                                for(int yy = -1; yy < 2; yy++)
-                                {
-                                    for(int zz = -1; zz < 2; zz++)
-                                    {
-                                        byte smallColor = vs0[x + xx][y + yy][z + zz];
-                                        colorCount[smallColor & 255]++;
-                                    }
-                                }
-                            }
-                        }
-                        if(colorCount[0] >= 23)
-                        {
-                            vs1[x][y][z] = 0;
-                        }
-                        else
-                        {
-                            byte max = 0;
-                            int cc = colorCount[0] / 3, tmp;
-                            for(byte idx = 1; idx != 0; idx++)
-                            {
-                                tmp = colorCount[idx & 255];
-                                if(tmp > 0 && tmp > cc)
-                                {
-                                    cc = tmp;
-                                    max = idx;
-                                }
-                            }
-                            vs1[x][y][z] = max;
-                        }
-                    }
-                }
-            }
-        }
-        return vs1;
+        return runCA(new VoxelGrid(voxels), smoothLevel).toArray();
     }
 
     private static void writeSlope(byte[][][] voxels, int x, int y, int z, int slope, byte color){
@@ -402,13 +355,11 @@ public class Tools3D {
 
 
     public static byte[][][] simpleScale(byte[][][] voxels) {
-        return simpleScale(voxels, new byte[voxels.length << 1][voxels[0].length << 1][voxels[0][0].length << 1]);
+        return simpleScale(new VoxelGrid(voxels)).toArray();
     }
 
     public static byte[][][] simpleScale(byte[][][] voxels, byte[][][] result){
-        return simpleScale(voxels, result,
-                new byte[voxels.length][voxels[0].length][voxels[0][0].length],
-                new byte[voxels.length][voxels[0].length][voxels[0][0].length]);
+        return simpleScale(new VoxelGrid(voxels)).into(result);
     }
 
     public static byte[][][] simpleScale(byte[][][] voxels, byte[][][] result, byte[][][] voxelsBufferA, byte[][][] voxelsBufferB) {
@@ -545,94 +496,48 @@ public class Tools3D {
     
     public static int flood(byte[][][] base, byte[][][] bounds)
     {
-        final int xs = base.length, ys = base[0].length, zs = base[0][0].length;
-        int size = count(base), totalSize = 0;
-        /*
-        for (int x = 0; x < xs; x++) {
-            for (int y = 0; y < ys; y++) {
-                for (int z = 0; z < zs; z++) {
-                    if(base[x][y][z] != 0 && bounds[x][y][z] != 0)
-                        size++;
-                }
-            }
-        }
-        */
-
-        byte[][][] nx = deepCopy(base);
-        byte t;
-        do {
-            totalSize += size;
-            size = 0;
-            for (int x = 0; x < xs; x++) {
-                for (int y = 0; y < ys; y++) {
-                    for (int z = 0; z < zs; z++) {
-                        if (nx[x][y][z] != 0 && (t = bounds[x][y][z]) != 0) {
-                            nx[x][y][z] = t;
-                            //++size;
-                            if (x > 0 && nx[x - 1][y][z] == 0 && (t = bounds[x - 1][y][z]) != 0) {
-                                nx[x - 1][y][z] = t;
-                                ++size;
-                            }
-                            if (x < xs - 1 && nx[x + 1][y][z] == 0 && (t = bounds[x + 1][y][z]) != 0) {
-                                nx[x + 1][y][z] = t;
-                                ++size;
-                            }
-                            if (y > 0 && nx[x][y - 1][z] == 0 && (t = bounds[x][y - 1][z]) != 0) {
-                                nx[x][y - 1][z] = t;
-                                ++size;
-                            }
-                            if (y < ys - 1 && nx[x][y + 1][z] == 0 && (t = bounds[x][y + 1][z]) != 0) {
-                                nx[x][y + 1][z] = t;
-                                ++size;
-                            }
-                            if (z > 0 && nx[x][y][z - 1] == 0 && (t = bounds[x][y][z - 1]) != 0) {
-                                nx[x][y][z - 1] = t;
-                                ++size;
-                            }
-                            if (z < zs - 1 && nx[x][y][z + 1] == 0 && (t = bounds[x][y][z + 1]) != 0) {
-                                nx[x][y][z + 1] = t;
-                                ++size;
-                            }
-                        }
-                    }
-                }
-            }
-        } while (size != 0);
-        deepCopyInto(nx, base);
-        return totalSize + size;
+        final VoxelGrid grid = new VoxelGrid(base);
+        final int size = flood(grid, new VoxelGrid(bounds));
+        grid.into(base);
+        return size;
     }
 
+    /**
+     * Gets a copy of {@code voxels} with only its largest face-connected part; if parts tie, the first one found in
+     * x, y, z order is kept. This labels every part in one pass; see {@link VoxelComponents}.
+     * @param voxels a 3D byte array; will not be modified
+     * @return a new 3D byte array, the same size as {@code voxels}, with only its largest part
+     */
     public static byte[][][] largestPart(byte[][][] voxels)
     {
-        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
-        int fst = firstTight(voxels), bestSize = 0, currentSize, x, y, z;
-
-        byte[][][] remaining = deepCopy(voxels), filled = new byte[xs][ys][zs],
-                choice = new byte[xs][ys][zs];
-        while (fst >= 0) {
-            fill(filled, 0);
-            x = fst / (ys * zs);
-            y = (fst / zs) % ys;
-            z = fst % zs;
-            filled[x][y][z] = voxels[x][y][z];
-            currentSize = flood(filled, remaining);
-            if(currentSize > bestSize)
-            {
-                bestSize = currentSize;
-                deepCopyInto(filled, choice);
-            }
+        return largestPart(new VoxelGrid(voxels)).toArray();
+    }
 
-            for (x = 0; x < xs; x++) {
-                for (y = 0; y < ys; y++) {
-                    for (z = 0; z < zs; z++) {
-                        if(filled[x][y][z] != 0)
-                            remaining[x][y][z] = 0;
-                    }
-                }
-            }
-            fst = firstTight(remaining);
-        }
-        return choice;
+    public static VoxelGrid largestPart(VoxelGrid voxels)
+    {
+        final VoxelComponents parts = components(voxels);
+        return parts.mask(parts.largest());
+    }
+
+    /**
+     * Finds and labels every face-connected part of {@code voxels}, with their sizes and where each starts.
+     * @param voxels a VoxelGrid; must not be changed while the result is in use
+     * @return a new VoxelComponents describing each part
+     */
+    public static VoxelComponents components(VoxelGrid voxels)
+    {
+        return new VoxelComponents(voxels);
+    }
+
+    /**
+     * Finds and labels every face-connected part of {@code voxels}; the result refers to a flat copy, available as
+     * {@link VoxelComponents#grid}, so {@code voxels} can be changed afterwards.
+     * @param voxels a 3D byte array; will not be modified
+     * @return a new VoxelComponents describing each part
+     */
+    public static VoxelComponents components(byte[][][] voxels)
+    {
+        return new VoxelComponents(new VoxelGrid(voxels));
     }
 
     public static byte[][][] translateCopy(byte[][][] voxels, int xMove, int yMove, int zMove)
@@ -717,59 +622,16 @@ public class Tools3D {
 
     public static void soakInPlace(byte[][][] voxels)
     {
-        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
-        byte b;
-        for (int x = 0; x < xs; x++) {
-            for (int y = 0; y < ys; y++) {
-                for (int z = 0; z < zs; z++) {
-                    if(isSurface(voxels, x, y, z) > 0){
-                        b = voxels[x][y][z];
-                        if(isSurface(voxels, x, y, z-1) == -1) voxels[x][y][z-1] = b;
-                        if(isSurface(voxels, x-1, y, z) == -1) voxels[x-1][y][z] = b;
-                        if(isSurface(voxels, x, y-1, z) == -1) voxels[x][y-1][z] = b;
-                        if(isSurface(voxels, x+1, y, z) == -1) voxels[x+1][y][z] = b;
-                        if(isSurface(voxels, x, y+1, z) == -1) voxels[x][y+1][z] = b;
-                        if(isSurface(voxels, x, y, z+1) == -1) voxels[x][y][z+1] = b;
-                    }
-                }
-            }
-        }
-    }
-
-    private static int isSurface(byte[][][] voxels, int x, int y, int z, IntObjectMap<VoxMaterial> materialMap) {
-        int v;
-        if(x < 0 || y < 0 || z < 0 ||
-                x >= voxels.length || y >= voxels[x].length || z >= voxels[x][y].length ||
-                voxels[x][y][z] == 0)
-            return 0;
-        if(x == 0 || (v = voxels[x-1][y][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 1;
-        if(y == 0 || (v = voxels[x][y-1][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 2;
-        if(z == 0 || (v = voxels[x][y][z-1] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 3;
-        if(x >= voxels.length - 1       || (v = voxels[x+1][y][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 4;
-        if(y >= voxels[x].length - 1    || (v = voxels[x][y+1][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 5;
-        if(z >= voxels[x][y].length - 1 || (v = voxels[x][y][z+1] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 6;
-        return -1;
+        final VoxelGrid grid = new VoxelGrid(voxels);
+        soakInPlace(grid);
+        grid.into(voxels);
     }
 
     public static void soakInPlace(byte[][][] voxels, IntObjectMap<VoxMaterial> materialMap)
     {
-        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
-        byte b;
-        for (int x = 0; x < xs; x++) {
-            for (int y = 0; y < ys; y++) {
-                for (int z = 0; z < zs; z++) {
-                    if(isSurface(voxels, x, y, z, materialMap) > 0){
-                        b = voxels[x][y][z];
-                        if(isSurface(voxels, x, y, z-1, materialMap) == -1) voxels[x][y][z-1] = b;
-                        if(isSurface(voxels, x-1, y, z, materialMap) == -1) voxels[x-1][y][z] = b;
-                        if(isSurface(voxels, x, y-1, z, materialMap) == -1) voxels[x][y-1][z] = b;
-                        if(isSurface(voxels, x+1, y, z, materialMap) == -1) voxels[x+1][y][z] = b;
-                        if(isSurface(voxels, x, y+1, z, materialMap) == -1) voxels[x][y+1][z] = b;
-                        if(isSurface(voxels, x, y, z+1, materialMap) == -1) voxels[x][y][z+1] = b;
-                    }
-                }
-            }
-        }
+        final VoxelGrid grid = new VoxelGrid(voxels);
+        soakInPlace(grid, materialMap);
+        grid.into(voxels);
     }
 
     public static byte[][][] hollowInPlace(byte[][][] voxels)
@@ -789,31 +651,11 @@ public class Tools3D {
 
     public static byte[][][] soak(byte[][][] voxels)
     {
-        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
-        byte[][][] next = new byte[xs][ys][zs];
-        byte b;
-        for (int x = 0; x < xs; x++) {
-            for (int y = 0; y < ys; y++) {
-                for (int z = 0; z < zs; z++) {
-                    if(isSurface(voxels, x, y, z) > 0){
-                        next[x][y][z] = b = voxels[x][y][z];
-                        if(isSurface(voxels, x, y, z-1) == -1) next[x][y][z-1] = b;
-                        if(isSurface(voxels, x-1, y, z) == -1) next[x-1][y][z] = b;
-                        if(isSurface(voxels, x, y-1, z) == -1) next[x][y-1][z] = b;
-                        if(isSurface(voxels, x+1, y, z) == -1) next[x+1][y][z] = b;
-                        if(isSurface(voxels, x, y+1, z) == -1) next[x][y+1][z] = b;
-                        if(isSurface(voxels, x, y, z+1) == -1) next[x][y][z+1] = b;
-                    }
-                }
-            }
-        }
-        return next;
+        return soak(new VoxelGrid(voxels)).toArray();
     }
 
     public static byte[][][] scaleAndSoak(byte[][][] voxels) {
-        voxels = simpleScale(voxels);
-        soakInPlace(voxels);
-        return voxels;
+        return scaleAndSoak(new VoxelGrid(voxels)).toArray();
     }
 
     public static int hash(final byte[][] data) {
@@ -968,6 +810,857 @@ public class Tools3D {
         return (result ^ result >>> 28);
     }
 
+    // VoxelGrid versions of the above. These give the same results as the byte[][][] versions, but walk one flat
+    // array and reach neighbors by adding or subtracting a stride, instead of going through two levels of arrays.
+
+    public static VoxelGrid deepCopy(VoxelGrid voxels) {
+        return voxels.copy();
+    }
+
+    public static VoxelGrid deepCopyInto(VoxelGrid voxels, VoxelGrid target) {
+        return target.set(voxels);
+    }
+
+    public static VoxelGrid rotate(VoxelGrid voxels, int turns) {
+        final int xs = voxels.sizeX, ys = voxels.sizeY, zs = voxels.sizeZ;
+        if ((turns & 3) == 0)
+            return voxels.copy();
+        final VoxelGrid next = new VoxelGrid(xs, ys, zs);
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                final int from;
+                switch (turns & 3) {
+                    case 1: from = voxels.index(y, xs - 1 - x, 0); break;
+                    case 2: from = voxels.index(xs - 1 - x, ys - 1 - y, 0); break;
+                    default: from = voxels.index(ys - 1 - y, x, 0); break;
+                }
+                System.arraycopy(voxels.data, from, next.data, next.index(x, y, 0), zs);
+            }
+        }
+        return next;
+    }
+
+    public static VoxelGrid mirrorX(VoxelGrid voxels) {
+        final int xs = voxels.sizeX, ys = voxels.sizeY, zs = voxels.sizeZ;
+        final VoxelGrid next = new VoxelGrid(xs << 1, ys, zs);
+        // the first half is laid out exactly like the original
+        System.arraycopy(voxels.data, 0, next.data, 0, voxels.size());
+        for (int x = 0; x < xs; x++) {
+            System.arraycopy(voxels.data, x * voxels.strideX, next.data, ((xs << 1) - 1 - x) * next.strideX, voxels.strideX);
+        }
+        return next;
+    }
+
+    public static VoxelGrid mirrorY(VoxelGrid voxels) {
+        final int xs = voxels.sizeX, ys = voxels.sizeY, zs = voxels.sizeZ;
+        final VoxelGrid next = new VoxelGrid(xs, ys << 1, zs);
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                final int from = voxels.index(x, y, 0);
+                System.arraycopy(voxels.data, from, next.data, next.index(x, y, 0), zs);
+                System.arraycopy(voxels.data, from, next.data, next.index(x, (ys << 1) - 1 - y, 0), zs);
+            }
+        }
+        return next;
+    }
+
+    public static VoxelGrid mirrorXY(VoxelGrid voxels) {
+        return mirrorX(mirrorY(voxels));
+    }
+
+    public static int countNot(VoxelGrid voxels, int avoid) {
+        final byte[] data = voxels.data;
+        final byte a = (byte) avoid;
+        int c = 0;
+        for (int i = 0, n = voxels.size(); i < n; i++) {
+            if (data[i] != a) ++c;
+        }
+        return c;
+    }
+
+    public static int count(VoxelGrid voxels) {
+        return countNot(voxels, 0);
+    }
+
+    public static int count(VoxelGrid voxels, int match) {
+        final byte[] data = voxels.data;
+        final byte m = (byte) match;
+        int c = 0;
+        for (int i = 0, n = voxels.size(); i < n; i++) {
+            if (data[i] == m) ++c;
+        }
+        return c;
+    }
+
+    private static void writeSlope(VoxelGrid voxels, int x, int y, int z, int slope, byte color) {
+        final byte[] data = voxels.data;
+        final int i = voxels.index(x << 1, y << 1, z << 1), sx = voxels.strideX, sy = voxels.strideY;
+        data[i] = ((slope & 1) != 0) ? color : 0;
+        data[i + sx] = ((slope & 2) != 0) ? color : 0;
+        data[i + sy] = ((slope & 4) != 0) ? color : 0;
+        data[i + sx + sy] = ((slope & 8) != 0) ? color : 0;
+        data[i + 1] = ((slope & 16) != 0) ? color : 0;
+        data[i + sx + 1] = ((slope & 32) != 0) ? color : 0;
+        data[i + sy + 1] = ((slope & 64) != 0) ? color : 0;
+        data[i + sx + sy + 1] = ((slope & 128) != 0) ? color : 0;
+    }
+
+    public static VoxelGrid simpleScale(VoxelGrid voxels) {
+        return simpleScale(voxels, new VoxelGrid(voxels.sizeX << 1, voxels.sizeY << 1, voxels.sizeZ << 1));
+    }
+
+    public static VoxelGrid simpleScale(VoxelGrid voxels, VoxelGrid result) {
+        return simpleScale(voxels, result,
+                new VoxelGrid(voxels.sizeX, voxels.sizeY, voxels.sizeZ),
+                new VoxelGrid(voxels.sizeX, voxels.sizeY, voxels.sizeZ));
+    }
+
+    /**
+     * The same as {@link #simpleScale(byte[][][], byte[][][], byte[][][], byte[][][])}, but for VoxelGrids.
+     * @param voxels the grid to scale; will not be modified
+     * @param result must be at least twice the size of {@code voxels} on each axis; will be modified
+     * @param voxelsBufferA must be the same size as {@code voxels}, and should be empty; will be modified
+     * @param voxelsBufferB must be the same size as {@code voxels}; will be modified
+     * @return {@code result}, after modifications
+     */
+    public static VoxelGrid simpleScale(VoxelGrid voxels, VoxelGrid result, VoxelGrid voxelsBufferA, VoxelGrid voxelsBufferB) {
+        final int limitX = voxels.sizeX - 1;
+        final int limitY = voxels.sizeY - 1;
+        final int limitZ = voxels.sizeZ - 1;
+        final int sx = voxels.strideX, sy = voxels.strideY;
+        final byte[] data = voxels.data, nextColors = voxelsBufferA.data, nextSlopes = voxelsBufferB.data;
+        final int[] neighbors = new int[6];
+        for (int x = 0; x <= limitX; x++) {
+            for (int y = 0; y <= limitY; y++) {
+                PER_CELL:
+                for (int z = 0, i = voxels.index(x, y, 0); z <= limitZ; z++, i++) {
+                    if(data[i] == 0)
+                    {
+                        int slope = 0;
+                        if((neighbors[0] = x == 0 ? 0 : (data[i - sx] & 255)) != 0) slope      |= 0x55;
+                        if((neighbors[1] = y == 0 ? 0 : (data[i - sy] & 255)) != 0) slope      |= 0x33;
+                        if((neighbors[2] = z == 0 ? 0 : (data[i - 1] & 255)) != 0) slope       |= 0x0F;
+                        if((neighbors[3] = x == limitX ? 0 : (data[i + sx] & 255)) != 0) slope |= 0xAA;
+                        if((neighbors[4] = y == limitY ? 0 : (data[i + sy] & 255)) != 0) slope |= 0xCC;
+                        if((neighbors[5] = z == limitZ ? 0 : (data[i + 1] & 255)) != 0) slope  |= 0xF0;
+                        if(Integer.bitCount(slope) < 5) // surrounded by empty or next to only one voxel
+                        {
+                            nextSlopes[i] = 0;
+                            continue;
+                        }
+                        int bestIndex = -1;
+                        for (int a = 0; a < 6; a++) {
+                            if(neighbors[a] == 0) continue;
+                            if(bestIndex == -1) bestIndex = a;
+                            for (int b = a + 1; b < 6; b++) {
+                                if(a + 3 != b && neighbors[a] == neighbors[b]){
+                                    if((a == bestIndex || b == bestIndex) && neighbors[bestIndex] != 0) {
+                                        nextColors[i] = (byte) neighbors[bestIndex];
+                                        nextSlopes[i] = (byte) slope;
+                                        continue PER_CELL;
+                                    }
+                                } else if(neighbors[bestIndex] < neighbors[a]) {
+                                    bestIndex = a;
+                                }
+                            }
+                        }
+                        nextColors[i] = (byte) 0;
+                        nextSlopes[i] = (byte) 0;
+                    }
+                    else
+                    {
+                        nextColors[i] = data[i];
+                        nextSlopes[i] = -1;
+                    }
+                }
+            }
+        }
+
+        for (int x = 0; x <= limitX; x++) {
+            for (int y = 0; y <= limitY; y++) {
+                PER_CELL:
+                for (int z = 0, i = voxels.index(x, y, 0); z <= limitZ; z++, i++) {
+                    if(nextColors[i] == 0)
+                    {
+                        int slope = 0;
+                        if((neighbors[0] = x == 0 ? 0 : (nextColors[i - sx] & 255)) != 0 && (nextSlopes[i - sx] & 0xAA) != 0xAA) slope      |= (nextSlopes[i - sx] & 0xAA) >>> 1;
+                        if((neighbors[1] = y == 0 ? 0 : (nextColors[i - sy] & 255)) != 0 && (nextSlopes[i - sy] & 0xCC) != 0xCC) slope      |= (nextSlopes[i - sy] & 0xCC) >>> 2;
+                        if((neighbors[2] = z == 0 ? 0 : (nextColors[i - 1] & 255)) != 0 && (nextSlopes[i - 1] & 0xF0) != 0xF0) slope        |= (nextSlopes[i - 1] & 0xF0) >>> 4;
+                        if((neighbors[3] = x == limitX ? 0 : (nextColors[i + sx] & 255)) != 0 && (nextSlopes[i + sx] & 0x55) != 0x55) slope |= (nextSlopes[i + sx] & 0x55) << 1;
+                        if((neighbors[4] = y == limitY ? 0 : (nextColors[i + sy] & 255)) != 0 && (nextSlopes[i + sy] & 0x33) != 0x33) slope |= (nextSlopes[i + sy] & 0x33) << 2;
+                        if((neighbors[5] = z == limitZ ? 0 : (nextColors[i + 1] & 255)) != 0 && (nextSlopes[i + 1] & 0x0F) != 0x0F) slope   |= (nextSlopes[i + 1] & 0x0F) << 4;
+                        if(Integer.bitCount(slope) < 4) // surrounded by empty or only one partial face
+                        {
+                            writeSlope(result, x, y, z, -1, (byte) 0);
+                            continue;
+                        }
+                        int bestIndex = -1;
+                        for (int a = 0; a < 6; a++) {
+                            if(neighbors[a] == 0) continue;
+                            if(bestIndex == -1) bestIndex = a;
+                            for (int b = a + 1; b < 6; b++) {
+                                if(a + 3 != b && neighbors[a] == neighbors[b]){
+                                    if((a == bestIndex || b == bestIndex) && neighbors[bestIndex] != 0) {
+                                        writeSlope(result, x, y, z, slope, (byte) neighbors[bestIndex]);
+                                        continue PER_CELL;
+                                    }
+                                } else if(neighbors[bestIndex] < neighbors[a]) {
+                                    bestIndex = a;
+                                }
+                            }
+                        }
+                    }
+                    else
+                    {
+                        writeSlope(result, x, y, z, nextSlopes[i], nextColors[i]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean[] clearTableOf(IntObjectMap<VoxMaterial> materialMap) {
+        final boolean[] clear = new boolean[256];
+        clear[0] = true;
+        for (int v = 1; v < 256; v++) {
+            final VoxMaterial m = materialMap.get(v);
+            clear[v] = m != null && m.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f;
+        }
+        return clear;
+    }
+
+    private static int isSurface(VoxelGrid voxels, boolean[] clear, int x, int y, int z) {
+        if(!voxels.contains(x, y, z))
+            return 0;
+        final byte[] data = voxels.data;
+        final int i = voxels.index(x, y, z);
+        if(data[i] == 0) return 0;
+        if(x == 0 || clear[data[i - voxels.strideX] & 255]) return 1;
+        if(y == 0 || clear[data[i - voxels.strideY] & 255]) return 2;
+        if(z == 0 || clear[data[i - 1] & 255]) return 3;
+        if(x >= voxels.sizeX - 1 || clear[data[i + voxels.strideX] & 255]) return 4;
+        if(y >= voxels.sizeY - 1 || clear[data[i + voxels.strideY] & 255]) return 5;
+        if(z >= voxels.sizeZ - 1 || clear[data[i + 1] & 255]) return 6;
+        return -1;
+    }
+
+    public static void soakInPlace(VoxelGrid voxels) {
+        soakInPlace(voxels, VoxelOccupancy.clearTable(STUFFS));
+    }
+
+    public static void soakInPlace(VoxelGrid voxels, IntObjectMap<VoxMaterial> materialMap) {
+        soakInPlace(voxels, clearTableOf(materialMap));
+    }
+
+    private static void soakInPlace(VoxelGrid voxels, boolean[] clear) {
+        final int xs = voxels.sizeX, ys = voxels.sizeY, zs = voxels.sizeZ, sx = voxels.strideX, sy = voxels.strideY;
+        final byte[] data = voxels.data;
+        byte b;
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                for (int z = 0, i = voxels.index(x, y, 0); z < zs; z++, i++) {
+                    if(isSurface(voxels, clear, x, y, z) > 0){
+                        b = data[i];
+                        if(isSurface(voxels, clear, x, y, z-1) == -1) data[i - 1] = b;
+                        if(isSurface(voxels, clear, x-1, y, z) == -1) data[i - sx] = b;
+                        if(isSurface(voxels, clear, x, y-1, z) == -1) data[i - sy] = b;
+                        if(isSurface(voxels, clear, x+1, y, z) == -1) data[i + sx] = b;
+                        if(isSurface(voxels, clear, x, y+1, z) == -1) data[i + sy] = b;
+                        if(isSurface(voxels, clear, x, y, z+1) == -1) data[i + 1] = b;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a new grid with only the surface voxels of {@code voxels}, where each interior voxel next to the surface
+     * gets the value of a surface neighbor, like {@link #soak(byte[][][])}. Surface and interior voxels are found a
+     * whole column-word at a time with a {@link VoxelOccupancy}.
+     * @param voxels a VoxelGrid; will not be modified
+     * @return a new VoxelGrid, the same size as {@code voxels}
+     */
+    public static VoxelGrid soak(VoxelGrid voxels) {
+        final VoxelOccupancy occupancy = new VoxelOccupancy(voxels, VoxelOccupancy.clearTable(STUFFS));
+        final VoxelGrid next = new VoxelGrid(voxels.sizeX, voxels.sizeY, voxels.sizeZ);
+        final byte[] data = voxels.data, out = next.data;
+        final int xs = voxels.sizeX, ys = voxels.sizeY, words = occupancy.words, sx = voxels.strideX, sy = voxels.strideY;
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                final int start = voxels.index(x, y, 0);
+                for (int w = 0; w < words; w++) {
+                    final long surface = occupancy.surface(x, y, w), interior = occupancy.interior(x, y, w);
+                    copyBits(data, out, start + (w << 6), 0, surface);
+                    if (interior == 0L) continue;
+                    // soak() writes each surface voxel into its interior neighbors in index order, so the surface
+                    // neighbor with the highest index is the one that sticks; that's x+1, y+1, z+1, z-1, y-1, x-1
+                    final long above = surface >>> 1 | (w + 1 < words ? occupancy.surface(x, y, w + 1) << 63 : 0L);
+                    final long below = surface << 1 | (w > 0 ? occupancy.surface(x, y, w - 1) >>> 63 : 0L);
+                    long left = interior, from;
+                    from = left & occupancy.surface(x + 1, y, w); left &= ~from; copyBits(data, out, start + (w << 6), sx, from);
+                    from = left & occupancy.surface(x, y + 1, w); left &= ~from; copyBits(data, out, start + (w << 6), sy, from);
+                    from = left & above; left &= ~from; copyBits(data, out, start + (w << 6), 1, from);
+                    from = left & below; left &= ~from; copyBits(data, out, start + (w << 6), -1, from);
+                    from = left & occupancy.surface(x, y - 1, w); left &= ~from; copyBits(data, out, start + (w << 6), -sy, from);
+                    from = left & occupancy.surface(x - 1, y, w); copyBits(data, out, start + (w << 6), -sx, from);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * For each set bit {@code b} in {@code bits}, copies {@code from[base + b + offset]} to {@code to[base + b]}.
+     */
+    private static void copyBits(byte[] from, byte[] to, int base, int offset, long bits) {
+        while (bits != 0L) {
+            final int i = base + Long.numberOfTrailingZeros(bits);
+            to[i] = from[i + offset];
+            bits &= bits - 1L;
+        }
+    }
+
+    /**
+     * Empties every voxel that can't be seen from anywhere, because it isn't on the edge of the grid and all six of
+     * its neighbors hide it. All such voxels are found first, with a {@link VoxelOccupancy}, and then emptied; this
+     * is different from {@link #hollowInPlace(byte[][][])}, which checks each voxel after emptying the ones before it,
+     * and so leaves some hidden voxels behind.
+     * @param voxels a VoxelGrid that will be modified
+     * @return {@code voxels}, after modifications
+     */
+    public static VoxelGrid hollowInPlace(VoxelGrid voxels) {
+        hollowInPlace(new VoxelOccupancy(voxels, VoxelOccupancy.clearTable(STUFFS)));
+        return voxels;
+    }
+
+    /**
+     * Like {@link #hollowInPlace(VoxelGrid)}, but uses an existing VoxelOccupancy (and its clear table) to decide what
+     * is hidden, and empties voxels with {@link VoxelOccupancy#empty(int, int, int, long)}, so the occupancy's masks
+     * are still correct afterward.
+     * @param occupancy a VoxelOccupancy whose grid will be modified
+     * @return {@code occupancy}, after modifications
+     */
+    public static VoxelOccupancy hollowInPlace(VoxelOccupancy occupancy) {
+        final int xs = occupancy.grid.sizeX, ys = occupancy.grid.sizeY, words = occupancy.words;
+        // everything hidden is found before anything is emptied, since emptying a voxel uncovers its neighbors
+        final long[] interior = new long[occupancy.filled.length];
+        for (int x = 1, c; x < xs - 1; x++) {
+            for (int y = 1; y < ys - 1; y++) {
+                c = occupancy.column(x, y);
+                for (int w = 0; w < words; w++) {
+                    interior[c + w] = occupancy.interior(x, y, w);
+                }
+            }
+        }
+        for (int x = 1, c; x < xs - 1; x++) {
+            for (int y = 1; y < ys - 1; y++) {
+                c = occupancy.column(x, y);
+                for (int w = 0; w < words; w++) {
+                    if (interior[c + w] != 0L)
+                        occupancy.empty(x, y, w, interior[c + w]);
+                }
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * Scales {@code voxels} up by 2 on each axis with {@link #simpleScale(VoxelGrid)} and soaks the result with
+     * {@link #soakInPlace(VoxelGrid)}, all at once. The work is split into slabs of {@link #SLAB_WIDTH} x-positions
+     * in {@code voxels}, and each slab finds its slopes, scales, and soaks using only scratch arrays of its own, so
+     * slabs can run in parallel on {@link #POOL}. A slab also works out a little past each of its edges, because
+     * scaling and soaking each look at neighbors, so it never has to wait for the slabs next to it. Each thread
+     * keeps its scratch arrays and reuses them for the next slab, so loading many models barely allocates.
+     * <br>
+     * The result is the same as calling simpleScale() and then soakInPlace(). Soaking in place can depend on the
+     * order voxels are visited in, but only when an interior voxel is fully transparent; if one turns up, this falls
+     * back to doing the two steps one after the other.
+     * @param voxels the grid to scale; will not be modified
+     * @return a new VoxelGrid, twice the size of {@code voxels} on each axis
+     */
+    public static VoxelGrid scaleAndSoak(VoxelGrid voxels) {
+        final VoxelGrid result = new VoxelGrid(voxels.sizeX << 1, voxels.sizeY << 1, voxels.sizeZ << 1);
+        final boolean[] clear = VoxelOccupancy.clearTable(STUFFS);
+        final int xs = voxels.sizeX, width = Math.max(1, SLAB_WIDTH), slabs = (xs + width - 1) / width;
+        // every slab needs scratch arrays of the same sizes, so a thread's arrays fit every slab it runs
+        final int slab = voxels.strideX * (width + 4), scaledSlab = result.strideX * (width + 2 << 1);
+        boolean ordered = true;
+        if (slabs <= 1 || POOL == null) {
+            for (int s = 0; s < slabs; s++) {
+                ordered &= scaleAndSoakSlab(voxels, result, clear, s * width, Math.min(xs, s * width + width), slab, scaledSlab);
+            }
+        } else {
+            final ArrayList<ForkJoinTask<Boolean>> tasks = new ArrayList<>(slabs);
+            for (int s = 0; s < slabs; s++) {
+                final int start = s * width, end = Math.min(xs, start + width);
+                tasks.add(POOL.submit(() -> scaleAndSoakSlab(voxels, result, clear, start, end, slab, scaledSlab)));
+            }
+            for (ForkJoinTask<Boolean> task : tasks) {
+                ordered &= task.join();
+            }
+        }
+        if (ordered)
+            return result;
+        result.fill(0);
+        simpleScale(voxels, result);
+        soakInPlace(result, clear);
+        return result;
+    }
+
+    /**
+     * The same as {@link #runCA(byte[][][], int)}, but for VoxelGrids, and much faster. Each voxel's 3x3x3
+     * neighborhood is counted with a histogram that slides along z, adding one 3x3 plane of neighbors and removing
+     * another per voxel instead of recounting all 27, and the histogram keeps a list of which colors it holds, so
+     * resetting it and finding the most common color only look at those few colors instead of all 256. Each
+     * smoothing level reads one buffer and writes the other, so slabs of {@link #SLAB_WIDTH} x-positions can run in
+     * parallel on {@link #POOL} without any of them seeing another's writes.
+     * @param voxels the grid to smooth; will not be modified
+     * @param smoothLevel how many times to smooth; if less than 1, {@code voxels} is returned as-is
+     * @return a new VoxelGrid with the smoothed voxels, the same size as {@code voxels}
+     */
+    public static VoxelGrid runCA(VoxelGrid voxels, int smoothLevel) {
+        if(smoothLevel < 1)
+            return voxels;
+        VoxelGrid read = voxels.copy(), write = new VoxelGrid(voxels.sizeX, voxels.sizeY, voxels.sizeZ);
+        final int xs = voxels.sizeX, width = Math.max(1, SLAB_WIDTH), slabs = (xs + width - 1) / width;
+        final ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(slabs);
+        for (int v = 0; v < smoothLevel; v++) {
+            final VoxelGrid from = read, to = write;
+            if (slabs <= 1 || POOL == null) {
+                runCASlab(from, to, 0, xs);
+            } else {
+                tasks.clear();
+                for (int s = 0; s < slabs; s++) {
+                    final int start = s * width, end = Math.min(xs, start + width);
+                    tasks.add(POOL.submit(() -> runCASlab(from, to, start, end)));
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            }
+            read = to;
+            write = from;
+        }
+        return read;
+    }
+
+    /**
+     * Does one level of {@link #runCA(VoxelGrid, int)} for x-positions from {@code x0} up to {@code x1}, reading
+     * only {@code read} and writing only that part of {@code write}.
+     */
+    private static void runCASlab(VoxelGrid read, VoxelGrid write, int x0, int x1) {
+        final int xs = read.sizeX, ys = read.sizeY, zs = read.sizeZ, sx = read.strideX, sy = read.strideY;
+        final byte[] src = read.data, dst = write.data;
+        final int[] colorCount = new int[256], where = new int[256], touched = new int[32];
+        final int[] plane = {-sx - sy, -sx, -sx + sy, -sy, 0, sy, sx - sy, sx, sx + sy};
+        for (int x = x0; x < x1; x++) {
+            for (int y = 0; y < ys; y++) {
+                final int i = read.index(x, y, 0);
+                // edges keep their voxels, as runCA() does
+                if (x == 0 || y == 0 || x == xs - 1 || y == ys - 1 || zs < 3) {
+                    System.arraycopy(src, i, dst, i, zs);
+                    continue;
+                }
+                int distinct = 0;
+                for (int z = 0; z < 2; z++) {
+                    for (int p : plane) {
+                        final int c = src[i + p + z] & 255;
+                        if (colorCount[c]++ == 0) {
+                            where[c] = distinct;
+                            touched[distinct++] = c;
+                        }
+                    }
+                }
+                dst[i] = src[i];
+                for (int z = 1; z < zs - 1; z++) {
+                    for (int p : plane) {
+                        final int c = src[i + p + z + 1] & 255;
+                        if (colorCount[c]++ == 0) {
+                            where[c] = distinct;
+                            touched[distinct++] = c;
+                        }
+                    }
+                    final byte voxel = src[i + z];
+                    if (voxel == 2) {
+                        dst[i + z] = voxel;
+                    } else if (colorCount[0] >= 23) {
+                        dst[i + z] = 0;
+                    } else {
+                        // the most common color with more than a third as many voxels as empty space; ties go to the
+                        // lowest color, which runCA() finds first
+                        int max = 0, cc = colorCount[0] / 3;
+                        for (int t = 0; t < distinct; t++) {
+                            final int c = touched[t], tmp = colorCount[c];
+                            if (c != 0 && (tmp > cc || (tmp == cc && max != 0 && c < max))) {
+                                cc = tmp;
+                                max = c;
+                            }
+                        }
+                        dst[i + z] = (byte) max;
+                    }
+                    for (int p : plane) {
+                        final int c = src[i + p + z - 1] & 255;
+                        if (--colorCount[c] == 0) {
+                            // swap the last touched color into this one's spot
+                            final int last = touched[--distinct];
+                            touched[where[c]] = last;
+                            where[last] = where[c];
+                        }
+                    }
+                }
+                dst[i + zs - 1] = src[i + zs - 1];
+                // only the last two planes are still counted
+                for (int t = 0; t < distinct; t++) {
+                    colorCount[touched[t]] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scratch arrays for {@link #scaleAndSoak(VoxelGrid)}, one set of four per thread, each at least as long as the
+     * largest slab that thread has needed. A set is only kept if it adds up to at most {@link #SCRATCH_MAX_BYTES}, so
+     * no thread holds on to more than that, and the total is bounded by the number of threads that run slabs.
+     */
+    private static final ThreadLocal<byte[][]> SCRATCH = new ThreadLocal<>();
+    /**
+     * The most bytes of scratch space one thread keeps between calls; slabs of a 256x256x256 model need about 12 MB.
+     */
+    public static long SCRATCH_MAX_BYTES = 1L << 25;
+
+    /**
+     * Takes this thread's scratch arrays, replacing any that are too short, so the first two have at least
+     * {@code slabLength} items and the last two have at least {@code scaledLength}. The contents are garbage.
+     */
+    private static byte[][] borrowScratch(int slabLength, int scaledLength) {
+        byte[][] scratch = SCRATCH.get();
+        // taken out while in use, so a nested call on this thread can't share them
+        SCRATCH.set(null);
+        if (scratch == null) scratch = new byte[4][];
+        for (int i = 0; i < 4; i++) {
+            final int length = i < 2 ? slabLength : scaledLength;
+            if (scratch[i] == null || scratch[i].length < length)
+                scratch[i] = new byte[length];
+        }
+        return scratch;
+    }
+
+    private static void returnScratch(byte[][] scratch) {
+        long bytes = 0L;
+        for (byte[] s : scratch) {
+            bytes += s.length;
+        }
+        if (bytes <= SCRATCH_MAX_BYTES)
+            SCRATCH.set(scratch);
+    }
+
+    /**
+     * Does the part of {@link #scaleAndSoak(VoxelGrid)} that writes {@code result} from x-position {@code 2 * x0} up
+     * to {@code 2 * x1}. The first pass of simpleScale() runs from {@code x0 - 2} to {@code x1 + 2}, the second from
+     * {@code x0 - 1} to {@code x1 + 1} into a scratch copy of that part of the result, and then soaking reads that
+     * scratch copy and writes only this slab's part of {@code result}. Nothing else is written, so slabs can't
+     * interfere with each other.
+     * @return false if an interior voxel was fully transparent, which means this result can't be used
+     */
+    private static boolean scaleAndSoakSlab(VoxelGrid voxels, VoxelGrid result, boolean[] clear, int x0, int x1,
+                                            int slabLength, int scaledLength) {
+        final int xs = voxels.sizeX, ys = voxels.sizeY, zs = voxels.sizeZ, sx = voxels.strideX, sy = voxels.strideY;
+        final int limitX = xs - 1, limitY = ys - 1, limitZ = zs - 1;
+        final byte[][] scratch = borrowScratch(slabLength, scaledLength);
+        final byte[] data = voxels.data, nextColors = scratch[0], nextSlopes = scratch[1], scaled = scratch[2],
+                kinds = scratch[3];
+        try {
+            final int firstStart = Math.max(0, x0 - 2), firstEnd = Math.min(xs, x1 + 2);
+            final int[] neighbors = new int[6];
+            for (int x = firstStart; x < firstEnd; x++) {
+                for (int y = 0; y <= limitY; y++) {
+                    PER_CELL:
+                    for (int z = 0, i = voxels.index(x, y, 0), l = i - firstStart * sx; z <= limitZ; z++, i++, l++) {
+                        if(data[i] == 0)
+                        {
+                            int slope = 0;
+                            if((neighbors[0] = x == 0 ? 0 : (data[i - sx] & 255)) != 0) slope      |= 0x55;
+                            if((neighbors[1] = y == 0 ? 0 : (data[i - sy] & 255)) != 0) slope      |= 0x33;
+                            if((neighbors[2] = z == 0 ? 0 : (data[i - 1] & 255)) != 0) slope       |= 0x0F;
+                            if((neighbors[3] = x == limitX ? 0 : (data[i + sx] & 255)) != 0) slope |= 0xAA;
+                            if((neighbors[4] = y == limitY ? 0 : (data[i + sy] & 255)) != 0) slope |= 0xCC;
+                            if((neighbors[5] = z == limitZ ? 0 : (data[i + 1] & 255)) != 0) slope  |= 0xF0;
+                            // the scratch arrays are reused, so unlike simpleScale(), this always writes both
+                            nextColors[l] = 0;
+                            nextSlopes[l] = 0;
+                            if(Integer.bitCount(slope) < 5)
+                                continue;
+                            int bestIndex = -1;
+                            for (int a = 0; a < 6; a++) {
+                                if(neighbors[a] == 0) continue;
+                                if(bestIndex == -1) bestIndex = a;
+                                for (int b = a + 1; b < 6; b++) {
+                                    if(a + 3 != b && neighbors[a] == neighbors[b]){
+                                        if((a == bestIndex || b == bestIndex) && neighbors[bestIndex] != 0) {
+                                            nextColors[l] = (byte) neighbors[bestIndex];
+                                            nextSlopes[l] = (byte) slope;
+                                            continue PER_CELL;
+                                        }
+                                    } else if(neighbors[bestIndex] < neighbors[a]) {
+                                        bestIndex = a;
+                                    }
+                                }
+                            }
+                        }
+                        else
+                        {
+                            nextColors[l] = data[i];
+                            nextSlopes[l] = -1;
+                        }
+                    }
+                }
+            }
+
+            final int secondStart = Math.max(0, x0 - 1), secondEnd = Math.min(xs, x1 + 1);
+            // scaled holds x-positions of the result from 2 * secondStart up to 2 * secondEnd
+            final VoxelGrid local = new VoxelGrid(secondEnd - secondStart << 1, ys << 1, zs << 1, scaled);
+            for (int x = secondStart; x < secondEnd; x++) {
+                for (int y = 0; y <= limitY; y++) {
+                    PER_CELL:
+                    for (int z = 0, l = (x - firstStart) * sx + y * sy; z <= limitZ; z++, l++) {
+                        final int lx = x - secondStart;
+                        if(nextColors[l] == 0)
+                        {
+                            int slope = 0;
+                            if((neighbors[0] = x == 0 ? 0 : (nextColors[l - sx] & 255)) != 0 && (nextSlopes[l - sx] & 0xAA) != 0xAA) slope      |= (nextSlopes[l - sx] & 0xAA) >>> 1;
+                            if((neighbors[1] = y == 0 ? 0 : (nextColors[l - sy] & 255)) != 0 && (nextSlopes[l - sy] & 0xCC) != 0xCC) slope      |= (nextSlopes[l - sy] & 0xCC) >>> 2;
+                            if((neighbors[2] = z == 0 ? 0 : (nextColors[l - 1] & 255)) != 0 && (nextSlopes[l - 1] & 0xF0) != 0xF0) slope        |= (nextSlopes[l - 1] & 0xF0) >>> 4;
+                            if((neighbors[3] = x == limitX ? 0 : (nextColors[l + sx] & 255)) != 0 && (nextSlopes[l + sx] & 0x55) != 0x55) slope |= (nextSlopes[l + sx] & 0x55) << 1;
+                            if((neighbors[4] = y == limitY ? 0 : (nextColors[l + sy] & 255)) != 0 && (nextSlopes[l + sy] & 0x33) != 0x33) slope |= (nextSlopes[l + sy] & 0x33) << 2;
+                            if((neighbors[5] = z == limitZ ? 0 : (nextColors[l + 1] & 255)) != 0 && (nextSlopes[l + 1] & 0x0F) != 0x0F) slope   |= (nextSlopes[l + 1] & 0x0F) << 4;
+                            if(Integer.bitCount(slope) >= 4)
+                            {
+                                int bestIndex = -1;
+                                for (int a = 0; a < 6; a++) {
+                                    if(neighbors[a] == 0) continue;
+                                    if(bestIndex == -1) bestIndex = a;
+                                    for (int b = a + 1; b < 6; b++) {
+                                        if(a + 3 != b && neighbors[a] == neighbors[b]){
+                                            if((a == bestIndex || b == bestIndex) && neighbors[bestIndex] != 0) {
+                                                writeSlope(local, lx, y, z, slope, (byte) neighbors[bestIndex]);
+                                                continue PER_CELL;
+                                            }
+                                        } else if(neighbors[bestIndex] < neighbors[a]) {
+                                            bestIndex = a;
+                                        }
+                                    }
+                                }
+                            }
+                            writeSlope(local, lx, y, z, -1, (byte) 0);
+                        }
+                        else
+                        {
+                            writeSlope(local, lx, y, z, nextSlopes[l], nextColors[l]);
+                        }
+                    }
+                }
+            }
+
+            // soaking; each surface voxel's value goes into its interior neighbors, and when an interior voxel has
+            // several surface neighbors, the one soakInPlace() would visit last (the one with the highest index) wins
+            final int rxs = result.sizeX, rys = result.sizeY, rzs = result.sizeZ, rsx = result.strideX, rsy = result.strideY;
+            final int offset = (secondStart << 1) * rsx;
+            // what surface() returns for each voxel, classified once: 1 for surface, -1 for interior, 0 for empty
+            final int kindStart = Math.max(0, (x0 << 1) - 1), kindEnd = Math.min(rxs, (x1 << 1) + 1);
+            for (int x = kindStart; x < kindEnd; x++) {
+                for (int y = 0; y < rys; y++) {
+                    for (int z = 0, l = result.index(x, y, 0) - offset; z < rzs; z++, l++) {
+                        kinds[l] = (byte) Integer.signum(surface(scaled, clear, l, x, y, z, rxs, rys, rzs, rsx, rsy));
+                    }
+                }
+            }
+            final byte[] out = result.data;
+            for (int x = x0 << 1, xEnd = x1 << 1; x < xEnd; x++) {
+                for (int y = 0; y < rys; y++) {
+                    for (int z = 0, o = result.index(x, y, 0), l = o - offset; z < rzs; z++, o++, l++) {
+                        byte v = scaled[l];
+                        // interior voxels are never on the edge of the grid, so all their neighbors exist
+                        if (kinds[l] == -1) {
+                            if (clear[v & 255])
+                                return false;
+                            if (kinds[l + rsx] > 0) v = scaled[l + rsx];
+                            else if (kinds[l + rsy] > 0) v = scaled[l + rsy];
+                            else if (kinds[l + 1] > 0) v = scaled[l + 1];
+                            else if (kinds[l - 1] > 0) v = scaled[l - 1];
+                            else if (kinds[l - rsy] > 0) v = scaled[l - rsy];
+                            else if (kinds[l - rsx] > 0) v = scaled[l - rsx];
+                        }
+                        out[o] = v;
+                    }
+                }
+            }
+            return true;
+        } finally {
+            returnScratch(scratch);
+        }
+    }
+
+    /**
+     * The same as {@link #isSurface(VoxelGrid, boolean[], int, int, int)}, but for a part of a grid held in
+     * {@code data}, where {@code i} is the index in data of the voxel at x,y,z, and the sizes are of the whole grid.
+     */
+    private static int surface(byte[] data, boolean[] clear, int i, int x, int y, int z,
+                               int xs, int ys, int zs, int sx, int sy) {
+        if(x < 0 || y < 0 || z < 0 || x >= xs || y >= ys || z >= zs || data[i] == 0)
+            return 0;
+        if(x == 0 || clear[data[i - sx] & 255]) return 1;
+        if(y == 0 || clear[data[i - sy] & 255]) return 2;
+        if(z == 0 || clear[data[i - 1] & 255]) return 3;
+        if(x >= xs - 1 || clear[data[i + sx] & 255]) return 4;
+        if(y >= ys - 1 || clear[data[i + sy] & 255]) return 5;
+        if(z >= zs - 1 || clear[data[i + 1] & 255]) return 6;
+        return -1;
+    }
+
+    /**
+     * The same as {@link #flood(byte[][][], byte[][][])}, but for VoxelGrids of the same size. This is a single
+     * breadth-first search out from every voxel of {@code base} that is also in {@code bounds}, so each voxel is
+     * visited once, rather than sweeping the whole grid until nothing changes.
+     * @param base the starting voxels, which will grow to fill any connected voxels in {@code bounds}
+     * @param bounds the voxels that {@code base} can grow into; will not be modified
+     * @return how many voxels in {@code base} are non-empty afterwards
+     */
+    public static int flood(VoxelGrid base, VoxelGrid bounds) {
+        final int n = base.size(), xs = base.sizeX, ys = base.sizeY, zs = base.sizeZ, sx = base.strideX, sy = base.strideY;
+        final byte[] nx = base.data, bd = bounds.data;
+        // every voxel enters the queue at most once, because it is filled as it enters
+        final int[] queue = new int[n];
+        int head = 0, tail = 0, size = 0;
+        byte t;
+        for (int i = 0; i < n; i++) {
+            if (nx[i] != 0) {
+                ++size;
+                if ((t = bd[i]) != 0) {
+                    nx[i] = t;
+                    queue[tail++] = i;
+                }
+            }
+        }
+        while (head < tail) {
+            final int i = queue[head++];
+            final int x = i / sx, y = i / sy % ys, z = i % sy;
+            int j;
+            if (x > 0 && nx[j = i - sx] == 0 && (t = bd[j]) != 0) { nx[j] = t; queue[tail++] = j; ++size; }
+            if (x < xs - 1 && nx[j = i + sx] == 0 && (t = bd[j]) != 0) { nx[j] = t; queue[tail++] = j; ++size; }
+            if (y > 0 && nx[j = i - sy] == 0 && (t = bd[j]) != 0) { nx[j] = t; queue[tail++] = j; ++size; }
+            if (y < ys - 1 && nx[j = i + sy] == 0 && (t = bd[j]) != 0) { nx[j] = t; queue[tail++] = j; ++size; }
+            if (z > 0 && nx[j = i - 1] == 0 && (t = bd[j]) != 0) { nx[j] = t; queue[tail++] = j; ++size; }
+            if (z < zs - 1 && nx[j = i + 1] == 0 && (t = bd[j]) != 0) { nx[j] = t; queue[tail++] = j; ++size; }
+        }
+        return size;
+    }
+
+    public static void translateCopyInto(VoxelGrid voxels, VoxelGrid into, int xMove, int yMove, int zMove) {
+        final int xs = into.sizeX, ys = into.sizeY, zs = into.sizeZ;
+        final byte[] from = voxels.data, to = into.data;
+        for (int x = xMove, xx = 0; x < xs && xx < voxels.sizeX && xx < xs; x++, xx++) {
+            if(x < 0) continue;
+            for (int y = yMove, yy = 0; y < ys && yy < voxels.sizeY && yy < ys; y++, yy++) {
+                if(y < 0) continue;
+                for (int z = zMove, zz = 0, i = into.index(x, y, zMove), ii = voxels.index(xx, yy, 0);
+                     z < zs && zz < voxels.sizeZ && zz < zs; z++, zz++, i++, ii++) {
+                    if(z < 0) continue;
+                    if (to[i] == 0 && from[ii] != 0)
+                        to[i] = from[ii];
+                }
+            }
+        }
+    }
+
+    public static void translateCopyInto(VoxelGrid voxels, VoxelGrid into, int xMove, int yMove, int zMove, IntIntMap remap) {
+        final int xs = into.sizeX, ys = into.sizeY, zs = into.sizeZ;
+        final byte[] from = voxels.data, to = into.data;
+        for (int x = xMove, xx = 0; x < xs && xx < voxels.sizeX && xx < xs; x++, xx++) {
+            if(x < 0) continue;
+            for (int y = yMove, yy = 0; y < ys && yy < voxels.sizeY && yy < ys; y++, yy++) {
+                if(y < 0) continue;
+                for (int z = zMove, zz = 0, i = into.index(x, y, zMove), ii = voxels.index(xx, yy, 0);
+                     z < zs && zz < voxels.sizeZ && zz < zs; z++, zz++, i++, ii++) {
+                    if(z < 0) continue;
+                    if (to[i] == 0) {
+                        int voxel = from[ii];
+                        if(remap.containsKey(voxel))
+                            voxel = remap.get(voxel);
+                        if(voxel != 0)
+                            to[i] = (byte) voxel;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes one x-slice of {@code voxels} the same way {@link #hash(byte[][])} hashes {@code voxels.toArray()[x]}.
+     * @param row a buffer with length {@code voxels.sizeZ}, which will be overwritten
+     */
+    private static int hash(VoxelGrid voxels, int x, byte[] row) {
+        long seed = 0x9E3779B97F4A7C15L;
+        final int len = voxels.sizeY, zs = voxels.sizeZ, start = x * voxels.strideX;
+        final byte[] data = voxels.data;
+        final int[] h = new int[4];
+        for (int i = 3; i < len; i+=4) {
+            for (int j = 0; j < 4; j++) {
+                System.arraycopy(data, start + (i - 3 + j) * zs, row, 0, zs);
+                h[j] = Hasher.beleth.hash(row);
+            }
+            seed = mum(mum(h[0] ^ b1, h[1] ^ b2) + seed, mum(h[2] ^ b3, h[3] ^ b4));
+        }
+        final int rem = len & 3;
+        for (int j = 0; j < rem; j++) {
+            System.arraycopy(data, start + (len - rem + j) * zs, row, 0, zs);
+            h[j] = Hasher.beleth.hash(row);
+        }
+        int t;
+        switch (rem) {
+            case 0: seed = mum(b1 ^ seed, b4 + seed); break;
+            case 1: seed = mum(seed ^((t = h[0]) >>> 16), b3 ^ (t & 0xFFFFL)); break;
+            case 2: seed = mum(seed ^ h[0], b0 ^ h[1]); break;
+            case 3: seed = mum(seed ^ h[0], b2 ^ h[1]) ^ mum(seed ^ h[2], b4); break;
+        }
+        return (int) mum(seed ^ seed << 16, len ^ b0);
+    }
+
+    /**
+     * Gets the same 64-bit hash that {@link #hash64(byte[][][])} would for {@code voxels.toArray()}, so hashes of
+     * flat and jagged grids with the same contents can be compared, without making a jagged copy.
+     * @param voxels a VoxelGrid; will not be modified
+     * @return a 64-bit hash of the contents of {@code voxels}
+     */
+    public static long hash64(final VoxelGrid voxels) {
+        if (voxels == null) return 0;
+        long seed = 0x7ddc1606c2a753b9L;
+        final int len = voxels.sizeX;
+        final byte[] row = new byte[voxels.sizeZ];
+        for (int i = 3; i < len; i += 4) {
+            seed = mum(
+                    mum(hash(voxels, i - 3, row) ^ b1, hash(voxels, i - 2, row) ^ b2) + seed,
+                    mum(hash(voxels, i - 1, row) ^ b3, hash(voxels, i, row) ^ b4));
+        }
+        int t;
+        switch (len & 3) {
+            case 0:
+                seed = mum(b1 ^ seed, b4 + seed);
+                break;
+            case 1:
+                seed = mum(seed ^ ((t = hash(voxels, len - 1, row)) >>> 16), b3 ^ (t & 0xFFFFL));
+                break;
+            case 2:
+                seed = mum(seed ^ hash(voxels, len - 2, row), b0 ^ hash(voxels, len - 1, row));
+                break;
+            case 3:
+                seed = mum(seed ^ hash(voxels, len - 3, row), b2 ^ hash(voxels, len - 2, row)) ^ mum(seed ^ hash(voxels, len - 1, row), b4);
+                break;
+        }
+        seed = (seed ^ seed << 16) * (len ^ b0);
+        return seed - (seed >>> 31) + (seed << 33);
+    }
+
     /**
      * Returns a hashed float value given four longs; the result should be uniform between 0 (inclusive) and 1
      * (exclusive).
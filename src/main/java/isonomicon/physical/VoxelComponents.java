@@ -0,0 +1,115 @@
+package isonomicon.physical;
+
+import java.util.Arrays;
+
+/**
+ * Labels every group of face-connected (6-connected) non-empty voxels in a {@link VoxelGrid}, in one pass over the
+ * grid. Each non-empty voxel is visited exactly once by a breadth-first search, so this takes time proportional to the
+ * size of the grid no matter how many parts a model has or how twisty they are. That replaces the old approach in
+ * {@link Tools3D#largestPart(byte[][][])}, which swept the whole grid again and again until each part stopped growing.
+ * <br>
+ * Labels start at 1 and go up to {@link #count}; 0 means empty. Parts are numbered in the order their first voxel
+ * appears in the grid's {@link VoxelGrid#data}, which is the same order {@link Tools3D#firstTight(byte[][][])} finds
+ * them in.
+ */
+public class VoxelComponents {
+    /**
+     * The grid this labelled; it isn't copied, so changing it makes these labels out of date.
+     */
+    public final VoxelGrid grid;
+    /**
+     * The label of each voxel, at the same index as in {@link VoxelGrid#data}; 0 for empty voxels.
+     */
+    public final int[] labels;
+    /**
+     * How many voxels have each label; {@code sizes[0]} is the number of empty voxels.
+     */
+    public final int[] sizes;
+    /**
+     * The index of the first voxel with each label, in {@link VoxelGrid#data}; {@code starts[0]} is -1.
+     */
+    public final int[] starts;
+    /**
+     * How many separate parts there are.
+     */
+    public final int count;
+
+    public VoxelComponents(VoxelGrid grid) {
+        this.grid = grid;
+        final int n = grid.size(), xs = grid.sizeX, ys = grid.sizeY, zs = grid.sizeZ,
+                sx = grid.strideX, sy = grid.strideY;
+        final byte[] data = grid.data;
+        labels = new int[n];
+        // every voxel enters the queue at most once, so it never needs to wrap around
+        final int[] queue = new int[n];
+        int[] sizes = new int[16], starts = new int[16];
+        starts[0] = -1;
+        int label = 0;
+        for (int s = 0; s < n; s++) {
+            if (data[s] == 0 || labels[s] != 0) continue;
+            if (++label == sizes.length) {
+                sizes = Arrays.copyOf(sizes, label << 1);
+                starts = Arrays.copyOf(starts, label << 1);
+            }
+            starts[label] = s;
+            labels[s] = label;
+            int head = 0, tail = 0;
+            queue[tail++] = s;
+            while (head < tail) {
+                final int i = queue[head++];
+                final int x = i / sx, y = i / sy % ys, z = i % sy;
+                int j;
+                if (x > 0 && data[j = i - sx] != 0 && labels[j] == 0) { labels[j] = label; queue[tail++] = j; }
+                if (x < xs - 1 && data[j = i + sx] != 0 && labels[j] == 0) { labels[j] = label; queue[tail++] = j; }
+                if (y > 0 && data[j = i - sy] != 0 && labels[j] == 0) { labels[j] = label; queue[tail++] = j; }
+                if (y < ys - 1 && data[j = i + sy] != 0 && labels[j] == 0) { labels[j] = label; queue[tail++] = j; }
+                if (z > 0 && data[j = i - 1] != 0 && labels[j] == 0) { labels[j] = label; queue[tail++] = j; }
+                if (z < zs - 1 && data[j = i + 1] != 0 && labels[j] == 0) { labels[j] = label; queue[tail++] = j; }
+            }
+            sizes[label] = tail;
+        }
+        count = label;
+        this.sizes = Arrays.copyOf(sizes, label + 1);
+        this.starts = Arrays.copyOf(starts, label + 1);
+        int empty = n;
+        for (int i = 1; i <= label; i++) {
+            empty -= this.sizes[i];
+        }
+        this.sizes[0] = empty;
+    }
+
+    /**
+     * Gets the label of the part with the most voxels; if parts tie, the one that comes first wins.
+     * @return the label of the largest part, or 0 if the grid is empty
+     */
+    public int largest() {
+        int best = 0, bestSize = 0;
+        for (int i = 1; i <= count; i++) {
+            if (sizes[i] > bestSize) {
+                bestSize = sizes[i];
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets a new grid, the same size as {@link #grid}, with only the voxels that have the given label.
+     * @param label a label from 1 to {@link #count}
+     * @return a new VoxelGrid holding one part, with its original voxel values
+     */
+    public VoxelGrid mask(int label) {
+        final VoxelGrid result = new VoxelGrid(grid.sizeX, grid.sizeY, grid.sizeZ);
+        if (label <= 0 || label > count) return result;
+        final byte[] data = grid.data, out = result.data;
+        for (int i = starts[label], n = labels.length; i < n; i++) {
+            if (labels[i] == label) out[i] = data[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "VoxelComponents{" + count + " parts in " + grid + "}";
+    }
+}
@@ -0,0 +1,202 @@
+package isonomicon.physical;
+
+import java.util.Arrays;
+
+/**
+ * A 3D grid of voxels stored in one contiguous {@code byte[]}, instead of the jagged {@code byte[][][]} that most of
+ * this project passes around. A jagged grid is an array of arrays of arrays, so every access goes through two extra
+ * references, and each of its {@code sizeX * sizeY} rows is a separate object somewhere on the heap; a VoxelGrid
+ * keeps every voxel next to its neighbors in memory, and moving to a neighbor is just adding a stride to an index.
+ * <br>
+ * The layout is the same as a {@code byte[sizeX][sizeY][sizeZ]}: z changes fastest, then y, then x, so
+ * {@code data[index(x, y, z)]} is the voxel a jagged grid would have at {@code [x][y][z]}, and each row along z is a
+ * contiguous run of {@link #sizeZ} bytes. That makes the adapters ({@link #VoxelGrid(byte[][][])},
+ * {@link #set(byte[][][])}, {@link #toArray()}, and {@link #into(byte[][][])}) just a System.arraycopy per row.
+ * <br>
+ * The flat versions of the {@link Tools3D} operations take and return VoxelGrids; the {@code byte[][][]} versions of
+ * the expensive ones convert with these adapters and call the flat versions, so existing code keeps working.
+ */
+public class VoxelGrid {
+    public final int sizeX, sizeY, sizeZ;
+    /**
+     * How far apart in {@link #data} two voxels are when their x differs by 1; this is {@code sizeY * sizeZ}.
+     */
+    public final int strideX;
+    /**
+     * How far apart in {@link #data} two voxels are when their y differs by 1; this is {@code sizeZ}. Voxels that
+     * differ by 1 in z are always 1 apart.
+     */
+    public final int strideY;
+    /**
+     * Every voxel, in x, then y, then z order; {@code data[index(x, y, z)]} is the voxel at x,y,z.
+     */
+    public final byte[] data;
+
+    /**
+     * Makes an empty grid with the given size.
+     */
+    public VoxelGrid(int sizeX, int sizeY, int sizeZ) {
+        this(sizeX, sizeY, sizeZ, new byte[sizeX * sizeY * sizeZ]);
+    }
+
+    /**
+     * Makes a grid that uses {@code data} directly, without copying it.
+     * @param data must have a length of at least {@code sizeX * sizeY * sizeZ}
+     */
+    public VoxelGrid(int sizeX, int sizeY, int sizeZ, byte[] data) {
+        if (data.length < sizeX * sizeY * sizeZ)
+            throw new IllegalArgumentException("data is too small for a " + sizeX + "x" + sizeY + "x" + sizeZ + " grid");
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.strideX = sizeY * sizeZ;
+        this.strideY = sizeZ;
+        this.data = data;
+    }
+
+    /**
+     * Makes a grid with the same size and contents as {@code voxels}, which must not be jagged in practice (every
+     * row has to be the same length as {@code voxels[0][0]}).
+     * @param voxels a 3D byte array, which won't be modified
+     */
+    public VoxelGrid(byte[][][] voxels) {
+        this(voxels.length, voxels[0].length, voxels[0][0].length);
+        set(voxels);
+    }
+
+    /**
+     * @return the index in {@link #data} of the voxel at x,y,z, with no bounds checks
+     */
+    public int index(int x, int y, int z) {
+        return x * strideX + y * strideY + z;
+    }
+
+    /**
+     * @return the x position of the voxel at {@code index} in {@link #data}
+     */
+    public int x(int index) {
+        return index / strideX;
+    }
+
+    /**
+     * @return the y position of the voxel at {@code index} in {@link #data}
+     */
+    public int y(int index) {
+        return index / strideY % sizeY;
+    }
+
+    /**
+     * @return the z position of the voxel at {@code index} in {@link #data}
+     */
+    public int z(int index) {
+        return index % strideY;
+    }
+
+    /**
+     * @return the total number of voxels, empty or not, that this can hold
+     */
+    public int size() {
+        return sizeX * sizeY * sizeZ;
+    }
+
+    /**
+     * @return true if x,y,z is inside this grid
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < sizeX && y < sizeY && z < sizeZ;
+    }
+
+    /**
+     * @return the voxel at x,y,z; throws if that's outside this grid, like a byte[][][] would
+     */
+    public byte get(int x, int y, int z) {
+        return data[index(x, y, z)];
+    }
+
+    /**
+     * @return the voxel at x,y,z, or 0 if that's outside this grid
+     */
+    public byte getOrZero(int x, int y, int z) {
+        return contains(x, y, z) ? data[index(x, y, z)] : 0;
+    }
+
+    public void set(int x, int y, int z, byte voxel) {
+        data[index(x, y, z)] = voxel;
+    }
+
+    /**
+     * Sets every voxel to {@code value}.
+     * @return this, for chaining
+     */
+    public VoxelGrid fill(int value) {
+        Arrays.fill(data, 0, size(), (byte) value);
+        return this;
+    }
+
+    /**
+     * Copies the contents of {@code voxels} into this; only the part that fits in both is copied.
+     * @param voxels a 3D byte array, which won't be modified
+     * @return this, for chaining
+     */
+    public VoxelGrid set(byte[][][] voxels) {
+        final int xs = Math.min(sizeX, voxels.length), ys = Math.min(sizeY, voxels[0].length),
+                zs = Math.min(sizeZ, voxels[0][0].length);
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0, i = x * strideX; y < ys; y++, i += strideY) {
+                System.arraycopy(voxels[x][y], 0, data, i, zs);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Copies the contents of {@code other}, which must be the same size, into this.
+     * @return this, for chaining
+     */
+    public VoxelGrid set(VoxelGrid other) {
+        System.arraycopy(other.data, 0, data, 0, size());
+        return this;
+    }
+
+    /**
+     * @return a new VoxelGrid with the same size and contents as this
+     */
+    public VoxelGrid copy() {
+        return new VoxelGrid(sizeX, sizeY, sizeZ, Arrays.copyOf(data, size()));
+    }
+
+    /**
+     * @return a new {@code byte[sizeX][sizeY][sizeZ]} with the same contents as this
+     */
+    public byte[][][] toArray() {
+        return into(new byte[sizeX][sizeY][sizeZ]);
+    }
+
+    /**
+     * Copies the contents of this into {@code voxels}; only the part that fits in both is copied.
+     * @param voxels a 3D byte array that will be modified
+     * @return {@code voxels}, for chaining
+     */
+    public byte[][][] into(byte[][][] voxels) {
+        final int xs = Math.min(sizeX, voxels.length), ys = Math.min(sizeY, voxels[0].length),
+                zs = Math.min(sizeZ, voxels[0][0].length);
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0, i = x * strideX; y < ys; y++, i += strideY) {
+                System.arraycopy(data, i, voxels[x][y], 0, zs);
+            }
+        }
+        return voxels;
+    }
+
+    /**
+     * @return true if {@code other} has the same size as this
+     */
+    public boolean sameSize(VoxelGrid other) {
+        return other.sizeX == sizeX && other.sizeY == sizeY && other.sizeZ == sizeZ;
+    }
+
+    @Override
+    public String toString() {
+        return "VoxelGrid{" + sizeX + "x" + sizeY + "x" + sizeZ + "}";
+    }
+}
@@ -0,0 +1,217 @@
+package isonomicon.physical;
+
+import java.util.Arrays;
+
+/**
+ * Bitmasks that go along with a {@link VoxelGrid}, with one bit per voxel, for the two questions that surface and
+ * hollowing tests ask over and over: is this voxel filled, and does it hide what's behind it? Each column of voxels
+ * along z (one x,y position) gets {@link #words} longs in each mask, with bit {@code z & 63} of word {@code z >>> 6}
+ * for the voxel at that z. With those, whether every voxel in a column is inside the model, with all six neighbors
+ * hiding it, is a few ANDs and shifts of whole words (see {@link #interior(int, int, int)}), instead of six
+ * neighbor lookups and six material lookups per voxel.
+ * <br>
+ * Which voxel indices hide things is decided by a "clear" table given to the constructor, where true means a voxel
+ * with that index can be seen through; index 0 (empty) is always clear. {@link #clearTable(Stuff[])} makes the table
+ * that {@link Tools3D} uses, where fully transparent Stuff is clear. The masks only stay correct if the grid is changed
+ * through {@link #set(int, int, int, byte)} or {@link #empty(int, int, int, long)}, or if {@link #refresh()} is called
+ * after changing it some other way. {@link isonomicon.io.extended.VoxModel#occupancy(int, Stuff[])} keeps one of these
+ * for each grid in a model, and refreshes it in place after the model is changed.
+ */
+public class VoxelOccupancy {
+    public final VoxelGrid grid;
+    /**
+     * True for each voxel index that doesn't hide what's behind it.
+     */
+    public final boolean[] clear;
+    /**
+     * How many longs each column uses in {@link #filled} and {@link #opaque}.
+     */
+    public final int words;
+    /**
+     * A bit is set if its voxel is not 0.
+     */
+    public final long[] filled;
+    /**
+     * A bit is set if its voxel is not 0 and is not {@link #clear}.
+     */
+    public final long[] opaque;
+
+    /**
+     * Makes the masks for {@code grid}, using {@link #clearTable(Stuff[])} with the given Stuff array.
+     */
+    public VoxelOccupancy(VoxelGrid grid, Stuff[] stuffs) {
+        this(grid, clearTable(stuffs));
+    }
+
+    /**
+     * Makes the masks for {@code grid}.
+     * @param grid the grid to describe; it isn't copied
+     * @param clear a 256-element table, true for voxel indices that can be seen through
+     */
+    public VoxelOccupancy(VoxelGrid grid, boolean[] clear) {
+        this.grid = grid;
+        this.clear = clear;
+        words = grid.sizeZ + 63 >>> 6;
+        filled = new long[grid.sizeX * grid.sizeY * words];
+        opaque = new long[filled.length];
+        refresh();
+    }
+
+    /**
+     * Gets a table where an item is true if a voxel with that index can't hide anything, either because it is empty
+     * or because its Stuff is fully transparent.
+     * @param stuffs a Stuff array, such as {@link Stuff#STUFFS_B}
+     * @return a new 256-element boolean array
+     */
+    public static boolean[] clearTable(Stuff[] stuffs) {
+        final boolean[] clear = new boolean[256];
+        clear[0] = true;
+        for (int v = 1; v < 256; v++) {
+            clear[v] = stuffs[v % stuffs.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f;
+        }
+        return clear;
+    }
+
+    /**
+     * Rebuilds both masks from the grid, which is needed if the grid was changed without going through
+     * {@link #set(int, int, int, byte)}.
+     */
+    public void refresh() {
+        Arrays.fill(filled, 0L);
+        Arrays.fill(opaque, 0L);
+        final byte[] data = grid.data;
+        final int columns = grid.sizeX * grid.sizeY, zs = grid.sizeZ;
+        for (int c = 0, i = 0, w = 0; c < columns; c++, w += words) {
+            for (int z = 0; z < zs; z++, i++) {
+                final int v = data[i] & 255;
+                if (v != 0) {
+                    final long bit = 1L << z;
+                    filled[w + (z >>> 6)] |= bit;
+                    if (!clear[v])
+                        opaque[w + (z >>> 6)] |= bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies {@code voxels}, which must be the same size as {@link #grid}, into the grid, and rebuilds both masks.
+     * This reuses the grid and masks, so keeping a VoxelOccupancy in step with a {@code byte[][][]} doesn't allocate.
+     * @param voxels a 3D byte array, which won't be modified
+     * @return this, for chaining
+     */
+    public VoxelOccupancy set(byte[][][] voxels) {
+        grid.set(voxels);
+        refresh();
+        return this;
+    }
+
+    /**
+     * @return the index in {@link #filled} and {@link #opaque} of the first word for the column at x,y
+     */
+    public int column(int x, int y) {
+        return (x * grid.sizeY + y) * words;
+    }
+
+    /**
+     * Sets the voxel at x,y,z in the grid, and updates the masks to match.
+     */
+    public void set(int x, int y, int z, byte voxel) {
+        grid.data[grid.index(x, y, z)] = voxel;
+        final int w = column(x, y) + (z >>> 6);
+        final long bit = 1L << z;
+        if (voxel == 0) {
+            filled[w] &= ~bit;
+            opaque[w] &= ~bit;
+        } else {
+            filled[w] |= bit;
+            if (clear[voxel & 255]) opaque[w] &= ~bit;
+            else opaque[w] |= bit;
+        }
+    }
+
+    /**
+     * Empties every voxel in word {@code w} of the column at x,y that has its bit set in {@code bits}, and clears those
+     * bits in both masks, so many voxels can be removed at once without needing {@link #refresh()}.
+     * @param x the x position of the column; must be in the grid
+     * @param y the y position of the column; must be in the grid
+     * @param w which word of the column, from 0 to {@code words - 1}
+     * @param bits which voxels in that word to empty, such as from {@link #interior(int, int, int)}
+     */
+    public void empty(int x, int y, int w, long bits) {
+        final int c = column(x, y) + w;
+        filled[c] &= ~bits;
+        opaque[c] &= ~bits;
+        final byte[] data = grid.data;
+        final int start = grid.index(x, y, w << 6);
+        for (; bits != 0L; bits &= bits - 1L) {
+            data[start + Long.numberOfTrailingZeros(bits)] = 0;
+        }
+    }
+
+    public boolean isFilled(int x, int y, int z) {
+        return (filled[column(x, y) + (z >>> 6)] & 1L << z) != 0;
+    }
+
+    public boolean isOpaque(int x, int y, int z) {
+        return (opaque[column(x, y) + (z >>> 6)] & 1L << z) != 0;
+    }
+
+    /**
+     * @return how many voxels are not 0, counted a word at a time
+     */
+    public int count() {
+        int c = 0;
+        for (long bits : filled) {
+            c += Long.bitCount(bits);
+        }
+        return c;
+    }
+
+    /**
+     * Gets word {@code w} of the column at x,y, with a bit set for each voxel that is filled, isn't on the edge of
+     * the grid, and has six neighbors that are all {@link #opaque}. Those voxels can't be seen from anywhere.
+     * @param x the x position of the column; must be in the grid
+     * @param y the y position of the column; must be in the grid
+     * @param w which word of the column, from 0 to {@code words - 1}
+     * @return the interior bits in that word
+     */
+    public long interior(int x, int y, int w) {
+        final int xs = grid.sizeX, ys = grid.sizeY, zs = grid.sizeZ;
+        if (x <= 0 || y <= 0 || x >= xs - 1 || y >= ys - 1) return 0L;
+        final int c = column(x, y) + w, sx = ys * words;
+        final long here = opaque[c];
+        // the neighbor at z+1 moves down one bit, and the one at z-1 moves up, carrying across words
+        final long above = here >>> 1 | (w + 1 < words ? opaque[c + 1] << 63 : 0L);
+        final long below = here << 1 | (w > 0 ? opaque[c - 1] >>> 63 : 0L);
+        long bits = filled[c] & opaque[c - sx] & opaque[c + sx] & opaque[c - words] & opaque[c + words] & above & below;
+        // z = 0 and z = zs - 1 are on the edge
+        if (w == 0) bits &= ~1L;
+        final int top = zs - 1 - (w << 6);
+        if (top < 64) bits &= (1L << top) - 1L;
+        return bits;
+    }
+
+    /**
+     * Gets word {@code w} of the column at x,y, with a bit set for each voxel that is filled but not in the
+     * {@link #interior(int, int, int)}, so it could be seen from somewhere.
+     */
+    public long surface(int x, int y, int w) {
+        return filled[column(x, y) + w] & ~interior(x, y, w);
+    }
+
+    /**
+     * Gives the same answer as the private {@code Tools3D.isSurface()} would, except that every kind of surface
+     * is 1: 0 for an empty voxel or a position outside the grid, 1 for a voxel on the surface, or -1 for an interior
+     * voxel.
+     */
+    public int kind(int x, int y, int z) {
+        if (!grid.contains(x, y, z) || !isFilled(x, y, z)) return 0;
+        return (interior(x, y, z >>> 6) & 1L << z) != 0 ? -1 : 1;
+    }
+
+    @Override
+    public String toString() {
+        return "VoxelOccupancy{" + grid + ", " + count() + " filled}";
+    }
+}
@@ -0,0 +1,136 @@
+package isonomicon.visual;
+
+import java.util.Arrays;
+
+/**
+ * An axis-aligned rectangle of cells that have been written to since the last reset, with inclusive bounds. Renderers
+ * use this to track which part of their scratch buffers a model actually touched, so lighting, compositing, and
+ * clearing can skip the (usually much larger) part of the canvas that is still empty.
+ * <br>
+ * An empty region has {@link #maxX} less than {@link #minX}; the fill methods do nothing for an empty region.
+ */
+public class DirtyRegion {
+    public int minX, minY, maxX, maxY;
+
+    public DirtyRegion() {
+        reset();
+    }
+
+    /**
+     * Makes this region empty.
+     * @return this, for chaining
+     */
+    public DirtyRegion reset() {
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+        return this;
+    }
+
+    /**
+     * Makes this region cover every cell of a {@code width} by {@code height} area.
+     * @return this, for chaining
+     */
+    public DirtyRegion all(int width, int height) {
+        minX = minY = 0;
+        maxX = width - 1;
+        maxY = height - 1;
+        return this;
+    }
+
+    public DirtyRegion set(DirtyRegion other) {
+        minX = other.minX;
+        minY = other.minY;
+        maxX = other.maxX;
+        maxY = other.maxY;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return maxX < minX || maxY < minY;
+    }
+
+    /**
+     * Grows this region so it includes the cell at x,y.
+     */
+    public void add(int x, int y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+
+    /**
+     * Grows this region so it includes the rectangle from x0,y0 to x1,y1, inclusive.
+     */
+    public void add(int x0, int y0, int x1, int y1) {
+        if (x0 < minX) minX = x0;
+        if (x1 > maxX) maxX = x1;
+        if (y0 < minY) minY = y0;
+        if (y1 > maxY) maxY = y1;
+    }
+
+    /**
+     * Grows this region by {@code margin} cells in every direction, then clips it to a {@code width} by {@code height}
+     * area. Does nothing if this is empty.
+     * @return this, for chaining
+     */
+    public DirtyRegion expand(int margin, int width, int height) {
+        if (isEmpty()) return this;
+        minX = Math.max(minX - margin, 0);
+        minY = Math.max(minY - margin, 0);
+        maxX = Math.min(maxX + margin, width - 1);
+        maxY = Math.min(maxY + margin, height - 1);
+        return this;
+    }
+
+    /**
+     * Sets this to {@code other} with both corners shifted right by {@code shift} (so, scaled down by a power of two),
+     * grown by {@code margin}, and clipped to a {@code width} by {@code height} area.
+     * @return this, for chaining
+     */
+    public DirtyRegion setShrunk(DirtyRegion other, int shift, int margin, int width, int height) {
+        if (other.isEmpty()) return reset();
+        minX = other.minX >> shift;
+        minY = other.minY >> shift;
+        maxX = other.maxX >> shift;
+        maxY = other.maxY >> shift;
+        return expand(margin, width, height);
+    }
+
+    /**
+     * Sets every cell of {@code array} inside this region to {@code value}, where {@code array} holds a grid with the
+     * cell at x,y stored at index {@code x * stride + y}, the way renderers lay out their buffers.
+     * @param array a flat grid, as used by {@link SpecialRenderer#depths}
+     * @param stride the height of the grid, or how far apart index-wise two horizontally-adjacent cells are
+     * @param value the value to fill with
+     */
+    public void fill(int[] array, int stride, int value) {
+        if (isEmpty()) return;
+        for (int i = minX * stride, end = maxX * stride; i <= end; i += stride) Arrays.fill(array, i + minY, i + maxY + 1, value);
+    }
+
+    public void fill(float[] array, int stride, float value) {
+        if (isEmpty()) return;
+        for (int i = minX * stride, end = maxX * stride; i <= end; i += stride) Arrays.fill(array, i + minY, i + maxY + 1, value);
+    }
+
+    public void fill(byte[] array, int stride, byte value) {
+        if (isEmpty()) return;
+        for (int i = minX * stride, end = maxX * stride; i <= end; i += stride) Arrays.fill(array, i + minY, i + maxY + 1, value);
+    }
+
+    public void fill(boolean[] array, int stride, boolean value) {
+        if (isEmpty()) return;
+        for (int i = minX * stride, end = maxX * stride; i <= end; i += stride) Arrays.fill(array, i + minY, i + maxY + 1, value);
+    }
+
+    public void fill(Object[] array, int stride, Object value) {
+        if (isEmpty()) return;
+        for (int i = minX * stride, end = maxX * stride; i <= end; i += stride) Arrays.fill(array, i + minY, i + maxY + 1, value);
+    }
+
+    @Override
+    public String toString() {
+        return isEmpty() ? "DirtyRegion{empty}" : "DirtyRegion{" + minX + "," + minY + " to " + maxX + "," + maxY + '}';
+    }
+}
@@ -0,0 +1,265 @@
+package isonomicon.visual;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.github.tommyettinger.ds.IntIntMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Does the same work as {@link ShaderUtils#stuffSelectFragment}, but on the CPU, without needing a GL context, a
+ * {@link com.badlogic.gdx.graphics.glutils.FrameBuffer}, or any readback. This takes the index/shade/saturation
+ * format that {@link SpecialRenderer#palettePixmap} uses and turns it into final RGBA8888 colors, using one row of a
+ * palette image (such as {@code ColorGuardMasterPalette.png}, or a single-row palette like
+ * {@code ColorGuardBaseDark.png}).
+ * <br>
+ * The palette image is read the same way the shader reads it: index 0 and index 1 both use column 0, and any other
+ * index {@code i} uses column {@code i - 1}. The row to use is what the shader gets from the red channel of the batch
+ * color; the lightness and saturation adjustments are what it gets from the green and blue channels. The result is
+ * blended over {@link #background} exactly as SpriteBatch's default blending would do it over a cleared FrameBuffer.
+ * <br>
+ * All palette colors are converted to Oklab once, in the constructor, so resolving a pixel only needs the inverse
+ * conversion. After construction, instances are safe to share between threads, as long as {@link #flipY} and
+ * {@link #background} aren't changed while resolving.
+ */
+public class PaletteResolver {
+    /**
+     * The RGBA8888 colors of each palette row, indexed first by row and then by column.
+     */
+    public final int[][] rows;
+    protected final float[][] rowL, rowA, rowB;
+    /**
+     * If true, the output will be vertically flipped relative to the input, which matches what happens when the
+     * shader draws a Texture the right way up into a FrameBuffer and reads it back with glReadPixels. Default is false,
+     * which keeps the output in the same orientation as {@link SpecialRenderer#palettePixmap}.
+     */
+    public boolean flipY = false;
+    /**
+     * The RGBA8888 color that the FrameBuffer would have been cleared to; partly-transparent pixels are blended over
+     * this. Default is 0, fully transparent black, like {@code ScreenUtils.clear(Color.CLEAR)}.
+     */
+    public int background = 0;
+
+    /**
+     * Reads every row of the given palette Pixmap; this does not dispose {@code palettes}.
+     * @param palettes a Pixmap with up to 256 columns and any number of rows, each row a separate palette
+     */
+    public PaletteResolver(Pixmap palettes) {
+        this(readRows(palettes));
+    }
+
+    /**
+     * Uses the given palette rows directly (it does not copy them). Each row should be in the same layout as a row of
+     * a palette image, so the color for index {@code i} is at {@code i - 1}.
+     * @param rows one or more arrays of RGBA8888 colors, each with up to 256 items
+     */
+    public PaletteResolver(int[]... rows) {
+        this.rows = rows;
+        rowL = new float[rows.length][256];
+        rowA = new float[rows.length][256];
+        rowB = new float[rows.length][256];
+        for (int r = 0; r < rows.length; r++) {
+            final int[] row = rows[r];
+            final float[] ls = rowL[r], as = rowA[r], bs = rowB[r];
+            for (int c = 0; c < row.length && c < 256; c++) {
+                final int rgba = row[c];
+                // the shader approximates sRGB-to-linear by squaring.
+                final float red = (rgba >>> 24) / 255f, green = (rgba >>> 16 & 255) / 255f, blue = (rgba >>> 8 & 255) / 255f;
+                final float lr = red * red, lg = green * green, lb = blue * blue;
+                final float l = (float) Math.cbrt(0.4121656120f * lr + 0.5362752080f * lg + 0.0514575653f * lb);
+                final float m = (float) Math.cbrt(0.2118591070f * lr + 0.6807189584f * lg + 0.1074065790f * lb);
+                final float s = (float) Math.cbrt(0.0883097947f * lr + 0.2818474174f * lg + 0.6302613616f * lb);
+                ls[c] = 0.2104542553f * l + 0.7936177850f * m - 0.0040720468f * s;
+                as[c] = 1.9779984951f * l - 2.4285922050f * m + 0.4505937099f * s;
+                bs[c] = 0.0259040371f * l + 0.7827717662f * m - 0.8086757660f * s;
+            }
+        }
+    }
+
+    public static int[][] readRows(Pixmap palettes) {
+        final int w = Math.min(palettes.getWidth(), 256), h = palettes.getHeight();
+        int[][] rows = new int[h][256];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                rows[y][x] = palettes.getPixel(x, y);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Equivalent to drawing {@code indices} with the stuffSelect shader after calling
+     * {@code batch.setColor(0f, 0.5f, 0.5f, 1f)}, using palette row 0.
+     * @param indices typically {@link SpecialRenderer#palettePixmap}; will not be modified
+     * @return a new RGBA8888 Pixmap with the same size as {@code indices}, which must be disposed by the caller
+     */
+    public Pixmap resolve(Pixmap indices) {
+        return resolve(indices, 0, 0.5f, 0.5f);
+    }
+
+    /**
+     * Equivalent to drawing {@code indices} with the stuffSelect shader after calling
+     * {@code batch.setColor(row / 255f, lightness, saturation, 1f)}.
+     * @param indices typically {@link SpecialRenderer#palettePixmap}; will not be modified
+     * @param row which palette row to use; must be less than {@code rows.length}
+     * @param lightness 0.5f leaves lightness as it is; higher values lighten and lower values darken
+     * @param saturation 0.5f leaves saturation as it is; higher values saturate and lower values desaturate
+     * @return a new RGBA8888 Pixmap with the same size as {@code indices}, which must be disposed by the caller
+     */
+    public Pixmap resolve(Pixmap indices, int row, float lightness, float saturation) {
+        Pixmap result = new Pixmap(indices.getWidth(), indices.getHeight(), Pixmap.Format.RGBA8888);
+        result.setBlending(Pixmap.Blending.None);
+        resolve(indices.getPixels(), result.getPixels(), indices.getWidth(), indices.getHeight(), row, lightness, saturation);
+        return result;
+    }
+
+    /**
+     * Equivalent to drawing {@code indices} with the stuffSelect shader after calling
+     * {@code batch.setColor(row / 255f, lightness, saturation, 1f)}, but writing into an existing Pixmap.
+     * @param indices typically {@link SpecialRenderer#palettePixmap}; will not be modified
+     * @param row which palette row to use; must be less than {@code rows.length}
+     * @param lightness 0.5f leaves lightness as it is; higher values lighten and lower values darken
+     * @param saturation 0.5f leaves saturation as it is; higher values saturate and lower values desaturate
+     * @param output an RGBA8888 Pixmap with at least as many pixels as {@code indices}; will be modified
+     * @return {@code output}, after modifications
+     */
+    public Pixmap resolveInto(Pixmap indices, int row, float lightness, float saturation, Pixmap output) {
+        resolve(indices.getPixels(), output.getPixels(), indices.getWidth(), indices.getHeight(), row, lightness, saturation);
+        return output;
+    }
+
+    /**
+     * The core of this class; this works on any RGBA8888 ByteBuffers, so it doesn't need a Pixmap or native code.
+     * Only absolute gets and puts are used, so the positions of the buffers are not changed.
+     * @param in the index/shade/saturation data, as in {@link SpecialRenderer#buffer}
+     * @param out where RGBA8888 colors will be written; must have room for {@code width * height * 4} bytes
+     * @param width the width in pixels of both images
+     * @param height the height in pixels of both images
+     * @param row which palette row to use; must be less than {@code rows.length}
+     * @param lightness 0.5f leaves lightness as it is; higher values lighten and lower values darken
+     * @param saturation 0.5f leaves saturation as it is; higher values saturate and lower values desaturate
+     */
+    public void resolve(ByteBuffer in, ByteBuffer out, int width, int height, int row, float lightness, float saturation) {
+        final float[] ls = rowL[row], as = rowA[row], bs = rowB[row];
+        final float lightAdd = lightAdd(lightness), satMul = satMul(saturation);
+        final int bg = background;
+        for (int y = 0; y < height; y++) {
+            final int inRow = y * width << 2, outRow = (flipY ? height - 1 - y : y) * width << 2;
+            for (int x = 0; x < width; x++) {
+                final int px = in.getInt(inRow + (x << 2)), oi = outRow + (x << 2);
+                out.putInt(oi, (px & 255) == 0 ? bg : color(ls, as, bs, px, lightAdd, satMul, bg));
+            }
+        }
+    }
+
+    /**
+     * Equivalent to calling {@link #resolve(Pixmap, int, float, float)} once for each item in {@code rowIndices}, but
+     * only reads {@code indices} once. See {@link #resolveAll(ByteBuffer, ByteBuffer[], int, int, int[], float, float)}.
+     * @param indices typically {@link SpecialRenderer#palettePixmap}; will not be modified
+     * @param rowIndices which palette rows to use, one per output; each must be less than {@code rows.length}
+     * @param lightness 0.5f leaves lightness as it is; higher values lighten and lower values darken
+     * @param saturation 0.5f leaves saturation as it is; higher values saturate and lower values desaturate
+     * @return an array of new RGBA8888 Pixmaps, one per row in {@code rowIndices} and in the same order, each with the
+     * same size as {@code indices}; these must be disposed by the caller
+     */
+    public Pixmap[] resolveAll(Pixmap indices, int[] rowIndices, float lightness, float saturation) {
+        final int w = indices.getWidth(), h = indices.getHeight();
+        Pixmap[] results = new Pixmap[rowIndices.length];
+        ByteBuffer[] outs = new ByteBuffer[rowIndices.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new Pixmap(w, h, Pixmap.Format.RGBA8888);
+            results[i].setBlending(Pixmap.Blending.None);
+            outs[i] = results[i].getPixels();
+        }
+        resolveAll(indices.getPixels(), outs, w, h, rowIndices, lightness, saturation);
+        return results;
+    }
+
+    /**
+     * Resolves one index image with many palette rows at once, such as every army and look for one frame of a unit.
+     * Each distinct pixel value in {@code in} is converted with every row the first time it is seen, and the results are
+     * remembered, so every later pixel with the same value (which is most of them, since an index image only has a few
+     * hundred distinct values) costs one lookup per output instead of an Oklab-to-RGB conversion. The results are
+     * exactly the same as calling {@link #resolve(ByteBuffer, ByteBuffer, int, int, int, float, float)} once per row.
+     * @param in the index/shade/saturation data, as in {@link SpecialRenderer#buffer}
+     * @param outs where RGBA8888 colors will be written, one buffer per row in {@code rowIndices}; each must have room
+     *             for {@code width * height * 4} bytes
+     * @param width the width in pixels of all images
+     * @param height the height in pixels of all images
+     * @param rowIndices which palette rows to use, one per output; each must be less than {@code rows.length}
+     * @param lightness 0.5f leaves lightness as it is; higher values lighten and lower values darken
+     * @param saturation 0.5f leaves saturation as it is; higher values saturate and lower values desaturate
+     */
+    public void resolveAll(ByteBuffer in, ByteBuffer[] outs, int width, int height, int[] rowIndices, float lightness, float saturation) {
+        final int n = rowIndices.length;
+        if (n == 0) return;
+        final float lightAdd = lightAdd(lightness), satMul = satMul(saturation);
+        final int bg = background;
+        // maps a pixel value to where its n resolved colors start in colors.
+        final IntIntMap seen = new IntIntMap(512);
+        seen.setDefaultValue(-1);
+        int[] colors = new int[n * 512];
+        int used = 0;
+        for (int y = 0; y < height; y++) {
+            final int inRow = y * width << 2, outRow = (flipY ? height - 1 - y : y) * width << 2;
+            for (int x = 0; x < width; x++) {
+                final int px = in.getInt(inRow + (x << 2)), oi = outRow + (x << 2);
+                if ((px & 255) == 0) {
+                    for (int k = 0; k < n; k++) outs[k].putInt(oi, bg);
+                    continue;
+                }
+                int start = seen.get(px);
+                if (start == -1) {
+                    start = used;
+                    used += n;
+                    if (used > colors.length) colors = Arrays.copyOf(colors, colors.length << 1);
+                    for (int k = 0; k < n; k++) {
+                        final int r = rowIndices[k];
+                        colors[start + k] = color(rowL[r], rowA[r], rowB[r], px, lightAdd, satMul, bg);
+                    }
+                    seen.put(px, start);
+                }
+                for (int k = 0; k < n; k++) outs[k].putInt(oi, colors[start + k]);
+            }
+        }
+    }
+
+    private static float lightAdd(float lightness) {
+        // SpriteBatch packs its color into 8 bits per channel, so we quantize the same way.
+        return (int) (255 * lightness) / 255f - 0.75f;
+    }
+
+    private static float satMul(float saturation) {
+        return 2f / 255f * (0.5f + (int) (255 * saturation) / 255f);
+    }
+
+    /**
+     * Gets the final RGBA8888 color for one non-transparent pixel {@code px} in the index/shade/saturation format,
+     * using the Oklab palette row given by {@code ls}, {@code as}, and {@code bs}.
+     */
+    private static int color(float[] ls, float[] as, float[] bs, int px, float lightAdd, float satMul, int bg) {
+        final int alpha = px & 255;
+        final int c = Math.max((px >>> 24) - 1, 0);
+        final float L = Math.min(Math.max(ls[c] + (px >>> 16 & 255) * (254f / 65025f) + lightAdd, 0f), 1f);
+        final float sat = (px >>> 8 & 255) * satMul;
+        final float A = Math.min(Math.max(as[c] * sat, -1f), 1f);
+        final float B = Math.min(Math.max(bs[c] * sat, -1f), 1f);
+        float l = L + 0.3963377774f * A + 0.2158037573f * B;
+        float m = L - 0.1055613458f * A - 0.0638541728f * B;
+        float s = L - 0.0894841775f * A - 1.2914855480f * B;
+        l *= l * l;
+        m *= m * m;
+        s *= s * s;
+        final float r = (float) Math.sqrt(Math.min(Math.max(+4.0767245293f * l - 3.3072168827f * m + 0.2307590544f * s, 0f), 1f));
+        final float g = (float) Math.sqrt(Math.min(Math.max(-1.2681437731f * l + 2.6093323231f * m - 0.3411344290f * s, 0f), 1f));
+        final float b = (float) Math.sqrt(Math.min(Math.max(-0.0041119885f * l - 0.7034763098f * m + 1.7068625689f * s, 0f), 1f));
+        if (alpha == 255)
+            return Math.round(r * 255f) << 24 | Math.round(g * 255f) << 16 | Math.round(b * 255f) << 8 | 255;
+        // SpriteBatch's default blend function is SRC_ALPHA, ONE_MINUS_SRC_ALPHA for all channels.
+        final float a = alpha / 255f, ia = 1f - a;
+        return Math.round(r * a * 255f + (bg >>> 24) * ia) << 24
+                | Math.round(g * a * 255f + (bg >>> 16 & 255) * ia) << 16
+                | Math.round(b * a * 255f + (bg >>> 8 & 255) * ia) << 8
+                | Math.round(alpha * a + (bg & 255) * ia);
+    }
+}
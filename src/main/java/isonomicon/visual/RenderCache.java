@@ -0,0 +1,260 @@
+package isonomicon.visual;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import isonomicon.io.BuildManifest;
+import isonomicon.io.extended.Assembly;
+import isonomicon.io.extended.VoxModel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An on-disk cache of rendered index frames (the contents of {@link SpecialRenderer#palettePixmap}), so re-running an
+ * asset generator only has to render the models, angles, and frames that actually changed. Each frame is stored in its
+ * own file, named by a 64-bit key that combines a hash of the model's grids and links, the rotation, translation, and
+ * frame, and everything about the renderer that changes its output (see {@link SpecialRenderer#settingsHash()}). Since
+ * the key is made from the content, there's nothing to invalidate; a changed model or renderer just gets a new key.
+ * That includes changes to the drawing code itself, because every key also mixes in {@link #salt}, which comes from
+ * {@link #VERSION} and a {@link BuildManifest#codeHash(Class)} of the compiled renderers.
+ * <br>
+ * The cache keeps its total size on disk under {@link #maxBytes} by deleting the least-recently-used files. Files are
+ * touched when they are read, so the order carries over between runs. Reading and writing are safe to do from several
+ * threads at once, such as from a {@link RenderFarm}'s jobs; each renderer just needs {@link SpecialRenderer#cache} set
+ * to the same RenderCache.
+ */
+public class RenderCache {
+    public static final String SUFFIX = ".idx";
+    /**
+     * Mixed into every key. The code hash already changes whenever the renderers are recompiled, but if drawing ever
+     * depends on something outside the compiled code (other than the model and the settings), this must be
+     * incremented so old frames stop matching.
+     */
+    public static final int VERSION = 1;
+    public final File directory;
+    /**
+     * When the files in the cache add up to more than this many bytes, the least-recently-used ones are deleted.
+     */
+    public long maxBytes;
+    public int hits, misses;
+    /**
+     * Combines {@link #VERSION} and the code hash given to the constructor; every key from
+     * {@link #key(long, long, float, float, float, int, float, float, float)} depends on it.
+     */
+    public final long salt;
+    /**
+     * Maps keys to file sizes, in access order, so the first entry is the least recently used.
+     */
+    protected final LinkedHashMap<Long, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    protected long totalBytes;
+
+    /**
+     * Opens or creates a cache in the given directory, picking up any files a previous run left there. Frames are
+     * keyed on the {@link BuildManifest#codeHash(Class)} of the code this class was loaded from, so frames drawn by
+     * an older build are never returned.
+     * @param directory the path to a directory that only this cache uses; it will be created if needed
+     * @param maxBytes how many bytes the cache can use on disk before it starts deleting files
+     */
+    public RenderCache(String directory, long maxBytes) {
+        this(directory, maxBytes, BuildManifest.codeHash(RenderCache.class));
+    }
+
+    /**
+     * Opens or creates a cache in the given directory, picking up any files a previous run left there.
+     * @param directory the path to a directory that only this cache uses; it will be created if needed
+     * @param maxBytes how many bytes the cache can use on disk before it starts deleting files
+     * @param codeHash should change whenever the drawing code changes, such as a {@link BuildManifest#codeHash(Class)}
+     */
+    public RenderCache(String directory, long maxBytes, long codeHash) {
+        this.salt = BuildManifest.combine(VERSION, codeHash);
+        this.directory = new File(directory);
+        this.maxBytes = maxBytes;
+        this.directory.mkdirs();
+        File[] files = this.directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                try {
+                    final String name = file.getName();
+                    entries.put(Long.parseUnsignedLong(name.substring(0, name.length() - SUFFIX.length()), 16), file.length());
+                    totalBytes += file.length();
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Hashes everything about a model that affects how it is drawn by
+     * {@link SpecialRenderer#drawModelSimple(VoxModel, float, float, float, int, float, float, float)}: the contents
+     * of every grid and the positions of the links. The grids are hashed by {@link VoxModel#gridHash()}, which only
+     * does the work again after they change, so drawing the same model at many angles hashes its grids once.
+     * @param model a VoxModel that is about to be drawn
+     * @return a 64-bit hash
+     */
+    public static long hash(VoxModel model) {
+        long h = (Assembly.hash(model.links) ^ model.grids.size()) * 0xF1357AEA2E62A9C5L + model.gridHash();
+        return h ^ h >>> 31;
+    }
+
+    /**
+     * Combines a model hash, a renderer's settings, and the arguments to a draw call into one cache key, along with
+     * this cache's {@link #salt}.
+     * @param modelHash typically from {@link #hash(VoxModel)}
+     * @param settingsHash typically from {@link SpecialRenderer#settingsHash()}
+     * @return a 64-bit key for {@link #read(long, Pixmap)} and {@link #write(long, Pixmap)}
+     */
+    public long key(long modelHash, long settingsHash, float yaw, float pitch, float roll, int frame,
+                    float translateX, float translateY, float translateZ) {
+        long h = (modelHash ^ salt) * 0xD1342543DE82EF95L + settingsHash;
+        h = (h ^ Float.floatToIntBits(yaw)) * 0xC13FA9A902A6328FL;
+        h = (h ^ Float.floatToIntBits(pitch)) * 0x91E10DA5C79E7B1DL;
+        h = (h ^ Float.floatToIntBits(roll)) * 0xD1342543DE82EF95L;
+        h = (h ^ frame) * 0xC13FA9A902A6328FL;
+        h = (h ^ Float.floatToIntBits(translateX)) * 0x91E10DA5C79E7B1DL;
+        h = (h ^ Float.floatToIntBits(translateY)) * 0xD1342543DE82EF95L;
+        h = (h ^ Float.floatToIntBits(translateZ)) * 0xC13FA9A902A6328FL;
+        return h ^ h >>> 29;
+    }
+
+    protected File file(long key) {
+        return new File(directory, Long.toHexString(key) + SUFFIX);
+    }
+
+    /**
+     * If there is a cached frame for {@code key} with the same size as {@code into}, this copies it into {@code into}
+     * and returns true. Otherwise, this leaves {@code into} alone and returns false.
+     * @param key from {@link #key(long, long, float, float, float, int, float, float, float)}
+     * @param into an RGBA8888 Pixmap, typically {@link SpecialRenderer#palettePixmap}
+     * @return true if {@code into} was filled from the cache
+     */
+    public boolean read(long key, Pixmap into) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses++;
+                return false;
+            }
+        }
+        final File file = file(key);
+        final ByteBuffer pixels = into.getPixels();
+        final int byteCount = into.getWidth() * into.getHeight() << 2;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != into.getWidth() || in.readInt() != into.getHeight()) {
+                synchronized (this) {
+                    misses++;
+                }
+                return false;
+            }
+            // read everything before touching into, so a truncated file doesn't leave a half-written frame
+            final byte[] all = new byte[byteCount];
+            in.readFully(all);
+            for (int i = 0; i < byteCount; i++) {
+                pixels.put(i, all[i]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                remove(key);
+                misses++;
+            }
+            return false;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            hits++;
+        }
+        return true;
+    }
+
+    /**
+     * Stores the contents of {@code from} under {@code key}, then deletes old files if the cache is too big.
+     * @param key from {@link #key(long, long, float, float, float, int, float, float, float)}
+     * @param from an RGBA8888 Pixmap, typically {@link SpecialRenderer#palettePixmap}; will not be modified
+     */
+    public void write(long key, Pixmap from) {
+        final File file = file(key);
+        // written to a temporary file first, so another thread or a later run never sees a partial file
+        final File temp = new File(directory, Long.toHexString(key) + '.' + Thread.currentThread().getId() + ".tmp");
+        final ByteBuffer pixels = from.getPixels();
+        final int byteCount = from.getWidth() * from.getHeight() << 2;
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), deflater, 1 << 14))) {
+            out.writeInt(from.getWidth());
+            out.writeInt(from.getHeight());
+            final byte[] chunk = new byte[Math.min(byteCount, 1 << 16)];
+            for (int i = 0; i < byteCount; i += chunk.length) {
+                final int n = Math.min(chunk.length, byteCount - i);
+                for (int j = 0; j < n; j++) {
+                    chunk[j] = pixels.get(i + j);
+                }
+                out.write(chunk, 0, n);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        } finally {
+            deflater.end();
+        }
+        try {
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            final long length = file.length();
+            entries.put(key, length);
+            totalBytes += length;
+            evict();
+        }
+    }
+
+    /**
+     * Deletes every file in the cache.
+     */
+    public synchronized void clear() {
+        for (Long key : entries.keySet()) {
+            file(key).delete();
+        }
+        entries.clear();
+        totalBytes = 0L;
+    }
+
+    protected void remove(long key) {
+        Long length = entries.remove(key);
+        if (length != null) totalBytes -= length;
+    }
+
+    protected void evict() {
+        Iterator<Map.Entry<Long, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Long, Long> eldest = it.next();
+            file(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RenderCache{" + directory + ", " + entries.size() + " frames, " + totalBytes + " bytes, " + hits + " hits, " + misses + " misses}";
+    }
+}
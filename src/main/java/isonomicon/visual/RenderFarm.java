@@ -0,0 +1,212 @@
+package isonomicon.visual;
+
+import com.github.tommyettinger.ds.IntObjectMap;
+import isonomicon.io.extended.VoxModel;
+import isonomicon.physical.Stuff;
+import isonomicon.physical.Tools3D;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Spreads independent render jobs (usually one per angle and frame of a unit) across a {@link ForkJoinPool}, giving
+ * each worker thread its own renderer so no renderer is ever touched by two threads. Results always come back in job
+ * order, so anything that writes them out (PNGs, GIFs, palette analysis) sees exactly what a serial loop would have
+ * produced; only the wall time changes.
+ * <br>
+ * Renderers are created lazily by a {@link Factory}, once per worker thread and per model size, and then reused for
+ * every later job that needs that size on that thread. Because renderers keep a lot of state in big 2D arrays, this
+ * avoids reallocating them for each frame, the same as the old serial drivers that kept one renderer per unit.
+ * <br>
+ * Evolving voxels with {@link Stuff#evolve(Stuff[], byte[][][], int)} depends on every earlier frame, so that part
+ * can't run out of order. {@link #runEvolving(VoxModel, Stuff[], int, FrameJob)} handles this by evolving on the
+ * calling thread and handing each frame's snapshot off to a worker, which overlaps the cheap serial part with the
+ * expensive parallel part.
+ * @param <R> the renderer type, such as {@link SpecialRenderer} or {@link BoxyRenderer}
+ */
+public class RenderFarm<R> {
+    /**
+     * Creates a renderer that can handle models with the given size.
+     * @param <R> the renderer type
+     */
+    public interface Factory<R> {
+        R create(int size);
+    }
+
+    /**
+     * One unit of work, identified by its index in the batch it was submitted with.
+     * @param <T> the result type, often a {@link com.badlogic.gdx.graphics.Pixmap}
+     */
+    public interface Job<T> {
+        T run(int index);
+    }
+
+    /**
+     * One frame of an evolving sequence; {@code model} has already been evolved up to and including {@code frame}, and
+     * is not shared with any other job, so it can be modified freely.
+     * @param <T> the result type, often a {@link com.badlogic.gdx.graphics.Pixmap}
+     */
+    public interface FrameJob<T> {
+        T run(VoxModel model, int frame);
+    }
+
+    public final ForkJoinPool pool;
+    protected final Factory<R> factory;
+    protected final ThreadLocal<IntObjectMap<R>> renderers = ThreadLocal.withInitial(() -> new IntObjectMap<>(4));
+
+    /**
+     * Uses one worker thread per available processor.
+     * @param factory called at most once per worker thread and model size
+     */
+    public RenderFarm(Factory<R> factory) {
+        this(Runtime.getRuntime().availableProcessors(), factory);
+    }
+
+    /**
+     * @param parallelism how many worker threads to use; 1 is valid, and acts like a serial render on another thread
+     * @param factory called at most once per worker thread and model size
+     */
+    public RenderFarm(int parallelism, Factory<R> factory) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.factory = factory;
+    }
+
+    /**
+     * Gets the renderer for the current thread and the given size, creating it if needed. Only call this from inside
+     * a {@link Job} or {@link FrameJob}, and don't let the renderer escape the job; the next job on this thread will
+     * reuse it.
+     * @param size the model size, as passed to the renderer's constructor
+     * @return a renderer that only the current thread uses
+     */
+    public R renderer(int size) {
+        IntObjectMap<R> map = renderers.get();
+        R r = map.get(size);
+        if (r == null) {
+            r = factory.create(size);
+            map.put(size, r);
+        }
+        return r;
+    }
+
+    /**
+     * Runs {@code job} for every index from 0 (inclusive) to {@code count} (exclusive), in parallel, and returns the
+     * results in index order. If any job throws, this rethrows that exception after the others are done or cancelled.
+     * @param count how many jobs to run
+     * @param job the work to do for each index
+     * @return a new ArrayList with {@code count} results, in index order
+     * @param <T> the result type
+     */
+    public <T> ArrayList<T> run(int count, Job<T> job) {
+        ArrayList<ForkJoinTask<T>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks.add(pool.submit(() -> job.run(index)));
+        }
+        ArrayList<T> results = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                results.add(tasks.get(i).join());
+            }
+        } catch (RuntimeException e) {
+            for (ForkJoinTask<T> t : tasks) t.cancel(false);
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Evolves a copy of {@code model} one frame at a time on the calling thread, exactly as calling
+     * {@link Stuff#evolve(Stuff[], byte[][][], int)} on every grid for frames 0, 1, 2, and so on would, and runs
+     * {@code job} on a snapshot of each frame in parallel. At most two snapshots per worker thread are waiting or
+     * rendering at once, which keeps memory use bounded even for long turntable sequences.
+     * @param model the model to evolve; will not be modified
+     * @param stuffs the Stuff array to evolve with, such as {@link Stuff#STUFFS_B}
+     * @param frames how many frames to evolve and render
+     * @param job the work to do for each frame
+     * @return a new ArrayList with {@code frames} results, in frame order
+     * @param <T> the result type
+     */
+    public <T> ArrayList<T> runEvolving(VoxModel model, Stuff[] stuffs, int frames, FrameJob<T> job) {
+        final int limit = pool.getParallelism() << 1;
+        ArrayDeque<ForkJoinTask<T>> pending = new ArrayDeque<>(limit);
+        ArrayList<T> results = new ArrayList<>(frames);
+        VoxModel working = shallowCopy(model);
+        for (int i = 0; i < working.grids.size(); i++) {
+            working.grids.set(i, Tools3D.deepCopy(working.grids.get(i)));
+        }
+        try {
+            for (int f = 0; f < frames; f++) {
+                for (int j = 0; j < working.grids.size(); j++) {
+                    Stuff.evolve(stuffs, working.grids.get(j), f);
+                }
+                final VoxModel snapshot = shallowCopy(working);
+                for (int i = 0; i < snapshot.grids.size(); i++) {
+                    snapshot.grids.set(i, Tools3D.deepCopy(snapshot.grids.get(i)));
+                }
+                final int frame = f;
+                pending.add(pool.submit(() -> job.run(snapshot, frame)));
+                if (pending.size() >= limit)
+                    results.add(pending.poll().join());
+            }
+            while (!pending.isEmpty())
+                results.add(pending.poll().join());
+        } catch (RuntimeException e) {
+            for (ForkJoinTask<T> t : pending) t.cancel(false);
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Makes {@code count} snapshots of {@code model}, where the snapshot at index {@code f} has been evolved through
+     * frames 0 to {@code f}, inclusive. This is meant for short loops, like the 4 frames that are rendered at each of
+     * 8 angles, where the same snapshots can be shared (read-only) by every angle.
+     * @param model the model to evolve; will not be modified
+     * @param stuffs the Stuff array to evolve with, such as {@link Stuff#STUFFS_B}
+     * @param count how many frames to evolve
+     * @return a new ArrayList of {@code count} VoxModels that share everything with {@code model} except their grids
+     */
+    public static ArrayList<VoxModel> evolveFrames(VoxModel model, Stuff[] stuffs, int count) {
+        ArrayList<VoxModel> frames = new ArrayList<>(count);
+        VoxModel working = shallowCopy(model);
+        for (int i = 0; i < working.grids.size(); i++) {
+            working.grids.set(i, Tools3D.deepCopy(working.grids.get(i)));
+        }
+        for (int f = 0; f < count; f++) {
+            for (int j = 0; j < working.grids.size(); j++) {
+                Stuff.evolve(stuffs, working.grids.get(j), f);
+            }
+            VoxModel snapshot = shallowCopy(working);
+            for (int i = 0; i < snapshot.grids.size(); i++) {
+                snapshot.grids.set(i, Tools3D.deepCopy(snapshot.grids.get(i)));
+            }
+            frames.add(snapshot);
+        }
+        return frames;
+    }
+
+    /**
+     * Copies the lists in {@code model}, but not the grids or maps inside them; the palette and chunks are shared.
+     */
+    protected static VoxModel shallowCopy(VoxModel model) {
+        VoxModel next = new VoxModel();
+        next.palette = model.palette;
+        next.grids.addAll(model.grids);
+        next.links.addAll(model.links);
+        next.markers.addAll(model.markers);
+        next.materials = model.materials;
+        next.transformChunks = model.transformChunks;
+        next.groupChunks = model.groupChunks;
+        next.shapeChunks = model.shapeChunks;
+        return next;
+    }
+
+    /**
+     * Stops the worker threads after any jobs already submitted finish. Renderers are left for the garbage collector.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
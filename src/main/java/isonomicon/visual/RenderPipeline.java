@@ -0,0 +1,188 @@
+package isonomicon.visual;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A chain of {@link Stage}s, each with its own worker threads and a bounded number of tasks it will accept, so the
+ * slow parts of making assets (usually PNG, GIF, and APNG encoding) can run alongside the fast parts (loading,
+ * evolving, rendering, and resolving) instead of after them. When a stage is full, whoever submits to it waits, so a
+ * fast producer can never get more than a few tasks ahead of a slow consumer. That matters here because most tasks
+ * hold {@link com.badlogic.gdx.graphics.Pixmap}s, which use native memory that the garbage collector can't see.
+ * <br>
+ * Stages don't know about each other; a task in one stage can submit to a later one, and the waiting passes backwards
+ * from there. Tasks must never wait on an earlier stage, or everything could stop. Because a {@link Stage} is an
+ * {@link Executor}, it also works with {@link CompletableFuture#runAsync(Runnable, Executor)} and related methods.
+ * <br>
+ * Call {@link #finish()} at the end, which waits for every stage to finish its work in the order the stages were added.
+ */
+public class RenderPipeline {
+    /**
+     * A pool of worker threads that accepts at most {@link #threads} + {@link #capacity} tasks at a time; submitting
+     * more waits until one finishes.
+     */
+    public static class Stage implements Executor {
+        public final String name;
+        public final int threads, capacity;
+        protected final ThreadPoolExecutor executor;
+        protected final Semaphore slots;
+        protected int completed, failed, stalls;
+        protected long stalledNanos;
+
+        /**
+         * @param name used for the worker threads and {@link #toString()}
+         * @param threads how many tasks this can run at once
+         * @param capacity how many tasks can wait for a thread before submitting more has to wait
+         */
+        public Stage(String name, int threads, int capacity) {
+            this.name = name;
+            this.threads = Math.max(1, threads);
+            this.capacity = Math.max(0, capacity);
+            this.slots = new Semaphore(this.threads + this.capacity);
+            // the semaphore does the bounding, so this queue never actually holds more than capacity tasks
+            this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "RenderPipeline-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        /**
+         * Runs {@code task} on one of this stage's threads, waiting first if this stage is full. Anything the task
+         * throws is printed and otherwise ignored; use {@link #submit(Runnable)} to find out about failures.
+         * @param task the work to do
+         */
+        @Override
+        public void execute(Runnable task) {
+            submit(task);
+        }
+
+        /**
+         * Runs {@code task} on one of this stage's threads, waiting first if this stage is full.
+         * @param task the work to do
+         * @return a future that completes when {@code task} does, exceptionally if it throws
+         */
+        public CompletableFuture<Void> submit(Runnable task) {
+            if (!slots.tryAcquire()) {
+                final long start = System.nanoTime();
+                slots.acquireUninterruptibly();
+                synchronized (this) {
+                    stalls++;
+                    stalledNanos += System.nanoTime() - start;
+                }
+            }
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                        synchronized (this) {
+                            completed++;
+                        }
+                        future.complete(null);
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                        synchronized (this) {
+                            failed++;
+                        }
+                        future.completeExceptionally(e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                slots.release();
+                throw e;
+            }
+            return future;
+        }
+
+        /**
+         * Stops accepting tasks and waits for the ones already submitted to finish.
+         */
+        public void finish() {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+                    System.out.println("Still waiting for " + this);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return how many tasks have finished without throwing so far
+         */
+        public synchronized int completed() {
+            return completed;
+        }
+
+        /**
+         * @return how many tasks have thrown an exception so far
+         */
+        public synchronized int failed() {
+            return failed;
+        }
+
+        /**
+         * Shows how many tasks succeeded and failed, and how often and how long submitters had to wait because this was full; a
+         * stage that made others wait a lot is the one that could use more threads.
+         */
+        @Override
+        public synchronized String toString() {
+            return name + "{" + threads + " threads, " + completed + " done, " + failed + " failed, " + stalls + " stalls, "
+                    + (stalledNanos / 1000000L) + " ms stalled}";
+        }
+    }
+
+    public final ArrayList<Stage> stages = new ArrayList<>(4);
+
+    public RenderPipeline() {
+    }
+
+    /**
+     * Creates and adds a stage; stages should be added in the order work flows through them.
+     * @param name used for the worker threads and {@link Stage#toString()}
+     * @param threads how many tasks the stage can run at once
+     * @param capacity how many tasks can wait for a thread before submitting more has to wait
+     * @return the new stage
+     */
+    public Stage stage(String name, int threads, int capacity) {
+        Stage stage = new Stage(name, threads, capacity);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Waits for each stage to finish, in the order they were added, so tasks that an earlier stage submits to a later
+     * one are still accepted while the earlier stage is finishing. Nothing should be submitted after this.
+     */
+    public void finish() {
+        for (Stage stage : stages) {
+            stage.finish();
+        }
+    }
+
+    /**
+     * @return how many tasks in all stages have thrown an exception so far
+     */
+    public int failed() {
+        int failed = 0;
+        for (Stage stage : stages) {
+            failed += stage.failed();
+        }
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderPipeline" + stages;
+    }
+}
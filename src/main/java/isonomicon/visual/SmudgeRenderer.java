@@ -14,7 +14,6 @@ import isonomicon.physical.VoxMaterial;
 import java.util.Arrays;
 
 import static com.github.tommyettinger.colorful.oklab.ColorTools.getRawGamutValue;
-import static com.github.tommyettinger.digital.ArrayTools.fill;
 import static com.github.tommyettinger.digital.TrigTools.*;
 
 /**
@@ -22,9 +21,35 @@ import static com.github.tommyettinger.digital.TrigTools.*;
  */
 public class SmudgeRenderer {
     public Pixmap pixmap;
-    public int[][] depths, voxels, render, outlines;
-    public VoxMaterial[][] materials;
-    public float[][] shadeX, shadeZ, colorL, colorA, colorB, midShading;
+    /**
+     * The width and height of each per-pixel buffer, such as {@link #depths} or {@link #colorL}. Those buffers are each
+     * one flat array, where the pixel at x,y is at index {@code x * height + y}.
+     */
+    public int width, height;
+    /**
+     * The width and height of {@link #shadeX} and {@link #shadeZ}, which are laid out the same way as the per-pixel
+     * buffers, but with shadeSize in place of height.
+     */
+    public int shadeSize;
+    public int[] depths, voxels, render, outlines;
+    public VoxMaterial[] materials;
+    public float[] shadeX, shadeZ, colorL, colorA, colorB, midShading;
+    /**
+     * The pixels of the G-buffers (such as {@link #depths} and {@link #colorL}) that {@link #splat} has written to
+     * since the last blit or clear. Blit only lights and composites inside this area, and only resets that much (plus
+     * however far emissive light can reach) afterward.
+     */
+    public final DirtyRegion dirty = new DirtyRegion();
+    /**
+     * The cells of {@link #shadeZ} (by x,y) and of {@link #shadeX} (by y,z) that splat has written to since the last
+     * blit or clear.
+     */
+    public final DirtyRegion floorDirty = new DirtyRegion(), sideDirty = new DirtyRegion();
+    /**
+     * The pixels of {@link #pixmap} that the last blit wrote to, which the next blit has to erase.
+     */
+    public final DirtyRegion pixmapDirty = new DirtyRegion();
+    protected final DirtyRegion lit = new DirtyRegion();
     public PaletteReducer reducer = new com.github.tommyettinger.anim8.QualityPalette();
     public int[] palette;
     public float[] paletteL, paletteA, paletteB;
@@ -44,17 +69,27 @@ public class SmudgeRenderer {
         final int w = size * 4 + 4, h = size * 5 + 4;
 //        pixmap = new Pixmap(w, h, Pixmap.Format.RGBA8888);
         pixmap = new Pixmap(w>>>shrink, h>>>shrink, Pixmap.Format.RGBA8888);
-        render =   new int[w][h];
-        outlines = new int[w][h];
-        depths =   new int[w][h];
-        materials = new VoxMaterial[w][h];
-        voxels = fill(-1, w, h);
-        shadeX = fill(-1f, size * 4, size * 4);
-        shadeZ = fill(-1f, size * 4, size * 4);
-        colorL = fill(-1f, w, h);
-        colorA = fill(-1f, w, h);
-        colorB = fill(-1f, w, h);
-        midShading = fill(0f, w, h);
+        pixmapDirty.all(pixmap.getWidth(), pixmap.getHeight());
+        width = w;
+        height = h;
+        shadeSize = size * 4;
+        render =   new int[w * h];
+        outlines = new int[w * h];
+        depths =   new int[w * h];
+        materials = new VoxMaterial[w * h];
+        voxels = new int[w * h];
+        Arrays.fill(voxels, -1);
+        shadeX = new float[shadeSize * shadeSize];
+        Arrays.fill(shadeX, -1f);
+        shadeZ = new float[shadeSize * shadeSize];
+        Arrays.fill(shadeZ, -1f);
+        colorL = new float[w * h];
+        Arrays.fill(colorL, -1f);
+        colorA = new float[w * h];
+        Arrays.fill(colorA, -1f);
+        colorB = new float[w * h];
+        Arrays.fill(colorB, -1f);
+        midShading = new float[w * h];
 //        remade = new byte[size << 1][size << 1][size << 1];
     }
     public static float limitToGamut(float L, float A, float B, float alpha) {
@@ -146,26 +181,26 @@ public class SmudgeRenderer {
         final float emit = m.getTrait(VoxMaterial.MaterialTrait._emit) * 0.75f;
         final float alpha = m.getTrait(VoxMaterial.MaterialTrait._alpha);
         final float hs = size * 0.5f;
-        for (int x = 0, ax = xx; x < 4 && ax < render.length; x++, ax++) {
-            for (int y = 0, ay = yy; y < 4 && ay < render[0].length; y++, ay++) {
-                if ((depth > depths[ax][ay] || (depth == depths[ax][ay] &&
-//                        colorL[ax][ay] < paletteL[voxel & 255]
-                        (materials[ax][ay] == null || materials[ax][ay].getTrait(VoxMaterial.MaterialTrait._priority)
+        for (int x = 0, ax = xx; x < 4 && ax < width; x++, ax++) {
+            for (int y = 0, ay = yy, i = ax * height + yy; y < 4 && ay < height; y++, ay++, i++) {
+                if ((depth > depths[i] || (depth == depths[i] &&
+//                        colorL[i] < paletteL[voxel & 255]
+                        (materials[i] == null || materials[i].getTrait(VoxMaterial.MaterialTrait._priority)
                                 <= m.getTrait(VoxMaterial.MaterialTrait._priority))
                 )) && (alpha < 1f)) {
                     drawn = true;
-                    colorL[ax][ay] = paletteL[voxel & 255];
-                    colorA[ax][ay] = paletteA[voxel & 255];
-                    colorB[ax][ay] = paletteB[voxel & 255];
-                    depths[ax][ay] = depth;
-                    materials[ax][ay] = m;
-                    outlines[ax][ay] = ColorTools.toRGBA8888(limitToGamut(paletteL[voxel & 255] * (0.8f + emit),
+                    colorL[i] = paletteL[voxel & 255];
+                    colorA[i] = paletteA[voxel & 255];
+                    colorB[i] = paletteB[voxel & 255];
+                    depths[i] = depth;
+                    materials[i] = m;
+                    outlines[i] = ColorTools.toRGBA8888(limitToGamut(paletteL[voxel & 255] * (0.8f + emit),
                             (paletteA[voxel & 255] - 0.5f) * neutral + 0.5f, (paletteB[voxel & 255] - 0.5f) * neutral + 0.5f, 1f));
 //                                Coloring.darken(palette[voxel & 255], 0.375f - emit);
 //                                Coloring.adjust(palette[voxel & 255], 0.625f + emit, neutral);
 //                    else
-//                        outlines[ax][ay] = palette[voxel & 255];
-                    voxels[ax][ay] = vx | vy << 10 | vz << 20;
+//                        outlines[i] = palette[voxel & 255];
+                    voxels[i] = vx | vy << 10 | vz << 20;
 //                    for (int xp = (int)xPos; xp < xPos + 0.5f; xp++) {
 //                        for (int yp = (int) yPos; yp < yPos + 0.5f; yp++) {
 //                            for (int zp = (int) zPos; zp < zPos + 0.5f; zp++) {
@@ -176,29 +211,37 @@ public class SmudgeRenderer {
                 }
             }
         }
-        if(xPos < -hs || yPos < -hs || zPos < -hs || xPos + hs > shadeZ.length || yPos + hs > shadeZ[0].length || zPos + hs > shadeX[0].length)
+        if(drawn)
+            dirty.add(xx, yy, Math.min(xx + 4, width) - 1, Math.min(yy + 4, height) - 1);
+        if(xPos < -hs || yPos < -hs || zPos < -hs || xPos + hs > shadeSize || yPos + hs > shadeSize || zPos + hs > shadeSize)
             System.out.println(xPos + ", " + yPos + ", " + zPos + " is out of bounds");
         else if(drawn) {
-            shadeZ[(int) (hs + xPos)][(int) (hs + yPos)] = Math.max(shadeZ[(int) (hs + xPos)][(int) (hs + yPos)], (hs + zPos));
-            shadeX[(int) (hs + yPos)][(int) (hs + zPos)] = Math.max(shadeX[(int) (hs + yPos)][(int) (hs + zPos)], (hs + xPos));
+            final int fx = (int) (hs + xPos), fy = (int) (hs + yPos), fz = (int) (hs + zPos);
+            final int floor = fx * shadeSize + fy, side = fy * shadeSize + fz;
+            shadeZ[floor] = Math.max(shadeZ[floor], (hs + zPos));
+            shadeX[side] = Math.max(shadeX[side], (hs + xPos));
+            floorDirty.add(fx, fy);
+            sideDirty.add(fy, fz);
         }
     }
     
     public SmudgeRenderer clear() {
         pixmap.setColor(0);
         pixmap.fill();
-        fill(depths, 0);
-        fill(render, 0);
-        fill(outlines, (byte) 0);
-        fill(voxels, -1);
-        fill(shadeX, -1f);
-        fill(shadeZ, -1f);
-        fill(colorL, -1f);
-        fill(colorA, -1f);
-        fill(colorB, -1f);
-        for (int i = 0; i < materials.length; i++) {
-            Arrays.fill(materials[i], null);
-        }
+        Arrays.fill(depths, 0);
+        Arrays.fill(render, 0);
+        Arrays.fill(outlines, 0);
+        Arrays.fill(voxels, -1);
+        Arrays.fill(shadeX, -1f);
+        Arrays.fill(shadeZ, -1f);
+        Arrays.fill(colorL, -1f);
+        Arrays.fill(colorA, -1f);
+        Arrays.fill(colorB, -1f);
+        Arrays.fill(materials, null);
+        dirty.reset();
+        floorDirty.reset();
+        sideDirty.reset();
+        pixmapDirty.reset();
         return this;
     }
 
@@ -215,6 +258,9 @@ public class SmudgeRenderer {
     /**
      * Compiles all of the individual voxels drawn with {@link #splat(float, float, float, int, int, int, byte, int)} into a
      * single Pixmap and returns it.
+     * <br>
+     * Only the area that splat wrote to (see {@link #dirty}) is lit and composited, and the next blit only erases the
+     * part of pixmap that this one wrote to, so don't draw onto the returned Pixmap; copy it first.
      * @param yaw in turns; like turning your head or making a turn in a car
      * @param pitch in turns; like looking up or down or making a nosedive in a plane
      * @param roll in turns; like tilting your head to one side or doing a barrel roll in a starship
@@ -222,9 +268,15 @@ public class SmudgeRenderer {
      */
     public Pixmap blit(float yaw, float pitch, float roll, int frame) {
         final int threshold = 13;
-        pixmap.setColor(0);
-        pixmap.fill();
-        int xSize = render.length - 1, ySize = render[0].length - 1, depth;
+        if(!pixmapDirty.isEmpty()) {
+            final Pixmap.Blending blending = pixmap.getBlending();
+            pixmap.setBlending(Pixmap.Blending.None);
+            pixmap.setColor(0);
+            pixmap.fillRectangle(pixmapDirty.minX, pixmapDirty.minY,
+                    pixmapDirty.maxX + 1 - pixmapDirty.minX, pixmapDirty.maxY + 1 - pixmapDirty.minY);
+            pixmap.setBlending(blending);
+        }
+        int xSize = width - 1, ySize = height - 1, depth;
         int v, vx, vy, vz, fx, fy, fz;
         float hs = (size) * 0.5f, hsp = hs - fidget, ox, oy, oz, tx, ty, tz;
         final float cYaw = cosTurns(yaw), sYaw = sinTurns(yaw);
@@ -235,9 +287,11 @@ public class SmudgeRenderer {
         final float x_z = -sPitch, y_z = cPitch * sRoll, z_z = cPitch * cRoll;
         VoxMaterial m;
         final int step = 1 << shrink;
-        for (int sx = 0; sx <= xSize; sx++) {
-            for (int sy = 0; sy <= ySize; sy++) {
-                if((v = voxels[sx][sy]) != -1) {
+        // emissive light can reach 14 pixels past anything drawn, and nothing else reaches farther
+        lit.set(dirty).expand(14, xSize + 1, ySize + 1);
+        for (int sx = dirty.minX; sx <= dirty.maxX; sx++) {
+            for (int sy = dirty.minY, p = sx * height + sy; sy <= dirty.maxY; sy++, p++) {
+                if((v = voxels[p]) != -1) {
                     vx = v & 0x3FF;
                     vy = v >>> 10 & 0x3FF;
                     vz = v >>> 20 & 0x3FF;
@@ -250,34 +304,34 @@ public class SmudgeRenderer {
                     fy = (int)(ty);
                     tz = ox * x_z + oy * y_z + oz * z_z + hs + hs;
                     fz = (int)(tz);
-                    m = materials[sx][sy];
+                    m = materials[p];
                     float rough = m.getTrait(VoxMaterial.MaterialTrait._rough);
                     float emit = m.getTrait(VoxMaterial.MaterialTrait._emit);
                     float limit = 2;
                     // + (PaletteReducer.TRI_BLUE_NOISE[(sx & 63) + (sy << 6) + (fx + fy + fz >>> 2) & 4095] + 0.5) * 0x1p-7;
-                    if (Math.abs(shadeX[fy][fz] - tx) <= limit || ((fy > 1 && Math.abs(shadeX[fy - 2][fz] - tx) <= limit) ||
-                            (fy < shadeX.length - 2 && Math.abs(shadeX[fy + 2][fz] - tx) <= limit))) {
+                    if (Math.abs(shadeX[fy * shadeSize + fz] - tx) <= limit || ((fy > 1 && Math.abs(shadeX[(fy - 2) * shadeSize + fz] - tx) <= limit) ||
+                            (fy < shadeSize - 2 && Math.abs(shadeX[(fy + 2) * shadeSize + fz] - tx) <= limit))) {
                         float spread = MathUtils.lerp(0.0025f, 0.001f, rough);
-                        if (Math.abs(shadeZ[fx][fy] - tz) <= limit) {
+                        if (Math.abs(shadeZ[fx * shadeSize + fy] - tz) <= limit) {
                             spread *= 2f;
-                            colorL[sx][sy] += m.getTrait(VoxMaterial.MaterialTrait._ior) * 0.2f;
+                            colorL[p] += m.getTrait(VoxMaterial.MaterialTrait._ior) * 0.2f;
                         }
                         int dist;
                         for (int i = -3, si = sx + i; i <= 3; i++, si++) {
                             for (int j = -3, sj = sy + j; j <= 3; j++, sj++) {
                                 if((dist = i * i + j * j) > 9 || si < 0 || sj < 0 || si > xSize || sj > ySize) continue;
-                                colorL[si][sj] += spread * (4 - (float)Math.sqrt(dist));
+                                colorL[si * height + sj] += spread * (4 - (float)Math.sqrt(dist));
                             }
                         }
                     }
-                    else if (Math.abs(shadeZ[fx][fy] - tz) <= limit) {
+                    else if (Math.abs(shadeZ[fx * shadeSize + fy] - tz) <= limit) {
                         float spread = MathUtils.lerp(0.005f, 0.002f, rough);
                         float dist;
                         for (int i = -3, si = sx + i; i <= 3; i++, si++) {
                             for (int j = -3, sj = sy + j; j <= 3; j++, sj++) {
                                 if((dist = i * i + j * j) > 9 || si < 0 || sj < 0 || si > xSize || sj > ySize) continue;
                                 float change = spread * (4 - (float)Math.sqrt(dist));
-                                colorL[si][sj] += change;
+                                colorL[si * height + sj] += change;
                             }
                         }
                     }
@@ -289,22 +343,23 @@ public class SmudgeRenderer {
                                 final int dist = i * i + j * j;
                                 if(dist > radius * radius || si < 0 || sj < 0 || si > xSize || sj > ySize) continue;
                                 float change = spread * (radius - (float) Math.sqrt(dist));
-                                midShading[si][sj] = Math.min(midShading[si][sj] + change, 0.3f);
+                                midShading[si * height + sj] = Math.min(midShading[si * height + sj] + change, 0.3f);
                             }
                         }
                     }
                 }
             }
         }
-        for (int x = xSize; x >= 0; x--) {
-            for (int y = ySize; y >= 0; y--) {
-                if (colorA[x][y] >= 0f) {
+        // colorA is only set where splat drew something
+        for (int x = dirty.maxX; x >= dirty.minX; x--) {
+            for (int y = dirty.maxY, p = x * height + y; y >= dirty.minY; y--, p--) {
+                if (colorA[p] >= 0f) {
                     pixmap.drawPixel(x >>> shrink, y >>> shrink, ColorTools.toRGBA8888(ColorTools.oklab(
-                            Math.min(Math.max(colorL[x][y] - 0.1f + midShading[x][y], 0f), 1f),
-                            (colorA[x][y] - 0.5f) * neutral + 0.5f,
-                            (colorB[x][y] - 0.5f) * neutral + 0.5f, 1f)));
+                            Math.min(Math.max(colorL[p] - 0.1f + midShading[p], 0f), 1f),
+                            (colorA[p] - 0.5f) * neutral + 0.5f,
+                            (colorB[p] - 0.5f) * neutral + 0.5f, 1f)));
                 }
-//                if (colorA[x][y] >= 0f) {
+//                if (colorA[p] >= 0f) {
 //                    float maxL = 0f, minL = 1f, avgL = 0f,
 //                            maxA = 0f, minA = 1f, avgA = 0f,
 //                            maxB = 0f, minB = 1f, avgB = 0f,
@@ -312,17 +367,17 @@ public class SmudgeRenderer {
 //                    for (int xx = -distance; xx <= distance; xx++) {
 //                        if (x + xx < 0 || x + xx > xSize) continue;
 //                        for (int yy = -distance; yy <= distance; yy++) {
-//                            if ((xx & yy) != 0 || y + yy < 0 || y + yy > ySize || colorA[x + xx][y + yy] < 0f)
+//                            if ((xx & yy) != 0 || y + yy < 0 || y + yy > ySize || colorA[(x + xx) * height + y + yy] < 0f)
 //                                continue;
-//                            current = colorL[x + xx][y + yy];
+//                            current = colorL[(x + xx) * height + y + yy];
 //                            maxL = Math.max(maxL, current);
 //                            minL = Math.min(minL, current);
 //                            avgL += current;
-//                            current = colorA[x + xx][y + yy];
+//                            current = colorA[(x + xx) * height + y + yy];
 //                            maxA = Math.max(maxA, current);
 //                            minA = Math.min(minA, current);
 //                            avgA += current;
-//                            current = colorB[x + xx][y + yy];
+//                            current = colorB[(x + xx) * height + y + yy];
 //                            maxB = Math.max(maxB, current);
 //                            minB = Math.min(minB, current);
 //                            avgB += current;
@@ -330,89 +385,93 @@ public class SmudgeRenderer {
 //                        }
 //                    }
 ////                    avg = avg / div + (x + y & 1) * 0.05f - 0.025f;
-////                    pixmap.drawPixel(x, y, render[x][y] = ColorTools.toRGBA8888(ColorTools.limitToGamut(
+////                    pixmap.drawPixel(x, y, render[p] = ColorTools.toRGBA8888(ColorTools.limitToGamut(
 ////                            Math.min(Math.max(((avg - minL) < (maxL - avg) ? minL : maxL) - 0.15625f, 0f), 1f),
-////                            (colorA[x][y] - 0.5f) * neutral + 0.5f,
-////                            (colorB[x][y] - 0.5f) * neutral + 0.5f, 1f)));
+////                            (colorA[p] - 0.5f) * neutral + 0.5f,
+////                            (colorB[p] - 0.5f) * neutral + 0.5f, 1f)));
 ////                    avgL = avgL / div + (x + y & 2) * 0.004f - 0.004f;
 //                    avgL /= div;
 //                    avgA /= div;
 //                    avgB /= div;
-//                    render[x][y] = ColorTools.toRGBA8888(limitToGamut(
+//                    render[p] = ColorTools.toRGBA8888(limitToGamut(
 //                            Math.min(Math.max(((avgL - minL) < (maxL - avgL) ? minL : maxL) - 0.15625f, 0f), 1f),
 //                            (avgA - 0.5f) * neutral + 0.5f,
 //                            (avgB - 0.5f) * neutral + 0.5f, 1f));
 ////                    avg /= div;
-////                    colorL[x][y] = Math.min(Math.max(((avg - minL) < (maxL - avg) ? minL : maxL) - 0.15625f, 0f), 1f);
+////                    colorL[p] = Math.min(Math.max(((avg - minL) < (maxL - avg) ? minL : maxL) - 0.15625f, 0f), 1f);
 ////                    if (neutral != 1f) {
-////                        colorA[x][y] = (colorA[x][y] - 0.5f) * neutral + 0.5f;
-////                        colorB[x][y] = (colorB[x][y] - 0.5f) * neutral + 0.5f;
+////                        colorA[p] = (colorA[p] - 0.5f) * neutral + 0.5f;
+////                        colorB[p] = (colorB[p] - 0.5f) * neutral + 0.5f;
 ////                    }
 //                }
             }
         }
 //        for (int x = 0; x <= xSize; x++) {
 //            for (int y = 0; y <= ySize; y++) {
-//                if (colorA[x][y] >= 0f) {
-//                    pixmap.drawPixel(x >>> 1, y >>> 1, render[x][y] = ColorTools.toRGBA8888(ColorTools.limitToGamut(
-//                            Math.min(Math.max(colorL[x][y] - 0.125f, 0f), 1f),
-//                            (colorA[x][y] - 0.5f) * neutral + 0.5f,
-//                            (colorB[x][y] - 0.5f) * neutral + 0.5f, 1f)));
+//                if (colorA[p] >= 0f) {
+//                    pixmap.drawPixel(x >>> 1, y >>> 1, render[p] = ColorTools.toRGBA8888(ColorTools.limitToGamut(
+//                            Math.min(Math.max(colorL[p] - 0.125f, 0f), 1f),
+//                            (colorA[p] - 0.5f) * neutral + 0.5f,
+//                            (colorB[p] - 0.5f) * neutral + 0.5f, 1f)));
 //                }
 //            }
 //        }
 //        for (int x = xSize; x >= 0; x--) {
 //            for (int y = ySize; y >= 0; y--) {
-//                if (colorA[x][y] >= 0f) {
-//                    pixmap.drawPixel(x >>> shrink, y >>> shrink, render[x][y]);
+//                if (colorA[p] >= 0f) {
+//                    pixmap.drawPixel(x >>> shrink, y >>> shrink, render[p]);
 //                }
 //            }
 //        }
-        if (outline) {
+        if (outline && !dirty.isEmpty()) {
             int o;
-            for (int x = step; x <= xSize - step; x+= step) {
+            // only multiples of step are checked, same as when this looped over the whole image
+            final int ds = step * height;
+            final int startX = Math.max(step, (dirty.minX + step - 1) & -step), endX = Math.min(xSize - step, dirty.maxX);
+            final int startY = Math.max(step, (dirty.minY + step - 1) & -step), endY = Math.min(ySize - step, dirty.maxY);
+            for (int x = startX; x <= endX; x+= step) {
 //                final int hx = x;
                 final int hx = x >>> shrink;
-                for (int y = step; y <= ySize - step; y+= step) {
+                for (int y = startY, p = x * height + y; y <= endY; y+= step, p += step) {
 //                    final int hy = y;
                     int hy = y >>> shrink;
-                    if ((o = outlines[x][y]) != 0) {
-                        depth = depths[x][y];
-                        if (outlines[x - step][y] == 0) {
+                    if ((o = outlines[p]) != 0) {
+                        depth = depths[p];
+                        if (outlines[p - ds] == 0) {
                             pixmap.drawPixel(hx - 1, hy    , o);
                         }
-                        else if (depths[x - step][y] < depth - threshold) {
+                        else if (depths[p - ds] < depth - threshold) {
                             pixmap.drawPixel(hx - 1, hy    , o);
                         }
-                        if (outlines[x + step][y] == 0) {
+                        if (outlines[p + ds] == 0) {
                             pixmap.drawPixel(hx + 1, hy    , o);
                         }
-                        else if (depths[x + step][y] < depth - threshold) {
+                        else if (depths[p + ds] < depth - threshold) {
                             pixmap.drawPixel(hx + 1, hy    , o);
                         }
-                        if (outlines[x][y - step] == 0) {
+                        if (outlines[p - step] == 0) {
                             pixmap.drawPixel(hx    , hy - 1, o);
                         }
-                        else if (depths[x][y - step] < depth - threshold) {
+                        else if (depths[p - step] < depth - threshold) {
                             pixmap.drawPixel(hx    , hy - 1, o);
                         }
-                        if (outlines[x][y + step] == 0) {
+                        if (outlines[p + step] == 0) {
                             pixmap.drawPixel(hx    , hy + 1, o);
                         }
-                        else if (depths[x][y + step] < depth - threshold) {
+                        else if (depths[p + step] < depth - threshold) {
                             pixmap.drawPixel(hx    , hy + 1, o);
                         }
 
-                        if (outlines[x - step][y - step] == 0) {
+                        if (outlines[p - ds - step] == 0) {
                             pixmap.drawPixel(hx - 1, hy - 1, o);
                         }
-                        if (outlines[x + step][y - step] == 0) {
+                        if (outlines[p + ds - step] == 0) {
                             pixmap.drawPixel(hx + 1, hy - 1, o);
                         }
-                        if (outlines[x - step][y + step] == 0) {
+                        if (outlines[p - ds + step] == 0) {
                             pixmap.drawPixel(hx - 1, hy + 1, o);
                         }
-                        if (outlines[x + step][y + step] == 0) {
+                        if (outlines[p + ds + step] == 0) {
                             pixmap.drawPixel(hx + 1, hy + 1, o);
                         }
 
@@ -423,21 +482,28 @@ public class SmudgeRenderer {
         if(dither) {
             reducer.setDitherStrength(AppConfig.STRENGTH);
             reducer.reduce(pixmap, AppConfig.DITHER);
+            // dithering can touch any pixel, so the next blit has to erase everything
+            pixmapDirty.all(pixmap.getWidth(), pixmap.getHeight());
         }
-
-        fill(depths, 0);
-        fill(render, 0);
-        fill(outlines, (byte) 0);
-        fill(voxels, -1);
-        fill(shadeX, -1f);
-        fill(shadeZ, -1f);
-        fill(colorL, -1f);
-        fill(colorA, -1f);
-        fill(colorB, -1f);
-        fill(midShading, 0f);
-        for (int i = 0; i < materials.length; i++) {
-            Arrays.fill(materials[i], null);
+        else {
+            // outlines can be drawn one pixel past the edge of a shrunken pixel that was composited
+            pixmapDirty.setShrunk(dirty, shrink, 1, pixmap.getWidth(), pixmap.getHeight());
         }
+
+        lit.fill(depths, height, 0);
+        lit.fill(render, height, 0);
+        lit.fill(outlines, height, 0);
+        lit.fill(voxels, height, -1);
+        lit.fill(colorL, height, -1f);
+        lit.fill(colorA, height, -1f);
+        lit.fill(colorB, height, -1f);
+        lit.fill(midShading, height, 0f);
+        lit.fill(materials, height, null);
+        sideDirty.fill(shadeX, shadeSize, -1f);
+        floorDirty.fill(shadeZ, shadeSize, -1f);
+        dirty.reset();
+        floorDirty.reset();
+        sideDirty.reset();
         return pixmap;
     }
 
@@ -9,24 +9,24 @@ import com.github.tommyettinger.anim8.PaletteReducer;
 import com.github.tommyettinger.colorful.oklab.ColorTools;
 import com.github.tommyettinger.digital.ArrayTools;
 import com.github.tommyettinger.digital.RoughMath;
-import com.github.tommyettinger.ds.IntObjectMap;
 import com.github.yellowstonegames.grid.BlueNoise;
 import com.github.yellowstonegames.grid.CyclicNoise;
 import com.github.yellowstonegames.grid.IntPointHash;
 import isonomicon.app.AppConfig;
+import isonomicon.io.extended.Assembly;
 import isonomicon.io.extended.GroupChunk;
 import isonomicon.io.extended.ShapeModel;
 import isonomicon.io.extended.TransformChunk;
 import isonomicon.io.extended.VoxModel;
 import isonomicon.physical.Stuff;
+import isonomicon.physical.StuffTable;
+import isonomicon.physical.SurfaceVoxels;
 import isonomicon.physical.Tools3D;
 import isonomicon.physical.VoxMaterial;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Arrays;
 
-import static com.github.tommyettinger.digital.ArrayTools.fill;
 import static com.github.tommyettinger.digital.TrigTools.cosTurns;
 import static com.github.tommyettinger.digital.TrigTools.sinTurns;
 
@@ -42,14 +42,45 @@ public class SpecialRenderer {
     public static final float fidget = 0.5f;
 
     public final Stuff[] stuffs;
+    public final StuffTable table;
     public Pixmap palettePixmap;
     public ByteBuffer buffer;
-    public int[][] depths, voxels, render;
-    public byte[][] outlines;
-    public VoxMaterial[][] materials;
-    public float[][] shadeX, shadeZ, shading, midShading, outlineShading, saturation;
-    public boolean[][] floorShade;
-    public byte[][] indices, outlineIndices, lightIndices;
+    /**
+     * The width and height of each per-pixel buffer, such as {@link #depths} or {@link #indices}. Those buffers are each
+     * one flat array, where the pixel at x,y is at index {@code x * height + y}.
+     */
+    public int width, height;
+    /**
+     * The width and height of {@link #shadeX}, {@link #shadeZ}, and {@link #floorShade}, which are laid out the same
+     * way as the per-pixel buffers, but with shadeSize in place of height.
+     */
+    public int shadeSize;
+    public int[] depths, voxels, render;
+    public byte[] outlines;
+    /**
+     * The voxel index (before {@link Stuff#appearsAs} is applied) that was last drawn at each pixel; used with
+     * {@link #table} to look up material traits when lighting.
+     */
+    public byte[] stuffIndices;
+    public float[] shadeX, shadeZ, shading, midShading, outlineShading, saturation;
+    public boolean[] floorShade;
+    public byte[] indices, outlineIndices, lightIndices;
+    /**
+     * The pixels of the G-buffers (such as {@link #depths} and {@link #indices}) that {@link #splat} has written to
+     * since the last blit or clear. Blit only lights and composites inside this area, plus however far emissive light
+     * can reach, and only resets that much afterward.
+     */
+    public final DirtyRegion dirty = new DirtyRegion();
+    /**
+     * The cells of {@link #shadeZ} and {@link #floorShade} (by x,y) and of {@link #shadeX} (by y,z) that splat has
+     * written to since the last blit or clear.
+     */
+    public final DirtyRegion floorDirty = new DirtyRegion(), sideDirty = new DirtyRegion();
+    /**
+     * The pixels of {@link #palettePixmap} that the last blit wrote to, which the next blit has to erase.
+     */
+    public final DirtyRegion pixmapDirty = new DirtyRegion();
+    protected final DirtyRegion lit = new DirtyRegion();
     public int[] palette;
     public float[] paletteL, paletteA, paletteB;
     public int outline = 4;
@@ -58,13 +89,23 @@ public class SpecialRenderer {
     public boolean shadows = Tools3D.SHADOWS;
     public int size;
     public float neutral = 1f;
+    /**
+     * If non-null, {@link #drawModelSimple(VoxModel, float, float, float, int, float, float, float)} checks this for an
+     * identical earlier render before drawing anything, and stores what it draws otherwise. Null by default. This isn't
+     * used when {@link #computeNormals} is true, because normal maps aren't cached.
+     */
+    public RenderCache cache;
 
     public static final byte DARKEN = (byte) 128;
     public static final byte LIGHTEN = (byte) 135;
     public static final byte FLOOR_INDEX = (byte) -16;
     public static final byte SHADOW_INDEX = (byte) 66;
 
-    public static final CyclicNoise swirlNoise = new CyclicNoise(0xDEADBEEFBA77L, 6, 0.03f);
+    /**
+     * Not static, because renderers may be used on different threads at once (see {@link RenderFarm}), and noise
+     * generators aren't guaranteed to be safe to share between threads. Every instance has the same seed.
+     */
+    public final CyclicNoise swirlNoise = new CyclicNoise(0xDEADBEEFBA77L, 6, 0.03f);
 
     public Pixmap normalMap;
     public boolean computeNormals;
@@ -86,23 +127,31 @@ public class SpecialRenderer {
         final int w = MathUtils.ceil(size * distortHXY * 2 + 4), h = MathUtils.ceil(size * (distortVZ + distortVXY * 2) + 4);
         palettePixmap = new Pixmap(w>>>shrink, h>>>shrink, Pixmap.Format.RGBA8888);
         palettePixmap.setBlending(Pixmap.Blending.None);
+        pixmapDirty.all(palettePixmap.getWidth(), palettePixmap.getHeight());
         buffer = palettePixmap.getPixels();
-        render =   new int[w][h];
-        outlines = new byte[w][h];
-        depths =   new int[w][h];
-        indices =  new byte[w][h];
-        outlineIndices =  new byte[w][h];
-        lightIndices =  new byte[w][h];
-        shading =  new float[w][h];
-        midShading =  new float[w][h];
-        saturation =  new float[w][h];
-        outlineShading = new float[w][h];
-        materials = new VoxMaterial[w][h];
-        voxels = fill(-1, w, h);
-        shadeX = fill(-1f, size * 4, size * 4);
-        shadeZ = fill(-1f, size * 4, size * 4);
-        floorShade = fill(false, size * 4, size * 4);
+        width = w;
+        height = h;
+        shadeSize = size * 4;
+        render =   new int[w * h];
+        outlines = new byte[w * h];
+        depths =   new int[w * h];
+        indices =  new byte[w * h];
+        outlineIndices =  new byte[w * h];
+        lightIndices =  new byte[w * h];
+        shading =  new float[w * h];
+        midShading =  new float[w * h];
+        saturation =  new float[w * h];
+        outlineShading = new float[w * h];
+        stuffIndices = new byte[w * h];
+        voxels = new int[w * h];
+        Arrays.fill(voxels, -1);
+        shadeX = new float[shadeSize * shadeSize];
+        Arrays.fill(shadeX, -1f);
+        shadeZ = new float[shadeSize * shadeSize];
+        Arrays.fill(shadeZ, -1f);
+        floorShade = new boolean[shadeSize * shadeSize];
         this.stuffs = stuffs;
+        this.table = StuffTable.of(stuffs);
 
         if(computeNormals)
         {
@@ -174,7 +223,7 @@ public class SpecialRenderer {
     }
 
     /**
-     * Applies a Scharr filter to a given x,y point in the already-computed depths 2D array, assigning floats to
+     * Applies a Scharr filter to a given x,y point in the already-computed depths array, assigning floats to
      * {@link #normals}. The blue channel of the color represents the axis of the normal vector that points toward
      * the camera, the green channel up, and the red channel right.
      * <a href="https://forum.unity.com/threads/sobel-operator-height-to-normal-map-on-gpu.33159/">Thanks to apple_motion for writing the initial basis for this</a>,
@@ -184,22 +233,23 @@ public class SpecialRenderer {
      */
     public void scharr(int x, int y) {
         // if there is nothing here, don't bother computing anything.
-        if(indices[x][y] == 0) return;
-        int[][] data = this.depths;
+        final int p = x * height + y;
+        if(indices[p] == 0) return;
+        final int[] data = this.depths;
         // for other usage, this calculation will have to be different.
         float maxDepth = 1.5f * (0.5f + (size + size) * distortHXY + size * distortVZ);
         float invMaxDepth = 1f / maxDepth;
         // how many pixels away from (x,y) each direction will move per step.
-        final int u = 1 << shrink;
+        final int u = 1 << shrink, uh = u * height;
 
-        float tl = (x < u || y < u) ? 0 : (data[x-u][y-u]) * invMaxDepth;                    // top left
-        float  l = (x < u) ? 0 : (data[x-u][y]) * invMaxDepth;                               // left
-        float bl = (x < u || y >= data[0].length - u) ? 0 : (data[x-u][y+u]) * invMaxDepth;  // bottom left
-        float  t = (y < u) ? 0 : (data[x][y-u]) * invMaxDepth;                               // top
-        float  b = (data[x][y]) * invMaxDepth;                                               // bottom
-        float tr = (y >= data[0].length - u) ? 0 : (data[x][y+u]) * invMaxDepth;             // top right
-        float  r = (x >= data.length - u || y < u) ? 0 : (data[x+u][y-u]) * invMaxDepth;     // right
-        float br = (x >= data.length - u) ? 0 : (data[x+u][y]) * invMaxDepth;                // bottom right
+        float tl = (x < u || y < u) ? 0 : (data[p-uh-u]) * invMaxDepth;                      // top left
+        float  l = (x < u) ? 0 : (data[p-uh]) * invMaxDepth;                                   // left
+        float bl = (x < u || y >= height - u) ? 0 : (data[p-uh+u]) * invMaxDepth;              // bottom left
+        float  t = (y < u) ? 0 : (data[p-u]) * invMaxDepth;                                    // top
+        float  b = (data[p]) * invMaxDepth;                                                    // bottom
+        float tr = (y >= height - u) ? 0 : (data[p+u]) * invMaxDepth;                          // top right
+        float  r = (x >= width - u || y < u) ? 0 : (data[p+uh-u]) * invMaxDepth;               // right
+        float br = (x >= width - u) ? 0 : (data[p+uh]) * invMaxDepth;                          // bottom right
 
         // Scharr operator
         float cx = ((tl + bl - tr - br) * 47 + (l - r) * 162);
@@ -230,22 +280,21 @@ public class SpecialRenderer {
         if(xPos <= -1f || yPos <= -1f || zPos <= -1f
                 || xPos >= size * 2 || yPos >= size * 2 || zPos >= size * 2)
             return;
-        final Stuff stuff = stuffs[Math.min(voxel & 255, stuffs.length - 1)];
-        final VoxMaterial m = stuff.material;
-        final float alpha = m.getTrait(VoxMaterial.MaterialTrait._alpha);
-        if(alpha >= 1f) return;
-        voxel = (byte) stuff.appearsAs;
-        final float flip = m.getTrait(VoxMaterial.MaterialTrait._frame);
-        if(Tools3D.randomizePointRare(vx, vy, vz, frame) < m.getTrait(VoxMaterial.MaterialTrait._metal) || (frame & 1) == flip)
+        final StuffTable t = table;
+        final int kind = voxel & 255;
+        if(t.alpha[kind] >= 1f) return;
+        voxel = t.appearsAs[kind];
+        final float flip = t.frame[kind];
+        if(Tools3D.randomizePointRare(vx, vy, vz, frame) < t.metal[kind] || (frame & 1) == flip)
             return;
-        final float rise = m.getTrait(VoxMaterial.MaterialTrait._rise) * (1.25f + IntPointHash.hash256(vx, vy, vz, 12345) * 0x1.Cp-8f);
-        final float flow = m.getTrait(VoxMaterial.MaterialTrait._flow);
-        final float swirl = m.getTrait(VoxMaterial.MaterialTrait._swirl) + 1f;
+        final float rise = t.rise[kind] * (1.25f + IntPointHash.hash256(vx, vy, vz, 12345) * 0x1.Cp-8f);
+        final float flow = t.flow[kind];
+        final float swirl = t.swirl[kind] + 1f;
         if(swirl != 1f) {
             float ns = swirlNoise.getNoise(vx, vy, vz, cosTurns(frame * 0x1p-7f) * 0.625f / swirlNoise.getFrequency(), sinTurns(frame * 0x1p-7f) * 0.625f / swirlNoise.getFrequency()) * 2f;
             if(ns > swirl) return;
         }
-        final float emit = m.getTrait(VoxMaterial.MaterialTrait._emit) * 0.75f;
+        final float emit = t.emit[kind] * 0.75f;
         int lowX = 0, highX = 4, lowY = 0, highY = 4;
 //        int lowX = 0, highX = 1 << shrink, lowY = 0, highY = 1 << shrink;
 
@@ -266,37 +315,37 @@ public class SpecialRenderer {
                 depth = (int)(0.5f + (xPos + yPos) * distortHXY + zPos * distortVZ);
         boolean drawn = false, drawnEmit = false;
         final float hs = size * 0.5f;
-        for (int x = lowX, ax = xx; x < highX && ax < render.length; x++, ax++) {
+        for (int x = lowX, ax = xx; x < highX && ax < width; x++, ax++) {
             if (ax < 0) continue;
-            for (int y = lowY, ay = yy; y < highY && ay < render[0].length; y++, ay++) {
-                if ((depth > depths[ax][ay] || (depth == depths[ax][ay] &&
-                        (indices[ax][ay] == 0 || stuffs[Math.min((indices[ax][ay] & 255), stuffs.length - 1)].material.getTrait(VoxMaterial.MaterialTrait._priority)
-                                <= stuffs[Math.min((voxel & 255), stuffs.length - 1)].material.getTrait(VoxMaterial.MaterialTrait._priority))))) {
+            for (int y = lowY, ay = yy, i = ax * height + yy; y < highY && ay < height; y++, ay++, i++) {
+                if ((depth > depths[i] || (depth == depths[i] &&
+                        (indices[i] == 0 || t.priority[indices[i] & 255]
+                                <= t.priority[voxel & 255])))) {
                     drawn = true;
                     drawnEmit = emit != 0f;
-                    depths[ax][ay] = depth;
-                    materials[ax][ay] = m;
+                    depths[i] = depth;
+                    stuffIndices[i] = (byte) kind;
                     if(voxel != 0) {
-                        indices[ax][ay] = voxel;
+                        indices[i] = voxel;
                         if (emit == 0f) {
-                            outlines[ax][ay] = 1;
-                            outlineShading[ax][ay] = paletteL[voxel & 255] * 0.625f;
-                            outlineIndices[ax][ay] = voxel;
+                            outlines[i] = 1;
+                            outlineShading[i] = paletteL[voxel & 255] * 0.625f;
+                            outlineIndices[i] = voxel;
                         }
-                        else { //else if(outlineIndices[ax][ay] == 0) {
-                            outlines[ax][ay] = -1;
-                            outlineShading[ax][ay] = paletteL[voxel & 255] * (1f + emit * 2.5f);
-//                            outlineIndices[ax][ay] = 0;
+                        else { //else if(outlineIndices[i] == 0) {
+                            outlines[i] = -1;
+                            outlineShading[i] = paletteL[voxel & 255] * (1f + emit * 2.5f);
+//                            outlineIndices[i] = 0;
                         }
                     }
                     else {
-                        indices[ax][ay] = FLOOR_INDEX;
+                        indices[i] = FLOOR_INDEX;
                     }
 //                                Coloring.darken(palette[voxel & 255], 0.375f - emit);
 //                                Coloring.adjust(palette[voxel & 255], 0.625f + emit, neutral);
 //                    else
-//                        outlines[ax][ay] = palette[voxel & 255];
-                    voxels[ax][ay] = vx | vy << 10 | vz << 20;
+//                        outlines[i] = palette[voxel & 255];
+                    voxels[i] = vx | vy << 10 | vz << 20;
 //                    for (int xp = (int)xPos; xp < xPos + 0.5f; xp++) {
 //                        for (int yp = (int) yPos; yp < yPos + 0.5f; yp++) {
 //                            for (int zp = (int) zPos; zp < zPos + 0.5f; zp++) {
@@ -307,35 +356,43 @@ public class SpecialRenderer {
                 }
             }
         }
-        if(xPos < -hs || yPos < -hs || zPos < -hs || xPos + hs > shadeZ.length || yPos + hs > shadeZ[0].length || zPos + hs > shadeX[0].length)
+        if(drawn)
+            dirty.add(xx, yy, Math.min(xx + highX - lowX, width) - 1, Math.min(yy + highY - lowY, height) - 1);
+        if(xPos < -hs || yPos < -hs || zPos < -hs || xPos + hs > shadeSize || yPos + hs > shadeSize || zPos + hs > shadeSize)
             System.out.println(xPos + ", " + yPos + ", " + zPos + " is out of bounds");
         else if(drawn && (!drawnEmit && voxel != SHADOW_INDEX)) {
-            floorShade[(int) (hs + xPos)][(int) (hs + yPos)] = true;
-            shadeZ[(int) (hs + xPos)][(int) (hs + yPos)] = Math.max(shadeZ[(int) (hs + xPos)][(int) (hs + yPos)], (hs + zPos));
-            shadeX[(int) (hs + yPos)][(int) (hs + zPos)] = Math.max(shadeX[(int) (hs + yPos)][(int) (hs + zPos)], (hs + xPos));
+            final int fx = (int) (hs + xPos), fy = (int) (hs + yPos), fz = (int) (hs + zPos);
+            final int floor = fx * shadeSize + fy, side = fy * shadeSize + fz;
+            floorShade[floor] = true;
+            shadeZ[floor] = Math.max(shadeZ[floor], (hs + zPos));
+            shadeX[side] = Math.max(shadeX[side], (hs + xPos));
+            floorDirty.add(fx, fy);
+            sideDirty.add(fy, fz);
         }
     }
     
     public SpecialRenderer clear() {
         palettePixmap.setColor(0);
         palettePixmap.fill();
-        fill(depths, 0);
-        fill(render, 0);
-        fill(outlines, (byte) 0);
-        fill(indices, (byte) 0);
-        fill(outlineIndices, (byte) 0);
-        fill(lightIndices, (byte) 0);
-        fill(voxels, -1);
-        fill(shadeX, -1f);
-        fill(shadeZ, -1f);
-        fill(floorShade, false);
-        fill(shading, 0f);
-        fill(midShading, 0f);
-        fill(saturation, 0f);
-        fill(outlineShading, -1f);
-        for (int i = 0; i < materials.length; i++) {
-            Arrays.fill(materials[i], null);
-        }
+        Arrays.fill(depths, 0);
+        Arrays.fill(render, 0);
+        Arrays.fill(outlines, (byte) 0);
+        Arrays.fill(indices, (byte) 0);
+        Arrays.fill(outlineIndices, (byte) 0);
+        Arrays.fill(lightIndices, (byte) 0);
+        Arrays.fill(voxels, -1);
+        Arrays.fill(shadeX, -1f);
+        Arrays.fill(shadeZ, -1f);
+        Arrays.fill(floorShade, false);
+        Arrays.fill(shading, 0f);
+        Arrays.fill(midShading, 0f);
+        Arrays.fill(saturation, 0f);
+        Arrays.fill(outlineShading, -1f);
+        Arrays.fill(stuffIndices, (byte) 0);
+        dirty.reset();
+        floorDirty.reset();
+        sideDirty.reset();
+        pixmapDirty.reset();
         return this;
     }
 
@@ -352,6 +409,9 @@ public class SpecialRenderer {
     /**
      * Compiles all the individual voxels drawn with {@link #splat(float, float, float, int, int, int, byte, int)} into a
      * single Pixmap and returns it.
+     * <br>
+     * Only the area that splat wrote to (see {@link #dirty}) is lit and composited, and the next blit only erases the
+     * part of palettePixmap that this one wrote to, so don't draw onto the returned Pixmap; copy it first.
      * @param yaw in turns; like turning your head or making a turn in a car
      * @param pitch in turns; like looking up or down or making a nosedive in a plane
      * @param roll in turns; like tilting your head to one side or doing a barrel roll in a starship
@@ -360,7 +420,9 @@ public class SpecialRenderer {
     public Pixmap blit(float yaw, float pitch, float roll, int frame) {
         final int threshold = 10+shrink*3;//13;
         palettePixmap.setColor(0);
-        palettePixmap.fill();
+        if(!pixmapDirty.isEmpty())
+            palettePixmap.fillRectangle(pixmapDirty.minX, pixmapDirty.minY,
+                    pixmapDirty.maxX + 1 - pixmapDirty.minX, pixmapDirty.maxY + 1 - pixmapDirty.minY);
 
         if(computeNormals) {
             ArrayTools.fill(normals, 0f);
@@ -368,7 +430,7 @@ public class SpecialRenderer {
             normalMap.fill();
         }
 
-        int xSize = render.length - 1, ySize = render[0].length - 1, depth;
+        int xSize = width - 1, ySize = height - 1, depth;
         int v, vx, vy, vz, fx, fy, fz;
         float hs = (size) * 0.5f, hsp = hs - fidget, ox, oy, oz, tx, ty, tz;
         final float cYaw = cosTurns(yaw), sYaw = sinTurns(yaw);
@@ -377,11 +439,14 @@ public class SpecialRenderer {
         final float x_x = cYaw * cPitch, y_x = cYaw * sPitch * sRoll - sYaw * cRoll, z_x = cYaw * sPitch * cRoll + sYaw * sRoll;
         final float x_y = sYaw * cPitch, y_y = sYaw * sPitch * sRoll + cYaw * cRoll, z_y = sYaw * sPitch * cRoll - cYaw * sRoll;
         final float x_z = -sPitch, y_z = cPitch * sRoll, z_z = cPitch * cRoll;
-        VoxMaterial m;
+        final StuffTable t = table;
+        int kind;
         final int step = 1 << shrink;
-        for (int sx = 0; sx <= xSize; sx++) {
-            for (int sy = 0; sy <= ySize; sy++) {
-                if((v = voxels[sx][sy]) != -1) {
+        // emissive light can reach 9 pixels past anything drawn, and nothing else reaches farther
+        lit.set(dirty).expand(9, xSize + 1, ySize + 1);
+        for (int sx = dirty.minX; sx <= dirty.maxX; sx++) {
+            for (int sy = dirty.minY, p = sx * height + sy; sy <= dirty.maxY; sy++, p++) {
+                if((v = voxels[p]) != -1) {
                     vx = v & 0x3FF;
                     vy = v >>> 10 & 0x3FF;
                     vz = v >>> 20 & 0x3FF;
@@ -394,30 +459,30 @@ public class SpecialRenderer {
                     fy = (int)(ty);
                     tz = ox * x_z + oy * y_z + oz * z_z + hs + hs;
                     fz = (int)(tz);
-                    m = materials[sx][sy];
-                    final float rough = m.getTrait(VoxMaterial.MaterialTrait._rough);
-                    final float emit = m.getTrait(VoxMaterial.MaterialTrait._emit);
+                    kind = stuffIndices[p] & 255;
+                    final float rough = t.rough[kind];
+                    final float emit = t.emit[kind];
                     if(variance) {
-                        final float dapple = m.getTrait(VoxMaterial.MaterialTrait._dapple);
+                        final float dapple = t.dapple[kind];
                         if (dapple != 0f) {
                             final float d = dapple * bnBlocky(vx, vy, vz);
-                            shading[sx][sy] += d;
+                            shading[p] += d;
                         }
-                        final float vary = m.getTrait(VoxMaterial.MaterialTrait._vary) * 10f;
+                        final float vary = t.vary[kind] * 10f;
                         if (vary != 0f) {
-                            saturation[sx][sy] = Math.min(Math.max(vary * bnBlocky(vy, vz, vx), -1f), 1f);
+                            saturation[p] = Math.min(Math.max(vary * bnBlocky(vy, vz, vx), -1f), 1f);
                         }
                     }
                     if(lighting) {
                         float limit = 2;
 //                        if(fy >= shadeX.length || fz >= shadeX[fy].length)
 //                            System.out.println("fx="+fx+",fy="+fy+",fz="+fz);
-                        if (Math.abs(shadeX[fy][fz] - tx) <= limit || ((fy > 1 && Math.abs(shadeX[fy - 2][fz] - tx) <= limit) || (fy < shadeX.length - 2 && Math.abs(shadeX[fy + 2][fz] - tx) <= limit))) {
+                        if (Math.abs(shadeX[fy * shadeSize + fz] - tx) <= limit || ((fy > 1 && Math.abs(shadeX[(fy - 2) * shadeSize + fz] - tx) <= limit) || (fy < shadeSize - 2 && Math.abs(shadeX[(fy + 2) * shadeSize + fz] - tx) <= limit))) {
                             float spread = MathUtils.lerp(0.0025f, 0.001f, rough);
-                            if (Math.abs(shadeZ[fx][fy] - tz) <= limit) {
+                            if (Math.abs(shadeZ[fx * shadeSize + fy] - tz) <= limit) {
                                 spread *= 2f;
-                                float change = m.getTrait(VoxMaterial.MaterialTrait._ior) * 0.2f;
-                                shading[sx][sy] += change;
+                                float change = t.ior[kind] * 0.2f;
+                                shading[p] += change;
                             }
                             int dist;
                             for (int i = -4, si = sx + i; i <= 4; i++, si++) {
@@ -425,10 +490,10 @@ public class SpecialRenderer {
                                     if ((dist = i * i + j * j) > 9 || si < 0 || sj < 0 || si > xSize || sj > ySize)
                                         continue;
                                     float change = spread * (4 - (float) Math.sqrt(dist));
-                                    shading[si][sj] += change;
+                                    shading[si * height + sj] += change;
                                 }
                             }
-                        } else if (Math.abs(shadeZ[fx][fy] - tz) <= limit) {
+                        } else if (Math.abs(shadeZ[fx * shadeSize + fy] - tz) <= limit) {
                             float spread = MathUtils.lerp(0.005f, 0.002f, rough);
                             float dist;
                             for (int i = -4, si = sx + i; i <= 4; i++, si++) {
@@ -436,7 +501,7 @@ public class SpecialRenderer {
                                     if ((dist = i * i + j * j) > 9 || si < 0 || sj < 0 || si > xSize || sj > ySize)
                                         continue;
                                     float change = spread * (4 - (float) Math.sqrt(dist));
-                                    shading[si][sj] += change;
+                                    shading[si * height + sj] += change;
                                 }
                             }
                         }
@@ -449,14 +514,14 @@ public class SpecialRenderer {
                                     if (dist > radius * radius || si < 0 || sj < 0 || si > xSize || sj > ySize)
                                         continue;
                                     float change = spread * (radius - (float) Math.sqrt(dist));
-                                    midShading[si][sj] += change;// * Math.abs(change);
-                                    lightIndices[si][sj] = (byte)Math.max(lightIndices[si][sj], indices[sx][sy]);
+                                    midShading[si * height + sj] += change;// * Math.abs(change);
+                                    lightIndices[si * height + sj] = (byte)Math.max(lightIndices[si * height + sj], indices[p]);
                                 }
                             }
                         }
                         if(shadows){
-                            if(indices[sx][sy] == FLOOR_INDEX && !floorShade[fx][fy]) {
-                                shading[sx][sy] = 1024f;
+                            if(indices[p] == FLOOR_INDEX && !floorShade[fx * shadeSize + fy]) {
+                                shading[p] = 1024f;
                             }
                         }
                     }
@@ -465,16 +530,16 @@ public class SpecialRenderer {
         }
         byte index;
         float sh;
-        for (int x = xSize; x >= 0; x--) {
-            for (int y = ySize; y >= 0; y--) {
-                if ((index = indices[x][y]) != 0) {
-                    sh = shading[x][y];
+        for (int x = lit.maxX; x >= lit.minX; x--) {
+            for (int y = lit.maxY, p = x * height + y; y >= lit.minY; y--, p--) {
+                if ((index = indices[p]) != 0) {
+                    sh = shading[p];
 //                    if(sh >= 1000f)
 //                        continue;
-                    byte shade = (byte) (Math.min(Math.max((sh + logisticky(midShading[x][y])) * 0.625f + 0.1328125f, 0f), 1f) * 255.999f);
-//                    byte shade = (byte) (Math.min(Math.max((sh + midShading[x][y]) * 0.625f + 0.1328125f, 0f), 1f) * 255.999f);
-                    byte sat = (byte) (Math.min(Math.max((saturation[x][y]) * 0.5f + 0.5f, 0f), 1f) * 255.999f);
-//                    palettePixmap.drawPixel(x >>> shrink, y >>> shrink, (indices[x][y] & 255) << 24 |
+                    byte shade = (byte) (Math.min(Math.max((sh + logisticky(midShading[p])) * 0.625f + 0.1328125f, 0f), 1f) * 255.999f);
+//                    byte shade = (byte) (Math.min(Math.max((sh + midShading[p]) * 0.625f + 0.1328125f, 0f), 1f) * 255.999f);
+                    byte sat = (byte) (Math.min(Math.max((saturation[p]) * 0.5f + 0.5f, 0f), 1f) * 255.999f);
+//                    palettePixmap.drawPixel(x >>> shrink, y >>> shrink, (indices[p] & 255) << 24 |
 //                            shade << 16 |
 //                            sat << 8 | 255);
                     int idx = (y >>> shrink) * palettePixmap.getWidth() + (x >>> shrink) << 2;
@@ -491,36 +556,36 @@ public class SpecialRenderer {
                         buffer.put(idx + 3, (byte) 255);
                     }
                 }
-                else if(midShading[x][y] > 0f) {
-//                    int shade = (int) (logisticky((shading[x][y] + midShading[x][y])) * 255.999f);
-                    int shade = (int) (Math.min(Math.max((shading[x][y] + logisticky(midShading[x][y])) * 0.625f + 0.5f, 0f), 1f) * 255.999f);
-//                    int shade = (int) ((1f - Math.min(Math.max((shading[x][y] + midShading[x][y]) * 0.625f + 0.1328125f, 0f), 1f)) * 255.999f);
+                else if(midShading[p] > 0f) {
+//                    int shade = (int) (logisticky((shading[p] + midShading[p])) * 255.999f);
+                    int shade = (int) (Math.min(Math.max((shading[p] + logisticky(midShading[p])) * 0.625f + 0.5f, 0f), 1f) * 255.999f);
+//                    int shade = (int) ((1f - Math.min(Math.max((shading[p] + midShading[p]) * 0.625f + 0.1328125f, 0f), 1f)) * 255.999f);
                     int idx = (y >>> shrink) * palettePixmap.getWidth() + (x >>> shrink) << 2;
                     if ((buffer.get(idx+3) & 255) < shade) {
 //                        palettePixmap.drawPixel(x >>> shrink, y >>> shrink, LIGHTEN << 24 |
 //                                128 << 16 |
 //                                128 << 8 | shade);
-                        buffer.put(idx, lightIndices[x][y]);
+                        buffer.put(idx, lightIndices[p]);
                         buffer.put(idx+1, (byte) shade);
                         buffer.put(idx+2, (byte) 96);
                         buffer.put(idx+3, (byte) shade);
-                        outlineIndices[x][y] = 0;
+                        outlineIndices[p] = 0;
                     }
                 }
-                else if(midShading[x][y] < 0f) {
-//                    int shade = (int) (logisticky((shading[x][y] + midShading[x][y])) * 255.999f);
-                    int shade = (int) (1f - Math.min(Math.max((shading[x][y] + logisticky(midShading[x][y])) * 0.625f + 0.5f, 0f), 1f) * 255.999f);
-//                    int shade = (int) ((1f - Math.min(Math.max((shading[x][y] + midShading[x][y]) * 0.625f + 0.1328125f, 0f), 1f)) * 255.999f);
+                else if(midShading[p] < 0f) {
+//                    int shade = (int) (logisticky((shading[p] + midShading[p])) * 255.999f);
+                    int shade = (int) (1f - Math.min(Math.max((shading[p] + logisticky(midShading[p])) * 0.625f + 0.5f, 0f), 1f) * 255.999f);
+//                    int shade = (int) ((1f - Math.min(Math.max((shading[p] + midShading[p]) * 0.625f + 0.1328125f, 0f), 1f)) * 255.999f);
                     int idx = (y >>> shrink) * palettePixmap.getWidth() + (x >>> shrink) << 2;
                     if ((buffer.get(idx+3) & 255) < shade) {
 //                        palettePixmap.drawPixel(x >>> shrink, y >>> shrink, DARKEN << 24 |
 //                                128 << 16 |
 //                                128 << 8 | shade);
-                        buffer.put(idx, lightIndices[x][y]);
+                        buffer.put(idx, lightIndices[p]);
                         buffer.put(idx+1, (byte) (255 - shade));
                         buffer.put(idx+2, (byte) 96);
                         buffer.put(idx+3, (byte) shade);
-                        outlineIndices[x][y] = 0;
+                        outlineIndices[p] = 0;
                     }
                 }
             }
@@ -528,53 +593,57 @@ public class SpecialRenderer {
 //        for (int x = xSize; x >= 0; x--) {
 //            for (int y = ySize; y >= 0; y--) {
 //                if (colorA[x][y] >= 0f) {
-//                    pixmap.drawPixel(x >>> shrink, y >>> shrink, render[x][y]);
+//                    pixmap.drawPixel(x >>> shrink, y >>> shrink, render[p]);
 //                }
 //            }
 //        }
-        if (outline > 0) {
-            for (int x = step; x <= xSize - step; x+= step) {
+        if (outline > 0 && !dirty.isEmpty()) {
+            // only multiples of step are checked, same as when this looped over the whole image
+            final int ds = step * height;
+            final int startX = Math.max(step, (dirty.minX + step - 1) & -step), endX = Math.min(xSize - step, dirty.maxX);
+            final int startY = Math.max(step, (dirty.minY + step - 1) & -step), endY = Math.min(ySize - step, dirty.maxY);
+            for (int x = startX; x <= endX; x+= step) {
 //                final int hx = x;
                 final int hx = x >>> shrink;
-                for (int y = step; y <= ySize - step; y+= step) {
+                for (int y = startY, p = x * height + y; y <= endY; y+= step, p += step) {
 //                    final int hy = y;
                     int hy = y >>> shrink;
-                    if ((outlines[x][y]) == 1) {
-                        depth = depths[x][y];
+                    if ((outlines[p]) == 1) {
+                        depth = depths[p];
 //                        int inner = 0x3880FFFF;
-                        int inner = (outlineIndices[x][y] & 255) << 24 | (int) Math.min(Math.max(64f * outlineShading[x][y],  0f),  255f) << 16 | 64 << 8 | 255;
+                        int inner = (outlineIndices[p] & 255) << 24 | (int) Math.min(Math.max(64f * outlineShading[p],  0f),  255f) << 16 | 64 << 8 | 255;
                         int outer = (outline >= 4) ? 0x010000FF : inner;
-                        if (outlines[x - step][y] == 0) {
+                        if (outlines[p - ds] == 0) {
                             palettePixmap.drawPixel(hx - 1, hy, outer);
-                        } else if (depths[x - step][y] < depth - threshold) {
+                        } else if (depths[p - ds] < depth - threshold) {
                             palettePixmap.drawPixel(hx - 1, hy, inner);
                         }
-                        if (outlines[x + step][y] == 0) {
+                        if (outlines[p + ds] == 0) {
                             palettePixmap.drawPixel(hx + 1, hy, outer);
-                        } else if (depths[x + step][y] < depth - threshold) {
+                        } else if (depths[p + ds] < depth - threshold) {
                             palettePixmap.drawPixel(hx + 1, hy, inner);
                         }
-                        if (outlines[x][y - step] == 0) {
+                        if (outlines[p - step] == 0) {
                             palettePixmap.drawPixel(hx, hy - 1, outer);
-                        } else if (depths[x][y - step] < depth - threshold) {
+                        } else if (depths[p - step] < depth - threshold) {
                             palettePixmap.drawPixel(hx, hy - 1, inner);
                         }
-                        if (outlines[x][y + step] == 0) {
+                        if (outlines[p + step] == 0) {
                             palettePixmap.drawPixel(hx, hy + 1, outer);
-                        } else if (depths[x][y + step] < depth - threshold) {
+                        } else if (depths[p + step] < depth - threshold) {
                             palettePixmap.drawPixel(hx, hy + 1, inner);
                         }
 
-                        if (outlines[x - step][y - step] == 0) {
+                        if (outlines[p - ds - step] == 0) {
                             palettePixmap.drawPixel(hx - 1, hy - 1, outer);
                         }
-                        if (outlines[x + step][y - step] == 0) {
+                        if (outlines[p + ds - step] == 0) {
                             palettePixmap.drawPixel(hx + 1, hy - 1, outer);
                         }
-                        if (outlines[x - step][y + step] == 0) {
+                        if (outlines[p - ds + step] == 0) {
                             palettePixmap.drawPixel(hx - 1, hy + 1, outer);
                         }
-                        if (outlines[x + step][y + step] == 0) {
+                        if (outlines[p + ds + step] == 0) {
                             palettePixmap.drawPixel(hx + 1, hy + 1, outer);
                         }
 
@@ -601,23 +670,27 @@ public class SpecialRenderer {
             }
         }
 
-        fill(depths, 0);
-        fill(render, 0);
-        fill(shading, 0f);
-        fill(midShading, 0f);
-        fill(saturation, 0f);
-        fill(outlineShading, 0f);
-        fill(outlines, (byte) 0);
-        fill(indices, (byte) 0);
-        fill(outlineIndices, (byte) 0);
-        fill(lightIndices, (byte) 0);
-        fill(voxels, -1);
-        fill(shadeX, -1f);
-        fill(shadeZ, -1f);
-        fill(floorShade, false);
-        for (int i = 0; i < materials.length; i++) {
-            Arrays.fill(materials[i], null);
-        }
+        // outlines can be drawn one pixel past the edge of a shrunken pixel that was composited
+        pixmapDirty.setShrunk(lit, shrink, 1, palettePixmap.getWidth(), palettePixmap.getHeight());
+
+        lit.fill(depths, height, 0);
+        lit.fill(render, height, 0);
+        lit.fill(shading, height, 0f);
+        lit.fill(midShading, height, 0f);
+        lit.fill(saturation, height, 0f);
+        lit.fill(outlineShading, height, 0f);
+        lit.fill(outlines, height, (byte) 0);
+        lit.fill(indices, height, (byte) 0);
+        lit.fill(outlineIndices, height, (byte) 0);
+        lit.fill(lightIndices, height, (byte) 0);
+        lit.fill(voxels, height, -1);
+        lit.fill(stuffIndices, height, (byte) 0);
+        sideDirty.fill(shadeX, shadeSize, -1f);
+        floorDirty.fill(shadeZ, shadeSize, -1f);
+        floorDirty.fill(floorShade, shadeSize, false);
+        dirty.reset();
+        floorDirty.reset();
+        sideDirty.reset();
         return palettePixmap;
     }
 
@@ -648,27 +721,33 @@ public class SpecialRenderer {
     // To move one z- in voxels is y - 3 in pixels.
 
     public Pixmap drawSplats(byte[][][] colors, float angleTurns, int frame) {
+        final SurfaceVoxels surface = new SurfaceVoxels(colors, stuffs);
         final int size = colors.length;
         final float hs = size * 0.5f;
         final float c = cosTurns(angleTurns), s = sinTurns(angleTurns);
-        for (int z = 0; z < size; z++) {
-            for (int x = 0; x < size; x++) {
-                for (int y = 0; y < size; y++) {
-                    final byte v = colors[x][y][z];
-                    if(v != 0)
-                    {
-                        final float xPos = (x-hs) * c - (y-hs) * s + size;
-                        final float yPos = (x-hs) * s + (y-hs) * c + size;
-                        splat(xPos, yPos, z, x, y, z, v, frame);
-                    }
-                }
-            }
+        final int[] positions = surface.positions;
+        final byte[] values = surface.values;
+        for (int i = 0, n = surface.count; i < n; i++) {
+            final int p = positions[i], x = p & 0x3FF, y = p >>> 10 & 0x3FF, z = p >>> 20 & 0x3FF;
+            final float xPos = (x-hs) * c - (y-hs) * s + size;
+            final float yPos = (x-hs) * s + (y-hs) * c + size;
+            splat(xPos, yPos, z, x, y, z, values[i], frame);
         }
         return blit(angleTurns, frame);
     }
     public void splatOnly(byte[][][] colors, float yaw, float pitch, float roll, int frame,
                           float translateX, float translateY, float translateZ) {
-        final int size = colors.length;
+        splatOnly(new SurfaceVoxels(colors, stuffs), yaw, pitch, roll, frame, translateX, translateY, translateZ);
+    }
+
+    /**
+     * Splats only the voxels in {@code surface}, which should have been built with this renderer's {@link #stuffs};
+     * the result is the same as calling {@link #splatOnly(byte[][][], float, float, float, int, float, float, float)}
+     * on the grid {@code surface} came from, but much less work for large, solid models.
+     */
+    public void splatOnly(SurfaceVoxels surface, float yaw, float pitch, float roll, int frame,
+                          float translateX, float translateY, float translateZ) {
+        final int size = surface.sizeX;
         final float hs = size * 0.5f;
         float ox, oy, oz; // offset x,y,z
         final float cYaw = cosTurns(yaw), sYaw = sinTurns(yaw);
@@ -677,65 +756,72 @@ public class SpecialRenderer {
         final float x_x = cYaw * cPitch, y_x = cYaw * sPitch * sRoll - sYaw * cRoll, z_x = cYaw * sPitch * cRoll + sYaw * sRoll;
         final float x_y = sYaw * cPitch, y_y = sYaw * sPitch * sRoll + cYaw * cRoll, z_y = sYaw * sPitch * cRoll - cYaw * sRoll;
         final float x_z = -sPitch, y_z = cPitch * sRoll, z_z = cPitch * cRoll;
+        final int[] positions = surface.positions;
+        final byte[] values = surface.values;
+        final int count = surface.count;
         if (shadows) {
-            for (int x = 0; x < size; x++) {
-                for (int y = 0; y < size; y++) {
-                    for (int z = 0; z < size; z++) {
-                        byte voxel = colors[x][y][z];
-                        final Stuff stuff = stuffs[Math.min(voxel & 255, stuffs.length - 1)];
-                        final VoxMaterial m = stuff.material;
-                        final float alpha = m.getTrait(VoxMaterial.MaterialTrait._alpha);
-                        if(alpha >= 1f) continue;
-                        voxel = (byte) stuff.appearsAs;
-                        final float flip = m.getTrait(VoxMaterial.MaterialTrait._frame);
-                        if(Tools3D.randomizePointRare(x, y, z, frame) < m.getTrait(VoxMaterial.MaterialTrait._metal) || (frame & 1) == flip)
-                            continue;
-                        final float swirl = m.getTrait(VoxMaterial.MaterialTrait._swirl) + 1f;
-                        if(swirl != 1f) {
-                            float ns = swirlNoise.getNoise(x, y, z, cosTurns(frame * 0x1p-7f) * 0.625f / swirlNoise.getFrequency(), sinTurns(frame * 0x1p-7f) * 0.625f / swirlNoise.getFrequency()) * 2f;
-                            if(ns > swirl) continue;
-                        }
-                        final float emit = m.getTrait(VoxMaterial.MaterialTrait._emit) * 0.75f;
-                        if(emit != 0f) continue;
-
-                        if (voxel != 0) {
-                            float oox = x - hs + fidget;
-                            float ooy = y - hs + fidget;
-                            oz = -hs;
-                            for (int ax = -2; ax <= 2; ax++) {
-                                for (int ay = -2; ay <= 2; ay++) {
-                                    if (x + ax >= 0 && y + ay >= 0 && x + ax < size && y + ay < size) {
-                                        ox = oox + ax;
-                                        oy = ooy + ay;
-                                        splat(ox * x_x + oy * y_x + oz * z_x + size + translateX,
-                                                ox * x_y + oy * y_y + oz * z_y + size + translateY,
-                                                0, x + ax, y + ay, 0, FLOOR_INDEX, frame);
-                                    }
-                                }
+            // The lowest voxel in a column that casts a shadow is always in the surface, since nothing under it hides it.
+            final int sizeY = surface.sizeY;
+            final int[] lowest = new int[size * sizeY];
+            Arrays.fill(lowest, -1);
+            for (int i = 0; i < count; i++) {
+                final int p = positions[i], x = p & 0x3FF, y = p >>> 10 & 0x3FF, z = p >>> 20 & 0x3FF;
+                final int column = x * sizeY + y;
+                if (lowest[column] == -1 && castsShadow(values[i], x, y, z, frame))
+                    lowest[column] = i;
+            }
+            oz = -hs;
+            for (int x = 0, column = 0; x < size; x++) {
+                for (int y = 0; y < sizeY; y++, column++) {
+                    if (lowest[column] == -1) continue;
+                    float oox = x - hs + fidget;
+                    float ooy = y - hs + fidget;
+                    for (int ax = -2; ax <= 2; ax++) {
+                        for (int ay = -2; ay <= 2; ay++) {
+                            if (x + ax >= 0 && y + ay >= 0 && x + ax < size && y + ay < size) {
+                                ox = oox + ax;
+                                oy = ooy + ay;
+                                splat(ox * x_x + oy * y_x + oz * z_x + size + translateX,
+                                        ox * x_y + oy * y_y + oz * z_y + size + translateY,
+                                        0, x + ax, y + ay, 0, FLOOR_INDEX, frame);
                             }
-                            break;
                         }
                     }
                 }
             }
         }
-        for (int z = 0; z < size; z++) {
-            for (int x = 0; x < size; x++) {
-                for (int y = 0; y < size; y++) {
-                    final byte v = colors[x][y][z];
-                    if (v != 0) {
-                        ox = x - hs + fidget;
-                        oy = y - hs + fidget;
-                        oz = z - hs;
-                        splat(ox * x_x + oy * y_x + oz * z_x + size + translateX,
-                                ox * x_y + oy * y_y + oz * z_y + size + translateY,
-                                ox * x_z + oy * y_z + oz * z_z + hs + translateZ, x, y, z, v, frame);
-                    }
-                }
-            }
+        for (int i = 0; i < count; i++) {
+            final int p = positions[i], x = p & 0x3FF, y = p >>> 10 & 0x3FF, z = p >>> 20 & 0x3FF;
+            ox = x - hs + fidget;
+            oy = y - hs + fidget;
+            oz = z - hs;
+            splat(ox * x_x + oy * y_x + oz * z_x + size + translateX,
+                    ox * x_y + oy * y_y + oz * z_y + size + translateY,
+                    ox * x_z + oy * y_z + oz * z_z + hs + translateZ, x, y, z, values[i], frame);
         }
     }
 
+    /**
+     * Checks if a voxel with the given index and position would cast a shadow on the given frame. The conditions are
+     * the same ones {@link #splat(float, float, float, int, int, int, byte, int)} uses to skip drawing a voxel, plus
+     * emissive voxels and voxels that appear as nothing never cast shadows.
+     */
+    protected boolean castsShadow(byte voxel, int x, int y, int z, int frame) {
+        final StuffTable t = table;
+        final int kind = voxel & 255;
+        if(t.alpha[kind] >= 1f) return false;
+        final float flip = t.frame[kind];
+        if(Tools3D.randomizePointRare(x, y, z, frame) < t.metal[kind] || (frame & 1) == flip)
+            return false;
+        final float swirl = t.swirl[kind] + 1f;
+        if(swirl != 1f) {
+            float ns = swirlNoise.getNoise(x, y, z, cosTurns(frame * 0x1p-7f) * 0.625f / swirlNoise.getFrequency(), sinTurns(frame * 0x1p-7f) * 0.625f / swirlNoise.getFrequency()) * 2f;
+            if(ns > swirl) return false;
+        }
+        if(t.emit[kind] != 0f) return false;
+        return t.appearsAs[kind] != 0;
+    }
+
     public Pixmap drawSplats(byte[][][] colors, float yaw, float pitch, float roll, int frame,
                              float translateX, float translateY, float translateZ) {
         splatOnly(colors, yaw, pitch, roll, frame, translateX, translateY, translateZ);
@@ -750,8 +836,7 @@ public class SpecialRenderer {
                 TransformChunk tc = model.transformChunks.get(ch);
                 if (tc != null) {
                     for (ShapeModel sm : model.shapeChunks.get(tc.childId).models) {
-                        byte[][][] g = model.grids.get(sm.id);
-                        splatOnly(g, yaw, pitch, roll, frame, translateX, translateY, translateZ);
+                        splatOnly(model.surface(sm.id, stuffs), yaw, pitch, roll, frame, translateX, translateY, translateZ);
                     }
                 }
             }
@@ -759,85 +844,64 @@ public class SpecialRenderer {
         return blit(yaw, pitch, roll, frame);
     }
 
-    protected void subDraw(ArrayList<byte[][][]> grids, ArrayList<IntObjectMap<float[]>> links,
-                           byte[][][] g, IntObjectMap<float[]> link, float yaw, float pitch, float roll, int frame,
-                           float translateX, float translateY, float translateZ){
-        splatOnly(g, yaw, pitch, roll, frame, translateX, translateY, translateZ);
-        final int size = g.length;
-        final float hs = size * 0.5f;
-        float ox, oy, oz; // offset x,y,z
+    /**
+     * Draws every part of {@code model} that is connected to its root part by {@link VoxModel#links}, each moved so
+     * its link points line up with its parent's. The attachment tree comes from {@link VoxModel#assembly()}, which is
+     * only rebuilt when the links change, and the visible voxels of each part come from
+     * {@link VoxModel#surface(int, Stuff[])}, so nothing is copied here and each voxel is splatted once.
+     */
+    public Pixmap drawModelSimple(VoxModel model, float yaw, float pitch, float roll, int frame,
+                                  float translateX, float translateY, float translateZ){
+        long key = 0L;
+        if (cache != null && !computeNormals) {
+            key = cache.key(RenderCache.hash(model), settingsHash(), yaw, pitch, roll, frame, translateX, translateY, translateZ);
+            if (cache.read(key, palettePixmap)) {
+                // nothing was splatted, so only the Pixmap needs clearing next time.
+                pixmapDirty.all(palettePixmap.getWidth(), palettePixmap.getHeight());
+                return palettePixmap;
+            }
+        }
+        final Assembly assembly = model.assembly();
         final float cYaw = cosTurns(yaw), sYaw = sinTurns(yaw);
         final float cPitch = cosTurns(pitch), sPitch = sinTurns(pitch);
         final float cRoll = cosTurns(roll), sRoll = sinTurns(roll);
         final float x_x = cYaw * cPitch, y_x = cYaw * sPitch * sRoll - sYaw * cRoll, z_x = cYaw * sPitch * cRoll + sYaw * sRoll;
         final float x_y = sYaw * cPitch, y_y = sYaw * sPitch * sRoll + cYaw * cRoll, z_y = sYaw * sPitch * cRoll - cYaw * sRoll;
         final float x_z = -sPitch, y_z = cPitch * sRoll, z_z = cPitch * cRoll;
-        for (int z = 0; z < size; z++) {
-            for (int x = 0; x < size; x++) {
-                for (int y = 0; y < size; y++) {
-                    final byte v = g[x][y][z];
-                    if(v != 0)
-                    {
-                        ox = x - hs + fidget;
-                        oy = y - hs + fidget;
-                        oz = z - hs;
-                        splat(  ox * x_x + oy * y_x + oz * z_x + size + translateX,
-                                ox * x_y + oy * y_y + oz * z_y + size + translateY,
-                                ox * x_z + oy * y_z + oz * z_z + hs + translateZ, x, y, z, v, frame);
-                    }
-                }
-            }
+        for (int i = 0, o = 0; i < assembly.count; i++, o += 3) {
+            final int level = assembly.levels[i];
+            final float ox = assembly.offsets[o] + fidget * level,
+                    oy = assembly.offsets[o + 1] + fidget * level,
+                    oz = assembly.offsets[o + 2];
+            splatOnly(model.surface(assembly.parts[i], stuffs), yaw, pitch, roll, frame,
+                    translateX + (ox * x_x + oy * y_x + oz * z_x),
+                    translateY + (ox * x_y + oy * y_y + oz * z_y),
+                    translateZ + (ox * x_z + oy * y_z + oz * z_z));
         }
-
-        for(IntObjectMap.Entry<float[]> ent : link) {
-            if(ent.key == -1) continue;
-            for (int j = 0; j < links.size(); j++) {
-                float[] got;
-                if((got = links.get(j).get(ent.key)) != null) {
-                    ox = ent.value[0] - got[0] + fidget;
-                    oy = ent.value[1] - got[1] + fidget;
-                    oz = ent.value[2] - got[2];
-
-                    subDraw(grids, links, grids.remove(j), links.remove(j), yaw, pitch, roll, frame,
-                            translateX + (ox * x_x + oy * y_x + oz * z_x),
-                            translateY + (ox * x_y + oy * y_y + oz * z_y),
-                            translateZ + (ox * x_z + oy * y_z + oz * z_z));
-                }
-            }
-        }
-
+        blit(yaw, pitch, roll, frame);
+        if (cache != null && !computeNormals)
+            cache.write(key, palettePixmap);
+        return palettePixmap;
     }
 
-    public Pixmap drawModelSimple(VoxModel model, float yaw, float pitch, float roll, int frame,
-                                  float translateX, float translateY, float translateZ){
-        boolean foundAnything = false;
-        ArrayList<byte[][][]> grids = new ArrayList<>(model.grids.size());
-        ArrayList<IntObjectMap<float[]>> links = new ArrayList<>(model.links.size());
-        for (int i = 0; i < model.grids.size(); i++) {
-            grids.add(Tools3D.deepCopy(model.grids.get(i)));
-            if(i < model.links.size())
-                links.add(new IntObjectMap<>(model.links.get(i)));
-        }
-        if(links.isEmpty()) {
-            subDraw(grids, links, grids.remove(0), new IntObjectMap<>(0), yaw, pitch, roll, frame,
-                    translateX, translateY, translateZ);
-            return blit(yaw, pitch, roll, frame);
-        }
-        for (int i = 0; i < grids.size(); i++) {
-            IntObjectMap<float[]> link = links.get(i);
-            if(link.containsKey(-1))
-            {
-                //root grid
-                subDraw(grids, links, grids.remove(i), links.remove(i), yaw, pitch, roll, frame,
-                        translateX, translateY, translateZ);
-                foundAnything = true;
-                break;
-            }
-        }
-        if(!foundAnything){
-            subDraw(grids, links, grids.remove(0), links.remove(0), yaw, pitch, roll, frame,
-                    translateX, translateY, translateZ);
-        }
-        return blit(yaw, pitch, roll, frame);
+    /**
+     * Hashes everything about this renderer that changes what it draws, other than the model and draw call arguments:
+     * its class and size, {@link #shrink} and the distortion settings, {@link #outline}, {@link #shadows},
+     * {@link #lighting}, {@link #variance}, {@link #neutral}, {@link #palette}, and the Stuff traits in {@link #table}.
+     * This is part of the key used with {@link #cache}.
+     * @return a 64-bit hash
+     */
+    public long settingsHash() {
+        long h = getClass().getName().hashCode() * 0xD1342543DE82EF95L + table.hash;
+        h = (h ^ size) * 0xC13FA9A902A6328FL;
+        h = (h ^ shrink) * 0x91E10DA5C79E7B1DL;
+        h = (h ^ Float.floatToIntBits(distortHXY)) * 0xD1342543DE82EF95L;
+        h = (h ^ Float.floatToIntBits(distortVXY)) * 0xC13FA9A902A6328FL;
+        h = (h ^ Float.floatToIntBits(distortVZ)) * 0x91E10DA5C79E7B1DL;
+        h = (h ^ outline) * 0xD1342543DE82EF95L;
+        h = (h ^ (shadows ? 1 : 0) ^ (lighting ? 2 : 0) ^ (variance ? 4 : 0)) * 0xC13FA9A902A6328FL;
+        h = (h ^ Float.floatToIntBits(neutral)) * 0x91E10DA5C79E7B1DL;
+        h = (h ^ Arrays.hashCode(palette)) * 0xD1342543DE82EF95L;
+        return h ^ h >>> 29;
     }
 }
@@ -12,7 +12,6 @@ import isonomicon.physical.VoxMaterial;
 import java.util.Arrays;
 
 import static com.github.tommyettinger.colorful.oklab.ColorTools.getRawGamutValue;
-import static com.github.tommyettinger.digital.ArrayTools.fill;
 import static com.github.tommyettinger.digital.TrigTools.*;
 
 /**
@@ -20,11 +19,21 @@ import static com.github.tommyettinger.digital.TrigTools.*;
  */
 public class SpotRenderer {
     public Pixmap pixmap;
-    public int[][] depths;
-    public int[][] voxels;
-    public int[][] outlines;
-    public VoxMaterial[][] materials;
-    public float[][] shadeX, shadeZ, colorL, colorA, colorB, midShading;
+    /**
+     * The width and height of each per-pixel buffer, such as {@link #depths} or {@link #colorL}. Those buffers are each
+     * one flat array, where the pixel at x,y is at index {@code x * height + y}.
+     */
+    public int width, height;
+    /**
+     * The width and height of {@link #shadeX} and {@link #shadeZ}, which are laid out the same way as the per-pixel
+     * buffers, but with shadeSize in place of height.
+     */
+    public int shadeSize;
+    public int[] depths;
+    public int[] voxels;
+    public int[] outlines;
+    public VoxMaterial[] materials;
+    public float[] shadeX, shadeZ, colorL, colorA, colorB, midShading;
     public int[] palette;
     public float[] paletteL, paletteA, paletteB;
     public int outline = 2;
@@ -43,16 +52,25 @@ public class SpotRenderer {
     public void init(){
         final int w = size * 4 + 4, h = size * 5 + 4;
         pixmap = new Pixmap(w>>>shrink, h>>>shrink, Pixmap.Format.RGBA8888);
-        outlines = new int[w][h];
-        depths =   new int[w][h];
-        materials = new VoxMaterial[w][h];
-        voxels = fill(-1, w, h);
-        shadeX = fill(-1f, size * 4, size * 4);
-        shadeZ = fill(-1f, size * 4, size * 4);
-        colorL = fill(-1f, w, h);
-        colorA = fill(-1f, w, h);
-        colorB = fill(-1f, w, h);
-        midShading = fill(0f, w, h);
+        width = w;
+        height = h;
+        shadeSize = size * 4;
+        outlines = new int[w * h];
+        depths =   new int[w * h];
+        materials = new VoxMaterial[w * h];
+        voxels = new int[w * h];
+        Arrays.fill(voxels, -1);
+        shadeX = new float[shadeSize * shadeSize];
+        Arrays.fill(shadeX, -1f);
+        shadeZ = new float[shadeSize * shadeSize];
+        Arrays.fill(shadeZ, -1f);
+        colorL = new float[w * h];
+        Arrays.fill(colorL, -1f);
+        colorA = new float[w * h];
+        Arrays.fill(colorA, -1f);
+        colorB = new float[w * h];
+        Arrays.fill(colorB, -1f);
+        midShading = new float[w * h];
     }
     public static float limitToGamut(float L, float A, float B, float alpha) {
         L = Math.min(Math.max(L, 0f), 1f);
@@ -206,22 +224,22 @@ public class SpotRenderer {
         final float emit = m.getTrait(VoxMaterial.MaterialTrait._emit) * 0.75f;
         final float alpha = m.getTrait(VoxMaterial.MaterialTrait._alpha);
         final float hs = size * 0.5f;
-        for (int x = 0, ax = xx; x < 4 && ax < depths.length; x++, ax++) {
-            for (int y = 0, ay = yy; y < 4 && ay < depths[0].length; y++, ay++) {
-                if ((alpha == 0f) && (depth > depths[ax][ay] || (depth == depths[ax][ay] && colorL[ax][ay] < paletteL[voxel & 255]))) {
+        for (int x = 0, ax = xx; x < 4 && ax < width; x++, ax++) {
+            for (int y = 0, ay = yy, i = ax * height + yy; y < 4 && ay < height; y++, ay++, i++) {
+                if ((alpha == 0f) && (depth > depths[i] || (depth == depths[i] && colorL[i] < paletteL[voxel & 255]))) {
                     drawn = true;
-                    colorL[ax][ay] = paletteL[voxel & 255];
-                    colorA[ax][ay] = paletteA[voxel & 255];
-                    colorB[ax][ay] = paletteB[voxel & 255];
-                    depths[ax][ay] = depth;
-                    materials[ax][ay] = m;
-                    outlines[ax][ay] = ColorTools.toRGBA8888(limitToGamut(paletteL[voxel & 255] * (0.8f + emit),
+                    colorL[i] = paletteL[voxel & 255];
+                    colorA[i] = paletteA[voxel & 255];
+                    colorB[i] = paletteB[voxel & 255];
+                    depths[i] = depth;
+                    materials[i] = m;
+                    outlines[i] = ColorTools.toRGBA8888(limitToGamut(paletteL[voxel & 255] * (0.8f + emit),
                             (paletteA[voxel & 255] - 0.5f) * neutral + 0.5f, (paletteB[voxel & 255] - 0.5f) * neutral + 0.5f, 1f));
 //                                Coloring.darken(palette[voxel & 255], 0.375f - emit);
 //                                Coloring.adjust(palette[voxel & 255], 0.625f + emit, neutral);
 //                    else
-//                        outlines[ax][ay] = palette[voxel & 255];
-                    voxels[ax][ay] = vx | vy << 10 | vz << 20;
+//                        outlines[i] = palette[voxel & 255];
+                    voxels[i] = vx | vy << 10 | vz << 20;
 //                    for (int xp = (int)xPos; xp < xPos + 0.5f; xp++) {
 //                        for (int yp = (int) yPos; yp < yPos + 0.5f; yp++) {
 //                            for (int zp = (int) zPos; zp < zPos + 0.5f; zp++) {
@@ -232,28 +250,28 @@ public class SpotRenderer {
                 }
             }
         }
-        if(xPos < -hs || yPos < -hs || zPos < -hs || xPos + hs > shadeZ.length || yPos + hs > shadeZ[0].length || zPos + hs > shadeX[0].length)
+        if(xPos < -hs || yPos < -hs || zPos < -hs || xPos + hs > shadeSize || yPos + hs > shadeSize || zPos + hs > shadeSize)
             System.out.println(xPos + ", " + yPos + ", " + zPos + " is out of bounds");
         else if(drawn) {
-            shadeZ[(int) (hs + xPos)][(int) (hs + yPos)] = Math.max(shadeZ[(int) (hs + xPos)][(int) (hs + yPos)], (hs + zPos));
-            shadeX[(int) (hs + yPos)][(int) (hs + zPos)] = Math.max(shadeX[(int) (hs + yPos)][(int) (hs + zPos)], (hs + xPos));
+            final int fx = (int) (hs + xPos), fy = (int) (hs + yPos), fz = (int) (hs + zPos);
+            final int floor = fx * shadeSize + fy, side = fy * shadeSize + fz;
+            shadeZ[floor] = Math.max(shadeZ[floor], (hs + zPos));
+            shadeX[side] = Math.max(shadeX[side], (hs + xPos));
         }
     }
     
     public SpotRenderer clear() {
         pixmap.setColor(0);
         pixmap.fill();
-        fill(depths, 0);
-        fill(outlines, (byte) 0);
-        fill(voxels, -1);
-        fill(shadeX, -1f);
-        fill(shadeZ, -1f);
-        fill(colorL, -1f);
-        fill(colorA, -1f);
-        fill(colorB, -1f);
-        for (int i = 0; i < materials.length; i++) {
-            Arrays.fill(materials[i], null);
-        }
+        Arrays.fill(depths, 0);
+        Arrays.fill(outlines, 0);
+        Arrays.fill(voxels, -1);
+        Arrays.fill(shadeX, -1f);
+        Arrays.fill(shadeZ, -1f);
+        Arrays.fill(colorL, -1f);
+        Arrays.fill(colorA, -1f);
+        Arrays.fill(colorB, -1f);
+        Arrays.fill(materials, null);
         return this;
     }
 
@@ -279,7 +297,7 @@ public class SpotRenderer {
         final int threshold = 13;
         pixmap.setColor(0);
         pixmap.fill();
-        int xSize = depths.length - 1, ySize = depths[0].length - 1, depth;
+        int xSize = width - 1, ySize = height - 1, depth;
         int v, vx, vy, vz, fx, fy, fz;
         float hs = (size) * 0.5f, ox, oy, oz, tx, ty, tz;
         final float cYaw = cosTurns(yaw), sYaw = sinTurns(yaw);
@@ -291,8 +309,8 @@ public class SpotRenderer {
         VoxMaterial m;
         final int step = 1 << shrink;
         for (int sx = 0; sx <= xSize; sx++) {
-            for (int sy = 0; sy <= ySize; sy++) {
-                if((v = voxels[sx][sy]) != -1) {
+            for (int sy = 0, p = sx * height; sy <= ySize; sy++, p++) {
+                if((v = voxels[p]) != -1) {
                     vx = v & 0x3FF;
                     vy = v >>> 10 & 0x3FF;
                     vz = v >>> 20 & 0x3FF;
@@ -305,33 +323,33 @@ public class SpotRenderer {
                     fy = (int)(ty);
                     tz = ox * x_z + oy * y_z + oz * z_z + hs + hs;
                     fz = (int)(tz);
-                    m = materials[sx][sy];
+                    m = materials[p];
                     float rough = m.getTrait(VoxMaterial.MaterialTrait._rough);
                     float emit = m.getTrait(VoxMaterial.MaterialTrait._emit);
                     float limit = 2;
-                    if (Math.abs(shadeX[fy][fz] - tx) <= limit || ((fy > 1 && Math.abs(shadeX[fy - 2][fz] - tx) <= limit) ||
-                            (fy < shadeX.length - 2 && Math.abs(shadeX[fy + 2][fz] - tx) <= limit))) {
+                    if (Math.abs(shadeX[fy * shadeSize + fz] - tx) <= limit || ((fy > 1 && Math.abs(shadeX[(fy - 2) * shadeSize + fz] - tx) <= limit) ||
+                            (fy < shadeSize - 2 && Math.abs(shadeX[(fy + 2) * shadeSize + fz] - tx) <= limit))) {
                         float spread = MathUtils.lerp(0.0025f, 0.001f, rough);
-                        if (Math.abs(shadeZ[fx][fy] - tz) <= limit) {
+                        if (Math.abs(shadeZ[fx * shadeSize + fy] - tz) <= limit) {
                             spread *= 2f;
-                            colorL[sx][sy] += m.getTrait(VoxMaterial.MaterialTrait._ior) * 0.2f;
+                            colorL[p] += m.getTrait(VoxMaterial.MaterialTrait._ior) * 0.2f;
                         }
                         int dist;
                         for (int i = -3, si = sx + i; i <= 3; i++, si++) {
                             for (int j = -3, sj = sy + j; j <= 3; j++, sj++) {
                                 if((dist = i * i + j * j) > 9 || si < 0 || sj < 0 || si > xSize || sj > ySize) continue;
-                                colorL[si][sj] += spread * (4 - (float)Math.sqrt(dist));
+                                colorL[si * height + sj] += spread * (4 - (float)Math.sqrt(dist));
                             }
                         }
                     }
-                    else if (Math.abs(shadeZ[fx][fy] - tz) <= limit) {
+                    else if (Math.abs(shadeZ[fx * shadeSize + fy] - tz) <= limit) {
                         float spread = MathUtils.lerp(0.005f, 0.002f, rough);
                         float dist;
                         for (int i = -3, si = sx + i; i <= 3; i++, si++) {
                             for (int j = -3, sj = sy + j; j <= 3; j++, sj++) {
                                 if((dist = i * i + j * j) > 9 || si < 0 || sj < 0 || si > xSize || sj > ySize) continue;
                                 float change = spread * (4 - (float)Math.sqrt(dist));
-                                colorL[si][sj] += change;
+                                colorL[si * height + sj] += change;
                             }
                         }
                     }
@@ -343,7 +361,7 @@ public class SpotRenderer {
                                 final int dist = i * i + j * j;
                                 if(dist > radius * radius || si < 0 || sj < 0 || si > xSize || sj > ySize) continue;
                                 float change = spread * (radius - (float) Math.sqrt(dist));
-                                midShading[si][sj] = Math.min(midShading[si][sj] + change, 0.3f);
+                                midShading[si * height + sj] = Math.min(midShading[si * height + sj] + change, 0.3f);
                             }
                         }
                     }
@@ -351,60 +369,61 @@ public class SpotRenderer {
             }
         }
         for (int x = xSize; x >= 0; x--) {
-            for (int y = ySize; y >= 0; y--) {
-                if (colorA[x][y] >= 0f) {
+            for (int y = ySize, p = x * height + y; y >= 0; y--, p--) {
+                if (colorA[p] >= 0f) {
                     pixmap.drawPixel(x >>> shrink, y >>> shrink, ColorTools.toRGBA8888(ColorTools.oklab(
-                            Math.min(Math.max(colorL[x][y] - 0.1f + midShading[x][y], 0f), 1f),
-                                                        (colorA[x][y] - 0.5f) * neutral + 0.5f,
-                            (colorB[x][y] - 0.5f) * neutral + 0.5f, 1f)));
+                            Math.min(Math.max(colorL[p] - 0.1f + midShading[p], 0f), 1f),
+                                                        (colorA[p] - 0.5f) * neutral + 0.5f,
+                            (colorB[p] - 0.5f) * neutral + 0.5f, 1f)));
                 }
             }
         }
         if (outline != 0) {
             int inner, outer = 0x000000FF;
             if(outline <= 1) outer = 0;
+            final int ds = step * height;
             for (int x = step; x <= xSize - step; x+= step) {
 //                final int hx = x;
                 final int hx = x >>> shrink;
-                for (int y = step; y <= ySize - step; y+= step) {
+                for (int y = step, p = x * height + y; y <= ySize - step; y+= step, p += step) {
 //                    final int hy = y;
                     int hy = y >>> shrink;
-                    inner = outlines[x][y];
+                    inner = outlines[p];
                     if (inner != 0) {
                         if (outline == 2) outer = inner;
-                        depth = depths[x][y];
-                        if (outlines[x - step][y] == 0) {
+                        depth = depths[p];
+                        if (outlines[p - ds] == 0) {
                             pixmap.drawPixel(hx - 1, hy, outer);
-                        } else if (depths[x - step][y] < depth - threshold) {
+                        } else if (depths[p - ds] < depth - threshold) {
                             pixmap.drawPixel(hx - 1, hy, inner);
                         }
-                        if (outlines[x + step][y] == 0) {
+                        if (outlines[p + ds] == 0) {
                             pixmap.drawPixel(hx + 1, hy, outer);
-                        } else if (depths[x + step][y] < depth - threshold) {
+                        } else if (depths[p + ds] < depth - threshold) {
                             pixmap.drawPixel(hx + 1, hy, inner);
                         }
-                        if (outlines[x][y - step] == 0) {
+                        if (outlines[p - step] == 0) {
                             pixmap.drawPixel(hx, hy - 1, outer);
-                        } else if (depths[x][y - step] < depth - threshold) {
+                        } else if (depths[p - step] < depth - threshold) {
                             pixmap.drawPixel(hx, hy - 1, inner);
                         }
-                        if (outlines[x][y + step] == 0) {
+                        if (outlines[p + step] == 0) {
                             pixmap.drawPixel(hx, hy + 1, outer);
-                        } else if (depths[x][y + step] < depth - threshold) {
+                        } else if (depths[p + step] < depth - threshold) {
                             pixmap.drawPixel(hx, hy + 1, inner);
                         }
 
 
-                        if (outlines[x - step][y - step] == 0) {
+                        if (outlines[p - ds - step] == 0) {
                             pixmap.drawPixel(hx - 1, hy - 1, outer);
                         }
-                        if (outlines[x + step][y - step] == 0) {
+                        if (outlines[p + ds - step] == 0) {
                             pixmap.drawPixel(hx + 1, hy - 1, outer);
                         }
-                        if (outlines[x - step][y + step] == 0) {
+                        if (outlines[p - ds + step] == 0) {
                             pixmap.drawPixel(hx - 1, hy + 1, outer);
                         }
-                        if (outlines[x + step][y + step] == 0) {
+                        if (outlines[p + ds + step] == 0) {
                             pixmap.drawPixel(hx + 1, hy + 1, outer);
                         }
                     }
@@ -412,18 +431,16 @@ public class SpotRenderer {
             }
         }
 
-        fill(depths, 0);
-        fill(outlines, (byte) 0);
-        fill(voxels, -1);
-        fill(shadeX, -1f);
-        fill(shadeZ, -1f);
-        fill(colorL, -1f);
-        fill(colorA, -1f);
-        fill(colorB, -1f);
-        fill(midShading, 0f);
-        for (int i = 0; i < materials.length; i++) {
-            Arrays.fill(materials[i], null);
-        }
+        Arrays.fill(depths, 0);
+        Arrays.fill(outlines, 0);
+        Arrays.fill(voxels, -1);
+        Arrays.fill(shadeX, -1f);
+        Arrays.fill(shadeZ, -1f);
+        Arrays.fill(colorL, -1f);
+        Arrays.fill(colorA, -1f);
+        Arrays.fill(colorB, -1f);
+        Arrays.fill(midShading, 0f);
+        Arrays.fill(materials, null);
         return pixmap;
     }
 
@@ -0,0 +1,131 @@
+package isonomicon.io;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes Pixmaps with {@link IndexedPNG} and reads them back with ImageIO, which knows nothing about how they were
+ * written, checking every pixel (including its alpha) and whether a palette was used.
+ */
+public class IndexedPNGTest {
+    @BeforeClass
+    public static void loadNatives() {
+        GdxNativesLoader.load();
+    }
+
+    /**
+     * Makes a Pixmap with each pixel set to a random item of {@code colors}, which are RGBA8888.
+     */
+    private static Pixmap randomPixmap(Random random, int width, int height, int[] colors) {
+        final Pixmap pixmap = new Pixmap(width, height, Pixmap.Format.RGBA8888);
+        pixmap.setBlending(Pixmap.Blending.None);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixmap.drawPixel(x, y, colors[random.nextInt(colors.length)]);
+            }
+        }
+        return pixmap;
+    }
+
+    /**
+     * Some colors with every kind of alpha: fully transparent, partly transparent, and opaque.
+     */
+    private static int[] someColors(Random random, int count) {
+        final int[] colors = new int[count];
+        colors[0] = 0x00000000;
+        colors[1] = 0xFF000080;
+        colors[2] = 0x33CC99FF;
+        for (int i = 3; i < count; i++) {
+            colors[i] = random.nextInt() | (random.nextBoolean() ? 0xFF : 0);
+        }
+        return colors;
+    }
+
+    private static BufferedImage roundTrip(IndexedPNG png, Pixmap pixmap) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        png.write(bytes, pixmap);
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertNotNull("ImageIO couldn't read the PNG", image);
+        return image;
+    }
+
+    private static void assertSamePixels(Pixmap pixmap, BufferedImage image, boolean flipY) {
+        final int width = pixmap.getWidth(), height = pixmap.getHeight();
+        Assert.assertEquals(width, image.getWidth());
+        Assert.assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int rgba = pixmap.getPixel(x, y);
+                final int argb = rgba >>> 8 | rgba << 24;
+                final int read = image.getRGB(x, flipY ? height - 1 - y : y);
+                if (argb != read)
+                    Assert.fail("pixel " + x + "," + y + " should be " + Integer.toHexString(argb) + " but was "
+                            + Integer.toHexString(read));
+            }
+        }
+    }
+
+    @Test
+    public void fewColorsUsePalette() throws IOException {
+        final Random random = new Random(1L);
+        final IndexedPNG png = new IndexedPNG();
+        try {
+            for (int count : new int[]{3, 17, 256}) {
+                final Pixmap pixmap = randomPixmap(random, 37, 23, someColors(random, count));
+                final BufferedImage image = roundTrip(png, pixmap);
+                Assert.assertTrue(count + " colors should be written with a palette",
+                        image.getColorModel() instanceof IndexColorModel);
+                assertSamePixels(pixmap, image, true);
+                pixmap.dispose();
+            }
+        } finally {
+            png.dispose();
+        }
+    }
+
+    @Test
+    public void manyColorsUseRGBA() throws IOException {
+        final Random random = new Random(2L);
+        final IndexedPNG png = new IndexedPNG();
+        try {
+            final Pixmap pixmap = randomPixmap(random, 64, 40, someColors(random, 1000));
+            final BufferedImage image = roundTrip(png, pixmap);
+            Assert.assertFalse("more than 256 colors can't use a palette",
+                    image.getColorModel() instanceof IndexColorModel);
+            assertSamePixels(pixmap, image, true);
+            pixmap.dispose();
+        } finally {
+            png.dispose();
+        }
+    }
+
+    @Test
+    public void unflippedAndParallel() throws IOException {
+        final Random random = new Random(3L);
+        final IndexedPNG png = new IndexedPNG(9);
+        try {
+            png.setFlipY(false);
+            png.parallel = true;
+            // small strips, so even this small image is split into several
+            png.stripRows = 5;
+            for (int count : new int[]{40, 700}) {
+                final Pixmap pixmap = randomPixmap(random, 50, 61, someColors(random, count));
+                assertSamePixels(pixmap, roundTrip(png, pixmap), false);
+                pixmap.dispose();
+            }
+        } finally {
+            png.dispose();
+        }
+    }
+}
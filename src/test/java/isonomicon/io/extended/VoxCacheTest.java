@@ -0,0 +1,91 @@
+package isonomicon.io.extended;
+
+import com.github.tommyettinger.ds.IntObjectMap;
+import com.github.tommyettinger.ds.LongOrderedSet;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Loads the same .vox file without and then with a {@link VoxCache} file, and checks that the cached grids, links, and
+ * markers are the same as the ones that were loaded the slow way.
+ */
+public class VoxCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a model with two grids, each with a blob of solid voxels and a few link markers (colors 192 and up).
+     */
+    private String writeModel(Random random) {
+        final VoxModel model = new VoxModel();
+        for (int g = 0; g < 2; g++) {
+            final int size = 10 + g * 4;
+            final byte[][][] grid = new byte[size][size][size];
+            for (int x = 1; x < size - 1; x++) {
+                for (int y = 1; y < size - 1; y++) {
+                    for (int z = 1; z < size - 1; z++) {
+                        if (random.nextInt(4) != 0)
+                            grid[x][y][z] = (byte) (1 + random.nextInt(60));
+                    }
+                }
+            }
+            for (int i = 0; i < 6; i++) {
+                grid[random.nextInt(size)][random.nextInt(size)][random.nextInt(size)] = (byte) (0xC0 + random.nextInt(4));
+            }
+            model.grids.add(grid);
+        }
+        final String path = new File(folder.getRoot(), "cached.vox").getPath();
+        new VoxWriter().write(path, model);
+        return path;
+    }
+
+    private static void assertSameModel(VoxModel expected, VoxModel actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals("grid count", expected.grids.size(), actual.grids.size());
+        for (int g = 0; g < expected.grids.size(); g++) {
+            Assert.assertTrue("grid " + g, Arrays.deepEquals(expected.grids.get(g), actual.grids.get(g)));
+        }
+        Assert.assertEquals("link maps", expected.links.size(), actual.links.size());
+        for (int g = 0; g < expected.links.size(); g++) {
+            final IntObjectMap<float[]> e = expected.links.get(g), a = actual.links.get(g);
+            Assert.assertEquals("links in grid " + g, e.size(), a.size());
+            for (IntObjectMap.Entry<float[]> ent : e) {
+                Assert.assertArrayEquals("link " + ent.key + " in grid " + g, ent.value, a.get(ent.key), 0f);
+            }
+        }
+        Assert.assertEquals("marker maps", expected.markers.size(), actual.markers.size());
+        for (int g = 0; g < expected.markers.size(); g++) {
+            final IntObjectMap<LongOrderedSet> e = expected.markers.get(g), a = actual.markers.get(g);
+            Assert.assertEquals("markers in grid " + g, e.size(), a.size());
+            for (IntObjectMap.Entry<LongOrderedSet> ent : e) {
+                final LongOrderedSet set = a.get(ent.key);
+                Assert.assertNotNull("marker " + ent.key + " in grid " + g, set);
+                Assert.assertEquals("marker " + ent.key + " in grid " + g, ent.value.order(), set.order());
+            }
+        }
+    }
+
+    @Test
+    public void cachedLoadMatchesColdLoad() throws IOException {
+        final String path = writeModel(new Random(1L));
+        final VoxCache cache = new VoxCache(folder.newFolder("cache").getPath());
+        for (VoxLoadOptions options : new VoxLoadOptions[]{VoxLoadOptions.SPECIALIZED, VoxLoadOptions.GENERAL}) {
+            final int hits = cache.hits, misses = cache.misses;
+            final VoxModel cold = cache.load(path, options);
+            Assert.assertEquals("the first load should miss", misses + 1, cache.misses);
+            final VoxModel cached = cache.load(path, options);
+            Assert.assertEquals("the second load should hit", hits + 1, cache.hits);
+            assertSameModel(cold, cached);
+        }
+        final File[] temps = cache.directory.listFiles((dir, name) -> name.endsWith(".tmp"));
+        Assert.assertNotNull(temps);
+        Assert.assertEquals("temporary files should be moved into place", 0, temps.length);
+    }
+}
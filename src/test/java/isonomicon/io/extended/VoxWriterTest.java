@@ -0,0 +1,117 @@
+package isonomicon.io.extended;
+
+import isonomicon.io.VoxIO;
+import isonomicon.physical.VoxMaterial;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes models with {@link VoxWriter} and reads them back with {@link VoxIO} and {@link VoxIOExtended}. Grids are
+ * cubes here, because both readers pad every grid out to a cube.
+ */
+public class VoxWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[][][] randomGrid(Random random, int size) {
+        final byte[][][] voxels = new byte[size][size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    if (random.nextInt(3) == 0)
+                        voxels[x][y][z] = (byte) (1 + random.nextInt(255));
+                }
+            }
+        }
+        return voxels;
+    }
+
+    private static int[] randomPalette(Random random) {
+        final int[] palette = new int[256];
+        for (int i = 1; i < 256; i++) {
+            palette[i] = random.nextInt();
+        }
+        return palette;
+    }
+
+    private static void assertGridsEqual(String message, byte[][][] expected, byte[][][] actual) {
+        Assert.assertNotNull(message, actual);
+        Assert.assertEquals(message + " (sizeX)", expected.length, actual.length);
+        for (int x = 0; x < expected.length; x++) {
+            for (int y = 0; y < expected[x].length; y++) {
+                Assert.assertArrayEquals(message + " at x=" + x + ", y=" + y, expected[x][y], actual[x][y]);
+            }
+        }
+    }
+
+    @Test
+    public void gridReadsBackWithVoxIO() throws IOException {
+        final Random random = new Random(1L);
+        final byte[][][] voxels = randomGrid(random, 24);
+        final int[] palette = randomPalette(random);
+        final String path = new File(folder.getRoot(), "grid.vox").getPath();
+
+        new VoxWriter().write(path, voxels, palette, null);
+
+        assertGridsEqual("grid", voxels, VoxIO.readVoxFile(path));
+        for (int i = 1; i < 256; i++) {
+            Assert.assertEquals("palette index " + i, palette[i], VoxIO.lastPalette[i]);
+        }
+    }
+
+    @Test
+    public void modelReadsBackWithVoxIOExtended() throws IOException {
+        final Random random = new Random(2L);
+        final VoxModel model = new VoxModel();
+        model.palette = randomPalette(random);
+        model.grids.add(randomGrid(random, 16));
+        model.grids.add(randomGrid(random, 9));
+        model.grids.add(randomGrid(random, 30));
+        final VoxMaterial glass = new VoxMaterial("_glass");
+        glass.putTrait(VoxMaterial.MaterialTrait._alpha, 0.5f);
+        model.materials.put(7, glass);
+        final String path = new File(folder.getRoot(), "nested/model.vox").getPath();
+
+        new VoxWriter().write(path, model);
+
+        final VoxModel read = VoxIOExtended.readVoxFile(path, new VoxLoadOptions(true, false, false, true));
+        Assert.assertNotNull(read);
+        Assert.assertEquals(model.grids.size(), read.grids.size());
+        for (int g = 0; g < model.grids.size(); g++) {
+            assertGridsEqual("grid " + g, model.grids.get(g), read.grids.get(g));
+        }
+        for (int i = 1; i < 256; i++) {
+            Assert.assertEquals("palette index " + i, model.palette[i], read.palette[i]);
+        }
+        final VoxMaterial readGlass = read.materials.get(7);
+        Assert.assertNotNull(readGlass);
+        Assert.assertEquals(glass.type, readGlass.type);
+        Assert.assertEquals(0.5f, readGlass.getTrait(VoxMaterial.MaterialTrait._alpha), 0f);
+    }
+
+    @Test
+    public void failedWriteKeepsExistingFile() throws IOException {
+        final Random random = new Random(3L);
+        final File file = new File(folder.getRoot(), "kept.vox");
+        new VoxWriter().write(file.getPath(), randomGrid(random, 8), randomPalette(random), null);
+        final byte[] before = Files.readAllBytes(file.toPath());
+
+        // too big for the .vox format, so this fails partway through
+        final VoxModel tooBig = new VoxModel();
+        tooBig.grids.add(randomGrid(random, 4));
+        tooBig.grids.add(new byte[257][4][4]);
+        new VoxWriter().write(file.getPath(), tooBig);
+
+        Assert.assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+        final String[] left = folder.getRoot().list();
+        Assert.assertNotNull(left);
+        Assert.assertEquals("temporary files should be deleted", 1, left.length);
+    }
+}
@@ -0,0 +1,264 @@
+package isonomicon.physical;
+
+import com.github.tommyettinger.ds.IntObjectMap;
+
+import java.util.Arrays;
+
+import static isonomicon.physical.Tools3D.*;
+
+/**
+ * The byte[][][] versions of some {@link Tools3D} methods, as they were before those became wrappers around the
+ * {@link VoxelGrid} versions. These are only here so {@link Tools3DEquivalenceTest} has something to compare against;
+ * rotate(), the mirrors, hash64() and the 4-argument simpleScale() still work on 3D arrays in Tools3D, so they aren't
+ * repeated here.
+ */
+class JaggedTools3D {
+
+    static byte[][][] runCA(byte[][][] voxels, int smoothLevel)
+    {
+        if(smoothLevel < 1)
+            return voxels;
+        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+        int[] colorCount = new int[256];
+        byte[][][] vs0 = deepCopy(voxels), vs1 = new byte[xs][ys][zs];
+        for(int v = 0; v < smoothLevel; v++)
+        {
+            if(v >= 1)
+            {
+                deepCopyInto(vs1, vs0);
+            }
+            for(int x = 0; x < xs; x++)
+            {
+                for(int y = 0; y < ys; y++)
+                {
+                    for(int z = 0; z < zs; z++)
+                    {
+                        Arrays.fill(colorCount, 0);
+                        if(x == 0 || y == 0 || z == 0 || x == xs - 1 || y == ys - 1 || z == zs - 1 || vs0[x][y][z] == 2)
+                        {
+                            colorCount[vs0[x][y][z] & 255] = 10000;
+                            colorCount[0] = -100000;
+                        }
+                        else
+                        {
+                            for(int xx = -1; xx < 2; xx++)
+                            {
+                                for(int yy = -1; yy < 2; yy++)
+                                {
+                                    for(int zz = -1; zz < 2; zz++)
+                                    {
+                                        byte smallColor = vs0[x + xx][y + yy][z + zz];
+                                        colorCount[smallColor & 255]++;
+                                    }
+                                }
+                            }
+                        }
+                        if(colorCount[0] >= 23)
+                        {
+                            vs1[x][y][z] = 0;
+                        }
+                        else
+                        {
+                            byte max = 0;
+                            int cc = colorCount[0] / 3, tmp;
+                            for(byte idx = 1; idx != 0; idx++)
+                            {
+                                tmp = colorCount[idx & 255];
+                                if(tmp > 0 && tmp > cc)
+                                {
+                                    cc = tmp;
+                                    max = idx;
+                                }
+                            }
+                            vs1[x][y][z] = max;
+                        }
+                    }
+                }
+            }
+        }
+        return vs1;
+    }
+
+    static int flood(byte[][][] base, byte[][][] bounds)
+    {
+        final int xs = base.length, ys = base[0].length, zs = base[0][0].length;
+        int size = count(base), totalSize = 0;
+        byte[][][] nx = deepCopy(base);
+        byte t;
+        do {
+            totalSize += size;
+            size = 0;
+            for (int x = 0; x < xs; x++) {
+                for (int y = 0; y < ys; y++) {
+                    for (int z = 0; z < zs; z++) {
+                        if (nx[x][y][z] != 0 && (t = bounds[x][y][z]) != 0) {
+                            nx[x][y][z] = t;
+                            if (x > 0 && nx[x - 1][y][z] == 0 && (t = bounds[x - 1][y][z]) != 0) {
+                                nx[x - 1][y][z] = t;
+                                ++size;
+                            }
+                            if (x < xs - 1 && nx[x + 1][y][z] == 0 && (t = bounds[x + 1][y][z]) != 0) {
+                                nx[x + 1][y][z] = t;
+                                ++size;
+                            }
+                            if (y > 0 && nx[x][y - 1][z] == 0 && (t = bounds[x][y - 1][z]) != 0) {
+                                nx[x][y - 1][z] = t;
+                                ++size;
+                            }
+                            if (y < ys - 1 && nx[x][y + 1][z] == 0 && (t = bounds[x][y + 1][z]) != 0) {
+                                nx[x][y + 1][z] = t;
+                                ++size;
+                            }
+                            if (z > 0 && nx[x][y][z - 1] == 0 && (t = bounds[x][y][z - 1]) != 0) {
+                                nx[x][y][z - 1] = t;
+                                ++size;
+                            }
+                            if (z < zs - 1 && nx[x][y][z + 1] == 0 && (t = bounds[x][y][z + 1]) != 0) {
+                                nx[x][y][z + 1] = t;
+                                ++size;
+                            }
+                        }
+                    }
+                }
+            }
+        } while (size != 0);
+        deepCopyInto(nx, base);
+        return totalSize + size;
+    }
+
+    static byte[][][] largestPart(byte[][][] voxels)
+    {
+        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+        int fst = firstTight(voxels), bestSize = 0, currentSize, x, y, z;
+
+        byte[][][] remaining = deepCopy(voxels), filled = new byte[xs][ys][zs],
+                choice = new byte[xs][ys][zs];
+        while (fst >= 0) {
+            fill(filled, 0);
+            x = fst / (ys * zs);
+            y = (fst / zs) % ys;
+            z = fst % zs;
+            filled[x][y][z] = voxels[x][y][z];
+            currentSize = flood(filled, remaining);
+            if(currentSize > bestSize)
+            {
+                bestSize = currentSize;
+                deepCopyInto(filled, choice);
+            }
+
+            for (x = 0; x < xs; x++) {
+                for (y = 0; y < ys; y++) {
+                    for (z = 0; z < zs; z++) {
+                        if(filled[x][y][z] != 0)
+                            remaining[x][y][z] = 0;
+                    }
+                }
+            }
+            fst = firstTight(remaining);
+        }
+        return choice;
+    }
+
+    private static int isSurface(byte[][][] voxels, int x, int y, int z) {
+        int v;
+        if(x < 0 || y < 0 || z < 0 ||
+                x >= voxels.length || y >= voxels[x].length || z >= voxels[x][y].length ||
+                voxels[x][y][z] == 0)
+            return 0;
+        if(x == 0 || (v = voxels[x-1][y][z] & 255) == 0 || STUFFS[v % STUFFS.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 1;
+        if(y == 0 || (v = voxels[x][y-1][z] & 255) == 0 || STUFFS[v % STUFFS.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 2;
+        if(z == 0 || (v = voxels[x][y][z-1] & 255) == 0 || STUFFS[v % STUFFS.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 3;
+        if(x >= voxels.length - 1       || (v = voxels[x+1][y][z] & 255) == 0 || STUFFS[v % STUFFS.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 4;
+        if(y >= voxels[x].length - 1    || (v = voxels[x][y+1][z] & 255) == 0 || STUFFS[v % STUFFS.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 5;
+        if(z >= voxels[x][y].length - 1 || (v = voxels[x][y][z+1] & 255) == 0 || STUFFS[v % STUFFS.length].material.getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 6;
+        return -1;
+    }
+
+    static void soakInPlace(byte[][][] voxels)
+    {
+        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+        byte b;
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                for (int z = 0; z < zs; z++) {
+                    if(isSurface(voxels, x, y, z) > 0){
+                        b = voxels[x][y][z];
+                        if(isSurface(voxels, x, y, z-1) == -1) voxels[x][y][z-1] = b;
+                        if(isSurface(voxels, x-1, y, z) == -1) voxels[x-1][y][z] = b;
+                        if(isSurface(voxels, x, y-1, z) == -1) voxels[x][y-1][z] = b;
+                        if(isSurface(voxels, x+1, y, z) == -1) voxels[x+1][y][z] = b;
+                        if(isSurface(voxels, x, y+1, z) == -1) voxels[x][y+1][z] = b;
+                        if(isSurface(voxels, x, y, z+1) == -1) voxels[x][y][z+1] = b;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int isSurface(byte[][][] voxels, int x, int y, int z, IntObjectMap<VoxMaterial> materialMap) {
+        int v;
+        if(x < 0 || y < 0 || z < 0 ||
+                x >= voxels.length || y >= voxels[x].length || z >= voxels[x][y].length ||
+                voxels[x][y][z] == 0)
+            return 0;
+        if(x == 0 || (v = voxels[x-1][y][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 1;
+        if(y == 0 || (v = voxels[x][y-1][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 2;
+        if(z == 0 || (v = voxels[x][y][z-1] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 3;
+        if(x >= voxels.length - 1       || (v = voxels[x+1][y][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 4;
+        if(y >= voxels[x].length - 1    || (v = voxels[x][y+1][z] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 5;
+        if(z >= voxels[x][y].length - 1 || (v = voxels[x][y][z+1] & 255) == 0 || materialMap.get(v).getTrait(VoxMaterial.MaterialTrait._alpha) >= 1f) return 6;
+        return -1;
+    }
+
+    static void soakInPlace(byte[][][] voxels, IntObjectMap<VoxMaterial> materialMap)
+    {
+        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+        byte b;
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                for (int z = 0; z < zs; z++) {
+                    if(isSurface(voxels, x, y, z, materialMap) > 0){
+                        b = voxels[x][y][z];
+                        if(isSurface(voxels, x, y, z-1, materialMap) == -1) voxels[x][y][z-1] = b;
+                        if(isSurface(voxels, x-1, y, z, materialMap) == -1) voxels[x-1][y][z] = b;
+                        if(isSurface(voxels, x, y-1, z, materialMap) == -1) voxels[x][y-1][z] = b;
+                        if(isSurface(voxels, x+1, y, z, materialMap) == -1) voxels[x+1][y][z] = b;
+                        if(isSurface(voxels, x, y+1, z, materialMap) == -1) voxels[x][y+1][z] = b;
+                        if(isSurface(voxels, x, y, z+1, materialMap) == -1) voxels[x][y][z+1] = b;
+                    }
+                }
+            }
+        }
+    }
+
+    static byte[][][] soak(byte[][][] voxels)
+    {
+        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+        byte[][][] next = new byte[xs][ys][zs];
+        byte b;
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                for (int z = 0; z < zs; z++) {
+                    if(isSurface(voxels, x, y, z) > 0){
+                        next[x][y][z] = b = voxels[x][y][z];
+                        if(isSurface(voxels, x, y, z-1) == -1) next[x][y][z-1] = b;
+                        if(isSurface(voxels, x-1, y, z) == -1) next[x-1][y][z] = b;
+                        if(isSurface(voxels, x, y-1, z) == -1) next[x][y-1][z] = b;
+                        if(isSurface(voxels, x+1, y, z) == -1) next[x+1][y][z] = b;
+                        if(isSurface(voxels, x, y+1, z) == -1) next[x][y+1][z] = b;
+                        if(isSurface(voxels, x, y, z+1) == -1) next[x][y][z+1] = b;
+                    }
+                }
+            }
+        }
+        return next;
+    }
+
+    static byte[][][] scaleAndSoak(byte[][][] voxels) {
+        final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+        byte[][][] scaled = simpleScale(voxels, new byte[xs << 1][ys << 1][zs << 1],
+                new byte[xs][ys][zs], new byte[xs][ys][zs]);
+        soakInPlace(scaled);
+        return scaled;
+    }
+}
@@ -0,0 +1,173 @@
+package isonomicon.physical;
+
+import com.github.tommyettinger.ds.IntObjectMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks that the {@link VoxelGrid} methods in {@link Tools3D} give the same results, cell by cell, as the byte[][][]
+ * code they replaced, on random grids of many shapes. The old code lives on in {@link JaggedTools3D}, or in Tools3D
+ * itself where it is still used for 3D arrays.
+ */
+public class Tools3DEquivalenceTest {
+    private static final int TRIALS = 60;
+
+    /**
+     * Makes a grid where each cell is filled with chance {@code density}, using only a few colors so neighbors often
+     * match; 2 is always one of them, since runCA() treats it specially.
+     */
+    private static byte[][][] randomGrid(Random random, int xs, int ys, int zs, double density) {
+        final byte[] colors = {2, (byte) (1 + random.nextInt(255)), (byte) (1 + random.nextInt(255)),
+                (byte) (1 + random.nextInt(255)), (byte) (1 + random.nextInt(255))};
+        final byte[][][] voxels = new byte[xs][ys][zs];
+        for (int x = 0; x < xs; x++) {
+            for (int y = 0; y < ys; y++) {
+                for (int z = 0; z < zs; z++) {
+                    if (random.nextDouble() < density)
+                        voxels[x][y][z] = colors[random.nextInt(colors.length)];
+                }
+            }
+        }
+        return voxels;
+    }
+
+    private static void assertSame(String message, byte[][][] expected, VoxelGrid actual) {
+        Assert.assertEquals(message + " (sizeX)", expected.length, actual.sizeX);
+        Assert.assertEquals(message + " (sizeY)", expected[0].length, actual.sizeY);
+        Assert.assertEquals(message + " (sizeZ)", expected[0][0].length, actual.sizeZ);
+        for (int x = 0; x < actual.sizeX; x++) {
+            for (int y = 0; y < actual.sizeY; y++) {
+                for (int z = 0; z < actual.sizeZ; z++) {
+                    if (expected[x][y][z] != actual.get(x, y, z))
+                        Assert.fail(message + " differs at " + x + "," + y + "," + z + ": expected "
+                                + (expected[x][y][z] & 255) + " but was " + (actual.get(x, y, z) & 255));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@code trial} on random grids; half of them are square in x and y, so they can be rotated.
+     */
+    private static void trials(long seed, Trial trial) {
+        final Random random = new Random(seed);
+        for (int t = 0; t < TRIALS; t++) {
+            final int xs = 1 + random.nextInt(20), ys = (t & 1) == 0 ? xs : 1 + random.nextInt(20),
+                    zs = 1 + random.nextInt(20);
+            final byte[][][] voxels = randomGrid(random, xs, ys, zs, 0.1 + random.nextDouble() * 0.8);
+            trial.run(random, "trial " + t + " (" + xs + "x" + ys + "x" + zs + ")", voxels);
+        }
+    }
+
+    private interface Trial {
+        void run(Random random, String name, byte[][][] voxels);
+    }
+
+    @Test
+    public void rotate() {
+        trials(1L, (random, name, voxels) -> {
+            if (voxels.length != voxels[0].length) return;
+            for (int turns = 0; turns < 4; turns++) {
+                assertSame(name + ", " + turns + " turns", Tools3D.rotate(voxels, turns),
+                        Tools3D.rotate(new VoxelGrid(voxels), turns));
+            }
+        });
+    }
+
+    @Test
+    public void mirror() {
+        trials(2L, (random, name, voxels) -> {
+            final VoxelGrid grid = new VoxelGrid(voxels);
+            assertSame(name + ", mirrorX", Tools3D.mirrorX(voxels), Tools3D.mirrorX(grid));
+            assertSame(name + ", mirrorY", Tools3D.mirrorY(voxels), Tools3D.mirrorY(grid));
+            assertSame(name + ", mirrorXY", Tools3D.mirrorXY(voxels), Tools3D.mirrorXY(grid));
+        });
+    }
+
+    @Test
+    public void hash64() {
+        trials(3L, (random, name, voxels) ->
+                Assert.assertEquals(name, Tools3D.hash64(voxels), Tools3D.hash64(new VoxelGrid(voxels))));
+    }
+
+    @Test
+    public void flood() {
+        trials(4L, (random, name, voxels) -> {
+            final int xs = voxels.length, ys = voxels[0].length, zs = voxels[0][0].length;
+            final byte[][][] base = new byte[xs][ys][zs];
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                base[random.nextInt(xs)][random.nextInt(ys)][random.nextInt(zs)] = 1;
+            }
+            final VoxelGrid grid = new VoxelGrid(base);
+            final int expected = JaggedTools3D.flood(base, voxels);
+            Assert.assertEquals(name + ", size", expected, Tools3D.flood(grid, new VoxelGrid(voxels)));
+            assertSame(name, base, grid);
+        });
+    }
+
+    @Test
+    public void largestPart() {
+        trials(5L, (random, name, voxels) ->
+                assertSame(name, JaggedTools3D.largestPart(voxels), Tools3D.largestPart(new VoxelGrid(voxels))));
+    }
+
+    @Test
+    public void soak() {
+        final IntObjectMap<VoxMaterial> materials = new IntObjectMap<>(256);
+        final Random random = new Random(123L);
+        for (int i = 0; i < 256; i++) {
+            final VoxMaterial material = new VoxMaterial();
+            if (random.nextInt(4) == 0)
+                material.putTrait(VoxMaterial.MaterialTrait._alpha, 1f);
+            materials.put(i, material);
+        }
+        trials(6L, (r, name, voxels) -> {
+            assertSame(name + ", soak", JaggedTools3D.soak(voxels), Tools3D.soak(new VoxelGrid(voxels)));
+
+            byte[][][] expected = Tools3D.deepCopy(voxels);
+            VoxelGrid grid = new VoxelGrid(voxels);
+            JaggedTools3D.soakInPlace(expected);
+            Tools3D.soakInPlace(grid);
+            assertSame(name + ", soakInPlace", expected, grid);
+
+            expected = Tools3D.deepCopy(voxels);
+            grid = new VoxelGrid(voxels);
+            JaggedTools3D.soakInPlace(expected, materials);
+            Tools3D.soakInPlace(grid, materials);
+            assertSame(name + ", soakInPlace with materials", expected, grid);
+        });
+    }
+
+    @Test
+    public void runCA() {
+        final int width = Tools3D.SLAB_WIDTH;
+        try {
+            // narrow slabs, so most grids are split up and the slab edges get checked
+            Tools3D.SLAB_WIDTH = 3;
+            trials(7L, (random, name, voxels) -> {
+                final int smoothLevel = 1 + random.nextInt(3);
+                assertSame(name + ", " + smoothLevel + " levels", JaggedTools3D.runCA(voxels, smoothLevel),
+                        Tools3D.runCA(new VoxelGrid(voxels), smoothLevel));
+            });
+        } finally {
+            Tools3D.SLAB_WIDTH = width;
+        }
+    }
+
+    @Test
+    public void scaleAndSoak() {
+        final int width = Tools3D.SLAB_WIDTH;
+        try {
+            for (int w : new int[]{1, 3, 8, 64}) {
+                Tools3D.SLAB_WIDTH = w;
+                trials(8L + w, (random, name, voxels) ->
+                        assertSame(name + ", slab width " + Tools3D.SLAB_WIDTH, JaggedTools3D.scaleAndSoak(voxels),
+                                Tools3D.scaleAndSoak(new VoxelGrid(voxels))));
+            }
+        } finally {
+            Tools3D.SLAB_WIDTH = width;
+        }
+    }
+}